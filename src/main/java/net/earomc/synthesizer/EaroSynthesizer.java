@@ -1,8 +1,17 @@
 package net.earomc.synthesizer;
 
+import net.earomc.synthesizer.analysis.LevelMeter;
+import net.earomc.synthesizer.analysis.SpectrumAnalyzer;
+import net.earomc.synthesizer.analysis.StreamAnalyzer;
+import net.earomc.synthesizer.batch.BatchRenderer;
+import net.earomc.synthesizer.capture.InputMonitor;
 import net.earomc.synthesizer.debug.ByteArrayDumpCreator;
 import net.earomc.synthesizer.debug.FloatSampleArrayDumpCreator;
-import net.earomc.synthesizer.waveform.Waveform;
+import net.earomc.synthesizer.metrics.RenderMetrics;
+import net.earomc.synthesizer.playback.StreamingFilePlayer;
+import net.earomc.synthesizer.service.AudioStreamServer;
+import net.earomc.synthesizer.visual.PeakPyramid;
+import net.earomc.synthesizer.waveform.WaveformRegistry;
 import org.jetbrains.annotations.Nullable;
 import org.knowm.xchart.SwingWrapper;
 import org.knowm.xchart.XYChart;
@@ -14,27 +23,26 @@ import org.knowm.xchart.style.XYStyler;
 import javax.sound.sampled.*;
 import java.awt.*;
 import java.io.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Logger;
 
 import static net.earomc.synthesizer.SampleArrays.getFrequencyModSamples;
 import static net.earomc.synthesizer.SampleArrays.waveSamples;
-import static net.earomc.synthesizer.SimpleAudioConversion.encode;
 
 public class EaroSynthesizer {
 
     public static final Logger LOGGER = Logger.getLogger("EaroSynthesizer");
-    private ScheduledFuture<?> future;
-    private ScheduledExecutorService executor;
+    private final RenderMetrics renderMetrics = new RenderMetrics();
+    // of the current or last playback, replaced when a playback starts
+    private volatile StreamAnalyzer outputAnalyzer;
 
     public static final int SAMPLE_RATE = 4000; // in Hertz/Hz | means 48000 samples per second
     public static final int FRAME_RATE = SAMPLE_RATE;
     public static final int SAMPLE_SIZE = 16; // in bits / bits per sample | 16 bits = 2 bytes | like a short
     public static final int CHANNELS = 2; // STEREO
     public static final int BUFFER_SIZE = 0x1000; // 4096 - in bytes (1 byte = 8 bits)
+    public static final int BLOCK_SIZE = 256; // in samples | how many samples are processed at once by effects etc.
     public static final AudioFormat AUDIO_FORMAT
             = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
             SAMPLE_RATE,
@@ -44,12 +52,35 @@ public class EaroSynthesizer {
             FRAME_RATE,
             false);
     public static final float VOLUME = 1f / 50; // has to be a value between -1 and 1
+    private static final int CHART_COLUMNS = 2000; // min/max pairs plotted by displayChart, about one per pixel
+    private static final int SPECTRUM_FFT_SIZE = 2048; // in samples | frequency resolution of the spectrum chart is SAMPLE_RATE / SPECTRUM_FFT_SIZE
+    private static final float LEVEL_RELEASE_DB_PER_SECOND = 20; // how fast the peak of the playback level meter falls
 
 
     public EaroSynthesizer() {
+        renderMetrics.register("playback");
     }
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("render")) {
+            // headless batch mode, see BatchRenderer
+            BatchRenderer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("serve")) {
+            // streams rendered audio over HTTP, see AudioStreamServer
+            AudioStreamServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("monitor")) {
+            // plays the recording line back through effects, see InputMonitor
+            try {
+                InputMonitor.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
         new EaroSynthesizer().waitForKeyboardInput();
     }
 
@@ -61,7 +92,7 @@ public class EaroSynthesizer {
         boolean running = true;
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
         while (true) {
-            System.out.println("Ready for commands: (stop, playsound <sine|saw|triangle|noise|square>)");
+            System.out.println("Ready for commands: (stop, playsound <" + String.join("|", WaveformRegistry.getDefault().getNames()) + ">)");
             String readLine;
             //readLine = reader.readLine();
             readLine = "playsound test";
@@ -69,20 +100,15 @@ public class EaroSynthesizer {
             if (readLine.equalsIgnoreCase("stop")) break;
             if (readLine.startsWith("playsound")) {
                 float[] samples;
-                if (readLine.endsWith("sine")) {
-                    samples = waveSamples(Waveform.SINE, 100, VOLUME, 1, 0);
-                } else if (readLine.endsWith("saw")) {
-                    samples = waveSamples(Waveform.SAW, 100, VOLUME, 1, 0);
-                } else if (readLine.endsWith("triangle")) {
-                    samples = waveSamples(Waveform.TRIANGLE, 100, VOLUME, 1, 0);
-                } else if (readLine.endsWith("noise")) {
-                    samples = waveSamples(Waveform.NOISE, 100, VOLUME, 1, 0);
-                } else if (readLine.endsWith("square")) {
-                    samples = waveSamples(Waveform.SQUARE, 100, VOLUME, 1, 0);
-                } else if (readLine.endsWith("test")) {
+                String argument = readLine.substring("playsound".length()).trim();
+                WaveformRegistry.Entry entry = WaveformRegistry.getDefault().find(argument);
+                if (entry != null) {
+                    samples = waveSamples(entry.waveform(), 100, VOLUME, 1, 0);
+                } else if (argument.equals("test")) {
                     float[][] frequencyModSamples = getFrequencyModSamples();
                     samples = frequencyModSamples[0];
                     displayFrequencyChart(samples, frequencyModSamples[1]);
+                    displaySpectrumChart(samples);
                 } else samples = new float[0];
                 playSamples(samples, AUDIO_FORMAT);
                 displayChart(samples);
@@ -95,9 +121,9 @@ public class EaroSynthesizer {
 
     
     public void playSamples(float[] samples, AudioFormat audioFormat, @Nullable String dumpFileName) {
-        byte[] encodedSampleBytes = encode(samples, SAMPLE_SIZE, audioFormat);
-        ByteArrayInputStream encSampleBytesStream = new ByteArrayInputStream(encodedSampleBytes);
-        //InputStream encSampleBytesStream = new ByteArrayInputStream(encodedSampleBytes);
+        // encoded block by block while playing, so the encoding is part of the measured render time
+        InputStream encSampleBytesStream = new SampleInputStream(samples, new Requantizer(audioFormat,
+                Requantizer.Dither.TPDF, Requantizer.NoiseShaping.NONE, ThreadLocalRandom.current().nextLong()));
         try {
             FloatSampleArrayDumpCreator dumpCreator1 = new FloatSampleArrayDumpCreator(dumpFileName);
             dumpCreator1.createDump(samples, (int) audioFormat.getSampleRate());
@@ -116,77 +142,98 @@ public class EaroSynthesizer {
         playFromInputStream(inputStream, format, null);
     }
 
+    /**
+     * Plays the stream until it ends, waits until the line played everything and closes the line and the stream.
+     * <p>
+     * If the stream is PCM or float, every block is metered on its way to the line, see {@link #getLevelMeter()} and
+     * {@link #getSpectrumAnalyzer()}. The level is also published with the render metrics.
+     */
     private void playFromInputStream(InputStream inputStream, AudioFormat format, @Nullable String dumpFileName) throws IOException, LineUnavailableException {
         DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
 
-        var sourceDataLine = (SourceDataLine) AudioSystem.getLine(info);
-        sourceDataLine.open();
-        sourceDataLine.start();
-
         ByteArrayDumpCreator dumpCreator = null;
-        if (dumpFileName != null) {
-            dumpCreator = new ByteArrayDumpCreator(dumpFileName);
-        }
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int bytesRead;
-        int bytesReadTotal = 0;
-        while ((bytesRead = inputStream.read(buffer)) != -1) {
-            sourceDataLine.write(buffer, 0, bytesRead);
-            if (dumpCreator != null) dumpCreator.addByteArray(buffer, bytesRead);
-            //float[] samples = decode(buffer, BUFFER_SIZE, AUDIO_FORMAT);
-            //if (dumpCreator1 != null) dumpCreator1.createDump(samples, SAMPLE_RATE);
-            bytesReadTotal += bytesRead;
-        }
-        LOGGER.info("Wrote " + bytesReadTotal + " bytes to sdl");
+        try (inputStream; var sourceDataLine = (SourceDataLine) AudioSystem.getLine(info)) {
+            sourceDataLine.open();
+            sourceDataLine.start();
 
-
-        // 3 Seconds after playback, close SourceDataLine and inputStream to make the program be able to finish.
-        System.out.println("Audio playback should be finished... Closing SDL in 3 seconds:");
-        this.executor = Executors.newSingleThreadScheduledExecutor();
-        executor.schedule(() -> {
-            try {
-                inputStream.close();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+            if (dumpFileName != null) {
+                dumpCreator = new ByteArrayDumpCreator(dumpFileName);
             }
-            System.out.println("Closed SDL");
-            if (future != null) future.cancel(true);
-            if (executor != null) executor.shutdown();
-        }, 3, TimeUnit.SECONDS);
-
-        if (dumpCreator != null) dumpCreator.close();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int bytesRead;
+            int bytesReadTotal = 0;
+            int frameSize = format.getFrameSize();
+            float frameRate = format.getFrameRate();
+
+            StreamAnalyzer analyzer = StreamAnalyzer.canAnalyze(format)
+                    ? new StreamAnalyzer(format, BUFFER_SIZE, LEVEL_RELEASE_DB_PER_SECOND, SPECTRUM_FFT_SIZE) : null;
+            this.outputAnalyzer = analyzer;
+            renderMetrics.setLevelMeter(analyzer == null ? null : analyzer.getLevelMeter());
+
+            renderMetrics.setActiveVoices(1);
+            while (true) {
+                // a block costs everything from the start of the read up to the write: reading the stream is where the
+                // audio gets rendered and encoded, then it is metered. Waiting in write for the line isn't rendering.
+                long renderStart = System.nanoTime();
+                if ((bytesRead = inputStream.read(buffer)) == -1) break;
+                if (analyzer != null) analyzer.write(buffer, bytesRead);
+                renderMetrics.recordBlock(System.nanoTime() - renderStart, RenderMetrics.deadlineNanos(bytesRead / frameSize, frameRate));
+                // the line's buffer ran completely empty while we were rendering, so playback dropped out
+                if (bytesReadTotal > 0 && sourceDataLine.available() >= sourceDataLine.getBufferSize()) renderMetrics.recordXrun();
+                sourceDataLine.write(buffer, 0, bytesRead);
+                if (dumpCreator != null) dumpCreator.addByteArray(buffer, bytesRead);
+                //float[] samples = decode(buffer, BUFFER_SIZE, AUDIO_FORMAT);
+                //if (dumpCreator1 != null) dumpCreator1.createDump(samples, SAMPLE_RATE);
+                bytesReadTotal += bytesRead;
+            }
+            renderMetrics.setActiveVoices(0);
+            int bytesWritten = bytesReadTotal;
+            LOGGER.info(() -> "Wrote " + bytesWritten + " bytes to sdl");
+            LOGGER.info(() -> "Render metrics: " + renderMetrics);
+
+            // blocks until the line played everything, closing it earlier would cut off the end
+            sourceDataLine.drain();
+            LOGGER.info("Playback finished, closing SDL");
+        } finally {
+            if (dumpCreator != null) dumpCreator.close();
+        }
     }
 
+    /**
+     * Shows the waveform of the samples. The samples are reduced to a min/max pair per column of the chart,
+     * and the chart is built on its own thread, so neither the caller nor the chart has to handle every sample.
+     */
     private static void displayChart(float[] samples) {
-        XYChart chart = new XYChartBuilder()
-                .width(1280)
-                .height(720)
-                .title("Chart")
-                .xAxisTitle("t in seconds")
-                .yAxisTitle("amplitude")
-                .build();
-        XYStyler styl = chart.getStyler();
-        styl.setDefaultSeriesRenderStyle(XYSeries.XYSeriesRenderStyle.Line);
-        styl.setChartTitleVisible(false);
-        styl.setLegendPosition(Styler.LegendPosition.InsideSW);
-        styl.setMarkerSize(2);
-
-        float[] seconds = new float[samples.length];
-        for (int i = 0; i < samples.length; i++) {
-            seconds[i] = (i * 1f) / SAMPLE_RATE;
-        }
-        chart.addSeries("Samples", seconds, samples);
-
-        /*
-        float[] count = new float[samples.length];
-        for (float i = 0; i < samples.length; i++) {
-            count[(int) i] = i;
-        }
-        chart.addSeries("Samples", count, samples);
-         */
+        Thread chartThread = new Thread(() -> {
+            PeakPyramid peaks = PeakPyramid.of(samples, SAMPLE_RATE);
+            int columns = Math.max(1, Math.min(CHART_COLUMNS, samples.length));
+            float[] min = new float[columns];
+            float[] max = new float[columns];
+            peaks.getPeaks(columns, min, max);
+            float[] seconds = new float[columns];
+            for (int column = 0; column < columns; column++) {
+                seconds[column] = (float) ((column + 0.5) * peaks.getDurationSeconds() / columns);
+            }
 
-        LOGGER.info("Init SwingWrapper " + chart);
-        new SwingWrapper<>(chart).displayChart();
+            XYChart chart = new XYChartBuilder()
+                    .width(1280)
+                    .height(720)
+                    .title("Chart")
+                    .xAxisTitle("t in seconds")
+                    .yAxisTitle("amplitude")
+                    .build();
+            XYStyler styl = chart.getStyler();
+            styl.setDefaultSeriesRenderStyle(XYSeries.XYSeriesRenderStyle.Line);
+            styl.setChartTitleVisible(false);
+            styl.setLegendPosition(Styler.LegendPosition.InsideSW);
+            styl.setMarkerSize(0);
+            chart.addSeries("Max", seconds, max).setLineColor(Color.BLUE);
+            chart.addSeries("Min", seconds, min).setLineColor(Color.BLUE);
+
+            LOGGER.info(() -> "Init SwingWrapper " + chart);
+            new SwingWrapper<>(chart).displayChart();
+        }, "chart");
+        chartThread.start();
     }
 
     private static void displayFrequencyChart(float[] samples, float[] frequencies) {
@@ -224,18 +271,68 @@ public class EaroSynthesizer {
         chart.addSeries("Samples", count, samples);
          */
 
-        LOGGER.info("Init SwingWrapper " + chart);
+        LOGGER.info(() -> "Init SwingWrapper " + chart);
         new SwingWrapper<>(chart).displayChart();
     }
 
+    /**
+     * Shows the average spectrum of the samples, the mean of the magnitudes of all FFT frames.
+     */
+    private static void displaySpectrumChart(float[] samples) {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(SPECTRUM_FFT_SIZE, SPECTRUM_FFT_SIZE / 2, SAMPLE_RATE);
+        int binCount = analyzer.getBinCount();
+        double[] sumDb = new double[binCount];
+        int frames = 0;
+        for (int offset = 0; offset < samples.length; offset += BLOCK_SIZE) {
+            analyzer.write(samples, offset, Math.min(BLOCK_SIZE, samples.length - offset));
+            if (analyzer.fetch()) {
+                float[] magnitudesDb = analyzer.getMagnitudesDb();
+                for (int bin = 0; bin < binCount; bin++) {
+                    sumDb[bin] += magnitudesDb[bin];
+                }
+                frames++;
+            }
+        }
+        if (frames == 0) return;
+
+        double[] frequencies = new double[binCount];
+        double[] averageDb = new double[binCount];
+        for (int bin = 0; bin < binCount; bin++) {
+            frequencies[bin] = analyzer.getBinFrequency(bin);
+            averageDb[bin] = sumDb[bin] / frames;
+        }
+
+        XYChart chart = new XYChartBuilder()
+                .width(1280)
+                .height(720)
+                .title("Spectrum Chart")
+                .xAxisTitle("Frequency in Hz")
+                .yAxisTitle("magnitude in dB")
+                .build();
+        XYStyler styl = chart.getStyler();
+        styl.setDefaultSeriesRenderStyle(XYSeries.XYSeriesRenderStyle.Line);
+        styl.setChartTitleVisible(false);
+        styl.setLegendPosition(Styler.LegendPosition.InsideSW);
+        styl.setMarkerSize(0);
+        chart.addSeries("Spectrum", frequencies, averageDb);
+
+        LOGGER.info(() -> "Init SwingWrapper " + chart);
+        new SwingWrapper<>(chart).displayChart();
+    }
+
+    /**
+     * Streams a resource to the speakers. The file is decoded on a background thread just ahead of playback,
+     * so memory use doesn't depend on the length of the file.
+     */
     public void playAudioFile(String fileName) throws FileNotFoundException {
-        InputStream resource = getClass().getResourceAsStream("/" + fileName);
-        if (resource == null) throw new FileNotFoundException(fileName + " could not be found.");
-        BufferedInputStream bis = new BufferedInputStream(resource, BUFFER_SIZE);
-        try (AudioInputStream audioInputStream = convertToDefaultFormat(AudioSystem.getAudioInputStream(bis))) {
-            LOGGER.info("Playing " + fileName);
-            playFromInputStream(audioInputStream, audioInputStream.getFormat(), fileName);
-        } catch (UnsupportedAudioFileException | IOException | LineUnavailableException e) {
+        if (getClass().getResource("/" + fileName) == null) throw new FileNotFoundException(fileName + " could not be found.");
+        StreamingFilePlayer player = new StreamingFilePlayer(AUDIO_FORMAT);
+        player.queue(StreamingFilePlayer.Track.resource(fileName, false));
+        player.finish();
+        try (InputStream stream = player.openStream()) {
+            LOGGER.info(() -> "Playing " + fileName);
+            playFromInputStream(stream, AUDIO_FORMAT, fileName);
+        } catch (IOException | LineUnavailableException e) {
             throw new RuntimeException(e);
         }
     }
@@ -251,6 +348,30 @@ public class EaroSynthesizer {
         }
     }
 
+    public RenderMetrics getRenderMetrics() {
+        return renderMetrics;
+    }
+
+    /**
+     * @return the level meter of the current or last playback, null before the first playback or if its format
+     * can't be metered. Can be read from any thread.
+     */
+    @Nullable
+    public LevelMeter getLevelMeter() {
+        StreamAnalyzer analyzer = outputAnalyzer;
+        return analyzer == null ? null : analyzer.getLevelMeter();
+    }
+
+    /**
+     * @return the spectrum analyzer of the current or last playback, null before the first playback or if its
+     * format can't be metered. Spectra can be {@link SpectrumAnalyzer#fetch() fetched} by one display thread.
+     */
+    @Nullable
+    public SpectrumAnalyzer getSpectrumAnalyzer() {
+        StreamAnalyzer analyzer = outputAnalyzer;
+        return analyzer == null ? null : analyzer.getSpectrumAnalyzer();
+    }
+
     public static AudioInputStream convertToDefaultFormat(AudioInputStream audioInputStream) {
         return AudioSystem.getAudioInputStream(AUDIO_FORMAT, audioInputStream);
     }
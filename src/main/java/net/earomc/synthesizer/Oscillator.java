@@ -1,20 +1,28 @@
 package net.earomc.synthesizer;
 
+import net.earomc.synthesizer.waveform.SineAccuracy;
 import net.earomc.synthesizer.waveform.Waveform;
 
+/**
+ * The fields are volatile, so changes from a control thread are seen by a render thread.
+ * Every setter is a separate change though, for changes that have to be seen together and for smoothing
+ * use a {@link net.earomc.synthesizer.param.ParameterSet}.
+ */
 public class Oscillator {
 
     // frequency of the wave in Hertz (Hz)
-    private float freq;
-    private float amp;
-    private Waveform waveform;
+    private volatile float freq;
+    private volatile float amp;
+    private volatile Waveform waveform;
+    // background voices can use a cheaper sine, lead voices keep full precision
+    private volatile SineAccuracy sineAccuracy = SineAccuracy.EXACT;
 
     public void setFreq(int freq) {
         this.freq = freq;
     }
 
     public void setAmp(float amp) {
-        if (amp < 1 || amp > 1)
+        if (amp < -1 || amp > 1)
             throw new IllegalArgumentException("Illegal value for amp: " + amp + "! Has to be a value between -1 and 1");
         this.amp = amp;
     }
@@ -34,4 +42,16 @@ public class Oscillator {
     public void setWaveform(Waveform waveform) {
         this.waveform = waveform;
     }
+
+    public SineAccuracy getSineAccuracy() {
+        return sineAccuracy;
+    }
+
+    public void setSineAccuracy(SineAccuracy sineAccuracy) {
+        this.sineAccuracy = sineAccuracy;
+    }
+
+    public float[] samples(float durationSeconds, float phaseRadians) {
+        return SampleArrays.waveSamples(waveform, freq, amp, durationSeconds, phaseRadians, sineAccuracy);
+    }
 }
@@ -0,0 +1,205 @@
+package net.earomc.synthesizer;
+
+import net.earomc.synthesizer.simd.SampleOps;
+import net.earomc.synthesizer.waveform.SineAccuracy;
+import net.earomc.synthesizer.waveform.Waveform;
+import net.earomc.synthesizer.waveform.WaveformRegistry;
+
+/**
+ * Many oscillator voices in parallel primitive arrays instead of one {@link Oscillator} object per voice.
+ * <p>
+ * Phase, phase increment, amplitude and waveform ID of voice v are at index v of their arrays.
+ * The active voices are also grouped by waveform, so {@link #render} handles one waveform after the other:
+ * for each voice of a group, the waveform renders the whole block in its own loop.
+ * Voices are referred to by their index, which stays the same until the voice is stopped.
+ * Nothing is allocated after construction.
+ */
+public class OscillatorBank {
+    private final int capacity;
+    private final int maxBlockSize;
+    private final float sampleRate;
+    private final WaveformRegistry registry;
+    private final SampleOps ops;
+    private SineAccuracy sineAccuracy = SineAccuracy.EXACT;
+
+    private final float[] phase;
+    private final float[] increment;
+    private final float[] amp;
+    private final int[] waveformId;
+    private final boolean[] active;
+
+    // free voice indices, used as a stack
+    private final int[] freeVoices;
+    private int freeCount;
+
+    // voicesByWaveform[id][0 .. voiceCount[id]) are the active voices with that waveform
+    private final int[][] voicesByWaveform;
+    private final int[] voiceCount;
+    // position of each voice in its group, for removing it
+    private final int[] groupPosition;
+
+    private final float[] scratch;
+
+    public OscillatorBank(int capacity, int maxBlockSize, float sampleRate) {
+        this(capacity, maxBlockSize, sampleRate, WaveformRegistry.getDefault(), SampleOps.PREFERRED);
+    }
+
+    public OscillatorBank(int capacity, int maxBlockSize, float sampleRate, WaveformRegistry registry, SampleOps ops) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Illegal value for capacity: " + capacity + "! Has to be at least 1");
+        this.capacity = capacity;
+        this.maxBlockSize = maxBlockSize;
+        this.sampleRate = sampleRate;
+        this.registry = registry;
+        this.ops = ops;
+
+        this.phase = new float[capacity];
+        this.increment = new float[capacity];
+        this.amp = new float[capacity];
+        this.waveformId = new int[capacity];
+        this.active = new boolean[capacity];
+
+        this.freeVoices = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            // the lowest index is on top of the stack
+            freeVoices[i] = capacity - 1 - i;
+        }
+        this.freeCount = capacity;
+
+        int idCount = 0;
+        for (WaveformRegistry.Entry entry : registry.getEntries()) {
+            idCount = Math.max(idCount, entry.id() + 1);
+        }
+        this.voicesByWaveform = new int[idCount][];
+        for (WaveformRegistry.Entry entry : registry.getEntries()) {
+            voicesByWaveform[entry.id()] = new int[capacity];
+        }
+        this.voiceCount = new int[idCount];
+        this.groupPosition = new int[capacity];
+        this.scratch = new float[maxBlockSize];
+    }
+
+    /**
+     * Starts a voice.
+     *
+     * @param waveformId ID of the waveform in the registry of this bank.
+     * @param phase01    start phase from 0 (inclusive) to 1 (exclusive).
+     * @return the index of the voice, or -1 if all voices are in use.
+     */
+    public int start(int waveformId, float freq, float amp, float phase01) {
+        registry.getEntry(waveformId); // throws for unknown IDs
+        checkFreq(freq);
+        checkAmp(amp);
+        // nothing can throw from here on, a failed start leaves the bank as it was
+        if (freeCount == 0) return -1;
+        int voice = freeVoices[--freeCount];
+        this.waveformId[voice] = waveformId;
+        this.phase[voice] = phase01;
+        this.increment[voice] = freq / sampleRate;
+        this.amp[voice] = amp;
+        this.active[voice] = true;
+        groupPosition[voice] = voiceCount[waveformId];
+        voicesByWaveform[waveformId][voiceCount[waveformId]++] = voice;
+        return voice;
+    }
+
+    public void stop(int voice) {
+        checkActive(voice);
+        int id = waveformId[voice];
+        int[] group = voicesByWaveform[id];
+        // move the last voice of the group into the gap
+        int last = group[--voiceCount[id]];
+        group[groupPosition[voice]] = last;
+        groupPosition[last] = groupPosition[voice];
+        active[voice] = false;
+        freeVoices[freeCount++] = voice;
+    }
+
+    public void stopAll() {
+        for (int voice = 0; voice < capacity; voice++) {
+            if (active[voice]) stop(voice);
+        }
+    }
+
+    public void setFreq(int voice, float freq) {
+        checkActive(voice);
+        checkFreq(freq);
+        increment[voice] = freq / sampleRate;
+    }
+
+    public void setAmp(int voice, float amp) {
+        checkActive(voice);
+        checkAmp(amp);
+        this.amp[voice] = amp;
+    }
+
+    public float getFreq(int voice) {
+        return increment[voice] * sampleRate;
+    }
+
+    public float getAmp(int voice) {
+        return amp[voice];
+    }
+
+    public float getPhase(int voice) {
+        return phase[voice];
+    }
+
+    public int getWaveformId(int voice) {
+        return waveformId[voice];
+    }
+
+    public boolean isActive(int voice) {
+        return active[voice];
+    }
+
+    public int getActiveCount() {
+        return capacity - freeCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public SineAccuracy getSineAccuracy() {
+        return sineAccuracy;
+    }
+
+    public void setSineAccuracy(SineAccuracy sineAccuracy) {
+        this.sineAccuracy = sineAccuracy;
+    }
+
+    /**
+     * Renders a block of all active voices and adds it to out.
+     */
+    public void render(float[] out, int offset, int length) {
+        if (length > maxBlockSize)
+            throw new IllegalArgumentException("Block of " + length + " samples is bigger than the max block size " + maxBlockSize);
+        for (int id = 0; id < voiceCount.length; id++) {
+            int count = voiceCount[id];
+            if (count == 0) continue;
+            Waveform waveform = registry.get(id);
+            int[] group = voicesByWaveform[id];
+            for (int i = 0; i < count; i++) {
+                int voice = group[i];
+                phase[voice] = waveform.render(scratch, 0, length, phase[voice], increment[voice], amp[voice], sineAccuracy);
+                ops.add(out, offset, scratch, 0, length, 1f);
+            }
+        }
+    }
+
+    private static void checkFreq(float freq) {
+        if (!Float.isFinite(freq))
+            throw new IllegalArgumentException("Illegal value for freq: " + freq + "! Has to be finite");
+    }
+
+    private static void checkAmp(float amp) {
+        if (!(amp >= -1 && amp <= 1))
+            throw new IllegalArgumentException("Illegal value for amp: " + amp + "! Has to be a value between -1 and 1");
+    }
+
+    private void checkActive(int voice) {
+        if (voice < 0 || voice >= capacity || !active[voice])
+            throw new IllegalArgumentException("Voice " + voice + " is not active");
+    }
+}
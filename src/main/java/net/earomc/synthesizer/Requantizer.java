@@ -0,0 +1,307 @@
+package net.earomc.synthesizer;
+
+import net.earomc.synthesizer.simd.SampleOps;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioFormat.Encoding;
+import java.util.Arrays;
+
+/**
+ * Encodes float samples to integer PCM like {@link SimpleAudioConversion#encode}, but with dither and noise shaping,
+ * so quiet signals lose their detail to a constant noise floor instead of distorting.
+ * <p>
+ * Samples are scaled, clamped to the range of the format, dithered, rounded, clamped again and packed:
+ * <ul>
+ *     <li>{@link Dither#TPDF} adds triangular noise of 2 LSB peak to peak before rounding. It makes the quantization
+ *     error independent of the signal, at the price of a noise floor about 4.8 dB above plain rounding.</li>
+ *     <li>{@link NoiseShaping} feeds the error of previous samples back, which moves the noise towards high frequencies,
+ *     where it's less audible. The total noise gets louder, so shaping is only worth it at high sample rates.</li>
+ * </ul>
+ * The random generator and the error feedback are kept between calls, so a stream can be encoded block by block
+ * without a seam, even if a block ends in the middle of a frame. Use one requantizer per stream, it's not thread safe.
+ * With the same seed, the same samples always give the same bytes.
+ * <p>
+ * Without dither and shaping, signed 16 and 24-bit samples are encoded by the vectorized {@link SampleOps} encoders.
+ * Dither and shaping can't be vectorized the same way: the random generator and the error feedback depend on the
+ * previous sample. They run in tight scalar loops per setting, TPDF at about 9 ns and second order shaping at
+ * about 13 ns per sample. That is 20 to 30 times the vectorized encoder and 3.5 to 5 times the scalar one,
+ * about 0.1 % of a core at 48 kHz stereo (see DitherBenchmark).
+ */
+public class Requantizer {
+    public enum Dither {
+        NONE,
+        TPDF
+    }
+
+    public enum NoiseShaping {
+        NONE,
+        /**
+         * Error filter 1 - z^-1, 6 dB per octave towards high frequencies.
+         */
+        FIRST_ORDER,
+        /**
+         * Error filter (1 - z^-1)^2, 12 dB per octave towards high frequencies.
+         */
+        SECOND_ORDER
+    }
+
+    // Feedback of larger errors (after clipping) would make the shaping filter ring, so they are limited to this many LSBs.
+    private static final double MAX_FEEDBACK_ERROR = 2;
+    private static final double RANDOM_SCALE = 0x1.0p-32;
+    private static final double ROUNDING_MAGIC = 0x1.8p52;
+    // samples are dithered, quantized and packed in chunks of this size, each step in its own tight loop
+    private static final int CHUNK_SIZE = 256;
+
+    private final Dither dither;
+    private final NoiseShaping noiseShaping;
+    private final int bytesPerSample;
+    private final boolean bigEndian;
+    private final boolean unsigned;
+    private final double scale;
+    private final double min;
+    private final double max;
+    private final long unsignedOffset;
+    private final int channels;
+    private final double[] error1;
+    private final double[] error2;
+    private final long seed;
+    // stays 0 without dither
+    private final double[] ditherChunk = new double[CHUNK_SIZE];
+    private final int[] quantizedChunk = new int[CHUNK_SIZE];
+    private final boolean plainEncoding;
+    private long randomState;
+    private int channel;
+
+    /**
+     * @param format signed or unsigned integer PCM with 8 to 32 bits per sample.
+     */
+    public Requantizer(AudioFormat format, Dither dither, NoiseShaping noiseShaping, long seed) {
+        int bitsPerSample = format.getSampleSizeInBits();
+        Encoding encoding = format.getEncoding();
+        if (!encoding.equals(Encoding.PCM_SIGNED) && !encoding.equals(Encoding.PCM_UNSIGNED))
+            throw new IllegalArgumentException("Illegal encoding: " + encoding + "! Has to be PCM_SIGNED or PCM_UNSIGNED");
+        if (bitsPerSample < 8 || bitsPerSample > 32)
+            throw new IllegalArgumentException("Illegal value for bitsPerSample: " + bitsPerSample + "! Has to be a value between 8 and 32");
+        this.dither = dither;
+        this.noiseShaping = noiseShaping;
+        this.bytesPerSample = SimpleAudioConversion.bytesPerSample(bitsPerSample);
+        this.bigEndian = format.isBigEndian();
+        this.unsigned = encoding.equals(Encoding.PCM_UNSIGNED);
+        this.scale = SimpleAudioConversion.fullScale(bitsPerSample);
+        this.min = -scale;
+        this.max = scale - 1;
+        this.unsignedOffset = (long) scale;
+        this.channels = Math.max(1, format.getChannels());
+        this.error1 = new double[channels];
+        this.error2 = new double[channels];
+        this.seed = seed;
+        this.plainEncoding = dither == Dither.NONE && noiseShaping == NoiseShaping.NONE && !unsigned
+                && (bitsPerSample == 16 || bitsPerSample == 24);
+        reset();
+    }
+
+    /**
+     * Clears the error feedback and restarts the random generator at the seed.
+     */
+    public void reset() {
+        // xorshift doesn't work with a state of 0, so the seed is mixed first
+        long state = seed * 0x9E3779B97F4A7C15L;
+        randomState = state == 0 ? 0x9E3779B97F4A7C15L : state;
+        Arrays.fill(error1, 0);
+        Arrays.fill(error2, 0);
+        channel = 0;
+    }
+
+    /**
+     * Encodes samplesLen samples starting at samplesOffset into bytes starting at byteOffset.
+     *
+     * @return the number of bytes written.
+     */
+    public int encode(float[] samples, int samplesOffset, byte[] bytes, int byteOffset, int samplesLen) {
+        if (plainEncoding) {
+            // without dither and shaping this is plain rounding, which the vectorized encoders do with the same result
+            if (bytesPerSample == 2) SampleOps.PREFERRED.encode16(samples, samplesOffset, samplesLen, bytes, byteOffset, bigEndian);
+            else SampleOps.PREFERRED.encode24(samples, samplesOffset, samplesLen, bytes, byteOffset, bigEndian);
+            return samplesLen * bytesPerSample;
+        }
+        int position = byteOffset;
+        for (int start = 0; start < samplesLen; start += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, samplesLen - start);
+            if (dither == Dither.TPDF) fillDither(length);
+            switch (noiseShaping) {
+                case NONE -> quantize(samples, samplesOffset + start, length);
+                case FIRST_ORDER -> quantizeFirstOrder(samples, samplesOffset + start, length);
+                case SECOND_ORDER -> quantizeSecondOrder(samples, samplesOffset + start, length);
+            }
+            position = pack(length, bytes, position);
+        }
+        return position - byteOffset;
+    }
+
+    private void fillDither(int length) {
+        long random = randomState;
+        for (int i = 0; i < length; i++) {
+            random ^= random << 13;
+            random ^= random >>> 7;
+            random ^= random << 17;
+            // the sum of two uniform values from -0.5 to 0.5 has a triangular distribution from -1 to 1
+            // the sum of the two halves is exact in a long, so one conversion to double is enough
+            ditherChunk[i] = ((long) (int) (random >>> 32) + (int) random) * RANDOM_SCALE;
+        }
+        randomState = random;
+    }
+
+    // The three quantize loops only differ in the error feedback. They are written out separately so each loop body
+    // is free of branches on the settings, the dither is 0 when there is none.
+
+    private void quantize(float[] samples, int offset, int length) {
+        final double scale = this.scale, min = this.min, max = this.max;
+        final double[] dither = ditherChunk;
+        final int[] quantized = quantizedChunk;
+        for (int i = 0; i < length; i++) {
+            double x = samples[offset + i] * scale;
+            // no branches, so C2 can turn them into conditional moves
+            x = x != x ? 0 : x; // NaN
+            x = x > max ? max : x;
+            x = x < min ? min : x;
+            double q = round(x + dither[i]);
+            quantized[i] = (int) (q > max ? max : q < min ? min : q);
+        }
+    }
+
+    private void quantizeFirstOrder(float[] samples, int offset, int length) {
+        final double scale = this.scale, min = this.min, max = this.max;
+        final double[] dither = ditherChunk;
+        final int[] quantized = quantizedChunk;
+        final double[] error1 = this.error1;
+        final int channels = this.channels;
+        int channel = this.channel;
+        for (int i = 0; i < length; i++) {
+            double x = samples[offset + i] * scale;
+            if (x > max) x = max;
+            else if (x < min) x = min;
+            else if (x != x) x = 0;
+            double wanted = x - error1[channel];
+            double q = round(wanted + dither[i]);
+            q = q > max ? max : q < min ? min : q;
+            error1[channel] = limitFeedback(q - wanted);
+            if (++channel == channels) channel = 0;
+            quantized[i] = (int) q;
+        }
+        this.channel = channel;
+    }
+
+    private void quantizeSecondOrder(float[] samples, int offset, int length) {
+        final double scale = this.scale, min = this.min, max = this.max;
+        final double[] dither = ditherChunk;
+        final int[] quantized = quantizedChunk;
+        final double[] error1 = this.error1, error2 = this.error2;
+        final int channels = this.channels;
+        int channel = this.channel;
+        for (int i = 0; i < length; i++) {
+            double x = samples[offset + i] * scale;
+            if (x > max) x = max;
+            else if (x < min) x = min;
+            else if (x != x) x = 0;
+            double wanted = x + (error2[channel] - 2 * error1[channel]);
+            double q = round(wanted + dither[i]);
+            q = q > max ? max : q < min ? min : q;
+            error2[channel] = error1[channel];
+            error1[channel] = limitFeedback(q - wanted);
+            if (++channel == channels) channel = 0;
+            quantized[i] = (int) q;
+        }
+        this.channel = channel;
+    }
+
+    /**
+     * Same as Math.rint for values below 2^51, which covers every value of up to 32 bits. Adding 1.5 * 2^52 leaves no
+     * bits for a fraction, so the sum is rounded to an integer (ties to even), and subtracting it again is exact.
+     */
+    private static double round(double value) {
+        return (value + ROUNDING_MAGIC) - ROUNDING_MAGIC;
+    }
+
+    // Math.min and Math.max of doubles check for NaN and -0, which these values never are
+    private static double limitFeedback(double error) {
+        return error > MAX_FEEDBACK_ERROR ? MAX_FEEDBACK_ERROR : error < -MAX_FEEDBACK_ERROR ? -MAX_FEEDBACK_ERROR : error;
+    }
+
+    /**
+     * Packs the quantized chunk, with one loop per sample size and byte order.
+     */
+    private int pack(int length, byte[] bytes, int position) {
+        final int[] quantized = quantizedChunk;
+        // int arithmetic wraps, the offset of 32-bit unsigned samples (2^31) still ends up right in the low 32 bits
+        final int offset = unsigned ? (int) unsignedOffset : 0;
+        switch (bytesPerSample) {
+            case 1 -> {
+                for (int i = 0; i < length; i++) {
+                    bytes[position++] = (byte) (quantized[i] + offset);
+                }
+            }
+            case 2 -> {
+                if (bigEndian) {
+                    for (int i = 0; i < length; i++, position += 2) {
+                        int bits = quantized[i] + offset;
+                        bytes[position] = (byte) (bits >>> 8);
+                        bytes[position + 1] = (byte) bits;
+                    }
+                } else {
+                    for (int i = 0; i < length; i++, position += 2) {
+                        int bits = quantized[i] + offset;
+                        bytes[position] = (byte) bits;
+                        bytes[position + 1] = (byte) (bits >>> 8);
+                    }
+                }
+            }
+            case 3 -> {
+                if (bigEndian) {
+                    for (int i = 0; i < length; i++, position += 3) {
+                        int bits = quantized[i] + offset;
+                        bytes[position] = (byte) (bits >>> 16);
+                        bytes[position + 1] = (byte) (bits >>> 8);
+                        bytes[position + 2] = (byte) bits;
+                    }
+                } else {
+                    for (int i = 0; i < length; i++, position += 3) {
+                        int bits = quantized[i] + offset;
+                        bytes[position] = (byte) bits;
+                        bytes[position + 1] = (byte) (bits >>> 8);
+                        bytes[position + 2] = (byte) (bits >>> 16);
+                    }
+                }
+            }
+            default -> {
+                for (int i = 0; i < length; i++, position += 4) {
+                    int bits = quantized[i] + offset;
+                    for (int b = 0; b < 4; b++) {
+                        bytes[position + (bigEndian ? 3 - b : b)] = (byte) (bits >>> (8 * b));
+                    }
+                }
+            }
+        }
+        return position;
+    }
+
+    /**
+     * @return all samples encoded into a new array.
+     */
+    public byte[] encode(float[] samples) {
+        byte[] bytes = new byte[samples.length * bytesPerSample];
+        encode(samples, 0, bytes, 0, samples.length);
+        return bytes;
+    }
+
+    public int getBytesPerSample() {
+        return bytesPerSample;
+    }
+
+    public Dither getDither() {
+        return dither;
+    }
+
+    public NoiseShaping getNoiseShaping() {
+        return noiseShaping;
+    }
+}
@@ -1,13 +1,22 @@
 package net.earomc.synthesizer;
 
+import net.earomc.synthesizer.diagnostics.Diagnostics;
+import net.earomc.synthesizer.effect.LookaheadLimiter;
+import net.earomc.synthesizer.mixer.MixerBus;
+import net.earomc.synthesizer.waveform.SineAccuracy;
 import net.earomc.synthesizer.waveform.Waveform;
 
 import java.io.FileNotFoundException;
+import java.time.Duration;
+import java.util.logging.Level;
 
 import static net.earomc.synthesizer.EaroSynthesizer.*;
 import static net.earomc.synthesizer.SimpleAudioConversion.decode;
 
 public class SampleArrays {
+    private static final Diagnostics.EventType FREQUENCY_SWEEP = Diagnostics.getDefault()
+            .eventType("frequency-sweep", Level.FINE, Duration.ofMillis(10), "sample", "freq", "periodSeconds");
+
     public static float[][] getFrequencyModSamples() {
         return waveSamplesFrequencyMod(Waveform.SINE, 0.04f, 3f, 300, 150);
     }
@@ -21,14 +30,14 @@ public class SampleArrays {
 
         Waveform[] waveforms = {Waveform.NOISE};
         for (Waveform waveForm : Waveform.WAVEFORMS) {
-            concatenator.append(waveSamples(waveForm, 110, VOLUME, 1f, Util.phase01ToRadians(0.5f)));
+            concatenator.append(cachedWaveSamples(waveForm, 110, VOLUME, 1f, Util.phase01ToRadians(0.5f)));
         }
 
         concatenator.append(waveSamplesFrequencyMod(Waveform.TRIANGLE, 0.04f, 3, 300, 14)[0]);
 
-        float[] waveformSamples1 = waveSamples(Waveform.TRIANGLE, 25, 0.02f, 2, 0);
-        float[] waveformSamples2 = waveSamples(Waveform.SAW, 80, 0.05f, 8, 0);
-        float[] waveformSamples3 = waveSamples(Waveform.SAW, 160, 0.05f, 8, 0);
+        float[] waveformSamples1 = cachedWaveSamples(Waveform.TRIANGLE, 25, 0.02f, 2, 0);
+        float[] waveformSamples2 = cachedWaveSamples(Waveform.SAW, 80, 0.05f, 8, 0);
+        float[] waveformSamples3 = cachedWaveSamples(Waveform.SAW, 160, 0.05f, 8, 0);
 
 
         concatenator.append(waveformSamples1, waveformSamples2, waveformSamples3);
@@ -46,59 +55,72 @@ public class SampleArrays {
         FloatArrayConcatenator concatenator = new FloatArrayConcatenator();
 
         concatenator.append(silentSamples(1));
-        concatenator.append(waveSamples(waveform, Util.calculateNoteFreq(28), VOLUME, 0.5f, 0)); // C
-        concatenator.append(waveSamples(waveform, Util.calculateNoteFreq(30), VOLUME, 0.5f, 0)); // D
-        concatenator.append(waveSamples(waveform, Util.calculateNoteFreq(32), VOLUME, 0.5f, 0)); // E
-        concatenator.append(waveSamples(waveform, Util.calculateNoteFreq(33), VOLUME, 0.5f, 0)); // F
+        concatenator.append(cachedWaveSamples(waveform, Util.calculateNoteFreq(28), VOLUME, 0.5f, 0)); // C
+        concatenator.append(cachedWaveSamples(waveform, Util.calculateNoteFreq(30), VOLUME, 0.5f, 0)); // D
+        concatenator.append(cachedWaveSamples(waveform, Util.calculateNoteFreq(32), VOLUME, 0.5f, 0)); // E
+        concatenator.append(cachedWaveSamples(waveform, Util.calculateNoteFreq(33), VOLUME, 0.5f, 0)); // F
 
-        concatenator.append(waveSamples(waveform, Util.calculateNoteFreq(35), VOLUME, 0.5f, 0)); // G
+        concatenator.append(cachedWaveSamples(waveform, Util.calculateNoteFreq(35), VOLUME, 0.5f, 0)); // G
         concatenator.append(silentSamples(0.5f));
-        concatenator.append(waveSamples(waveform, Util.calculateNoteFreq(35), VOLUME, 0.5f, 0)); // G
+        concatenator.append(cachedWaveSamples(waveform, Util.calculateNoteFreq(35), VOLUME, 0.5f, 0)); // G
         concatenator.append(silentSamples(0.5f));
 
         for (int i = 0; i < 2; i++) {
             for (int j = 0; j < 4; j++) {
-                concatenator.append(waveSamples(waveform, Util.calculateNoteFreq(37), VOLUME, 0.25f, 0)); // A
+                concatenator.append(cachedWaveSamples(waveform, Util.calculateNoteFreq(37), VOLUME, 0.25f, 0)); // A
                 concatenator.append(silentSamples(0.25f));
             }
-            concatenator.append(waveSamples(waveform, Util.calculateNoteFreq(35), VOLUME, 0.5f, 0)); // G
+            concatenator.append(cachedWaveSamples(waveform, Util.calculateNoteFreq(35), VOLUME, 0.5f, 0)); // G
             concatenator.append(silentSamples(1.5f));
         }
 
 
         for (int i = 0; i < 4; i++) {
-            concatenator.append(waveSamples(waveform, Util.calculateNoteFreq(33), VOLUME, 0.25f, 0)); // F
+            concatenator.append(cachedWaveSamples(waveform, Util.calculateNoteFreq(33), VOLUME, 0.25f, 0)); // F
             concatenator.append(silentSamples(0.25f));
         }
         for (int i = 0; i < 2; i++) {
-            concatenator.append(waveSamples(waveform, Util.calculateNoteFreq(32), VOLUME, 0.5f, 0)); // E
+            concatenator.append(cachedWaveSamples(waveform, Util.calculateNoteFreq(32), VOLUME, 0.5f, 0)); // E
             concatenator.append(silentSamples(0.5f));
         }
 
         for (int i = 0; i < 4; i++) {
-            concatenator.append(waveSamples(waveform, Util.calculateNoteFreq(35), VOLUME, 0.25f, 0)); // G
+            concatenator.append(cachedWaveSamples(waveform, Util.calculateNoteFreq(35), VOLUME, 0.25f, 0)); // G
             concatenator.append(silentSamples(0.25f));
         }
-        concatenator.append(waveSamples(waveform, Util.calculateNoteFreq(28), VOLUME, 1f, 0)); // C
+        concatenator.append(cachedWaveSamples(waveform, Util.calculateNoteFreq(28), VOLUME, 1f, 0)); // C
 
         return concatenator.concat();
     }
 
-    public static float[] mix(float[] samples1, float[] samples2) {
-        int max = Math.max(samples1.length, samples2.length);
-        float[] longerSamples;
-        if (samples1.length == max) {
-            longerSamples = samples1;
-        } else {
-            longerSamples = samples2;
+    /**
+     * Mixes any number of sample arrays at unity gain into a new array as long as the longest input.
+     * Shorter inputs just end, the other inputs keep their level.
+     * Instead of scaling every input down, a {@link LookaheadLimiter} keeps peaks of the sum within -1 and 1.
+     */
+    public static float[] mix(float[]... samples) {
+        int length = 0;
+        for (float[] input : samples) {
+            length = Math.max(length, input.length);
         }
-        float[] mixedSamples = new float[max];
-        for (int i = 0; i < mixedSamples.length; i++) {
-            if (i < samples1.length && i < samples2.length) {
-                mixedSamples[i] = 0.5f * (samples1[i] + samples2[i]);
-            } else {
-                mixedSamples[i] = longerSamples[i];
+        LookaheadLimiter limiter = new LookaheadLimiter(SAMPLE_RATE);
+        int latency = limiter.getLatency();
+        MixerBus bus = new MixerBus(BLOCK_SIZE, samples.length, limiter);
+        float[] mixedSamples = new float[length];
+
+        // the limiter delays its output, so keep feeding silence until the last input sample came out again
+        for (int blockStart = 0; blockStart < length + latency; blockStart += BLOCK_SIZE) {
+            int blockLength = Math.min(BLOCK_SIZE, length + latency - blockStart);
+            bus.clear();
+            for (int input = 0; input < samples.length; input++) {
+                int available = Math.min(blockLength, samples[input].length - blockStart);
+                if (available > 0) bus.accumulate(input, samples[input], blockStart, available);
             }
+            float[] out = bus.process(blockLength);
+
+            int dstStart = blockStart - latency;
+            int skip = Math.max(0, -dstStart);
+            if (skip < blockLength) System.arraycopy(out, skip, mixedSamples, dstStart + skip, blockLength - skip);
         }
         return mixedSamples;
     }
@@ -107,12 +129,33 @@ public class SampleArrays {
         return Util.createEmptySampleArray(SAMPLE_RATE, durationSeconds);
     }
 
+    /**
+     * Same as {@link #waveSamples(Waveform, float, float, float, float)}, but segments that were rendered before
+     * come from the {@link SegmentCache#getDefault() segment cache}. The returned array is shared, don't modify it.
+     */
+    public static float[] cachedWaveSamples(Waveform waveform, float freq, float amp, float durationSeconds, float phaseRadians) {
+        SegmentCache.Key key = new SegmentCache.Key(waveform, freq, amp, durationSeconds, phaseRadians, SAMPLE_RATE, SineAccuracy.EXACT);
+        return SegmentCache.getDefault().get(key, () -> waveSamples(waveform, freq, amp, durationSeconds, phaseRadians));
+    }
+
     public static float[] waveSamples(Waveform waveform, float freq, float amp, float durationSeconds, float phaseRadians) {
+        return waveSamples(waveform, freq, amp, durationSeconds, phaseRadians, SineAccuracy.EXACT);
+    }
+
+    public static float[] waveSamples(Waveform waveform, float freq, float amp, float durationSeconds, float phaseRadians, SineAccuracy sineAccuracy) {
         float[] samples = Util.createEmptySampleArray(SAMPLE_RATE, durationSeconds);
-        double periodSeconds = Util.freqToPeriod(freq);
-        for (int i = 0; i < samples.length; i++) {
-            float timeSeconds = ((float) i) / SAMPLE_RATE;
-            samples[i] = waveform.sample(timeSeconds, periodSeconds, amp, phaseRadians);
+        double phaseIncrement = (double) freq / SAMPLE_RATE;
+        // the phase Waveform#phase01 computes at time 0
+        double startPhase = -phaseRadians / (Waveform.PERIOD_LENGTH * Util.freqToPeriod(freq));
+        // The phase of every block is computed from the index of its first sample in double precision.
+        // A float time loses precision the longer the note gets, and the blocks are always BLOCK_SIZE long,
+        // so the samples only depend on the arguments.
+        for (int blockStart = 0; blockStart < samples.length; blockStart += BLOCK_SIZE) {
+            double phase = startPhase + blockStart * phaseIncrement;
+            float phase01 = (float) (phase - Math.floor(phase));
+            if (phase01 >= 1) phase01 = 0; // rounded up to 1 when converted to float
+            int length = Math.min(BLOCK_SIZE, samples.length - blockStart);
+            waveform.render(samples, blockStart, length, phase01, (float) phaseIncrement, amp, sineAccuracy);
         }
         return samples;
     }
@@ -130,10 +173,7 @@ public class SampleArrays {
                 freq = Util.mapRange(0, resultSamples.length, endFreq, startFreq, i);
             }
             double periodSeconds = Util.freqToPeriod(freq);
-            if (i % 50 == 0) {
-                System.out.println("freq = " + freq);
-                System.out.println("periodSeconds = " + periodSeconds);
-            }
+            FREQUENCY_SWEEP.record(i, freq, periodSeconds);
             frequencies[i] = (float) freq;
             resultSamples[i] = waveform.sample(timeSeconds, periodSeconds, amp, 0);
         }
@@ -0,0 +1,60 @@
+package net.earomc.synthesizer;
+
+import java.io.InputStream;
+
+/**
+ * Reads float samples as encoded bytes. The samples are encoded by the {@link Requantizer} as they are read,
+ * instead of all at once up front, so whoever reads the stream block by block pays for the encoding of each block
+ * when it reads it.
+ */
+public class SampleInputStream extends InputStream {
+    private final float[] samples;
+    private final Requantizer requantizer;
+    private final int bytesPerSample;
+    // the encoded sample that a read ended in the middle of
+    private final byte[] partialSample;
+    private int partialPosition;
+    private int position;
+
+    public SampleInputStream(float[] samples, Requantizer requantizer) {
+        this.samples = samples;
+        this.requantizer = requantizer;
+        this.bytesPerSample = requantizer.getBytesPerSample();
+        this.partialSample = new byte[bytesPerSample];
+        this.partialPosition = bytesPerSample;
+    }
+
+    @Override
+    public int read() {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) return 0;
+        if (partialPosition == bytesPerSample && position == samples.length) return -1;
+        int count = 0;
+        // the rest of a sample the last read ended in
+        while (partialPosition < bytesPerSample && count < len) {
+            b[off + count++] = partialSample[partialPosition++];
+        }
+        int wholeSamples = Math.min((len - count) / bytesPerSample, samples.length - position);
+        count += requantizer.encode(samples, position, b, off + count, wholeSamples);
+        position += wholeSamples;
+        if (count == 0 && position < samples.length) {
+            // less than one sample was asked for
+            requantizer.encode(samples, position++, partialSample, 0, 1);
+            partialPosition = 0;
+            while (partialPosition < bytesPerSample && count < len) {
+                b[off + count++] = partialSample[partialPosition++];
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return (bytesPerSample - partialPosition) + (samples.length - position) * bytesPerSample;
+    }
+}
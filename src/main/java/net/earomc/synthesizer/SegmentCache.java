@@ -0,0 +1,122 @@
+package net.earomc.synthesizer;
+
+import net.earomc.synthesizer.waveform.SineAccuracy;
+import net.earomc.synthesizer.waveform.Waveform;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Cache of rendered segments, so a note that is played again and again is only rendered once.
+ * <p>
+ * Segments are looked up by everything that determines their samples ({@link Key}), so equal notes share one array.
+ * The arrays are shared, callers must not modify them. The cache holds at most maxBytes of samples and evicts
+ * the least recently used segments beyond that. Segments of waveforms that aren't
+ * {@link Waveform#isDeterministic() deterministic} are never cached, every noise note has to sound different.
+ * The cache is thread safe. Two threads missing the same key at the same time may both render it.
+ */
+public class SegmentCache {
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    /**
+     * Everything the samples of a segment depend on.
+     */
+    public record Key(Waveform waveform, float freq, float amp, float durationSeconds, float phaseRadians,
+                      int sampleRate, SineAccuracy sineAccuracy) {
+    }
+
+    private final long maxBytes;
+    // access order, so iteration starts at the least recently used segment
+    private final LinkedHashMap<Key, float[]> segments = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public SegmentCache(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("Illegal value for maxBytes: " + maxBytes + "! Cannot be negative");
+        this.maxBytes = maxBytes;
+    }
+
+    private static final class DefaultHolder {
+        static final SegmentCache CACHE = new SegmentCache(DEFAULT_MAX_BYTES);
+    }
+
+    public static SegmentCache getDefault() {
+        return DefaultHolder.CACHE;
+    }
+
+    /**
+     * @return the cached samples of the segment, rendered by the renderer if they aren't cached yet. Don't modify them.
+     */
+    public float[] get(Key key, Supplier<float[]> renderer) {
+        if (!key.waveform().isDeterministic()) return renderer.get();
+        synchronized (this) {
+            float[] samples = segments.get(key);
+            if (samples != null) {
+                hits++;
+                return samples;
+            }
+            misses++;
+        }
+        // rendering can take a while, don't block other threads meanwhile
+        float[] samples = renderer.get();
+        put(key, samples);
+        return samples;
+    }
+
+    private synchronized void put(Key key, float[] samples) {
+        long size = sizeOf(samples);
+        if (size > maxBytes) return;
+        float[] previous = segments.put(key, samples);
+        if (previous != null) bytes -= sizeOf(previous);
+        bytes += size;
+        Iterator<float[]> leastRecentlyUsed = segments.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= sizeOf(leastRecentlyUsed.next());
+            leastRecentlyUsed.remove();
+            evictions++;
+        }
+    }
+
+    private static long sizeOf(float[] samples) {
+        return (long) samples.length * Float.BYTES;
+    }
+
+    public synchronized void clear() {
+        segments.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return segments.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("SegmentCache{%d segments, %d of %d bytes, %d hits, %d misses, %d evictions}",
+                segments.size(), bytes, maxBytes, hits, misses, evictions);
+    }
+}
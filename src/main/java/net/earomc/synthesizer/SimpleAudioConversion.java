@@ -1,5 +1,6 @@
 package net.earomc.synthesizer;
 
+import net.earomc.synthesizer.simd.SampleOps;
 import org.jetbrains.annotations.NotNull;
 
 import javax.sound.sampled.AudioFormat;
@@ -121,6 +122,9 @@ public final class SimpleAudioConversion {
     /**
      * Converts from an audio sample float array to a byte array which is made of bytes that resemble the given audio format.
      * samples (floats) -> bytes for given audio format.
+     * <p>
+     * Signed 16 and 24-bit PCM, by far the most common formats, are encoded with {@link SampleOps#PREFERRED},
+     * which uses SIMD instructions if available.
      *
      * @param samples    an array of audio samples to encode
      * @param bytes      an array to fill up with encoded audio bytes
@@ -135,23 +139,43 @@ public final class SimpleAudioConversion {
                              byte[] bytes,
                              int samplesLen,
                              AudioFormat fmt) {
+        return encode(samples, 0, bytes, samplesLen, fmt);
+    }
+
+    /**
+     * Same as {@link #encode(float[], byte[], int, AudioFormat)}, but takes the samples starting at samplesOffset,
+     * so long sample arrays can be encoded piece by piece into the same byte array.
+     */
+    public static int encode(float[] samples,
+                             int samplesOffset,
+                             byte[] bytes,
+                             int samplesLen,
+                             AudioFormat fmt) {
         int bitsPerSample = fmt.getSampleSizeInBits();
         int bytesPerSample = bytesPerSample(bitsPerSample);
         boolean isBigEndian = fmt.isBigEndian();
         Encoding encoding = fmt.getEncoding();
         double fullScale = fullScale(bitsPerSample);
 
+        if (encoding == Encoding.PCM_SIGNED && bitsPerSample == 16) {
+            SampleOps.PREFERRED.encode16(samples, samplesOffset, samplesLen, bytes, 0, isBigEndian);
+            return samplesLen * bytesPerSample;
+        } else if (encoding == Encoding.PCM_SIGNED && bitsPerSample == 24) {
+            SampleOps.PREFERRED.encode24(samples, samplesOffset, samplesLen, bytes, 0, isBigEndian);
+            return samplesLen * bytesPerSample;
+        }
+
         int i = 0; // position in the given byte array where the packed (into bytes) bits represented as a long are written to.
         int s = 0; // sample counter increased with every loop iteration
         while (s < samplesLen) {
-            float sample = samples[s];
+            float sample = samples[samplesOffset + s];
             long bits = 0L;
 
             if (encoding == Encoding.PCM_SIGNED) {
-                bits = (long) (sample * fullScale);
+                bits = saturate(sample, fullScale);
 
             } else if (encoding == Encoding.PCM_UNSIGNED) {
-                bits = (long) (sample * fullScale);
+                bits = saturate(sample, fullScale);
                 bits = signedToUnsigned(bits, bitsPerSample);
             } else if (encoding == Encoding.PCM_FLOAT) {
                 if (bitsPerSample == 32) {
@@ -175,6 +199,17 @@ public final class SimpleAudioConversion {
         return i;
     }
 
+    /**
+     * Truncates the sample to an integer of the given full scale, clamped to the range of that integer,
+     * so samples beyond -1 and 1 clip instead of wrapping around to the opposite sign.
+     */
+    private static long saturate(float sample, double fullScale) {
+        double scaled = sample * fullScale;
+        if (scaled >= fullScale) return (long) fullScale - 1;
+        if (scaled < -fullScale) return (long) -fullScale;
+        return (long) scaled; // NaN is 0
+    }
+
     public static byte[] encode(float[] samples, int sampleSizeBits, AudioFormat audioFormat) {
         byte[] encodedSampleBytes = new byte[samples.length * bytesPerSample(sampleSizeBits)];
         encode(samples, encodedSampleBytes, samples.length, audioFormat);
@@ -1,5 +1,7 @@
 package net.earomc.synthesizer;
 
+import net.earomc.synthesizer.tuning.TuningTable;
+
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.Line;
 import javax.sound.sampled.Mixer;
@@ -110,10 +112,20 @@ public class Util {
         return freq / (float) Math.pow(2, octaves);
     }
 
+    /**
+     * @param startFreq frequency of A4 (piano key 49).
+     * @param keyNumber piano key number. Keys within the MIDI range are looked up in a {@link TuningTable}.
+     */
     public static float calculateNoteFreq(float startFreq, int keyNumber) {
-        float freq = (float) Math.pow(2, ((keyNumber - 49d) / 12d)) * startFreq;
-        System.out.println("freq = " + freq);;
-        return freq;
+        int midiKey = keyNumber + TuningTable.PIANO_KEY_OFFSET;
+        if (TuningTable.isValidKey(midiKey) && isCommonReferencePitch(startFreq)) {
+            return TuningTable.forReferencePitch(startFreq).getFrequency(midiKey);
+        }
+        return (float) Math.pow(2, ((keyNumber - 49d) / 12d)) * startFreq;
+    }
+
+    private static boolean isCommonReferencePitch(float freq) {
+        return freq == 440 || freq == 442 || freq == 432 || freq == 415;
     }
 
     public static float calculateNoteFreq(int keyNumber) {
@@ -0,0 +1,139 @@
+package net.earomc.synthesizer.analysis;
+
+/**
+ * In-place radix-2 fast Fourier transform of a fixed size. The twiddle factors and the bit reversal permutation
+ * are computed once in the constructor, transforms don't allocate.
+ * <p>
+ * An instance is not thread safe, it is meant to be used by one analysis thread.
+ */
+public final class Fft {
+    private final int size;
+    private final int halfSize;
+    // twiddle factors of the real transform, e^(-2 pi i k / size) for k from 0 to size / 2
+    private final float[] cos;
+    private final float[] sin;
+    // bit reversal permutation of the complex transform of size / 2
+    private final int[] bitReversed;
+
+    /**
+     * @param size number of real input samples, a power of 2 and at least 4.
+     */
+    public Fft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("Illegal value for size: " + size + "! Has to be a power of 2 and at least 4");
+        this.size = size;
+        this.halfSize = size / 2;
+        this.cos = new float[halfSize + 1];
+        this.sin = new float[halfSize + 1];
+        for (int k = 0; k <= halfSize; k++) {
+            double angle = -2 * Math.PI * k / size;
+            cos[k] = (float) Math.cos(angle);
+            sin[k] = (float) Math.sin(angle);
+        }
+        this.bitReversed = new int[halfSize];
+        int bits = Integer.numberOfTrailingZeros(halfSize);
+        for (int i = 0; i < halfSize; i++) {
+            bitReversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (Integer.SIZE - bits);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of frequency bins of the real transform, size / 2 + 1 (from 0 Hz up to the Nyquist frequency).
+     */
+    public int getBinCount() {
+        return halfSize + 1;
+    }
+
+    /**
+     * Transforms size real samples in place. Afterwards the array holds the spectrum in packed form:
+     * data[0] is the real 0 Hz bin, data[1] the real Nyquist bin, and data[2k], data[2k + 1] are the real and
+     * imaginary part of bin k for k from 1 to size / 2 - 1.
+     */
+    public void realForward(float[] data) {
+        if (data.length < size)
+            throw new IllegalArgumentException("Array of length " + data.length + " is smaller than the FFT size " + size);
+        // the even samples are the real parts, the odd samples the imaginary parts of a complex transform of half the size
+        complexForward(data);
+
+        float re0 = data[0];
+        float im0 = data[1];
+        data[0] = re0 + im0;
+        data[1] = re0 - im0;
+        for (int k = 1; k <= halfSize / 2; k++) {
+            int j = halfSize - k;
+            float zkRe = data[2 * k];
+            float zkIm = data[2 * k + 1];
+            float zjRe = data[2 * j];
+            float zjIm = data[2 * j + 1];
+            // separate the spectra of the even and odd samples: X = E + W^k * O
+            float evenRe = 0.5f * (zkRe + zjRe);
+            float evenIm = 0.5f * (zkIm - zjIm);
+            float oddRe = 0.5f * (zkIm + zjIm);
+            float oddIm = -0.5f * (zkRe - zjRe);
+            float tRe = cos[k] * oddRe - sin[k] * oddIm;
+            float tIm = cos[k] * oddIm + sin[k] * oddRe;
+            data[2 * k] = evenRe + tRe;
+            data[2 * k + 1] = evenIm + tIm;
+            // bin size / 2 - k is the mirror image: E* + W^(size/2 - k) * O* = E* - conj(W^k) * O*
+            if (j != k) {
+                float mRe = cos[j] * oddRe + sin[j] * oddIm;
+                float mIm = cos[j] * -oddIm + sin[j] * oddRe;
+                data[2 * j] = evenRe + mRe;
+                data[2 * j + 1] = -evenIm + mIm;
+            }
+        }
+    }
+
+    /**
+     * Squared magnitudes of the bins of a packed spectrum from {@link #realForward}.
+     *
+     * @param power array with at least {@link #getBinCount()} elements.
+     */
+    public void powerSpectrum(float[] packed, float[] power) {
+        power[0] = packed[0] * packed[0];
+        power[halfSize] = packed[1] * packed[1];
+        for (int k = 1; k < halfSize; k++) {
+            float re = packed[2 * k];
+            float im = packed[2 * k + 1];
+            power[k] = re * re + im * im;
+        }
+    }
+
+    // interleaved complex transform of size / 2 points
+    private void complexForward(float[] data) {
+        for (int i = 0; i < halfSize; i++) {
+            int j = bitReversed[i];
+            if (j > i) {
+                float re = data[2 * i];
+                float im = data[2 * i + 1];
+                data[2 * i] = data[2 * j];
+                data[2 * i + 1] = data[2 * j + 1];
+                data[2 * j] = re;
+                data[2 * j + 1] = im;
+            }
+        }
+        for (int length = 2; length <= halfSize; length <<= 1) {
+            int half = length >> 1;
+            // twiddles of the complex transform are every other twiddle of the real one
+            int twiddleStep = size / length;
+            for (int start = 0; start < halfSize; start += length) {
+                for (int k = 0; k < half; k++) {
+                    float wRe = cos[k * twiddleStep];
+                    float wIm = sin[k * twiddleStep];
+                    int a = 2 * (start + k);
+                    int b = 2 * (start + k + half);
+                    float bRe = data[b] * wRe - data[b + 1] * wIm;
+                    float bIm = data[b] * wIm + data[b + 1] * wRe;
+                    data[b] = data[a] - bRe;
+                    data[b + 1] = data[a + 1] - bIm;
+                    data[a] += bRe;
+                    data[a + 1] += bIm;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package net.earomc.synthesizer.analysis;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Peak and RMS level of the audio stream, measured by the render thread and read by any other thread.
+ * Both levels are published together in one atomic long, so a reader never sees a peak and an RMS value
+ * of different blocks. The peak falls back at the given release rate, so short peaks stay visible.
+ */
+public class LevelMeter {
+    private final AtomicLong levels = new AtomicLong();
+    private final float releaseDbPerSecond;
+    private final float sampleRate;
+    private float heldPeak;
+
+    /**
+     * @param releaseDbPerSecond how fast the displayed peak falls, 20 is common for meters.
+     */
+    public LevelMeter(float sampleRate, float releaseDbPerSecond) {
+        this.sampleRate = sampleRate;
+        this.releaseDbPerSecond = releaseDbPerSecond;
+    }
+
+    /**
+     * Measures a block. Only called by one thread.
+     */
+    public void write(float[] samples, int offset, int length) {
+        float peak = 0;
+        double sumOfSquares = 0;
+        for (int i = offset; i < offset + length; i++) {
+            float sample = samples[i];
+            peak = Math.max(peak, Math.abs(sample));
+            sumOfSquares += sample * sample;
+        }
+        float rms = length > 0 ? (float) Math.sqrt(sumOfSquares / length) : 0;
+        float release = (float) Math.pow(10, -releaseDbPerSecond * length / sampleRate / 20);
+        heldPeak = Math.max(peak, heldPeak * release);
+        levels.set(((long) Float.floatToRawIntBits(heldPeak) << 32) | (Float.floatToRawIntBits(rms) & 0xFFFFFFFFL));
+    }
+
+    /**
+     * @return the peak of the last blocks, from 0 to 1 for audio that doesn't clip.
+     */
+    public float getPeak() {
+        return Float.intBitsToFloat((int) (levels.get() >>> 32));
+    }
+
+    /**
+     * @return the RMS level of the last block.
+     */
+    public float getRms() {
+        return Float.intBitsToFloat((int) levels.get());
+    }
+
+    /**
+     * Reads both levels of the same block.
+     *
+     * @param out array of at least 2 elements, gets the peak and the RMS level.
+     */
+    public void getLevels(float[] out) {
+        long packed = levels.get();
+        out[0] = Float.intBitsToFloat((int) (packed >>> 32));
+        out[1] = Float.intBitsToFloat((int) packed);
+    }
+
+    public static float toDb(float level) {
+        return (float) (20 * Math.log10(level));
+    }
+}
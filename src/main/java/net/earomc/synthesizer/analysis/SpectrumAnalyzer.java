@@ -0,0 +1,129 @@
+package net.earomc.synthesizer.analysis;
+
+import net.earomc.synthesizer.granular.WindowTable;
+
+import java.util.Arrays;
+
+/**
+ * Short-time Fourier transform of a stream of samples, for live spectrum displays.
+ * <p>
+ * The render thread passes every block to {@link #write}. Every hop size samples the analyzer windows the last
+ * FFT size samples with a Hann window, transforms them and publishes the magnitudes in dB through a
+ * {@link TripleBuffer}. Nothing is allocated and nothing blocks, so it can run on the render thread.
+ * A display thread calls {@link #fetch()} and reads {@link #getMagnitudesDb()}.
+ */
+public class SpectrumAnalyzer {
+    // magnitudes are clamped to this, so silence doesn't end up as negative infinity
+    public static final float MIN_DB = -160;
+
+    private final Fft fft;
+    private final int hopSize;
+    private final float sampleRate;
+    private final float[] window;
+    // the last fft size samples, as a ring
+    private final float[] history;
+    private int historyPosition;
+    private int samplesUntilHop;
+    private final float[] fftBuffer;
+    private final float[] power;
+    // turns the power of a full scale sine into 0 dB
+    private final float powerNormalization;
+    private final TripleBuffer<float[]> spectra;
+    private long frames;
+
+    /**
+     * @param fftSize a power of 2, the frequency resolution is sample rate / fft size.
+     * @param hopSize samples between two spectra. fftSize / 4 gives a smooth display.
+     */
+    public SpectrumAnalyzer(int fftSize, int hopSize, float sampleRate) {
+        if (hopSize < 1)
+            throw new IllegalArgumentException("Illegal value for hopSize: " + hopSize + "! Has to be at least 1");
+        this.fft = new Fft(fftSize);
+        this.hopSize = hopSize;
+        this.sampleRate = sampleRate;
+        this.window = WindowTable.hann(fftSize);
+        this.history = new float[fftSize];
+        this.samplesUntilHop = fftSize;
+        this.fftBuffer = new float[fftSize];
+        this.power = new float[fft.getBinCount()];
+        float windowSum = 0;
+        for (float w : window) {
+            windowSum += w;
+        }
+        this.powerNormalization = 4 / (windowSum * windowSum);
+        this.spectra = new TripleBuffer<>(() -> new float[fft.getBinCount()]);
+    }
+
+    /**
+     * Adds samples to the analysis. Only called by one thread.
+     */
+    public void write(float[] samples, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            history[historyPosition] = samples[i];
+            historyPosition = (historyPosition + 1) & (history.length - 1);
+            if (--samplesUntilHop == 0) {
+                analyze();
+                samplesUntilHop = hopSize;
+            }
+        }
+    }
+
+    private void analyze() {
+        int size = fft.getSize();
+        for (int i = 0; i < size; i++) {
+            // oldest sample first
+            fftBuffer[i] = history[(historyPosition + i) & (size - 1)] * window[i];
+        }
+        fft.realForward(fftBuffer);
+        fft.powerSpectrum(fftBuffer, power);
+        float[] magnitudesDb = spectra.getWriteBuffer();
+        for (int k = 0; k < power.length; k++) {
+            magnitudesDb[k] = Math.max(MIN_DB, (float) (10 * Math.log10(power[k] * powerNormalization)));
+        }
+        spectra.publish();
+        frames++;
+    }
+
+    /**
+     * Only called by the reading thread.
+     *
+     * @return whether there is a new spectrum.
+     */
+    public boolean fetch() {
+        return spectra.fetch();
+    }
+
+    /**
+     * Only called by the reading thread.
+     *
+     * @return the magnitude of every bin in dB relative to a full scale sine, of the spectrum fetched last.
+     */
+    public float[] getMagnitudesDb() {
+        return spectra.getReadBuffer();
+    }
+
+    public float getBinFrequency(int bin) {
+        return bin * sampleRate / fft.getSize();
+    }
+
+    public int getBinCount() {
+        return fft.getBinCount();
+    }
+
+    public int getFftSize() {
+        return fft.getSize();
+    }
+
+    /**
+     * @return spectra computed so far. Only read by the writing thread.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    public void reset() {
+        Arrays.fill(history, 0);
+        historyPosition = 0;
+        samplesUntilHop = fft.getSize();
+    }
+}
@@ -0,0 +1,73 @@
+package net.earomc.synthesizer.analysis;
+
+import net.earomc.synthesizer.SimpleAudioConversion;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Meters encoded audio on its way to the output: the {@link LevelMeter level} over all channels and the
+ * {@link SpectrumAnalyzer spectrum} of the channels mixed down to mono. The render thread passes every buffer
+ * it writes to {@link #write}, which decodes it into preallocated arrays, so it doesn't allocate.
+ */
+public class StreamAnalyzer {
+    private final AudioFormat format;
+    private final int frameSize;
+    private final int channels;
+    private final float[] interleaved;
+    private final float[] mono;
+    private final LevelMeter levelMeter;
+    private final SpectrumAnalyzer spectrumAnalyzer;
+
+    /**
+     * @param maxBytes the most bytes passed to {@link #write} at once.
+     * @throws IllegalArgumentException if the format {@link #canAnalyze can't be analyzed}.
+     */
+    public StreamAnalyzer(AudioFormat format, int maxBytes, float releaseDbPerSecond, int fftSize) {
+        if (!canAnalyze(format))
+            throw new IllegalArgumentException("Illegal format: " + format + "! Has to be PCM or 32/64-bit float");
+        this.format = format;
+        this.frameSize = format.getFrameSize();
+        this.channels = format.getChannels();
+        int maxFrames = maxBytes / frameSize;
+        this.interleaved = new float[maxFrames * channels];
+        this.mono = new float[maxFrames];
+        this.levelMeter = new LevelMeter(format.getFrameRate(), releaseDbPerSecond);
+        this.spectrumAnalyzer = new SpectrumAnalyzer(fftSize, fftSize / 4, format.getFrameRate());
+    }
+
+    /**
+     * @return whether {@link SimpleAudioConversion#decode} can decode the format.
+     */
+    public static boolean canAnalyze(AudioFormat format) {
+        AudioFormat.Encoding encoding = format.getEncoding();
+        if (encoding.equals(AudioFormat.Encoding.PCM_FLOAT))
+            return format.getSampleSizeInBits() == 32 || format.getSampleSizeInBits() == 64;
+        return encoding.equals(AudioFormat.Encoding.PCM_SIGNED) || encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED);
+    }
+
+    /**
+     * Meters the whole frames of the bytes. A partial frame at the end isn't metered, streams return whole frames in
+     * practice. Only called by one thread.
+     */
+    public void write(byte[] bytes, int length) {
+        int frames = length / frameSize;
+        SimpleAudioConversion.decode(bytes, interleaved, frames * frameSize, format);
+        levelMeter.write(interleaved, 0, frames * channels);
+        for (int frame = 0; frame < frames; frame++) {
+            float sum = 0;
+            for (int channel = 0; channel < channels; channel++) {
+                sum += interleaved[frame * channels + channel];
+            }
+            mono[frame] = sum / channels;
+        }
+        spectrumAnalyzer.write(mono, 0, frames);
+    }
+
+    public LevelMeter getLevelMeter() {
+        return levelMeter;
+    }
+
+    public SpectrumAnalyzer getSpectrumAnalyzer() {
+        return spectrumAnalyzer;
+    }
+}
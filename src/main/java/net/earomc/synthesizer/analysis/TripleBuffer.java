@@ -0,0 +1,66 @@
+package net.earomc.synthesizer.analysis;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hands the latest version of some data from one writing thread to one reading thread without locks or copies.
+ * <p>
+ * There are three buffers: the writer fills one, the reader reads another, and the third holds the latest
+ * published data. Publishing and fetching swap a buffer with that third one in a single atomic operation,
+ * so neither side ever waits for the other. The reader always gets the newest data and skips older versions
+ * it didn't fetch in time, which is what a display wants.
+ */
+public final class TripleBuffer<T> {
+    // the index of the middle buffer is stored in the lowest bits, this bit marks data the reader hasn't fetched yet
+    private static final int FRESH = 4;
+    private static final int INDEX_MASK = 3;
+
+    private final Object[] buffers;
+    private final AtomicInteger middle = new AtomicInteger(2);
+    private int writeIndex = 0;
+    private int readIndex = 1;
+
+    public TripleBuffer(Supplier<T> factory) {
+        this.buffers = new Object[]{factory.get(), factory.get(), factory.get()};
+    }
+
+    /**
+     * Only called by the writer.
+     *
+     * @return the buffer to fill before calling {@link #publish()}.
+     */
+    @SuppressWarnings("unchecked")
+    public T getWriteBuffer() {
+        return (T) buffers[writeIndex];
+    }
+
+    /**
+     * Only called by the writer. Makes the write buffer the latest data and gives the writer a new buffer.
+     * The new write buffer contains old data.
+     */
+    public void publish() {
+        writeIndex = middle.getAndSet(writeIndex | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Only called by the reader. Fetches the latest published data, if there is any the reader doesn't have yet.
+     *
+     * @return whether {@link #getReadBuffer()} changed.
+     */
+    public boolean fetch() {
+        if ((middle.get() & FRESH) == 0) return false;
+        readIndex = middle.getAndSet(readIndex) & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * Only called by the reader.
+     *
+     * @return the data fetched last. Stays the same until the next successful {@link #fetch()}.
+     */
+    @SuppressWarnings("unchecked")
+    public T getReadBuffer() {
+        return (T) buffers[readIndex];
+    }
+}
@@ -0,0 +1,202 @@
+package net.earomc.synthesizer.batch;
+
+import net.earomc.synthesizer.Requantizer;
+import net.earomc.synthesizer.visual.PeakExport;
+import net.earomc.synthesizer.visual.PeakPyramid;
+import net.earomc.synthesizer.waveform.waveforms.Noise;
+import org.jetbrains.annotations.Nullable;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static net.earomc.synthesizer.EaroSynthesizer.SAMPLE_RATE;
+import static net.earomc.synthesizer.EaroSynthesizer.SAMPLE_SIZE;
+
+/**
+ * Renders job files (see {@link JobFileParser}) to WAV files as fast as possible, without an audio device or a GUI.
+ * Jobs are rendered in parallel on a fixed number of worker threads.
+ * <p>
+ * Usage: {@code render [--threads n] [--output directory] [--peaks] [--seed n] jobfile...}
+ * <p>
+ * With --peaks, a waveform image (.png) and its min/max peaks (.peaks.json) are written next to every WAV file.
+ * <p>
+ * The WAV files are encoded with TPDF dither (see {@link Requantizer}). With --seed, the noise and the dither of
+ * every job are seeded from the given seed and the name of the job, so the same job files render to exactly the same
+ * WAV files on every run, no matter how many threads are used.
+ * <p>
+ * For every job the real time factor is reported: seconds of audio rendered per second of wall clock time.
+ */
+public class BatchRenderer {
+    /**
+     * The samples are mono, so unlike {@link net.earomc.synthesizer.EaroSynthesizer#AUDIO_FORMAT} the files are written with one channel.
+     */
+    public static final AudioFormat RENDER_FORMAT = new AudioFormat(SAMPLE_RATE, SAMPLE_SIZE, 1, true, false);
+
+    public static final int PEAK_IMAGE_WIDTH = 1600;
+    public static final int PEAK_IMAGE_HEIGHT = 300;
+
+    private final int threads;
+    private final boolean writePeaks;
+    @Nullable
+    private final Long seed;
+
+    public BatchRenderer(int threads) {
+        this(threads, false, null);
+    }
+
+    /**
+     * @param seed seed for reproducible renders, null for random noise.
+     */
+    public BatchRenderer(int threads, boolean writePeaks, @Nullable Long seed) {
+        if (threads < 1) throw new IllegalArgumentException("Need at least one thread, got " + threads);
+        this.threads = threads;
+        this.writePeaks = writePeaks;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path outputDirectory = Path.of(".");
+        boolean writePeaks = false;
+        Long seed = null;
+        List<Path> jobFiles = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--output" -> outputDirectory = Path.of(args[++i]);
+                case "--peaks" -> writePeaks = true;
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                default -> jobFiles.add(Path.of(args[i]));
+            }
+        }
+        if (jobFiles.isEmpty()) {
+            System.out.println("Usage: render [--threads n] [--output directory] [--peaks] [--seed n] jobfile...");
+            return;
+        }
+
+        List<RenderJob> jobs = new ArrayList<>();
+        for (Path jobFile : jobFiles) {
+            jobs.addAll(JobFileParser.parse(jobFile, outputDirectory));
+        }
+        List<Result> results = new BatchRenderer(threads, writePeaks, seed).renderAll(jobs);
+        long failed = results.stream().filter(result -> result.error() != null).count();
+        if (failed > 0) System.exit(1);
+    }
+
+    /**
+     * Renders all jobs and prints a line for each job as soon as it is done.
+     *
+     * @return the results in the order the jobs finished.
+     */
+    public List<Result> renderAll(List<RenderJob> jobs) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-render");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<Result> completionService = new ExecutorCompletionService<>(pool);
+        long start = System.nanoTime();
+        try {
+            for (RenderJob job : jobs) {
+                completionService.submit(() -> render(job, writePeaks, seed));
+            }
+            List<Result> results = new ArrayList<>();
+            double audioSeconds = 0;
+            for (int i = 0; i < jobs.size(); i++) {
+                Result result = completionService.take().get();
+                System.out.println(result);
+                results.add(result);
+                audioSeconds += result.audioSeconds();
+            }
+            double wallSeconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Rendered %d jobs (%.1f s of audio) in %.3f s on %d threads, overall %.1fx real time%n",
+                    jobs.size(), audioSeconds, wallSeconds, threads, audioSeconds / wallSeconds);
+            return results;
+        } catch (ExecutionException e) {
+            // render() catches everything itself
+            throw new IllegalStateException(e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public static Result render(RenderJob job) {
+        return render(job, false, null);
+    }
+
+    /**
+     * @param seed if not null, the noise is seeded from it and the name of the job before rendering.
+     */
+    public static Result render(RenderJob job, boolean writePeaks, @Nullable Long seed) {
+        long start = System.nanoTime();
+        // seeded per job on the thread that renders it, so the order the jobs run in doesn't matter
+        long jobSeed = seed != null ? seed ^ job.name().hashCode() : ThreadLocalRandom.current().nextLong();
+        if (seed != null) Noise.setSeed(jobSeed);
+        try {
+            float[] samples = job.render();
+            writeWav(samples, job.output(), new Requantizer(RENDER_FORMAT, Requantizer.Dither.TPDF, Requantizer.NoiseShaping.NONE, jobSeed));
+            if (writePeaks) writePeaks(samples, job.output());
+            return new Result(job, (double) samples.length / SAMPLE_RATE, System.nanoTime() - start, null);
+        } catch (Exception e) {
+            return new Result(job, 0, System.nanoTime() - start, e);
+        }
+    }
+
+    /**
+     * Writes the samples with TPDF dither.
+     */
+    public static void writeWav(float[] samples, Path output) throws IOException {
+        writeWav(samples, output, new Requantizer(RENDER_FORMAT, Requantizer.Dither.TPDF, Requantizer.NoiseShaping.NONE,
+                ThreadLocalRandom.current().nextLong()));
+    }
+
+    /**
+     * @param requantizer encodes the samples, has to be made for {@link #RENDER_FORMAT}.
+     */
+    public static void writeWav(float[] samples, Path output, Requantizer requantizer) throws IOException {
+        byte[] bytes = requantizer.encode(samples);
+        Path parent = output.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        try (AudioInputStream audioInputStream = new AudioInputStream(new ByteArrayInputStream(bytes), RENDER_FORMAT, samples.length)) {
+            AudioSystem.write(audioInputStream, AudioFileFormat.Type.WAVE, output.toFile());
+        }
+    }
+
+    /**
+     * Writes a PNG image and a JSON file with the waveform of the samples next to the WAV file.
+     */
+    public static void writePeaks(float[] samples, Path wavFile) throws IOException {
+        PeakPyramid peaks = PeakPyramid.of(samples, SAMPLE_RATE);
+        String baseName = wavFile.getFileName().toString().replaceFirst("\\.wav$", "");
+        PeakExport.writePng(peaks, wavFile.resolveSibling(baseName + ".png"), PEAK_IMAGE_WIDTH, PEAK_IMAGE_HEIGHT);
+        PeakExport.writeJson(peaks, wavFile.resolveSibling(baseName + ".peaks.json"), PEAK_IMAGE_WIDTH);
+    }
+
+    /**
+     * @param audioSeconds length of the rendered audio.
+     * @param wallNanos    time it took to render and write the job.
+     * @param error        what went wrong, null if the job succeeded.
+     */
+    public record Result(RenderJob job, double audioSeconds, long wallNanos, Exception error) {
+        public double realTimeFactor() {
+            return audioSeconds / (wallNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) return String.format("%-24s FAILED: %s", job.name(), error);
+            return String.format("%-24s %8.2f s audio in %8.3f s, %8.1fx real time -> %s",
+                    job.name(), audioSeconds, wallNanos / 1e9, realTimeFactor(), job.output());
+        }
+    }
+}
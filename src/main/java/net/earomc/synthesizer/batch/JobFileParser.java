@@ -0,0 +1,139 @@
+package net.earomc.synthesizer.batch;
+
+import net.earomc.synthesizer.tuning.ScalaScale;
+import net.earomc.synthesizer.tuning.TuningTable;
+import net.earomc.synthesizer.waveform.Waveform;
+import net.earomc.synthesizer.waveform.WaveformRegistry;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static net.earomc.synthesizer.EaroSynthesizer.VOLUME;
+
+/**
+ * Reads render jobs from a plain text job file. One command per line, everything after # is a comment:
+ * <pre>
+ * job alle-meine-entchen entchen.wav   # starts a new job, the output path is relative to the output directory
+ * waveform triangle                    # saw, triangle, sine, square, noise or any registered waveform. Default: sine
+ * amp 0.02                             # amplitude of the following notes. Default: EaroSynthesizer.VOLUME
+ * tuning 432                           # equal temperament with A4 at the given frequency. Default: 440
+ * tuning just.scl 40 261.63            # Scala scale file relative to the job file, piano key and frequency of its first degree
+ * note 28 0.5                          # piano key number (49 = A4 = 440 Hz) and duration in seconds
+ * tone 261.63 0.5                      # frequency in Hz and duration in seconds
+ * rest 0.5                             # silence, duration in seconds
+ * </pre>
+ * waveform, amp and tuning apply to all following notes until they are changed, also across jobs.
+ */
+public class JobFileParser {
+
+    public static List<RenderJob> parse(Path jobFile, Path outputDirectory) throws IOException {
+        return parse(Files.readAllLines(jobFile), jobFile.toString(), jobFile.toAbsolutePath().getParent(), outputDirectory);
+    }
+
+    /**
+     * Parses job file lines that don't come from a file, e.g. sent over the network.
+     *
+     * @param source        where the lines come from, for error messages.
+     * @param baseDirectory directory that Scala files are relative to. If null, tuning can't use Scala files.
+     */
+    public static List<RenderJob> parse(List<String> lines, String source, @Nullable Path baseDirectory, Path outputDirectory) throws IOException {
+        List<RenderJob> jobs = new ArrayList<>();
+        String name = null;
+        Path output = null;
+        List<RenderJob.Segment> segments = new ArrayList<>();
+        Waveform waveform = Waveform.SINE;
+        float amp = VOLUME;
+        TuningTable tuning = TuningTable.a440();
+
+        for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++) {
+            String line = lines.get(lineNumber - 1);
+            int commentStart = line.indexOf('#');
+            if (commentStart >= 0) line = line.substring(0, commentStart);
+            String[] args = line.trim().split("\\s+");
+            if (args[0].isEmpty()) continue;
+
+            String location = source + ":" + lineNumber;
+            try {
+                switch (args[0].toLowerCase(Locale.ROOT)) {
+                    case "job" -> {
+                        expectArgs(args, 2);
+                        if (name != null) jobs.add(new RenderJob(name, output, segments));
+                        name = args[1];
+                        output = outputDirectory.resolve(args[2]);
+                        segments = new ArrayList<>();
+                    }
+                    case "waveform" -> {
+                        expectArgs(args, 1);
+                        waveform = WaveformRegistry.getDefault().get(args[1]);
+                    }
+                    case "amp" -> {
+                        expectArgs(args, 1);
+                        amp = Float.parseFloat(args[1]);
+                        if (amp < -1 || amp > 1)
+                            throw new IllegalArgumentException("Illegal value for amp: " + amp + "! Has to be a value between -1 and 1");
+                    }
+                    case "tuning" -> {
+                        if (args.length == 2) {
+                            tuning = TuningTable.forReferencePitch(Float.parseFloat(args[1]));
+                        } else {
+                            expectArgs(args, 3);
+                            ScalaScale scale = ScalaScale.read(resolve(baseDirectory, args[1]));
+                            int referenceKey = Integer.parseInt(args[2]) + TuningTable.PIANO_KEY_OFFSET;
+                            tuning = TuningTable.fromScale(scale, referenceKey, Float.parseFloat(args[3]));
+                        }
+                    }
+                    case "note" -> {
+                        expectArgs(args, 2);
+                        requireJob(name);
+                        float freq = tuning.getPianoKeyFrequency(Integer.parseInt(args[1]));
+                        segments.add(new RenderJob.Note(waveform, freq, amp, parseDuration(args[2])));
+                    }
+                    case "tone" -> {
+                        expectArgs(args, 2);
+                        requireJob(name);
+                        float freq = Float.parseFloat(args[1]);
+                        if (!(freq > 0 && freq < Float.POSITIVE_INFINITY))
+                            throw new IllegalArgumentException("Illegal value for freq: " + freq + "! Has to be positive and finite");
+                        segments.add(new RenderJob.Note(waveform, freq, amp, parseDuration(args[2])));
+                    }
+                    case "rest" -> {
+                        expectArgs(args, 1);
+                        requireJob(name);
+                        segments.add(new RenderJob.Rest(parseDuration(args[1])));
+                    }
+                    default -> throw new IllegalArgumentException("Unknown command " + args[0]);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(location + ": " + e.getMessage(), e);
+            }
+        }
+        if (name != null) jobs.add(new RenderJob(name, output, segments));
+        return jobs;
+    }
+
+    private static Path resolve(@Nullable Path baseDirectory, String path) {
+        if (baseDirectory == null) throw new IllegalArgumentException("Scala files can only be used in job files");
+        return baseDirectory.resolve(path);
+    }
+
+    private static float parseDuration(String arg) {
+        float duration = Float.parseFloat(arg);
+        if (!(duration >= 0 && duration < Float.POSITIVE_INFINITY))
+            throw new IllegalArgumentException("Illegal value for duration: " + duration + "! Has to be finite and not negative");
+        return duration;
+    }
+
+    private static void expectArgs(String[] args, int count) {
+        if (args.length - 1 != count)
+            throw new IllegalArgumentException(args[0] + " needs " + count + " argument(s), got " + (args.length - 1));
+    }
+
+    private static void requireJob(String name) {
+        if (name == null) throw new IllegalArgumentException("Notes and rests have to come after a job line");
+    }
+}
@@ -0,0 +1,113 @@
+package net.earomc.synthesizer.batch;
+
+import net.earomc.synthesizer.FloatArrayConcatenator;
+import net.earomc.synthesizer.SampleArrays;
+import net.earomc.synthesizer.waveform.Waveform;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A sequence of notes and rests that is rendered into one WAV file.
+ *
+ * @param name     name of the job, for reporting.
+ * @param output   the WAV file the job is rendered to.
+ * @param segments the notes and rests, played one after another.
+ */
+public record RenderJob(String name, Path output, List<Segment> segments) {
+
+    /**
+     * Renders all segments one after another.
+     */
+    public float[] render() {
+        FloatArrayConcatenator concatenator = new FloatArrayConcatenator();
+        for (Segment segment : segments) {
+            concatenator.append(segment.render());
+        }
+        return concatenator.concat();
+    }
+
+    /**
+     * @return the length of the rendered audio in seconds.
+     */
+    public double durationSeconds() {
+        double duration = 0;
+        for (Segment segment : segments) {
+            duration += segment.durationSeconds();
+        }
+        return duration;
+    }
+
+    /**
+     * @return the segments with notes and rests longer than maxSegmentSeconds split into pieces of at most that length,
+     * so a long note doesn't have to be rendered in one go. The pieces of a note continue its wave seamlessly.
+     * The pieces are created while iterating, a long job never has all of them at once.
+     */
+    public Iterable<Segment> split(float maxSegmentSeconds) {
+        if (!(maxSegmentSeconds > 0))
+            throw new IllegalArgumentException("Illegal value for maxSegmentSeconds: " + maxSegmentSeconds + "! Has to be positive");
+        return () -> new Iterator<>() {
+            private final Iterator<Segment> remaining = segments.iterator();
+            // the segment being split and where its next piece starts, null between segments
+            private Segment segment;
+            private double start;
+
+            @Override
+            public boolean hasNext() {
+                return segment != null || remaining.hasNext();
+            }
+
+            @Override
+            public Segment next() {
+                if (segment == null) {
+                    Segment next = remaining.next();
+                    if (next.durationSeconds() <= maxSegmentSeconds) return next;
+                    segment = next;
+                    start = 0;
+                }
+                Segment piece = piece(segment, start, (float) Math.min(maxSegmentSeconds, segment.durationSeconds() - start));
+                start += maxSegmentSeconds;
+                if (start >= segment.durationSeconds()) segment = null;
+                return piece;
+            }
+        };
+    }
+
+    private static Segment piece(Segment segment, double start, float duration) {
+        if (segment instanceof Note note) {
+            // the phase shifts the wave in time, whole periods can be left out to keep the value small
+            double period = 1d / note.freq();
+            float phaseRadians = (float) (note.phaseRadians() - 2 * Math.PI * (start % period));
+            return new Note(note.waveform(), note.freq(), note.amp(), duration, phaseRadians);
+        }
+        return new Rest(duration);
+    }
+
+    public sealed interface Segment permits Note, Rest {
+        /**
+         * @return the samples of the segment. May be shared with other segments, don't modify them.
+         */
+        float[] render();
+
+        float durationSeconds();
+    }
+
+    public record Note(Waveform waveform, float freq, float amp, float durationSeconds, float phaseRadians) implements Segment {
+        public Note(Waveform waveform, float freq, float amp, float durationSeconds) {
+            this(waveform, freq, amp, durationSeconds, 0);
+        }
+
+        @Override
+        public float[] render() {
+            return SampleArrays.cachedWaveSamples(waveform, freq, amp, durationSeconds, phaseRadians);
+        }
+    }
+
+    public record Rest(float durationSeconds) implements Segment {
+        @Override
+        public float[] render() {
+            return SampleArrays.silentSamples(durationSeconds);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package net.earomc.synthesizer.capture;
+
+import net.earomc.synthesizer.SimpleAudioConversion;
+import org.jetbrains.annotations.Nullable;
+
+import javax.sound.sampled.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+
+import static net.earomc.synthesizer.EaroSynthesizer.BUFFER_SIZE;
+
+/**
+ * Records audio from a {@link TargetDataLine}, or from a stream that stands in for one, into a ring buffer.
+ * <p>
+ * A background thread reads small chunks of {@value #READ_FRAMES} frames from the input, decodes them with
+ * {@link SimpleAudioConversion#decode} and mixes the channels down to mono, because everything in the synth
+ * processes mono blocks. The samples go into a lock-free ring buffer, from which one other thread reads them with
+ * {@link #read(float[], int, int)}.
+ * <p>
+ * A line can't wait for a slow reader, so when the ring buffer is full the newest samples are dropped and counted
+ * in {@link #getDroppedFrames()}, like an overrun of a sound card.
+ */
+public class CaptureSource implements Closeable {
+    public static final int DEFAULT_BUFFER_FRAMES = 1 << 14;
+    /**
+     * Frames read from the input at once. Small, so captured audio reaches the ring buffer soon.
+     */
+    public static final int READ_FRAMES = 64;
+    // how long the reading thread sleeps when the ring buffer is empty
+    private static final long WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Reads encoded audio, like {@link TargetDataLine#read} or {@link InputStream#read(byte[], int, int)}.
+     */
+    @FunctionalInterface
+    private interface Input {
+        int read(byte[] b, int off, int len) throws IOException;
+    }
+
+    private final AudioFormat format;
+    private final int frameSize;
+    private final int channels;
+    private final Input input;
+    private final Closeable inputCloser;
+    // frames the input holds that haven't been read yet, e.g. in the buffer of the line
+    private final IntSupplier inputBufferedFrames;
+    private final boolean paced;
+    private final FloatRingBuffer ring;
+    private final Thread reader;
+
+    private volatile boolean closed;
+    private volatile boolean readerDone;
+    @Nullable
+    private volatile Throwable error;
+    private volatile long capturedFrames;
+    private volatile long droppedFrames;
+
+    private CaptureSource(AudioFormat format, Input input, Closeable inputCloser, IntSupplier inputBufferedFrames,
+                          boolean paced, int bufferFrames) {
+        AudioFormat.Encoding encoding = format.getEncoding();
+        if (!encoding.equals(AudioFormat.Encoding.PCM_SIGNED) && !encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED)
+                && !encoding.equals(AudioFormat.Encoding.PCM_FLOAT))
+            throw new IllegalArgumentException("Illegal value for format: " + format + "! Has to be PCM");
+        if (bufferFrames < READ_FRAMES)
+            throw new IllegalArgumentException("Illegal value for bufferFrames: " + bufferFrames + "! Has to be at least " + READ_FRAMES);
+        this.format = format;
+        this.frameSize = format.getFrameSize();
+        this.channels = format.getChannels();
+        this.input = input;
+        this.inputCloser = inputCloser;
+        this.inputBufferedFrames = inputBufferedFrames;
+        this.paced = paced;
+        this.ring = new FloatRingBuffer(bufferFrames);
+        this.reader = new Thread(this::readLoop, "CaptureSource reader");
+        reader.setDaemon(true);
+        reader.setPriority(Thread.MAX_PRIORITY);
+        reader.start();
+    }
+
+    /**
+     * Opens and starts the default recording line of the system.
+     */
+    public static CaptureSource open(AudioFormat format) throws LineUnavailableException {
+        TargetDataLine line = (TargetDataLine) AudioSystem.getLine(new DataLine.Info(TargetDataLine.class, format));
+        // a line buffer much larger than the read chunks only adds latency when the reader falls behind
+        line.open(format, Math.max(BUFFER_SIZE / format.getFrameSize(), READ_FRAMES * 4) * format.getFrameSize());
+        line.start();
+        return of(line, DEFAULT_BUFFER_FRAMES);
+    }
+
+    /**
+     * @param line an open line, which is closed together with this source.
+     */
+    public static CaptureSource of(TargetDataLine line, int bufferFrames) {
+        int frameSize = line.getFormat().getFrameSize();
+        return new CaptureSource(line.getFormat(), line::read, () -> {
+            line.stop();
+            line.close();
+        }, () -> line.available() / frameSize, false, bufferFrames);
+    }
+
+    /**
+     * Records from a stream instead of a line, for example a file or a pipe when there is no sound card.
+     *
+     * @param realTime whether the stream is read at the speed of its sample rate like a line, instead of as fast as
+     *                 possible. A stream that is already paced, like a pipe from another recorder, doesn't need this.
+     */
+    public static CaptureSource of(AudioInputStream stream, boolean realTime, int bufferFrames) {
+        return new CaptureSource(stream.getFormat(), stream::read, stream, () -> 0, realTime, bufferFrames);
+    }
+
+    /**
+     * Reads up to length samples, blocking until there is at least one.
+     *
+     * @return the number of samples read, or -1 when the input ended and everything was read.
+     * @throws IOException if reading from the input failed.
+     */
+    public int read(float[] samples, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        while (true) {
+            // read before checking the buffer, so no samples written right before the reader finished are missed
+            boolean done = readerDone;
+            if (ring.availableToRead() > 0) return ring.read(samples, offset, length);
+            Throwable readError = error;
+            if (readError != null) throw new IOException("Capturing failed", readError);
+            if (done || closed) return -1;
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Reads exactly length samples, blocking until they have all been captured.
+     *
+     * @return the number of samples read, less than length only if the input ended, or -1 if nothing was left.
+     * @throws IOException if reading from the input failed.
+     */
+    public int readFully(float[] samples, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int count = read(samples, offset + total, length - total);
+            if (count < 0) return total == 0 ? -1 : total;
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return captured samples waiting to be read.
+     */
+    public int available() {
+        return ring.availableToRead();
+    }
+
+    /**
+     * @return captured frames that haven't been read yet, in the ring buffer and in the line.
+     * Together with the size of a block, this is the input part of the monitoring latency.
+     */
+    public int getBufferedFrames() {
+        return ring.availableToRead() + inputBufferedFrames.getAsInt();
+    }
+
+    public long getCapturedFrames() {
+        return capturedFrames;
+    }
+
+    /**
+     * @return frames that were thrown away because the ring buffer was full.
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public int getBufferCapacity() {
+        return ring.capacity();
+    }
+
+    /**
+     * @return the format of the input. The samples read from this source are always mono.
+     */
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    public float getSampleRate() {
+        return format.getSampleRate();
+    }
+
+    private void readLoop() {
+        byte[] bytes = new byte[READ_FRAMES * frameSize];
+        float[] interleaved = new float[READ_FRAMES * channels];
+        float[] mono = new float[READ_FRAMES];
+        long start = System.nanoTime();
+        double nanosPerFrame = 1e9 / format.getFrameRate();
+        try {
+            int pending = 0;
+            while (!closed) {
+                int count = input.read(bytes, pending, bytes.length - pending);
+                if (count < 0) break;
+                pending += count;
+                int frames = pending / frameSize;
+                if (frames == 0) continue;
+                if (paced) {
+                    long due = start + (long) ((capturedFrames + frames) * nanosPerFrame);
+                    long now;
+                    while (!closed && (now = System.nanoTime()) < due) LockSupport.parkNanos(due - now);
+                }
+                SimpleAudioConversion.decode(bytes, interleaved, frames * frameSize, format);
+                downmix(interleaved, mono, frames);
+                int written = ring.write(mono, 0, frames);
+                if (written < frames) droppedFrames += frames - written;
+                capturedFrames += frames;
+                // keeps the bytes of a partial frame for the next read
+                pending -= frames * frameSize;
+                System.arraycopy(bytes, frames * frameSize, bytes, 0, pending);
+            }
+        } catch (Throwable t) {
+            // closing the input can make a blocked read fail
+            if (!closed) error = t;
+        } finally {
+            readerDone = true;
+        }
+    }
+
+    private void downmix(float[] interleaved, float[] mono, int frames) {
+        if (channels == 1) {
+            System.arraycopy(interleaved, 0, mono, 0, frames);
+            return;
+        }
+        float scale = 1f / channels;
+        for (int frame = 0, i = 0; frame < frames; frame++) {
+            float sum = 0;
+            for (int channel = 0; channel < channels; channel++) {
+                sum += interleaved[i++];
+            }
+            mono[frame] = sum * scale;
+        }
+    }
+
+    /**
+     * Stops capturing and closes the input. Reads return what is left in the ring buffer and then -1.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        reader.interrupt();
+        try {
+            inputCloser.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package net.earomc.synthesizer.capture;
+
+/**
+ * Bounded ring buffer of samples for exactly one writing and one reading thread.
+ * Neither side locks, reads and writes move as many samples as currently fit and return immediately.
+ * Works like {@link net.earomc.synthesizer.playback.StreamingFilePlayer}'s byte ring buffer, only for floats.
+ */
+final class FloatRingBuffer {
+    private final float[] buffer;
+    // total samples written and read since creation, the indices into the buffer are these modulo the capacity
+    private volatile long writePosition;
+    private volatile long readPosition;
+
+    FloatRingBuffer(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Illegal value for capacity: " + capacity + "! Has to be at least 1");
+        this.buffer = new float[capacity];
+    }
+
+    /**
+     * Only called by the writing thread.
+     *
+     * @return the number of samples written, at most {@link #availableToWrite()}.
+     */
+    int write(float[] src, int offset, int length) {
+        long write = writePosition;
+        int count = Math.min(length, (int) (buffer.length - (write - readPosition)));
+        int index = (int) (write % buffer.length);
+        int first = Math.min(count, buffer.length - index);
+        System.arraycopy(src, offset, buffer, index, first);
+        System.arraycopy(src, offset + first, buffer, 0, count - first);
+        // publishes the samples to the reader
+        writePosition = write + count;
+        return count;
+    }
+
+    /**
+     * Only called by the reading thread.
+     *
+     * @return the number of samples read, at most {@link #availableToRead()}.
+     */
+    int read(float[] dst, int offset, int length) {
+        long read = readPosition;
+        int count = Math.min(length, (int) (writePosition - read));
+        int index = (int) (read % buffer.length);
+        int first = Math.min(count, buffer.length - index);
+        System.arraycopy(buffer, index, dst, offset, first);
+        System.arraycopy(buffer, 0, dst, offset + first, count - first);
+        // frees the space for the writer
+        readPosition = read + count;
+        return count;
+    }
+
+    int availableToRead() {
+        return (int) (writePosition - readPosition);
+    }
+
+    int availableToWrite() {
+        return buffer.length - availableToRead();
+    }
+
+    int capacity() {
+        return buffer.length;
+    }
+}
@@ -0,0 +1,403 @@
+package net.earomc.synthesizer.capture;
+
+import net.earomc.synthesizer.Requantizer;
+import net.earomc.synthesizer.effect.BiquadFilter;
+import net.earomc.synthesizer.effect.Effect;
+import net.earomc.synthesizer.effect.EffectChain;
+import net.earomc.synthesizer.effect.LookaheadLimiter;
+import net.earomc.synthesizer.metrics.RenderMetrics;
+import net.earomc.synthesizer.metrics.TimeHistogram;
+import net.earomc.synthesizer.mixer.MixerBus;
+import org.jetbrains.annotations.Nullable;
+
+import javax.sound.sampled.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static net.earomc.synthesizer.EaroSynthesizer.SAMPLE_RATE;
+import static net.earomc.synthesizer.EaroSynthesizer.SAMPLE_SIZE;
+
+/**
+ * Plays captured audio back through effects and the mixer while it is being recorded.
+ * <p>
+ * A monitor thread reads blocks from a {@link CaptureSource}, runs them through an {@link Effect}, mixes them with
+ * an optional synth voice on a {@link MixerBus} and writes them with TPDF dither to the output. The output is primed
+ * with one block of silence, the cushion that lets the output keep playing while the next block is captured.
+ * <p>
+ * Two latencies are measured:
+ * <ul>
+ *     <li>an estimate for every block, from how much audio is waiting in the input and the output
+ *     ({@link #getLatencyEstimates()})</li>
+ *     <li>the actual round trip with {@link #measureRoundTrip()}: a click is played instead of the monitored audio
+ *     and found again in the input. This needs the output to reach the input, like speakers next to a microphone
+ *     or a loopback cable.</li>
+ * </ul>
+ */
+public class InputMonitor implements Closeable {
+    public static final int DEFAULT_BLOCK_SIZE = CaptureSource.READ_FRAMES;
+    /**
+     * Mixer input of the captured audio.
+     */
+    public static final int CAPTURE_INPUT = 0;
+    /**
+     * Mixer input of the voice set with {@link #setSynth(Renderer)}.
+     */
+    public static final int SYNTH_INPUT = 1;
+    private static final float PROBE_AMP = 0.5f;
+    // a sample of the input this loud counts as the probe coming back
+    private static final float PROBE_THRESHOLD = PROBE_AMP / 2;
+    private static final float PROBE_TIMEOUT_SECONDS = 2;
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Where the monitored audio goes, usually a {@link SourceDataLine}.
+     */
+    public interface Output extends Closeable {
+        /**
+         * Writes all given bytes, blocking while the output is full.
+         */
+        void write(byte[] bytes, int offset, int length) throws IOException;
+
+        /**
+         * @return frames written but not played yet, or -1 if the output doesn't know.
+         */
+        int getQueuedFrames();
+
+        static Output of(SourceDataLine line) {
+            int frameSize = line.getFormat().getFrameSize();
+            return new Output() {
+                @Override
+                public void write(byte[] bytes, int offset, int length) {
+                    line.write(bytes, offset, length);
+                }
+
+                @Override
+                public int getQueuedFrames() {
+                    return (line.getBufferSize() - line.available()) / frameSize;
+                }
+
+                @Override
+                public void close() {
+                    line.drain();
+                    line.close();
+                }
+            };
+        }
+
+        static Output of(OutputStream outputStream) {
+            return new Output() {
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    outputStream.write(bytes, offset, length);
+                }
+
+                @Override
+                public int getQueuedFrames() {
+                    return -1;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    outputStream.close();
+                }
+            };
+        }
+    }
+
+    /**
+     * Renders a block of mono samples, overwriting the output. {@code PatchVoice::render} is one.
+     * Called on the monitor thread, so it must not allocate, lock or do any I/O, like an {@link Effect}.
+     */
+    @FunctionalInterface
+    public interface Renderer {
+        void render(float[] out, int offset, int length);
+    }
+
+    private final CaptureSource source;
+    private final Effect effect;
+    private final Output output;
+    private final AudioFormat outputFormat;
+    private final int blockSize;
+    private final MixerBus mixer;
+    private final Requantizer requantizer;
+    private final RenderMetrics metrics = new RenderMetrics();
+    private final TimeHistogram latencyEstimates = new TimeHistogram();
+    private final Thread thread;
+    private final AtomicReference<CompletableFuture<Integer>> probeRequest = new AtomicReference<>();
+
+    @Nullable
+    private volatile Renderer synth;
+    private volatile int lastRoundTripFrames = -1;
+    private volatile boolean closed;
+    private volatile boolean started;
+    @Nullable
+    private volatile Throwable error;
+
+    /**
+     * @param source       the captured audio, closed together with the monitor.
+     * @param effect       processes the captured audio before it is mixed.
+     * @param output       where the monitored audio goes, closed together with the monitor.
+     * @param outputFormat format of the output, integer PCM at the sample rate of the source. The mono signal is
+     *                     written to every channel.
+     * @param blockSize    samples processed at once. Smaller blocks mean less latency and more overhead.
+     */
+    public InputMonitor(CaptureSource source, Effect effect, Output output, AudioFormat outputFormat, int blockSize) {
+        if (outputFormat.getSampleRate() != source.getSampleRate())
+            throw new IllegalArgumentException("Illegal value for outputFormat: " + outputFormat
+                    + "! Has to have the sample rate of the source, " + source.getSampleRate() + " Hz");
+        if (blockSize < 1)
+            throw new IllegalArgumentException("Illegal value for blockSize: " + blockSize + "! Has to be at least 1");
+        this.source = source;
+        this.effect = effect;
+        this.output = output;
+        this.outputFormat = outputFormat;
+        this.blockSize = blockSize;
+        this.mixer = new MixerBus(blockSize, 2, null);
+        this.requantizer = new Requantizer(outputFormat, Requantizer.Dither.TPDF, Requantizer.NoiseShaping.NONE,
+                ThreadLocalRandom.current().nextLong());
+        this.thread = new Thread(this::monitorLoop, "InputMonitor");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    /**
+     * Opens the default recording and playback lines of the system at the given format.
+     */
+    public static InputMonitor open(AudioFormat format, Effect effect, int blockSize) throws LineUnavailableException {
+        CaptureSource source = CaptureSource.open(format);
+        try {
+            SourceDataLine line = (SourceDataLine) AudioSystem.getLine(new DataLine.Info(SourceDataLine.class, format));
+            // room for the primed block and the one being written, more would only add latency
+            line.open(format, blockSize * 4 * format.getFrameSize());
+            line.start();
+            return new InputMonitor(source, effect, Output.of(line), format, blockSize);
+        } catch (LineUnavailableException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Usage: {@code monitor [seconds]}. Monitors the default recording line through a high-pass filter for the
+     * given time (default 10 s), measures the round trip at the start and prints the latencies every second.
+     */
+    public static void main(String[] args) throws Exception {
+        float seconds = args.length > 0 ? Float.parseFloat(args[0]) : 10;
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, SAMPLE_SIZE, 1, true, false);
+        Effect effect = new EffectChain(new BiquadFilter(BiquadFilter.Type.HIGH_PASS, SAMPLE_RATE, 40, 0.7071f));
+        try (InputMonitor monitor = open(format, effect, DEFAULT_BLOCK_SIZE)) {
+            monitor.getMixer().setLimiter(new LookaheadLimiter(SAMPLE_RATE));
+            monitor.start();
+            try {
+                int frames = monitor.measureRoundTrip().get();
+                System.out.printf("Round trip: %d frames, %.1f ms%n", frames, frames * 1000f / SAMPLE_RATE);
+            } catch (Exception e) {
+                System.out.println("Round trip not measured: " + e.getCause());
+            }
+            long end = System.nanoTime() + (long) (seconds * 1e9);
+            while (System.nanoTime() < end && monitor.isRunning()) {
+                Thread.sleep(1000);
+                TimeHistogram latency = monitor.getLatencyEstimates();
+                System.out.printf("Latency p50 %.1f ms, max %.1f ms | %s | dropped input frames: %d%n",
+                        latency.getValueAtPercentile(50) / 1e6, latency.getMaxNanos() / 1e6,
+                        monitor.getMetrics(), monitor.getSource().getDroppedFrames());
+            }
+        }
+    }
+
+    /**
+     * Starts monitoring. Set up the effect and the mixer before, they aren't meant to be changed from another
+     * thread while they are being processed.
+     */
+    public void start() {
+        if (started) throw new IllegalStateException("The monitor has already been started");
+        started = true;
+        thread.start();
+    }
+
+    /**
+     * Plays a click instead of the monitored audio until it comes back in the input.
+     *
+     * @return the round trip in frames, from the first sample of the block the click replaced to the click
+     * arriving in the input. Fails with a {@link TimeoutException} if no click came back within
+     * {@value #PROBE_TIMEOUT_SECONDS} seconds.
+     */
+    public CompletableFuture<Integer> measureRoundTrip() {
+        CompletableFuture<Integer> request = new CompletableFuture<>();
+        if (!probeRequest.compareAndSet(null, request))
+            throw new IllegalStateException("A round trip is already being measured");
+        return request;
+    }
+
+    private void monitorLoop() {
+        int channels = outputFormat.getChannels();
+        float[] block = new float[blockSize];
+        float[] synthBlock = new float[blockSize];
+        float[] frames = new float[blockSize * channels];
+        byte[] bytes = new byte[blockSize * outputFormat.getFrameSize()];
+        long probeTimeoutFrames = (long) (PROBE_TIMEOUT_SECONDS * source.getSampleRate());
+        // frames read from the source so far, the clock the round trip is measured with
+        long position = 0;
+        CompletableFuture<Integer> probe = null;
+        long probeStart = 0;
+        try {
+            output.write(bytes, 0, requantizer.encode(frames, 0, bytes, 0, frames.length));
+            while (!closed) {
+                int length = source.readFully(block, 0, blockSize);
+                if (length < 0) break;
+                long start = System.nanoTime();
+                int queued = output.getQueuedFrames();
+                if (queued == 0) metrics.recordXrun();
+
+                if (probe == null && (probe = probeRequest.get()) != null) {
+                    probeStart = position;
+                } else if (probe != null) {
+                    int found = indexOfProbe(block, length);
+                    if (found >= 0) {
+                        lastRoundTripFrames = (int) (position + found - probeStart);
+                        // cleared before completing, so whoever waits for the result can measure again right away
+                        probeRequest.set(null);
+                        probe.complete(lastRoundTripFrames);
+                        probe = null;
+                    } else if (position + length - probeStart > probeTimeoutFrames) {
+                        probeRequest.set(null);
+                        probe.completeExceptionally(new TimeoutException("The click didn't come back within "
+                                + PROBE_TIMEOUT_SECONDS + " s. Can the input hear the output?"));
+                        probe = null;
+                    }
+                }
+
+                float[] out;
+                if (probe != null) {
+                    // only the click is played, so it can be told apart from the monitored audio coming back
+                    out = mixer.getBlock();
+                    Arrays.fill(out, 0, length, 0f);
+                    if (position == probeStart) out[0] = PROBE_AMP;
+                } else {
+                    out = mix(block, synthBlock, length);
+                }
+                for (int i = 0, frame = 0; i < length; i++) {
+                    for (int channel = 0; channel < channels; channel++) {
+                        frames[frame++] = out[i];
+                    }
+                }
+                int byteCount = requantizer.encode(frames, 0, bytes, 0, length * channels);
+                metrics.recordBlock(System.nanoTime() - start, RenderMetrics.deadlineNanos(length, source.getSampleRate()));
+                recordLatencyEstimate(length, queued);
+                output.write(bytes, 0, byteCount);
+                position += length;
+            }
+        } catch (Throwable t) {
+            if (!closed) error = t;
+        } finally {
+            probeRequest.set(null);
+            if (probe != null) probe.completeExceptionally(new IllegalStateException("The monitor stopped"));
+        }
+    }
+
+    private float[] mix(float[] block, float[] synthBlock, int length) {
+        effect.process(block, 0, length);
+        mixer.clear();
+        mixer.accumulate(CAPTURE_INPUT, block, 0, length);
+        Renderer synth = this.synth;
+        if (synth != null) {
+            synth.render(synthBlock, 0, length);
+            mixer.accumulate(SYNTH_INPUT, synthBlock, 0, length);
+        }
+        return mixer.process(length);
+    }
+
+    private static int indexOfProbe(float[] block, int length) {
+        for (int i = 0; i < length; i++) {
+            if (Math.abs(block[i]) >= PROBE_THRESHOLD) return i;
+        }
+        return -1;
+    }
+
+    // a captured sample waits for the rest of its block, everything buffered in front of it in the input,
+    // the limiter, and everything queued in front of it in the output
+    private void recordLatencyEstimate(int length, int queuedOutputFrames) {
+        LookaheadLimiter limiter = mixer.getLimiter();
+        long latencyFrames = length + source.getBufferedFrames() + Math.max(0, queuedOutputFrames)
+                + (limiter != null ? limiter.getLatency() : 0);
+        latencyEstimates.record((long) (latencyFrames * 1e9 / source.getSampleRate()));
+    }
+
+    /**
+     * @param synth a voice mixed into {@link #SYNTH_INPUT}, or null for none. Can be changed while monitoring.
+     */
+    public void setSynth(@Nullable Renderer synth) {
+        this.synth = synth;
+    }
+
+    /**
+     * @return the mixer with the captured audio on {@link #CAPTURE_INPUT} and the synth on {@link #SYNTH_INPUT}.
+     */
+    public MixerBus getMixer() {
+        return mixer;
+    }
+
+    public CaptureSource getSource() {
+        return source;
+    }
+
+    public RenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the estimated latency from input to output of every block.
+     */
+    public TimeHistogram getLatencyEstimates() {
+        return latencyEstimates;
+    }
+
+    /**
+     * @return the last round trip measured with {@link #measureRoundTrip()} in frames, -1 if none was measured yet.
+     */
+    public int getLastRoundTripFrames() {
+        return lastRoundTripFrames;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return whether the monitor was started and hasn't stopped, because it was closed, the input ended or failed.
+     */
+    public boolean isRunning() {
+        return started && thread.isAlive();
+    }
+
+    /**
+     * @return why the monitor stopped, null if it didn't fail.
+     */
+    @Nullable
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Stops monitoring and closes the source and the output.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        source.close();
+        try {
+            // a write to an output that doesn't play anymore might never return
+            thread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        output.close();
+    }
+}
@@ -0,0 +1,52 @@
+package net.earomc.synthesizer.debug;
+
+import net.earomc.synthesizer.SampleArrays;
+import net.earomc.synthesizer.analysis.SpectrumAnalyzer;
+import net.earomc.synthesizer.waveform.Waveform;
+import net.earomc.synthesizer.waveform.WaveformRegistry;
+
+import static net.earomc.synthesizer.EaroSynthesizer.SAMPLE_RATE;
+
+/**
+ * Measures the aliasing of the waveforms with the {@link SpectrumAnalyzer}: the loudest frequency that isn't
+ * a harmonic of the played note, relative to the fundamental. Harmonics above the Nyquist frequency fold back
+ * into the audible range as such frequencies, so the higher the note the worse it gets for saw and square.
+ */
+public class AliasingCheck {
+    private static final int FFT_SIZE = 4096;
+    private static final float[] FREQUENCIES = {110, 440, 1000};
+    private static final String[] WAVEFORMS = {"sine", "triangle", "saw", "square"};
+    // bins next to a harmonic belong to it because of the window
+    private static final int HARMONIC_WIDTH_BINS = 16;
+
+    public static void main(String[] args) {
+        System.out.println("Sample rate: " + SAMPLE_RATE + " Hz, FFT size: " + FFT_SIZE);
+        for (String name : WAVEFORMS) {
+            Waveform waveform = WaveformRegistry.getDefault().get(name);
+            for (float freq : FREQUENCIES) {
+                SpectrumAnalyzer analyzer = new SpectrumAnalyzer(FFT_SIZE, FFT_SIZE, SAMPLE_RATE);
+                float[] samples = SampleArrays.waveSamples(waveform, freq, 1f, (float) FFT_SIZE / SAMPLE_RATE, 0);
+                analyzer.write(samples, 0, samples.length);
+                analyzer.fetch();
+                float[] magnitudesDb = analyzer.getMagnitudesDb();
+
+                float fundamentalDb = magnitudesDb[Math.round(freq * FFT_SIZE / SAMPLE_RATE)];
+                float worstDb = SpectrumAnalyzer.MIN_DB;
+                float worstFreq = 0;
+                for (int bin = 0; bin < magnitudesDb.length; bin++) {
+                    float binFreq = analyzer.getBinFrequency(bin);
+                    double harmonic = binFreq / freq;
+                    double distanceBins = Math.abs(harmonic - Math.rint(harmonic)) * freq * FFT_SIZE / SAMPLE_RATE;
+                    if (Math.rint(harmonic) >= 1 && distanceBins <= HARMONIC_WIDTH_BINS) continue;
+                    if (bin <= HARMONIC_WIDTH_BINS) continue; // 0 Hz
+                    if (magnitudesDb[bin] > worstDb) {
+                        worstDb = magnitudesDb[bin];
+                        worstFreq = binFreq;
+                    }
+                }
+                System.out.printf("%-8s %6.0f Hz: strongest alias %7.1f dB at %6.0f Hz%n",
+                        name, freq, worstDb - fundamentalDb, worstFreq);
+            }
+        }
+    }
+}
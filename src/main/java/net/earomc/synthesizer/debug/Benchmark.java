@@ -0,0 +1,65 @@
+package net.earomc.synthesizer.debug;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Very small benchmark helper for measuring the cost of a block of work on the current thread.
+ * <p>
+ * Reports the average time per run and the heap allocated per run, so code that is supposed to be
+ * allocation free on the render thread can be checked. Allocation tracking needs a HotSpot based JVM,
+ * on other JVMs it is reported as -1.
+ */
+public class Benchmark {
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = getThreadMXBean();
+
+    private final String name;
+    private final int warmupRuns;
+    private final int runs;
+
+    public Benchmark(String name, int warmupRuns, int runs) {
+        this.name = name;
+        this.warmupRuns = warmupRuns;
+        this.runs = runs;
+    }
+
+    public Result run(Runnable task) {
+        for (int i = 0; i < warmupRuns; i++) {
+            task.run();
+        }
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+        long nanos = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes();
+        long allocatedPerRun = allocatedBefore < 0 ? -1 : (allocatedAfter - allocatedBefore) / runs;
+        return new Result(name, (double) nanos / runs, allocatedPerRun);
+    }
+
+    private static long allocatedBytes() {
+        if (THREAD_MX_BEAN == null) return -1;
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadMXBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+
+    /**
+     * @param name                 name of the benchmark.
+     * @param nanosPerRun          average wall clock time of one run in nanoseconds.
+     * @param allocatedBytesPerRun average heap allocation of one run in bytes, -1 if unknown.
+     */
+    public record Result(String name, double nanosPerRun, long allocatedBytesPerRun) {
+        @Override
+        public String toString() {
+            return String.format("%-32s %12.1f ns/run %8d bytes/run", name, nanosPerRun, allocatedBytesPerRun);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package net.earomc.synthesizer.debug;
+
+import net.earomc.synthesizer.Requantizer;
+import net.earomc.synthesizer.SimpleAudioConversion;
+import net.earomc.synthesizer.capture.CaptureSource;
+import net.earomc.synthesizer.capture.InputMonitor;
+import net.earomc.synthesizer.effect.BiquadFilter;
+import net.earomc.synthesizer.effect.Delay;
+import net.earomc.synthesizer.effect.Effect;
+import net.earomc.synthesizer.effect.EffectChain;
+import net.earomc.synthesizer.metrics.TimeHistogram;
+import net.earomc.synthesizer.waveform.Waveform;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+import static net.earomc.synthesizer.EaroSynthesizer.SAMPLE_RATE;
+import static net.earomc.synthesizer.EaroSynthesizer.SAMPLE_SIZE;
+import static net.earomc.synthesizer.SampleArrays.waveSamples;
+
+/**
+ * Checks the capture path without a sound card:
+ * <ol>
+ *     <li>A recording is captured from a stream and monitored through effects. The output has to match the same
+ *     effects applied offline, apart from the dither.</li>
+ *     <li>The output of a monitor is piped back into its input through a virtual device with a known delay,
+ *     and the measured round trip has to be that delay plus the primed block.</li>
+ *     <li>If the system has recording and playback lines, the round trip is measured on them too.</li>
+ * </ol>
+ */
+public class CaptureLoopbackCheck {
+    private static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, SAMPLE_SIZE, 1, true, false);
+    private static final int BLOCK_SIZE = InputMonitor.DEFAULT_BLOCK_SIZE;
+    private static final int DEVICE_DELAY_FRAMES = 100;
+
+    public static void main(String[] args) throws Exception {
+        checkProcessing();
+        checkLoopback();
+        checkDevice();
+    }
+
+    private static void checkProcessing() throws Exception {
+        float[] recording = waveSamples(Waveform.SAW, 220, 0.4f, 2, 0);
+        byte[] recordingBytes = new Requantizer(FORMAT, Requantizer.Dither.NONE, Requantizer.NoiseShaping.NONE, 0)
+                .encode(recording);
+        ByteArrayOutputStream monitored = new ByteArrayOutputStream();
+        AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(recordingBytes), FORMAT, recording.length);
+        // large enough for the whole recording, because the stream is read faster than the monitor processes it
+        CaptureSource source = CaptureSource.of(stream, false, recording.length);
+        try (InputMonitor monitor = new InputMonitor(source, effects(), InputMonitor.Output.of(monitored), FORMAT, BLOCK_SIZE)) {
+            monitor.start();
+            while (monitor.isRunning()) Thread.sleep(10);
+            if (monitor.getError() != null) throw new IllegalStateException(monitor.getError());
+        }
+
+        float[] expected = SimpleAudioConversion.decode(recordingBytes, SAMPLE_SIZE, FORMAT);
+        Effect offline = effects();
+        for (int offset = 0; offset < expected.length; offset += BLOCK_SIZE) {
+            offline.process(expected, offset, Math.min(BLOCK_SIZE, expected.length - offset));
+        }
+        float[] actual = SimpleAudioConversion.decode(monitored.toByteArray(), SAMPLE_SIZE, FORMAT);
+        double maxError = 0;
+        for (int i = 0; i < expected.length; i++) {
+            // the output starts with the primed block of silence
+            maxError = Math.max(maxError, Math.abs(actual[i + BLOCK_SIZE] - expected[i]));
+        }
+        double maxErrorLsb = maxError * SimpleAudioConversion.fullScale(SAMPLE_SIZE);
+        System.out.printf("Processing: %d of %d samples monitored, max error %.2f LSB -> %s%n",
+                actual.length - BLOCK_SIZE, expected.length, maxErrorLsb,
+                actual.length - BLOCK_SIZE == expected.length && maxErrorLsb <= 2 ? "PASS" : "FAIL");
+    }
+
+    private static void checkLoopback() throws Exception {
+        PipedInputStream deviceInput = new PipedInputStream(1 << 16);
+        PipedOutputStream deviceOutput = new PipedOutputStream(deviceInput);
+        // what is already in the virtual device when the monitor starts is its delay
+        deviceOutput.write(new byte[DEVICE_DELAY_FRAMES * FORMAT.getFrameSize()]);
+        AudioInputStream stream = new AudioInputStream(deviceInput, FORMAT, AudioSystem.NOT_SPECIFIED);
+        CaptureSource source = CaptureSource.of(stream, true, CaptureSource.DEFAULT_BUFFER_FRAMES);
+        try (InputMonitor monitor = new InputMonitor(source, effects(), InputMonitor.Output.of(deviceOutput), FORMAT, BLOCK_SIZE)) {
+            monitor.start();
+            Thread.sleep(500);
+            int expected = DEVICE_DELAY_FRAMES + BLOCK_SIZE;
+            for (int i = 0; i < 3; i++) {
+                int frames = monitor.measureRoundTrip().get();
+                System.out.printf("Loopback: round trip %d frames (%.1f ms), expected %d -> %s%n",
+                        frames, frames * 1000f / SAMPLE_RATE, expected, frames == expected ? "PASS" : "FAIL");
+            }
+            printLatency(monitor);
+        }
+    }
+
+    private static void checkDevice() throws Exception {
+        InputMonitor monitor;
+        try {
+            monitor = InputMonitor.open(FORMAT, effects(), BLOCK_SIZE);
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            System.out.println("Device: no recording and playback lines for " + FORMAT + ", skipped");
+            return;
+        }
+        try (monitor) {
+            monitor.start();
+            Thread.sleep(500);
+            try {
+                int frames = monitor.measureRoundTrip().get();
+                System.out.printf("Device: round trip %d frames (%.1f ms)%n", frames, frames * 1000f / SAMPLE_RATE);
+            } catch (Exception e) {
+                System.out.println("Device: " + e.getCause().getMessage());
+            }
+            printLatency(monitor);
+        }
+    }
+
+    private static void printLatency(InputMonitor monitor) {
+        TimeHistogram latency = monitor.getLatencyEstimates();
+        System.out.printf("  latency estimate p50 %.1f ms, max %.1f ms over %d blocks, dropped input frames: %d%n",
+                latency.getValueAtPercentile(50) / 1e6, latency.getMaxNanos() / 1e6, latency.getTotalCount(),
+                monitor.getSource().getDroppedFrames());
+        System.out.println("  " + monitor.getMetrics());
+    }
+
+    private static Effect effects() {
+        return new EffectChain(
+                new BiquadFilter(BiquadFilter.Type.LOW_PASS, SAMPLE_RATE, 800, 0.7071f),
+                new Delay(SAMPLE_RATE, 0.5f, 0.25f, 0.4f, 0.3f));
+    }
+}
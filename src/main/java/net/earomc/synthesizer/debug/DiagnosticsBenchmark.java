@@ -0,0 +1,85 @@
+package net.earomc.synthesizer.debug;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.earomc.synthesizer.SampleArrays;
+import net.earomc.synthesizer.diagnostics.BlockStatsEvent;
+import net.earomc.synthesizer.diagnostics.Diagnostics;
+import net.earomc.synthesizer.metrics.RenderMetrics;
+import net.earomc.synthesizer.waveform.Waveform;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Measures what recording {@link Diagnostics} events costs on the render thread: below the level, rate limited and
+ * into the ring, and what the frequency sweep costs now that it records events instead of printing.
+ * Then checks that the events reach the sink with their suppressed counts, and that JFR records {@link BlockStatsEvent}s.
+ */
+public class DiagnosticsBenchmark {
+    private static final int EVENTS_PER_RUN = 1000;
+    private static final int WARMUP_RUNS = 2_000;
+    private static final int RUNS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        AtomicLong delivered = new AtomicLong();
+        AtomicLong suppressed = new AtomicLong();
+        try (Diagnostics diagnostics = new Diagnostics(Level.INFO, 1 << 16, 10, event -> {
+            delivered.incrementAndGet();
+            suppressed.addAndGet(event.suppressed());
+        })) {
+            Diagnostics.EventType disabled = diagnostics.eventType("disabled", Level.FINE, Duration.ZERO, "a", "b");
+            Diagnostics.EventType limited = diagnostics.eventType("limited", Level.INFO, Duration.ofMillis(1), "a", "b");
+            Diagnostics.EventType unlimited = diagnostics.eventType("unlimited", Level.INFO, Duration.ZERO, "a", "b");
+            System.out.println(EVENTS_PER_RUN + " events per run");
+            System.out.println(new Benchmark("below level", WARMUP_RUNS, RUNS).run(() -> record(disabled)));
+            System.out.println(new Benchmark("rate limited to 1/ms", WARMUP_RUNS, RUNS).run(() -> record(limited)));
+            // small enough that the flusher keeps up and nothing is dropped
+            System.out.println(new Benchmark("into the ring", 20, 200).run(() -> record(unlimited)));
+
+            diagnostics.flush();
+            System.out.printf("Delivered %d events, %d suppressed by the rate limit, %d dropped, %d pending%n",
+                    delivered.get(), suppressed.get(), diagnostics.getDroppedCount(), diagnostics.getPendingCount());
+        }
+
+        Diagnostics.getDefault().setLevel(Level.OFF);
+        System.out.println(new Benchmark("frequency sweep, 3 s, events off", 20, 200)
+                .run(() -> SampleArrays.waveSamplesFrequencyMod(Waveform.SINE, 0.04f, 3, 300, 150)));
+        Diagnostics.getDefault().setLevel(Level.FINE);
+        System.out.println(new Benchmark("frequency sweep, 3 s, events on", 20, 200)
+                .run(() -> SampleArrays.waveSamplesFrequencyMod(Waveform.SINE, 0.04f, 3, 300, 150)));
+        Diagnostics.getDefault().setLevel(Level.INFO);
+
+        checkJfr();
+    }
+
+    private static void record(Diagnostics.EventType type) {
+        for (int i = 0; i < EVENTS_PER_RUN; i++) {
+            type.record(i, i * 0.5);
+        }
+    }
+
+    private static void checkJfr() throws Exception {
+        RenderMetrics metrics = new RenderMetrics().register("jfr-check");
+        int blocks = 1000;
+        Path file = Files.createTempFile("block-stats", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(BlockStatsEvent.class);
+            recording.start();
+            for (int i = 0; i < blocks; i++) {
+                metrics.recordBlock(1000 + i, RenderMetrics.deadlineNanos(256, 4000));
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        long blockStats = events.stream().filter(event -> event.getEventType().getName().equals("net.earomc.synthesizer.BlockStats")).count();
+        System.out.printf("JFR: %d of %d blocks recorded as BlockStats events -> %s%n", blockStats, blocks, blockStats == blocks ? "PASS" : "FAIL");
+        Files.delete(file);
+    }
+}
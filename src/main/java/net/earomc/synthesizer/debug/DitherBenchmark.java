@@ -0,0 +1,72 @@
+package net.earomc.synthesizer.debug;
+
+import net.earomc.synthesizer.Requantizer;
+import net.earomc.synthesizer.SimpleAudioConversion;
+import net.earomc.synthesizer.analysis.Fft;
+import net.earomc.synthesizer.simd.SampleOps;
+
+import javax.sound.sampled.AudioFormat;
+
+import static net.earomc.synthesizer.EaroSynthesizer.SAMPLE_RATE;
+
+/**
+ * Compares plain 16-bit encoding with the {@link Requantizer}: how long encoding takes, and how a sine only a few
+ * LSBs loud comes out. Plain rounding turns the quantization error into harmonics of the sine,
+ * dither turns it into a flat noise floor.
+ */
+public class DitherBenchmark {
+    private static final int LENGTH = 4096;
+    private static final int WARMUP_RUNS = 20_000;
+    private static final int RUNS = 100_000;
+    // the sine lies exactly on a bin of the FFT, so there is no leakage and no window is needed
+    private static final int SINE_BIN = 41;
+    private static final float SINE_LSB = 2.5f;
+    private static final int HARMONICS = 5;
+    private static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+
+    public static void main(String[] args) {
+        float[] samples = new float[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            samples[i] = (float) (SINE_LSB / 32768 * Math.sin(2 * Math.PI * SINE_BIN * i / LENGTH));
+        }
+        System.out.printf("Sine of %.1f LSB at %.1f Hz, %d samples per run%n", SINE_LSB, (double) SINE_BIN * SAMPLE_RATE / LENGTH, LENGTH);
+
+        byte[] bytes = new byte[LENGTH * 2];
+        Benchmark.Result plain = new Benchmark("encode16", WARMUP_RUNS, RUNS).run(() -> SampleOps.PREFERRED.encode16(samples, 0, LENGTH, bytes, 0, false));
+        System.out.println(plain);
+        Benchmark.Result scalar = new Benchmark("encode16 scalar", WARMUP_RUNS, RUNS).run(() -> SampleOps.SCALAR.encode16(samples, 0, LENGTH, bytes, 0, false));
+        System.out.println(scalar);
+        report(bytes);
+
+        for (Requantizer.NoiseShaping shaping : Requantizer.NoiseShaping.values()) {
+            Requantizer requantizer = new Requantizer(FORMAT, Requantizer.Dither.TPDF, shaping, 1);
+            Benchmark.Result result = new Benchmark("tpdf, shaping " + shaping, WARMUP_RUNS, RUNS).run(() -> requantizer.encode(samples, 0, bytes, 0, LENGTH));
+            System.out.printf("%s %.2fx plain, %.2fx scalar%n", result, result.nanosPerRun() / plain.nanosPerRun(),
+                    result.nanosPerRun() / scalar.nanosPerRun());
+            report(bytes);
+        }
+    }
+
+    private static void report(byte[] bytes) {
+        float[] decoded = new float[LENGTH];
+        SimpleAudioConversion.decode(bytes, decoded, bytes.length, FORMAT);
+        Fft fft = new Fft(LENGTH);
+        fft.realForward(decoded);
+        float[] power = new float[fft.getBinCount()];
+        fft.powerSpectrum(decoded, power);
+
+        double harmonics = 0;
+        for (int harmonic = 2; harmonic <= HARMONICS; harmonic++) {
+            harmonics += power[SINE_BIN * harmonic];
+        }
+        double noise = 0;
+        int noiseBins = 0;
+        for (int bin = 1; bin < power.length; bin++) {
+            if (bin % SINE_BIN == 0 && bin / SINE_BIN <= HARMONICS) continue;
+            noise += power[bin];
+            noiseBins++;
+        }
+        System.out.printf("  harmonics 2-%d: %6.1f dB, noise per bin: %6.1f dB, relative to the sine%n", HARMONICS,
+                10 * Math.log10(harmonics / power[SINE_BIN]), 10 * Math.log10(noise / noiseBins / power[SINE_BIN]));
+    }
+}
@@ -0,0 +1,92 @@
+package net.earomc.synthesizer.debug;
+
+import net.earomc.synthesizer.effect.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static net.earomc.synthesizer.EaroSynthesizer.BLOCK_SIZE;
+import static net.earomc.synthesizer.EaroSynthesizer.SAMPLE_RATE;
+
+/**
+ * Measures the cost of each effect per voice (one effect instance processing one block)
+ * and checks that processing a block does not allocate. Also checks that the {@link LookaheadLimiter} never lets a
+ * sample above its ceiling through.
+ */
+public class EffectBenchmark {
+    private static final int WARMUP_BLOCKS = 20_000;
+    private static final int BLOCKS = 50_000;
+
+    public static void main(String[] args) {
+        float[] block = new float[BLOCK_SIZE];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = ThreadLocalRandom.current().nextFloat(-1f, 1f);
+        }
+        double blockDeadlineNanos = BLOCK_SIZE * 1e9 / SAMPLE_RATE;
+
+        BiquadFilter sweptFilter = new BiquadFilter(BiquadFilter.Type.LOW_PASS, SAMPLE_RATE, 500, 0.7071f);
+        Effect[] effects = {
+                new BiquadFilter(BiquadFilter.Type.LOW_PASS, SAMPLE_RATE, 500, 0.7071f),
+                new BiquadFilter(BiquadFilter.Type.HIGH_PASS, SAMPLE_RATE, 500, 0.7071f),
+                new BiquadFilter(BiquadFilter.Type.BAND_PASS, SAMPLE_RATE, 500, 2f),
+                new Delay(SAMPLE_RATE, 1f, 0.3f, 0.5f, 0.5f),
+                new FdnReverb(SAMPLE_RATE, 2f, 0.3f, 0.3f)
+        };
+
+        System.out.println("Block size: " + BLOCK_SIZE + " samples, deadline: " + blockDeadlineNanos / 1000 + " us");
+        for (Effect effect : effects) {
+            Benchmark.Result result = new Benchmark(name(effect), WARMUP_BLOCKS, BLOCKS)
+                    .run(() -> effect.process(block));
+            print(result, blockDeadlineNanos);
+        }
+
+        // cutoff changes every block, so the filter never leaves the smoothing loop
+        float[] cutoff = {200};
+        Benchmark.Result swept = new Benchmark("BiquadFilter (swept)", WARMUP_BLOCKS, BLOCKS).run(() -> {
+            cutoff[0] = cutoff[0] > 1500 ? 200 : cutoff[0] + 1;
+            sweptFilter.setCutoffFreq(cutoff[0]);
+            sweptFilter.process(block);
+        });
+        print(swept, blockDeadlineNanos);
+
+        checkLimiterCeiling();
+    }
+
+    /**
+     * A sine with bursts at 3 times the level at random places, so the released gain rises and falls in every way.
+     */
+    private static void checkLimiterCeiling() {
+        LookaheadLimiter limiter = new LookaheadLimiter(SAMPLE_RATE);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        float[] block = new float[BLOCK_SIZE];
+        int samples = 200_000;
+        float peak = 0;
+        float level = 0.9f;
+        int burstLeft = 0;
+        for (int n = 0; n < samples; n += BLOCK_SIZE) {
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                if (burstLeft == 0 && random.nextInt(400) == 0) burstLeft = random.nextInt(1, 200);
+                float gain = burstLeft > 0 ? 3 * level : level;
+                if (burstLeft > 0) burstLeft--;
+                block[i] = gain * (float) Math.sin((n + i) * 2 * Math.PI * 220 / SAMPLE_RATE) * random.nextFloat(0.5f, 1f);
+            }
+            limiter.process(block);
+            for (float sample : block) {
+                peak = Math.max(peak, Math.abs(sample));
+            }
+        }
+        System.out.printf("LookaheadLimiter: output peak %.4f, ceiling %.4f -> %s%n",
+                peak, limiter.getCeiling(), peak <= limiter.getCeiling() ? "PASS" : "FAIL");
+    }
+
+    private static String name(Effect effect) {
+        if (effect instanceof BiquadFilter filter) return "BiquadFilter " + filter.getType();
+        return effect.getClass().getSimpleName();
+    }
+
+    private static void print(Benchmark.Result result, double blockDeadlineNanos) {
+        System.out.printf("%s %8.4f %% of deadline%n", result, result.nanosPerRun() / blockDeadlineNanos * 100);
+        if (result.allocatedBytesPerRun() > 0) {
+            System.out.println("  WARNING: " + result.name() + " allocates while processing a block!");
+        }
+    }
+}
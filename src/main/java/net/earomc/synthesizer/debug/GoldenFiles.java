@@ -0,0 +1,180 @@
+package net.earomc.synthesizer.debug;
+
+import net.earomc.synthesizer.SampleArrays;
+import net.earomc.synthesizer.SimpleAudioConversion;
+import net.earomc.synthesizer.effect.BiquadFilter;
+import net.earomc.synthesizer.modulation.ModulationMatrix;
+import net.earomc.synthesizer.modulation.ModulationTarget;
+import net.earomc.synthesizer.patch.Patch;
+import net.earomc.synthesizer.patch.PatchVoice;
+import net.earomc.synthesizer.waveform.SineAccuracy;
+import net.earomc.synthesizer.waveform.Waveform;
+import net.earomc.synthesizer.waveform.WaveformRegistry;
+import net.earomc.synthesizer.waveform.waveforms.Noise;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static net.earomc.synthesizer.EaroSynthesizer.BLOCK_SIZE;
+import static net.earomc.synthesizer.EaroSynthesizer.SAMPLE_RATE;
+
+/**
+ * Renders a fixed set of reference sounds and compares them with golden files, to check that optimizations
+ * of the waveforms, effects or the audio conversion didn't change the sound.
+ * <p>
+ * Every case renders deterministically: noise is seeded and everything is rendered in blocks of {@link
+ * net.earomc.synthesizer.EaroSynthesizer#BLOCK_SIZE}. A case passes if its length matches, no sample is off by more
+ * than {@link #MAX_ABS_ERROR} and the signal to error ratio is at least {@link #MIN_SNR_DB}. The tolerance allows
+ * for Math.sin differing in the last bit between platforms, not for audible changes.
+ * <p>
+ * Usage: {@code GoldenFiles [--update] [directory]}. The golden files are in the golden directory by default.
+ * --update writes the current output as the new golden files, after a change of the sound was intended.
+ */
+public class GoldenFiles {
+    public static final double MAX_ABS_ERROR = 1e-5;
+    public static final double MIN_SNR_DB = 100;
+    public static final long SEED = 0x5EED;
+    private static final int FILE_MAGIC = 0x45474631; // "EGF1"
+
+    private record Case(String name, Supplier<float[]> renderer) {
+    }
+
+    /**
+     * @param snrDb infinite if the samples are identical.
+     */
+    public record Comparison(int expectedLength, int actualLength, double maxAbsError, double snrDb) {
+        public boolean passed() {
+            return expectedLength == actualLength && maxAbsError <= MAX_ABS_ERROR && snrDb >= MIN_SNR_DB;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean update = false;
+        Path directory = Path.of("golden");
+        for (String arg : args) {
+            if (arg.equals("--update")) update = true;
+            else directory = Path.of(arg);
+        }
+        Files.createDirectories(directory);
+
+        int failed = 0;
+        for (Case testCase : cases()) {
+            Noise.setSeed(SEED);
+            float[] actual = testCase.renderer().get();
+            Path file = directory.resolve(testCase.name() + ".golden");
+            if (update) {
+                write(actual, file);
+                System.out.printf("%-28s written, %d samples%n", testCase.name(), actual.length);
+                continue;
+            }
+            if (!Files.exists(file)) {
+                System.out.printf("%-28s MISSING %s, run with --update%n", testCase.name(), file);
+                failed++;
+                continue;
+            }
+            Comparison comparison = compare(read(file), actual);
+            System.out.printf("%-28s %s  length %d/%d  max error %.3g  SNR %.1f dB%n", testCase.name(),
+                    comparison.passed() ? "PASS" : "FAIL", comparison.actualLength(), comparison.expectedLength(),
+                    comparison.maxAbsError(), comparison.snrDb());
+            if (!comparison.passed()) failed++;
+        }
+        if (failed > 0) {
+            System.out.println(failed + " case(s) failed");
+            System.exit(1);
+        }
+    }
+
+    private static List<Case> cases() {
+        List<Case> cases = new ArrayList<>();
+        for (WaveformRegistry.Entry entry : WaveformRegistry.getDefault().getEntries()) {
+            cases.add(new Case("waveform-" + entry.name(), () -> SampleArrays.waveSamples(entry.waveform(), 220, 0.5f, 1, 0.3f)));
+        }
+        for (SineAccuracy accuracy : SineAccuracy.values()) {
+            cases.add(new Case("sine-" + accuracy.name().toLowerCase(), () -> SampleArrays.waveSamples(Waveform.SINE, 441.3f, 0.5f, 1, 0, accuracy)));
+        }
+        // the last second of a long note, where a float time would have lost its precision
+        cases.add(new Case("long-saw-tail", () -> {
+            float[] samples = SampleArrays.waveSamples(Waveform.SAW, 110.3f, 0.5f, 120, 0);
+            return Arrays.copyOfRange(samples, samples.length - SAMPLE_RATE, samples.length);
+        }));
+        cases.add(new Case("alle-meine-entchen", () -> SampleArrays.getAlleMeineEntchenSamples(Waveform.TRIANGLE)));
+        cases.add(new Case("patch-voice", GoldenFiles::renderPatch));
+        AudioFormat pcm16 = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        AudioFormat pcm24 = new AudioFormat(SAMPLE_RATE, 24, 1, true, true);
+        cases.add(new Case("pcm16-round-trip", () -> roundTrip(pcm16)));
+        cases.add(new Case("pcm24-round-trip", () -> roundTrip(pcm24)));
+        return cases;
+    }
+
+    private static float[] renderPatch() {
+        Patch patch = new Patch("golden",
+                List.of(new Patch.Oscillator("saw", 0.3f, 0), new Patch.Oscillator("square", 0.2f, 0.07f)),
+                List.of(new Patch.Lfo("sine", 5, true), new Patch.Envelope(0.05f, 0.2f, 0.6f, 0.3f)),
+                List.of(new Patch.Route(0, ModulationTarget.FREQUENCY, 0.3f, ModulationMatrix.Rate.CONTROL),
+                        new Patch.Route(1, ModulationTarget.AMPLITUDE, 1, ModulationMatrix.Rate.CONTROL)),
+                List.of(new Patch.Filter(BiquadFilter.Type.LOW_PASS, 900, 0.7071f),
+                        new Patch.Delay(0.5f, 0.25f, 0.4f, 0.3f),
+                        new Patch.Reverb(1.5f, 0.4f, 0.2f),
+                        new Patch.Limiter(0.005f, 0.05f, 0.9f)));
+        PatchVoice voice = new PatchVoice(patch, SAMPLE_RATE, BLOCK_SIZE);
+        float[] samples = new float[SAMPLE_RATE * 2];
+        voice.noteOn(220);
+        for (int blockStart = 0; blockStart < samples.length; blockStart += BLOCK_SIZE) {
+            if (blockStart == SAMPLE_RATE) voice.noteOff();
+            voice.render(samples, blockStart, Math.min(BLOCK_SIZE, samples.length - blockStart));
+        }
+        return samples;
+    }
+
+    /**
+     * @return a saw with noise, encoded in the format and decoded again.
+     */
+    private static float[] roundTrip(AudioFormat format) {
+        float[] samples = SampleArrays.mix(SampleArrays.waveSamples(Waveform.SAW, 150, 0.6f, 0.5f, 0),
+                SampleArrays.waveSamples(Waveform.NOISE, 1, 0.3f, 0.5f, 0));
+        byte[] bytes = SimpleAudioConversion.encode(samples, format.getSampleSizeInBits(), format);
+        return SimpleAudioConversion.decode(bytes, format.getSampleSizeInBits(), format);
+    }
+
+    public static Comparison compare(float[] expected, float[] actual) {
+        int length = Math.min(expected.length, actual.length);
+        double maxAbsError = 0;
+        double signal = 0;
+        double error = 0;
+        for (int i = 0; i < length; i++) {
+            double difference = (double) actual[i] - expected[i];
+            maxAbsError = Math.max(maxAbsError, Math.abs(difference));
+            signal += (double) expected[i] * expected[i];
+            error += difference * difference;
+        }
+        double snrDb = error == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(signal / error);
+        return new Comparison(expected.length, actual.length, maxAbsError, snrDb);
+    }
+
+    public static void write(float[] samples, Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(samples.length);
+            for (float sample : samples) {
+                out.writeFloat(sample);
+            }
+        }
+    }
+
+    public static float[] read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != FILE_MAGIC) throw new IOException(path + " is not a golden file");
+            float[] samples = new float[in.readInt()];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = in.readFloat();
+            }
+            return samples;
+        }
+    }
+}
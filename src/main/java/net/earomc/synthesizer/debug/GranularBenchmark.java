@@ -0,0 +1,51 @@
+package net.earomc.synthesizer.debug;
+
+import net.earomc.synthesizer.granular.GranularEngine;
+import net.earomc.synthesizer.granular.SampleBuffer;
+import net.earomc.synthesizer.granular.SampleBufferCache;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static net.earomc.synthesizer.EaroSynthesizer.BLOCK_SIZE;
+import static net.earomc.synthesizer.EaroSynthesizer.SAMPLE_RATE;
+
+/**
+ * Measures the {@link GranularEngine} at increasing grain densities on taunt.wav
+ * and checks that rendering a block does not allocate.
+ */
+public class GranularBenchmark {
+    private static final int[] DENSITIES = {100, 1000, 5000, 20000};
+    private static final float GRAIN_DURATION = 0.05f;
+    private static final int WARMUP_BLOCKS = 2_000;
+    private static final int BLOCKS = 5_000;
+
+    public static void main(String[] args) throws IOException {
+        SampleBuffer buffer = SampleBufferCache.getDefault().getResource("taunt.wav");
+        double blockDeadlineNanos = BLOCK_SIZE * 1e9 / SAMPLE_RATE;
+        System.out.println(buffer + ", block size: " + BLOCK_SIZE + " samples, deadline: " + blockDeadlineNanos / 1000 + " us");
+
+        for (int density : DENSITIES) {
+            int overlapping = (int) Math.ceil(density * GRAIN_DURATION);
+            GranularEngine engine = new GranularEngine(SAMPLE_RATE, BLOCK_SIZE,
+                    GranularEngine.requiredGrains(density, GRAIN_DURATION, SAMPLE_RATE, BLOCK_SIZE), 1);
+            engine.setSource(buffer);
+            engine.setDensity(density);
+            engine.setGrainDuration(GRAIN_DURATION);
+            engine.setPosition(0.3f);
+            engine.setPositionJitter(0.1f);
+            engine.setPitch(1.25f);
+            engine.setAmp(1f / overlapping);
+            float[] block = new float[BLOCK_SIZE];
+            Benchmark.Result result = new Benchmark(density + " grains/s", WARMUP_BLOCKS, BLOCKS).run(() -> {
+                Arrays.fill(block, 0);
+                engine.render(block, 0, BLOCK_SIZE);
+            });
+            System.out.printf("%s %8.4f %% of deadline, %d active grains, %d dropped%n", result,
+                    result.nanosPerRun() / blockDeadlineNanos * 100, engine.getActiveGrains(), engine.getDroppedGrains());
+            if (result.allocatedBytesPerRun() > 0) {
+                System.out.println("  WARNING: rendering allocates!");
+            }
+        }
+    }
+}
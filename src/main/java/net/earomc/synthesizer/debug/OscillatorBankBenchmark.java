@@ -0,0 +1,92 @@
+package net.earomc.synthesizer.debug;
+
+import net.earomc.synthesizer.OscillatorBank;
+import net.earomc.synthesizer.waveform.SineAccuracy;
+import net.earomc.synthesizer.waveform.Waveform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static net.earomc.synthesizer.EaroSynthesizer.BLOCK_SIZE;
+import static net.earomc.synthesizer.EaroSynthesizer.SAMPLE_RATE;
+
+/**
+ * Compares rendering many voices with an {@link OscillatorBank} against one object per voice,
+ * where every voice is asked for every sample like {@link net.earomc.synthesizer.Oscillator} does.
+ * Both sides play the same random mix of saw, triangle, sine and square voices.
+ */
+public class OscillatorBankBenchmark {
+    private static final int[] VOICE_COUNTS = {16, 256, 1024, 4096};
+    private static final Waveform[] WAVEFORMS = {Waveform.SAW, Waveform.TRIANGLE, Waveform.SINE, Waveform.SQUARE};
+    private static final SineAccuracy ACCURACY = SineAccuracy.MEDIUM;
+    // voice samples per measurement, so every voice count takes about the same time
+    private static final long VOICE_SAMPLES = 200_000_000L;
+
+    private static final class ObjectVoice {
+        Waveform waveform;
+        float freq;
+        float amp;
+        double phase;
+        // padding, so the voices don't share cache lines like objects with more state wouldn't either
+        long[] state = new long[8];
+    }
+
+    public static void main(String[] args) {
+        System.out.println("Block size: " + BLOCK_SIZE + " samples");
+        for (int voices : VOICE_COUNTS) {
+            int runs = (int) Math.max(10, VOICE_SAMPLES / ((long) voices * BLOCK_SIZE));
+            Random random = new Random(voices);
+            float[] freqs = new float[voices];
+            int[] waveformIds = new int[voices];
+            for (int i = 0; i < voices; i++) {
+                freqs[i] = 50 + random.nextFloat() * 1500;
+                waveformIds[i] = random.nextInt(WAVEFORMS.length);
+            }
+            float amp = 1f / voices;
+
+            OscillatorBank bank = new OscillatorBank(voices, BLOCK_SIZE, SAMPLE_RATE);
+            bank.setSineAccuracy(ACCURACY);
+            for (int i = 0; i < voices; i++) {
+                bank.start(waveformIds[i], freqs[i], amp, 0);
+            }
+
+            List<ObjectVoice> objectVoices = new ArrayList<>();
+            for (int i = 0; i < voices; i++) {
+                ObjectVoice voice = new ObjectVoice();
+                voice.waveform = WAVEFORMS[waveformIds[i]];
+                voice.freq = freqs[i];
+                voice.amp = amp;
+                objectVoices.add(voice);
+            }
+            // voices are started and stopped in no particular order, so they are spread over the heap
+            Collections.shuffle(objectVoices, random);
+            ObjectVoice[] objectArray = objectVoices.toArray(new ObjectVoice[0]);
+
+            float[] bankOut = new float[BLOCK_SIZE];
+            float[] objectOut = new float[BLOCK_SIZE];
+            Benchmark.Result bankResult = new Benchmark("bank " + voices, runs / 5, runs)
+                    .run(() -> bank.render(bankOut, 0, BLOCK_SIZE));
+            Benchmark.Result objectResult = new Benchmark("objects " + voices, runs / 5, runs)
+                    .run(() -> renderObjects(objectArray, objectOut));
+
+            double bankNanos = bankResult.nanosPerRun() / voices / BLOCK_SIZE;
+            double objectNanos = objectResult.nanosPerRun() / voices / BLOCK_SIZE;
+            System.out.printf("%5d voices: bank %7.3f ns, objects %7.3f ns per voice sample, speedup %.2fx, bank allocates %d bytes per block%n",
+                    voices, bankNanos, objectNanos, objectNanos / bankNanos, bankResult.allocatedBytesPerRun());
+        }
+    }
+
+    private static void renderObjects(ObjectVoice[] voices, float[] out) {
+        for (int i = 0; i < out.length; i++) {
+            float sum = 0;
+            for (ObjectVoice voice : voices) {
+                sum += voice.waveform.sample((float) voice.phase, 1, voice.amp, 0, ACCURACY);
+                voice.phase += voice.freq / SAMPLE_RATE;
+                if (voice.phase >= 1) voice.phase -= 1;
+            }
+            out[i] += sum;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package net.earomc.synthesizer.debug;
+
+import net.earomc.synthesizer.effect.BiquadFilter;
+import net.earomc.synthesizer.modulation.ModulationMatrix;
+import net.earomc.synthesizer.modulation.ModulationTarget;
+import net.earomc.synthesizer.patch.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static net.earomc.synthesizer.EaroSynthesizer.BLOCK_SIZE;
+import static net.earomc.synthesizer.EaroSynthesizer.SAMPLE_RATE;
+
+/**
+ * Writes a bank of random patches, checks that every patch survives the round trip
+ * and measures how long opening the bank, loading a patch and switching a voice to it take.
+ */
+public class PatchBankBenchmark {
+    private static final int PATCHES = 10_000;
+    private static final String[] WAVEFORMS = {"saw", "triangle", "sine", "square", "noise"};
+
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(1);
+        List<Patch> patches = new ArrayList<>();
+        for (int i = 0; i < PATCHES; i++) {
+            patches.add(randomPatch("patch " + i, random));
+        }
+        Path file = Files.createTempFile("patches", ".epb");
+        try {
+            PatchBank.write(file, patches);
+            System.out.println(PATCHES + " patches, " + Files.size(file) / 1024 + " KiB");
+
+            long start = System.nanoTime();
+            PatchBank bank = PatchBank.open(file);
+            System.out.printf("Opened %s in %.3f ms%n", bank, (System.nanoTime() - start) / 1e6);
+
+            int mismatches = 0;
+            for (int i = 0; i < PATCHES; i++) {
+                if (!bank.get(i).equals(patches.get(i)) || !bank.get(patches.get(i).name()).equals(patches.get(i))) mismatches++;
+            }
+            System.out.println(mismatches + " patches differ after the round trip");
+            System.out.print(PatchText.format(bank.get(0)));
+
+            int[] next = {0};
+            System.out.println(new Benchmark("load patch", 50_000, 200_000).run(() -> bank.get(next[0]++ % PATCHES)));
+            float[] block = new float[BLOCK_SIZE];
+            System.out.println(new Benchmark("switch voice", 5_000, 20_000).run(() -> {
+                PatchVoice voice = new PatchVoice(bank.get(next[0]++ % PATCHES), SAMPLE_RATE, BLOCK_SIZE);
+                voice.noteOn(220);
+                voice.render(block, 0, BLOCK_SIZE);
+            }));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Patch randomPatch(String name, Random random) {
+        List<Patch.Oscillator> oscillators = new ArrayList<>();
+        for (int i = 0, count = 1 + random.nextInt(3); i < count; i++) {
+            oscillators.add(new Patch.Oscillator(WAVEFORMS[random.nextInt(4)], random.nextFloat() * 0.1f, random.nextFloat() * 0.2f - 0.1f));
+        }
+        List<Patch.Source> sources = List.of(
+                new Patch.Lfo(WAVEFORMS[random.nextInt(WAVEFORMS.length)], random.nextFloat() * 8, random.nextBoolean()),
+                new Patch.Envelope(random.nextFloat() * 0.1f, random.nextFloat(), random.nextFloat(), random.nextFloat()),
+                new Patch.StepSequencer(0.125f, new float[]{0, 3, 7, 12}));
+        List<Patch.Route> routes = List.of(
+                new Patch.Route(0, ModulationTarget.FREQUENCY, random.nextFloat(), ModulationMatrix.Rate.CONTROL),
+                new Patch.Route(1, ModulationTarget.AMPLITUDE, random.nextFloat(), ModulationMatrix.Rate.CONTROL),
+                new Patch.Route(2, ModulationTarget.FREQUENCY, 1, ModulationMatrix.Rate.CONTROL));
+        List<Patch.Effect> effects = new ArrayList<>();
+        effects.add(new Patch.Filter(BiquadFilter.Type.values()[random.nextInt(3)], 200 + random.nextFloat() * 1500, 0.7071f));
+        if (random.nextBoolean()) effects.add(new Patch.Delay(0.5f, 0.05f + random.nextFloat() * 0.45f, random.nextFloat() * 0.8f, 0.3f));
+        if (random.nextBoolean()) effects.add(new Patch.Reverb(1 + random.nextFloat() * 3, random.nextFloat(), 0.25f));
+        effects.add(new Patch.Limiter(0.005f, 0.05f, 0.9f));
+        return new Patch(name, oscillators, sources, routes, effects);
+    }
+}
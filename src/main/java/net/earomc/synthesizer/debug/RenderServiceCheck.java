@@ -0,0 +1,82 @@
+package net.earomc.synthesizer.debug;
+
+import net.earomc.synthesizer.batch.RenderJob;
+import net.earomc.synthesizer.service.RenderService;
+import net.earomc.synthesizer.service.RenderStream;
+import net.earomc.synthesizer.waveform.Waveform;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static net.earomc.synthesizer.EaroSynthesizer.VOLUME;
+
+/**
+ * Submits many jobs to a {@link RenderService} at once, reads them with fast and slow clients,
+ * checks the streamed chunks against {@link RenderJob#render()} and cancels a job halfway.
+ */
+public class RenderServiceCheck {
+    private static final int CLIENTS = 64;
+    private static final int NOTES_PER_JOB = 16;
+
+    public static void main(String[] args) throws Exception {
+        try (RenderService service = new RenderService()) {
+            System.out.println("Render threads: " + service.getRenderThreads());
+            ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                RenderJob job = job("client-" + i, i);
+                boolean slow = i % 4 == 0;
+                results.add(clients.submit(() -> {
+                    RenderStream stream = service.submit(job);
+                    List<float[]> chunks = new ArrayList<>();
+                    float[] chunk;
+                    while ((chunk = stream.take()) != null) {
+                        chunks.add(chunk);
+                        if (slow) Thread.sleep(2);
+                    }
+                    float[] expected = job.render();
+                    float[] actual = new float[expected.length];
+                    int position = 0;
+                    for (float[] c : chunks) {
+                        System.arraycopy(c, 0, actual, position, c.length);
+                        position += c.length;
+                    }
+                    return position == expected.length && Arrays.equals(expected, actual);
+                }));
+            }
+            int matching = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get()) matching++;
+            }
+            clients.shutdown();
+            System.out.println(matching + " of " + CLIENTS + " streams match the directly rendered jobs");
+
+            RenderStream cancelled = service.submit(job("cancelled", 0));
+            cancelled.take();
+            cancelled.cancel();
+            try {
+                while (cancelled.take() != null) ;
+                System.out.println("WARNING: cancelled job ended normally");
+            } catch (RenderStream.RenderException e) {
+                System.out.println("Cancelled job: " + e.getMessage());
+            }
+            Thread.sleep(100);
+            System.out.println(service.getStats());
+        }
+    }
+
+    private static RenderJob job(String name, int seed) {
+        List<RenderJob.Segment> segments = new ArrayList<>();
+        for (int i = 0; i < NOTES_PER_JOB; i++) {
+            // a few jobs share notes, so some chunks come from the segment cache
+            segments.add(new RenderJob.Note(Waveform.WAVEFORMS[(seed + i) % 4], 110 + (seed % 8) * 10 + i, VOLUME, 0.25f));
+            if (i % 4 == 3) segments.add(new RenderJob.Rest(0.1f));
+        }
+        return new RenderJob(name, Path.of(name + ".wav"), segments);
+    }
+}
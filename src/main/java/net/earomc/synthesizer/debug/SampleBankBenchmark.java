@@ -0,0 +1,150 @@
+package net.earomc.synthesizer.debug;
+
+import net.earomc.synthesizer.sampler.MappedSampleBank;
+import net.earomc.synthesizer.sampler.Region;
+import net.earomc.synthesizer.sampler.SampleBankWriter;
+import net.earomc.synthesizer.sampler.SamplePlayer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static net.earomc.synthesizer.EaroSynthesizer.BLOCK_SIZE;
+
+/**
+ * Writes a float and a 16-bit bank of a few regions each, then checks that playing a region at its root key gives
+ * back the written samples, and measures what rendering a block with many voices costs. The regions are written in
+ * pieces and never held in the heap as a whole, so the heap growth reported after opening a bank shows that only
+ * the index is loaded.
+ */
+public class SampleBankBenchmark {
+    private static final float SAMPLE_RATE = 44100;
+    private static final int REGIONS = 8;
+    private static final int REGION_FRAMES = 1 << 20;
+    private static final int CHUNK_FRAMES = 1 << 16;
+    private static final int VOICES = 16;
+
+    public static void main(String[] args) throws IOException {
+        for (MappedSampleBank.Encoding encoding : new MappedSampleBank.Encoding[]{
+                MappedSampleBank.Encoding.FLOAT32, MappedSampleBank.Encoding.PCM16}) {
+            Path file = Files.createTempFile("bank-" + encoding, ".esbk");
+            try {
+                write(file, encoding);
+                check(file, encoding);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static void write(Path file, MappedSampleBank.Encoding encoding) throws IOException {
+        try (SampleBankWriter writer = new SampleBankWriter(file, encoding, SAMPLE_RATE)) {
+            for (int i = 0; i < REGIONS; i++) {
+                int root = 36 + i * 6;
+                // a loop over the second half, so the looping voices wrap while they are measured
+                Region region = new Region("region " + i, root, root - 3, root + 2, 0, 127, REGION_FRAMES / 2, REGION_FRAMES);
+                writer.add(region, new ChunkedInput(i).stream());
+            }
+        }
+    }
+
+    private static void check(Path file, MappedSampleBank.Encoding encoding) throws IOException {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        MappedSampleBank bank = MappedSampleBank.open(file);
+        System.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("%s: %.1f MiB on disk, heap grew by %d KiB when opened%n",
+                bank, bank.getDataBytes() / (1024.0 * 1024), Math.max(0, heapAfter - heapBefore) / 1024);
+
+        try (SamplePlayer player = new SamplePlayer(bank, SAMPLE_RATE, BLOCK_SIZE, VOICES)) {
+            checkRootKey(bank, player, encoding);
+
+            float[] out = new float[BLOCK_SIZE];
+            for (int i = 0; i < VOICES; i++) {
+                player.noteOn(33 + i * 3, 100);
+            }
+            System.out.println(new Benchmark(encoding + ", " + player.getActiveVoices() + " voices", 2_000, 20_000)
+                    .run(() -> player.render(out, 0, BLOCK_SIZE)));
+            System.out.printf("%d pages prefetched, %d voices stolen%n%n", player.getPrefetchedPages(), player.getStolenVoices());
+        }
+    }
+
+    private static void checkRootKey(MappedSampleBank bank, SamplePlayer player, MappedSampleBank.Encoding encoding) {
+        int region = 3;
+        ChunkedInput expected = new ChunkedInput(region);
+        player.noteOn(bank.getRegion(region).rootKey(), 127);
+        float[] out = new float[BLOCK_SIZE];
+        double maxError = 0;
+        int blocks = CHUNK_FRAMES / BLOCK_SIZE;
+        for (int block = 0; block < blocks; block++) {
+            player.render(out, 0, BLOCK_SIZE);
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                maxError = Math.max(maxError, Math.abs(out[i] - expected.next()));
+            }
+        }
+        player.allNotesOff();
+        // let the release finish
+        for (int block = 0; block < 20; block++) {
+            player.render(out, 0, BLOCK_SIZE);
+        }
+        double lsb = 1.0 / (1 << 15);
+        boolean pass = encoding == MappedSampleBank.Encoding.FLOAT32 ? maxError == 0 : maxError <= 1.5 * lsb;
+        System.out.printf("Root key plays the written samples: max error %.3g (%.2f LSB) -> %s%n",
+                maxError, maxError / lsb, pass ? "PASS" : "FAIL");
+    }
+
+    /**
+     * Noise with a sine on top, generated again from the seed for the check instead of being kept.
+     */
+    private static final class ChunkedInput {
+        private final Random random;
+        private long frame;
+
+        ChunkedInput(long seed) {
+            this.random = new Random(seed);
+        }
+
+        float next() {
+            return (float) (0.5 * Math.sin(frame++ * 0.01) + 0.2 * (random.nextFloat() - 0.5f));
+        }
+
+        AudioInputStream stream() {
+            AudioFormat format = MappedSampleBank.Encoding.FLOAT32.getFormat(SAMPLE_RATE);
+            InputStream bytes = new InputStream() {
+                private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_FRAMES * Float.BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN).limit(0);
+                private long remaining = REGION_FRAMES;
+
+                @Override
+                public int read() {
+                    byte[] one = new byte[1];
+                    return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (!chunk.hasRemaining()) {
+                        if (remaining == 0) return -1;
+                        int frames = (int) Math.min(CHUNK_FRAMES, remaining);
+                        chunk.clear();
+                        for (int i = 0; i < frames; i++) chunk.putFloat(next());
+                        chunk.flip();
+                        remaining -= frames;
+                    }
+                    int count = Math.min(len, chunk.remaining());
+                    chunk.get(b, off, count);
+                    return count;
+                }
+            };
+            return new AudioInputStream(bytes, format, REGION_FRAMES);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package net.earomc.synthesizer.debug;
+
+import net.earomc.synthesizer.simd.SampleOps;
+import net.earomc.synthesizer.waveform.SinePolynomial;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares the scalar and the SIMD implementation of {@link SampleOps} and checks that both produce the same results.
+ * Has to be started with {@code --add-modules jdk.incubator.vector}, otherwise both sides are scalar.
+ * <p>
+ * add, multiplyAdd and scale run the same scalar loops on both sides, C2 already vectorizes such simple loops on its
+ * own and the Vector API versions were slower. The gains are in sine and the encoders, which C2 can't vectorize.
+ */
+public class SimdBenchmark {
+    private static final int LENGTH = 4096;
+    private static final int WARMUP_RUNS = 20_000;
+    private static final int RUNS = 100_000;
+
+    public static void main(String[] args) {
+        float[] samples = new float[LENGTH];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = ThreadLocalRandom.current().nextFloat(-1f, 1f);
+        }
+        System.out.println("Comparing " + SampleOps.SCALAR.name() + " with " + SampleOps.PREFERRED.name()
+                + ", " + LENGTH + " samples per run");
+
+        compare("add", ops -> {
+            float[] dst = new float[LENGTH];
+            return () -> ops.add(dst, 0, samples, 0, LENGTH, 0.5f);
+        }, null);
+        compare("multiplyAdd", ops -> {
+            float[] dst = new float[LENGTH];
+            return () -> ops.multiplyAdd(dst, 0, samples, 0, samples, 0, LENGTH, 0.5f);
+        }, null);
+        compare("scale", ops -> {
+            float[] dst = samples.clone();
+            return () -> ops.scale(dst, 0, LENGTH, -1f);
+        }, null);
+
+        float[][] sineResults = new float[2][LENGTH];
+        compare("sine", ops -> {
+            float[] out = sineResults[ops == SampleOps.SCALAR ? 0 : 1];
+            return () -> ops.sine(out, 0, LENGTH, 0.1f, 0.0123f, 0.9f, SinePolynomial.HIGH);
+        }, () -> Arrays.equals(sineResults[0], sineResults[1]));
+
+        byte[][] encode16Results = new byte[2][LENGTH * 2];
+        compare("encode16", ops -> {
+            byte[] out = encode16Results[ops == SampleOps.SCALAR ? 0 : 1];
+            return () -> ops.encode16(samples, 0, LENGTH, out, 0, false);
+        }, () -> Arrays.equals(encode16Results[0], encode16Results[1]));
+
+        byte[][] encode24Results = new byte[2][LENGTH * 3];
+        compare("encode24", ops -> {
+            byte[] out = encode24Results[ops == SampleOps.SCALAR ? 0 : 1];
+            return () -> ops.encode24(samples, 0, LENGTH, out, 0, false);
+        }, () -> Arrays.equals(encode24Results[0], encode24Results[1]));
+    }
+
+    private interface TaskFactory {
+        Runnable create(SampleOps ops);
+    }
+
+    private interface Check {
+        boolean sameResults();
+    }
+
+    private static void compare(String name, TaskFactory factory, Check check) {
+        Benchmark.Result scalar = new Benchmark(name + " scalar", WARMUP_RUNS, RUNS).run(factory.create(SampleOps.SCALAR));
+        Benchmark.Result simd = new Benchmark(name + " simd", WARMUP_RUNS, RUNS).run(factory.create(SampleOps.PREFERRED));
+        System.out.println(scalar);
+        System.out.println(simd);
+        System.out.printf("  speedup: %.2fx%s%n", scalar.nanosPerRun() / simd.nanosPerRun(),
+                check == null ? "" : check.sameResults() ? ", identical results" : ", RESULTS DIFFER!");
+    }
+}
@@ -0,0 +1,40 @@
+package net.earomc.synthesizer.diagnostics;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event with the statistics of one rendered block, committed by {@link net.earomc.synthesizer.metrics.RenderMetrics}.
+ * Disabled by default, recorded with e.g.
+ * {@code -XX:StartFlightRecording:settings=default,+net.earomc.synthesizer.BlockStats#enabled=true,filename=render.jfr}
+ * or any recording that enables it.
+ * <p>
+ * When the event is disabled, creating it and checking {@link #isEnabled()} is optimized away by the JIT.
+ */
+@Name("net.earomc.synthesizer.BlockStats")
+@Label("Block Stats")
+@Category({"EaroSynthesizer", "Rendering"})
+@Description("Render time of an audio block compared to its real time deadline")
+@StackTrace(false)
+@Enabled(false)
+public class BlockStatsEvent extends Event {
+    @Label("Source")
+    @Description("Name the render metrics were registered with")
+    public String source;
+
+    @Label("Render Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long renderTime;
+
+    @Label("Deadline")
+    @Description("How long the block takes to play")
+    @Timespan(Timespan.NANOSECONDS)
+    public long deadline;
+
+    @Label("DSP Load")
+    @Description("Render time in percent of the deadline")
+    public double dspLoadPercent;
+
+    @Label("Xruns")
+    @Description("Output underruns so far")
+    public long xruns;
+}
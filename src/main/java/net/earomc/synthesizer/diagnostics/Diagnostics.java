@@ -0,0 +1,352 @@
+package net.earomc.synthesizer.diagnostics;
+
+import net.earomc.synthesizer.EaroSynthesizer;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Structured diagnostic events that can be recorded on the render thread without any I/O.
+ * <p>
+ * Every kind of event is declared once as an {@link EventType} with a name, a level, numeric fields and a minimum
+ * interval between two events:
+ * <pre>{@code private static final Diagnostics.EventType SWEEP = Diagnostics.getDefault()
+ *         .eventType("fm-sweep", Level.FINE, Duration.ofMillis(100), "freq", "periodSeconds");
+ * ...
+ * SWEEP.record(freq, periodSeconds);}</pre>
+ * Recording an event below the level of the diagnostics costs one volatile read. An event within the interval of the
+ * last one is only counted. Everything else is copied into a preallocated ring of slots, without locks or
+ * allocations, and a background thread hands the events to the sink every {@link #DEFAULT_FLUSH_MILLIS} ms.
+ * If the ring is full, new events are dropped and counted.
+ * <p>
+ * The default diagnostics log the events through {@link EaroSynthesizer#LOGGER}. Their level is read from the system
+ * property {@value #LEVEL_PROPERTY}, INFO if it isn't set, e.g. {@code -Dearosynth.diagnostics=FINE}.
+ */
+public class Diagnostics implements Closeable {
+    public static final String LEVEL_PROPERTY = "earosynth.diagnostics";
+    public static final int DEFAULT_CAPACITY = 1 << 12;
+    public static final long DEFAULT_FLUSH_MILLIS = 250;
+    public static final int MAX_FIELDS = 4;
+
+    private static final class DefaultHolder {
+        static final Diagnostics DIAGNOSTICS = createDefault();
+    }
+
+    /**
+     * A recorded event, handed to the sink on the flushing thread.
+     *
+     * @param nanoTime   {@link System#nanoTime()} when the event was recorded.
+     * @param values     one value per field of the type.
+     * @param suppressed events of the same type that were suppressed by the rate limit since the last recorded one.
+     */
+    public record Event(EventType type, long nanoTime, double[] values, long suppressed) {
+        /**
+         * @return e.g. {@code fm-sweep freq=440 periodSeconds=0.00227 (12 suppressed)}
+         */
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(type.getName());
+            for (int i = 0; i < values.length; i++) {
+                builder.append(' ').append(type.fields[i]).append('=').append(format(values[i]));
+            }
+            if (suppressed > 0) builder.append(" (").append(suppressed).append(" suppressed)");
+            return builder.toString();
+        }
+
+        private static String format(double value) {
+            if (value == (long) value) return Long.toString((long) value);
+            return String.format(Locale.ROOT, "%.6g", value);
+        }
+    }
+
+    /**
+     * A kind of event. Created with {@link #eventType}, usually once per class in a static field.
+     */
+    public final class EventType {
+        private final String name;
+        private final Level level;
+        private final String[] fields;
+        private final long minIntervalNanos;
+        // the earliest time the next event is recorded
+        private final AtomicLong nextNanos = new AtomicLong(System.nanoTime());
+        private final LongAdder suppressed = new LongAdder();
+
+        private EventType(String name, Level level, long minIntervalNanos, String[] fields) {
+            this.name = name;
+            this.level = level;
+            this.minIntervalNanos = minIntervalNanos;
+            this.fields = fields;
+        }
+
+        /**
+         * @return whether events of this type are recorded at the current level. Guard anything that is needed only
+         * for the event with this, like computing its values.
+         */
+        public boolean isEnabled() {
+            return level.intValue() >= threshold;
+        }
+
+        public void record() {
+            record(0, 0, 0, 0, 0);
+        }
+
+        public void record(double value) {
+            record(1, value, 0, 0, 0);
+        }
+
+        public void record(double value1, double value2) {
+            record(2, value1, value2, 0, 0);
+        }
+
+        public void record(double value1, double value2, double value3) {
+            record(3, value1, value2, value3, 0);
+        }
+
+        public void record(double value1, double value2, double value3, double value4) {
+            record(4, value1, value2, value3, value4);
+        }
+
+        private void record(int valueCount, double value1, double value2, double value3, double value4) {
+            if (valueCount != fields.length)
+                throw new IllegalArgumentException(name + " has " + fields.length + " field(s), got " + valueCount + " value(s)");
+            if (!isEnabled() || !acquire()) return;
+            publish(this, value1, value2, value3, value4);
+        }
+
+        // the rate limit, at most one event per interval over all threads
+        private boolean acquire() {
+            if (minIntervalNanos == 0) return true;
+            long now = System.nanoTime();
+            long next = nextNanos.get();
+            if (now - next < 0 || !nextNanos.compareAndSet(next, now + minIntervalNanos)) {
+                suppressed.increment();
+                return false;
+            }
+            return true;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Level getLevel() {
+            return level;
+        }
+
+        public String[] getFields() {
+            return fields.clone();
+        }
+
+        /**
+         * @return events suppressed by the rate limit that haven't been reported with a recorded event yet.
+         */
+        public long getSuppressedCount() {
+            return suppressed.sum();
+        }
+    }
+
+    private final Consumer<Event> sink;
+    private final int mask;
+    private final EventType[] types;
+    private final long[] nanoTimes;
+    private final long[] suppressedCounts;
+    private final double[] values;
+    // the sequence number + 1 of the event in each slot once it is completely written
+    private final AtomicLongArray published;
+    // events claimed by recording threads and handed to the sink so far
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long flushed;
+    private final LongAdder dropped = new LongAdder();
+    private long reportedDropped;
+    private final Thread flusher;
+
+    private volatile int threshold;
+    private volatile boolean closed;
+
+    /**
+     * @param capacity    number of events the ring holds, rounded up to a power of two.
+     * @param flushMillis how often the events are handed to the sink.
+     * @param sink        receives the events on the flushing thread.
+     */
+    public Diagnostics(Level level, int capacity, long flushMillis, Consumer<Event> sink) {
+        if (capacity < 1 || capacity > 1 << 24)
+            throw new IllegalArgumentException("Illegal value for capacity: " + capacity + "! Has to be between 1 and " + (1 << 24));
+        if (flushMillis < 1)
+            throw new IllegalArgumentException("Illegal value for flushMillis: " + flushMillis + "! Has to be at least 1");
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.sink = sink;
+        this.mask = size - 1;
+        this.types = new EventType[size];
+        this.nanoTimes = new long[size];
+        this.suppressedCounts = new long[size];
+        this.values = new double[size * MAX_FIELDS];
+        this.published = new AtomicLongArray(size);
+        setLevel(level);
+
+        long flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.flusher = new Thread(() -> {
+            while (!closed) {
+                LockSupport.parkNanos(flushNanos);
+                flush();
+            }
+        }, "Diagnostics flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * @return diagnostics logging through {@link EaroSynthesizer#LOGGER} at the level of the system property
+     * {@value #LEVEL_PROPERTY}. Whatever is left in the ring is flushed when the JVM shuts down.
+     */
+    public static Diagnostics getDefault() {
+        return DefaultHolder.DIAGNOSTICS;
+    }
+
+    private static Diagnostics createDefault() {
+        Level level;
+        try {
+            level = Level.parse(System.getProperty(LEVEL_PROPERTY, "INFO").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            EaroSynthesizer.LOGGER.warning(() -> "Illegal value for " + LEVEL_PROPERTY + ": " + e.getMessage() + "! Using INFO");
+            level = Level.INFO;
+        }
+        Diagnostics diagnostics = new Diagnostics(level, DEFAULT_CAPACITY, DEFAULT_FLUSH_MILLIS, Diagnostics::log);
+        Runtime.getRuntime().addShutdownHook(new Thread(diagnostics::flush, "Diagnostics shutdown flush"));
+        return diagnostics;
+    }
+
+    // the event passed the level of the diagnostics, so it is logged even if it is finer than the logger shows
+    private static void log(Event event) {
+        Level level = event.type().getLevel();
+        if (EaroSynthesizer.LOGGER.isLoggable(level)) {
+            EaroSynthesizer.LOGGER.log(level, event::toString);
+        } else {
+            EaroSynthesizer.LOGGER.info(() -> "[" + level + "] " + event);
+        }
+    }
+
+    /**
+     * Declares a kind of event.
+     *
+     * @param minInterval minimum time between two recorded events of this type, zero for no rate limit.
+     * @param fields      names of the values of the events, at most {@value #MAX_FIELDS}.
+     */
+    public EventType eventType(String name, Level level, Duration minInterval, String... fields) {
+        if (fields.length > MAX_FIELDS)
+            throw new IllegalArgumentException("Illegal number of fields: " + fields.length + "! Can be at most " + MAX_FIELDS);
+        if (minInterval.isNegative())
+            throw new IllegalArgumentException("Illegal value for minInterval: " + minInterval + "! Cannot be negative");
+        return new EventType(name, level, minInterval.toNanos(), fields.clone());
+    }
+
+    private void publish(EventType type, double value1, double value2, double value3, double value4) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - flushed > mask) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & mask;
+        types[slot] = type;
+        nanoTimes[slot] = System.nanoTime();
+        suppressedCounts[slot] = type.suppressed.sumThenReset();
+        int valueIndex = slot * MAX_FIELDS;
+        values[valueIndex] = value1;
+        values[valueIndex + 1] = value2;
+        values[valueIndex + 2] = value3;
+        values[valueIndex + 3] = value4;
+        // publishes the slot to the flusher
+        published.set(slot, sequence + 1);
+    }
+
+    /**
+     * Hands all completely recorded events to the sink. Called regularly by the flushing thread,
+     * can be called by anyone to see the events right away.
+     *
+     * @return the number of events handed to the sink.
+     */
+    public synchronized int flush() {
+        long next = flushed;
+        int count = 0;
+        while (published.get((int) next & mask) == next + 1) {
+            int slot = (int) next & mask;
+            EventType type = types[slot];
+            int valueIndex = slot * MAX_FIELDS;
+            Event event = new Event(type, nanoTimes[slot],
+                    Arrays.copyOfRange(values, valueIndex, valueIndex + type.fields.length), suppressedCounts[slot]);
+            types[slot] = null;
+            // frees the slot for the recording threads
+            flushed = ++next;
+            deliver(event);
+            count++;
+        }
+        long droppedTotal = dropped.sum();
+        if (droppedTotal > reportedDropped) {
+            long newlyDropped = droppedTotal - reportedDropped;
+            reportedDropped = droppedTotal;
+            EaroSynthesizer.LOGGER.warning(() -> newlyDropped + " diagnostic events dropped, the ring of "
+                    + (mask + 1) + " events was full");
+        }
+        return count;
+    }
+
+    private void deliver(Event event) {
+        try {
+            sink.accept(event);
+        } catch (RuntimeException e) {
+            // a broken sink must not stop the flusher
+            EaroSynthesizer.LOGGER.warning(() -> "Diagnostics sink failed on " + event.type().getName() + ": " + e);
+        }
+    }
+
+    /**
+     * Sets which events are recorded: those at the given level or above. {@link Level#OFF} records nothing.
+     */
+    public void setLevel(Level level) {
+        this.threshold = level.intValue();
+    }
+
+    /**
+     * @return events dropped because the ring was full.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return recorded events that haven't been handed to the sink yet.
+     */
+    public int getPendingCount() {
+        return (int) (claimed.get() - flushed);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Stops the flushing thread and flushes what is left.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
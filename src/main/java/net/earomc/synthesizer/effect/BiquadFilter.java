@@ -0,0 +1,204 @@
+package net.earomc.synthesizer.effect;
+
+/**
+ * A second order IIR filter ("biquad") using the coefficient formulas from Robert Bristow-Johnson's
+ * <a href="https://www.w3.org/TR/audio-eq-cookbook/">Audio EQ Cookbook</a>.
+ * <p>
+ * Changing the cutoff or Q does not jump to the new coefficients. The coefficients glide towards the new values
+ * with a one-pole smoother, which avoids zipper noise and clicks when the filter is swept.
+ * When the coefficients have settled the filter falls back to a loop without smoothing.
+ * <p>
+ * Uses the transposed direct form II, which only needs two state variables.
+ */
+public class BiquadFilter implements Effect {
+
+    public enum Type {
+        LOW_PASS,
+        HIGH_PASS,
+        /**
+         * Band-pass with a constant peak gain of 0 dB.
+         */
+        BAND_PASS
+    }
+
+    private static final float SETTLED_THRESHOLD = 1e-7f;
+
+    private final float sampleRate;
+    private Type type;
+    private float cutoffFreq;
+    private float q;
+    private float smoothingCoefficient;
+
+    // current coefficients (already divided by a0)
+    private float b0, b1, b2, a1, a2;
+    // coefficients the current ones are gliding towards
+    private float targetB0, targetB1, targetB2, targetA1, targetA2;
+    private boolean smoothing;
+
+    // filter state
+    private float z1, z2;
+
+    /**
+     * @param type       the filter response.
+     * @param sampleRate sample rate of the processed audio in Hz.
+     * @param cutoffFreq cutoff frequency (or center frequency for {@link Type#BAND_PASS}) in Hz.
+     * @param q          quality factor. 0.7071 gives a Butterworth response for low and high pass.
+     */
+    public BiquadFilter(Type type, float sampleRate, float cutoffFreq, float q) {
+        this.type = type;
+        this.sampleRate = sampleRate;
+        this.cutoffFreq = cutoffFreq;
+        this.q = q;
+        setSmoothingTime(0.01f);
+        calcTargetCoefficients();
+        snapToTarget();
+    }
+
+    /**
+     * Sets how long the coefficients take to glide to new values.
+     *
+     * @param seconds time constant of the smoother. 0 disables smoothing.
+     */
+    public void setSmoothingTime(float seconds) {
+        if (seconds < 0) throw new IllegalArgumentException("Smoothing time cannot be negative: " + seconds);
+        smoothingCoefficient = seconds == 0 ? 1f : (float) (1 - Math.exp(-1 / (seconds * sampleRate)));
+    }
+
+    public void setCutoffFreq(float cutoffFreq) {
+        this.cutoffFreq = cutoffFreq;
+        calcTargetCoefficients();
+    }
+
+    public void setQ(float q) {
+        this.q = q;
+        calcTargetCoefficients();
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+        calcTargetCoefficients();
+    }
+
+    public float getCutoffFreq() {
+        return cutoffFreq;
+    }
+
+    public float getQ() {
+        return q;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    private void calcTargetCoefficients() {
+        if (q <= 0) throw new IllegalArgumentException("Illegal value for q: " + q + "! Has to be bigger than 0");
+        // keep the cutoff safely between 0 Hz and the nyquist frequency, the formulas break down at the edges.
+        double freq = Math.max(1, Math.min(cutoffFreq, sampleRate * 0.49));
+        double w0 = 2 * Math.PI * freq / sampleRate;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * q);
+
+        double b0, b1, b2;
+        switch (type) {
+            case LOW_PASS -> {
+                b0 = (1 - cos) / 2;
+                b1 = 1 - cos;
+                b2 = (1 - cos) / 2;
+            }
+            case HIGH_PASS -> {
+                b0 = (1 + cos) / 2;
+                b1 = -(1 + cos);
+                b2 = (1 + cos) / 2;
+            }
+            case BAND_PASS -> {
+                b0 = alpha;
+                b1 = 0;
+                b2 = -alpha;
+            }
+            default -> throw new IllegalStateException("Unknown filter type " + type);
+        }
+        double a0 = 1 + alpha;
+        targetB0 = (float) (b0 / a0);
+        targetB1 = (float) (b1 / a0);
+        targetB2 = (float) (b2 / a0);
+        targetA1 = (float) (-2 * cos / a0);
+        targetA2 = (float) ((1 - alpha) / a0);
+        smoothing = true;
+    }
+
+    private void snapToTarget() {
+        b0 = targetB0;
+        b1 = targetB1;
+        b2 = targetB2;
+        a1 = targetA1;
+        a2 = targetA2;
+        smoothing = false;
+    }
+
+    @Override
+    public void process(float[] block, int offset, int length) {
+        if (smoothing) {
+            processSmoothing(block, offset, length);
+        } else {
+            processSettled(block, offset, length);
+        }
+    }
+
+    private void processSettled(float[] block, int offset, int length) {
+        float b0 = this.b0, b1 = this.b1, b2 = this.b2, a1 = this.a1, a2 = this.a2;
+        float z1 = this.z1, z2 = this.z2;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            float in = block[i];
+            float out = b0 * in + z1;
+            z1 = b1 * in - a1 * out + z2;
+            z2 = b2 * in - a2 * out;
+            block[i] = out;
+        }
+        this.z1 = z1;
+        this.z2 = z2;
+    }
+
+    private void processSmoothing(float[] block, int offset, int length) {
+        float k = smoothingCoefficient;
+        float b0 = this.b0, b1 = this.b1, b2 = this.b2, a1 = this.a1, a2 = this.a2;
+        float z1 = this.z1, z2 = this.z2;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            b0 += (targetB0 - b0) * k;
+            b1 += (targetB1 - b1) * k;
+            b2 += (targetB2 - b2) * k;
+            a1 += (targetA1 - a1) * k;
+            a2 += (targetA2 - a2) * k;
+
+            float in = block[i];
+            float out = b0 * in + z1;
+            z1 = b1 * in - a1 * out + z2;
+            z2 = b2 * in - a2 * out;
+            block[i] = out;
+        }
+        this.b0 = b0;
+        this.b1 = b1;
+        this.b2 = b2;
+        this.a1 = a1;
+        this.a2 = a2;
+        this.z1 = z1;
+        this.z2 = z2;
+
+        if (Math.abs(targetB0 - b0) < SETTLED_THRESHOLD
+                && Math.abs(targetB1 - b1) < SETTLED_THRESHOLD
+                && Math.abs(targetB2 - b2) < SETTLED_THRESHOLD
+                && Math.abs(targetA1 - a1) < SETTLED_THRESHOLD
+                && Math.abs(targetA2 - a2) < SETTLED_THRESHOLD) {
+            snapToTarget();
+        }
+    }
+
+    @Override
+    public void reset() {
+        z1 = 0;
+        z2 = 0;
+        snapToTarget();
+    }
+}
@@ -0,0 +1,93 @@
+package net.earomc.synthesizer.effect;
+
+import java.util.Arrays;
+
+/**
+ * A feedback delay ("echo") backed by a ring buffer that is allocated once for the maximum delay time.
+ */
+public class Delay implements Effect {
+    private final float[] ringBuffer;
+    private final float sampleRate;
+    private int writeIndex;
+
+    private int delaySamples;
+    private float feedback;
+    private float mix;
+
+    /**
+     * @param sampleRate      sample rate of the processed audio in Hz.
+     * @param maxDelaySeconds the longest delay time that can be set later on. Determines the size of the ring buffer.
+     * @param delaySeconds    the delay time.
+     * @param feedback        how much of the delayed signal is fed back into the delay line. Has to be between 0 and 1 (exclusive).
+     * @param mix             dry/wet mix. 0 = only the dry signal, 1 = only the delayed signal.
+     */
+    public Delay(float sampleRate, float maxDelaySeconds, float delaySeconds, float feedback, float mix) {
+        this.sampleRate = sampleRate;
+        this.ringBuffer = new float[(int) Math.ceil(maxDelaySeconds * sampleRate) + 1];
+        setDelaySeconds(delaySeconds);
+        setFeedback(feedback);
+        setMix(mix);
+    }
+
+    public void setDelaySeconds(float delaySeconds) {
+        int samples = Math.round(delaySeconds * sampleRate);
+        if (samples < 1 || samples >= ringBuffer.length)
+            throw new IllegalArgumentException("Illegal delay time: " + delaySeconds + "s! Has to be between "
+                    + (1 / sampleRate) + "s and the max delay time of " + ((ringBuffer.length - 1) / sampleRate) + "s");
+        this.delaySamples = samples;
+    }
+
+    public void setFeedback(float feedback) {
+        if (feedback < 0 || feedback >= 1)
+            throw new IllegalArgumentException("Illegal value for feedback: " + feedback + "! Has to be a value between 0 and 1 (exclusive)");
+        this.feedback = feedback;
+    }
+
+    public void setMix(float mix) {
+        if (mix < 0 || mix > 1)
+            throw new IllegalArgumentException("Illegal value for mix: " + mix + "! Has to be a value between 0 and 1");
+        this.mix = mix;
+    }
+
+    public float getDelaySeconds() {
+        return delaySamples / sampleRate;
+    }
+
+    public float getFeedback() {
+        return feedback;
+    }
+
+    public float getMix() {
+        return mix;
+    }
+
+    @Override
+    public void process(float[] block, int offset, int length) {
+        float[] ringBuffer = this.ringBuffer;
+        int size = ringBuffer.length;
+        int writeIndex = this.writeIndex;
+        int readIndex = writeIndex - delaySamples;
+        if (readIndex < 0) readIndex += size;
+        float feedback = this.feedback;
+        float wet = mix;
+        float dry = 1 - mix;
+
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            float in = block[i];
+            float delayed = ringBuffer[readIndex];
+            ringBuffer[writeIndex] = in + delayed * feedback;
+            block[i] = in * dry + delayed * wet;
+
+            if (++writeIndex == size) writeIndex = 0;
+            if (++readIndex == size) readIndex = 0;
+        }
+        this.writeIndex = writeIndex;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(ringBuffer, 0f);
+        writeIndex = 0;
+    }
+}
@@ -0,0 +1,29 @@
+package net.earomc.synthesizer.effect;
+
+/**
+ * An audio effect that processes a block of samples in place.
+ * <p>
+ * Implementations have to allocate everything they need (delay lines, filter state, ...) up front.
+ * {@link #process(float[], int, int)} is called once per block on the render thread and must not allocate,
+ * lock or do any I/O.
+ */
+public interface Effect {
+
+    /**
+     * Processes the given section of the block in place.
+     *
+     * @param block  the samples to process, the result is written back into the same array.
+     * @param offset index of the first sample to process.
+     * @param length number of samples to process.
+     */
+    void process(float[] block, int offset, int length);
+
+    /**
+     * Clears the internal state (filter memory, delay lines, ...) so the effect sounds like it was just created.
+     */
+    void reset();
+
+    default void process(float[] block) {
+        process(block, 0, block.length);
+    }
+}
@@ -0,0 +1,47 @@
+package net.earomc.synthesizer.effect;
+
+import java.util.Arrays;
+
+/**
+ * Runs a list of effects one after another on the same block.
+ * The chain itself is an {@link Effect}, so chains can be nested.
+ */
+public class EffectChain implements Effect {
+    private Effect[] effects = new Effect[0];
+
+    public EffectChain(Effect... effects) {
+        append(effects);
+    }
+
+    /**
+     * Appends effects to the end of the chain. Not meant to be called while the chain is being processed.
+     */
+    public EffectChain append(Effect... effects) {
+        Effect[] result = Arrays.copyOf(this.effects, this.effects.length + effects.length);
+        System.arraycopy(effects, 0, result, this.effects.length, effects.length);
+        this.effects = result;
+        return this;
+    }
+
+    public void clear() {
+        effects = new Effect[0];
+    }
+
+    public int size() {
+        return effects.length;
+    }
+
+    @Override
+    public void process(float[] block, int offset, int length) {
+        for (Effect effect : effects) {
+            effect.process(block, offset, length);
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (Effect effect : effects) {
+            effect.reset();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package net.earomc.synthesizer.effect;
+
+import java.util.Arrays;
+
+/**
+ * A reverb built from a feedback delay network (FDN) with 8 delay lines.
+ * <p>
+ * The outputs of all delay lines are mixed with a Hadamard matrix and fed back into the delay lines.
+ * The Hadamard matrix is orthogonal (energy preserving), so the decay time is only controlled by the per line
+ * gains, and it can be applied with 24 additions instead of 64 multiplications.
+ * Every delay line has a one-pole low pass in its feedback path, which makes high frequencies die out faster
+ * like in a real room.
+ * <p>
+ * See <a href="https://ccrma.stanford.edu/~jos/pasp/Feedback_Delay_Networks_FDN.html">Feedback Delay Networks</a>
+ * by Julius O. Smith.
+ */
+public class FdnReverb implements Effect {
+    private static final int LINES = 8;
+    // mutually prime-ish delay line lengths in milliseconds, so the echoes of the lines don't line up.
+    private static final float[] LINE_LENGTHS_MS = {29.7f, 37.1f, 41.1f, 43.7f, 47.9f, 53.3f, 59.9f, 67.1f};
+    // normalizes the 8x8 Hadamard matrix, 1 / sqrt(8)
+    private static final float HADAMARD_SCALE = (float) (1 / Math.sqrt(LINES));
+
+    private final float sampleRate;
+    private final float[][] lines = new float[LINES][];
+    private final int[] indices = new int[LINES];
+    private final float[] gains = new float[LINES];
+    private final float[] lowPassStates = new float[LINES];
+    private final float[] lineOutputs = new float[LINES];
+
+    private float decaySeconds;
+    private float damping;
+    private float mix;
+
+    /**
+     * @param sampleRate   sample rate of the processed audio in Hz.
+     * @param decaySeconds time it takes for the reverb tail to decay by 60 dB (RT60).
+     * @param damping      how much the high frequencies are damped on each pass through the network. Between 0 and 1 (exclusive).
+     * @param mix          dry/wet mix. 0 = only the dry signal, 1 = only the reverb.
+     */
+    public FdnReverb(float sampleRate, float decaySeconds, float damping, float mix) {
+        this.sampleRate = sampleRate;
+        for (int i = 0; i < LINES; i++) {
+            lines[i] = new float[Math.max(1, Math.round(LINE_LENGTHS_MS[i] * sampleRate / 1000))];
+        }
+        setDecaySeconds(decaySeconds);
+        setDamping(damping);
+        setMix(mix);
+    }
+
+    public void setDecaySeconds(float decaySeconds) {
+        if (decaySeconds <= 0)
+            throw new IllegalArgumentException("Illegal decay time: " + decaySeconds + "s! Has to be bigger than 0");
+        this.decaySeconds = decaySeconds;
+        for (int i = 0; i < LINES; i++) {
+            // each pass through a line of length L has to lose L / (decaySeconds * sampleRate) of the total 60 dB
+            gains[i] = (float) Math.pow(10, -3 * lines[i].length / (decaySeconds * sampleRate));
+        }
+    }
+
+    public void setDamping(float damping) {
+        if (damping < 0 || damping >= 1)
+            throw new IllegalArgumentException("Illegal value for damping: " + damping + "! Has to be a value between 0 and 1 (exclusive)");
+        this.damping = damping;
+    }
+
+    public void setMix(float mix) {
+        if (mix < 0 || mix > 1)
+            throw new IllegalArgumentException("Illegal value for mix: " + mix + "! Has to be a value between 0 and 1");
+        this.mix = mix;
+    }
+
+    public float getDecaySeconds() {
+        return decaySeconds;
+    }
+
+    public float getDamping() {
+        return damping;
+    }
+
+    public float getMix() {
+        return mix;
+    }
+
+    @Override
+    public void process(float[] block, int offset, int length) {
+        float[][] lines = this.lines;
+        int[] indices = this.indices;
+        float[] gains = this.gains;
+        float[] lowPassStates = this.lowPassStates;
+        float[] o = this.lineOutputs;
+        float damping = this.damping;
+        float undamped = 1 - damping;
+        float wet = mix * HADAMARD_SCALE;
+        float dry = 1 - mix;
+
+        int end = offset + length;
+        for (int s = offset; s < end; s++) {
+            float in = block[s];
+            float sum = 0;
+            for (int i = 0; i < LINES; i++) {
+                float lp = lines[i][indices[i]] * undamped + lowPassStates[i] * damping;
+                lowPassStates[i] = lp;
+                o[i] = lp;
+                sum += lp;
+            }
+
+            hadamard8(o);
+
+            for (int i = 0; i < LINES; i++) {
+                float[] line = lines[i];
+                int index = indices[i];
+                line[index] = in + o[i] * HADAMARD_SCALE * gains[i];
+                indices[i] = ++index == line.length ? 0 : index;
+            }
+            block[s] = in * dry + sum * wet;
+        }
+    }
+
+    /**
+     * Unnormalized in-place fast Walsh-Hadamard transform of 8 values.
+     */
+    private static void hadamard8(float[] v) {
+        for (int half = 1; half < LINES; half <<= 1) {
+            for (int i = 0; i < LINES; i += half << 1) {
+                for (int j = i; j < i + half; j++) {
+                    float a = v[j];
+                    float b = v[j + half];
+                    v[j] = a + b;
+                    v[j + half] = a - b;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (float[] line : lines) {
+            Arrays.fill(line, 0f);
+        }
+        Arrays.fill(indices, 0);
+        Arrays.fill(lowPassStates, 0f);
+    }
+}
@@ -0,0 +1,166 @@
+package net.earomc.synthesizer.effect;
+
+import java.util.Arrays;
+
+/**
+ * A peak limiter that looks ahead into the signal, so the gain is already reduced when a peak arrives.
+ * <p>
+ * For every sample the gain needed to keep it below the ceiling is computed. That gain is recovered
+ * with an exponential release, held at its minimum over the lookahead window and then smoothed with a moving
+ * average of the same length. Because the signal is delayed by the lookahead time, the smoothed gain reaches
+ * the required value exactly when the peak comes out, without ever changing abruptly.
+ * <p>
+ * The output is delayed by {@link #getLatency()} samples.
+ */
+public class LookaheadLimiter implements Effect {
+    private final int lookahead;
+    private final int window;
+    private final float sampleRate;
+
+    private float ceiling;
+    private float releaseCoefficient;
+    private float releasedGain = 1;
+
+    // delays the signal by the lookahead time
+    private final float[] delayLine;
+    private int delayIndex;
+
+    // monotonic queue of (gain, sample position) pairs to get the minimum gain over the window in O(1)
+    private final float[] holdGains;
+    private final long[] holdPositions;
+    private int holdHead;
+    private int holdSize;
+    private long position;
+
+    // moving average of the held gain
+    private final float[] averageRing;
+    private int averageIndex;
+    private double averageSum;
+
+    /**
+     * @param sampleRate       sample rate of the processed audio in Hz.
+     * @param lookaheadSeconds how far the limiter looks ahead. Also the latency of the limiter.
+     * @param releaseSeconds   time constant of the gain recovery after a peak.
+     * @param ceiling          the maximum absolute value of the output, between 0 and 1.
+     */
+    public LookaheadLimiter(float sampleRate, float lookaheadSeconds, float releaseSeconds, float ceiling) {
+        this.sampleRate = sampleRate;
+        this.lookahead = Math.max(1, Math.round(lookaheadSeconds * sampleRate));
+        this.window = lookahead + 1;
+        this.delayLine = new float[lookahead];
+        this.holdGains = new float[window];
+        this.holdPositions = new long[window];
+        this.averageRing = new float[window];
+        setReleaseSeconds(releaseSeconds);
+        setCeiling(ceiling);
+        reset();
+    }
+
+    public LookaheadLimiter(float sampleRate) {
+        this(sampleRate, 0.005f, 0.1f, 0.98f);
+    }
+
+    public void setCeiling(float ceiling) {
+        if (ceiling <= 0 || ceiling > 1)
+            throw new IllegalArgumentException("Illegal value for ceiling: " + ceiling + "! Has to be a value between 0 (exclusive) and 1");
+        this.ceiling = ceiling;
+    }
+
+    public void setReleaseSeconds(float releaseSeconds) {
+        if (releaseSeconds <= 0)
+            throw new IllegalArgumentException("Illegal release time: " + releaseSeconds + "s! Has to be bigger than 0");
+        this.releaseCoefficient = (float) (1 - Math.exp(-1 / (releaseSeconds * sampleRate)));
+    }
+
+    public float getCeiling() {
+        return ceiling;
+    }
+
+    /**
+     * @return by how many samples the output is delayed.
+     */
+    public int getLatency() {
+        return lookahead;
+    }
+
+    @Override
+    public void process(float[] block, int offset, int length) {
+        float ceiling = this.ceiling;
+        float releaseCoefficient = this.releaseCoefficient;
+        float inverseWindow = 1f / window;
+
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            float in = block[i];
+            float peak = Math.abs(in);
+            float gain = peak > ceiling ? ceiling / peak : 1f;
+
+            // the released gain may never be above the gain this sample needs
+            releasedGain = Math.min(gain, releasedGain + (1 - releasedGain) * releaseCoefficient);
+
+            float held = pushHold(releasedGain);
+
+            averageSum += held - averageRing[averageIndex];
+            averageRing[averageIndex] = held;
+            if (++averageIndex == window) {
+                averageIndex = 0;
+                resumAverage();
+            }
+
+            float delayed = delayLine[delayIndex];
+            delayLine[delayIndex] = in;
+            if (++delayIndex == lookahead) delayIndex = 0;
+
+            // the smoothed gain already keeps the sample at the ceiling, the clamp only catches rounding errors
+            float out = delayed * (float) (averageSum * inverseWindow);
+            block[i] = Math.max(-ceiling, Math.min(ceiling, out));
+        }
+    }
+
+    /**
+     * Recomputes the running sum from scratch once per window, so rounding errors can't pile up.
+     */
+    private void resumAverage() {
+        double sum = 0;
+        for (float value : averageRing) {
+            sum += value;
+        }
+        averageSum = sum;
+    }
+
+    /**
+     * Adds a gain to the window and returns the minimum gain in the window.
+     */
+    private float pushHold(float gain) {
+        // drop gains that left the window from the front first, so the queue never holds more than window entries
+        if (holdSize > 0 && holdPositions[holdHead] <= position - window) {
+            holdHead = (holdHead + 1) % window;
+            holdSize--;
+        }
+        // drop larger gains from the back, they can never be the minimum again
+        while (holdSize > 0) {
+            int back = (holdHead + holdSize - 1) % window;
+            if (holdGains[back] < gain) break;
+            holdSize--;
+        }
+        int tail = (holdHead + holdSize) % window;
+        holdGains[tail] = gain;
+        holdPositions[tail] = position;
+        holdSize++;
+        position++;
+        return holdGains[holdHead];
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(delayLine, 0f);
+        Arrays.fill(averageRing, 1f);
+        averageSum = window;
+        averageIndex = 0;
+        delayIndex = 0;
+        holdHead = 0;
+        holdSize = 0;
+        position = 0;
+        releasedGain = 1;
+    }
+}
@@ -0,0 +1,135 @@
+package net.earomc.synthesizer.granular;
+
+import net.earomc.synthesizer.simd.SampleOps;
+
+/**
+ * A fixed number of grains, stored in parallel arrays and reused, so starting a grain never allocates.
+ * <p>
+ * A grain plays a part of a {@link SampleBuffer} at some playback rate, multiplied by a window table.
+ * At a playback rate of exactly 1 and a whole sample start position the grain is added straight from the buffer,
+ * otherwise it is interpolated into a scratch buffer first. Either way the windowing and summing is one
+ * {@link SampleOps#multiplyAdd} call per grain and block.
+ */
+public class GrainPool {
+    private final int capacity;
+    private final SampleOps ops;
+    private final float[] scratch;
+
+    private final float[][] source;
+    private final float[][] window;
+    private final double[] position;
+    private final float[] step;
+    private final float[] amp;
+    // samples the grain has played so far, and in total
+    private final int[] age;
+    private final int[] length;
+    // samples to wait in the next block before the grain starts
+    private final int[] delay;
+
+    // active[0 .. activeCount) are the active grains, the rest of the array holds the free ones
+    private final int[] active;
+    private int activeCount;
+
+    public GrainPool(int capacity, int maxBlockSize, SampleOps ops) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Illegal value for capacity: " + capacity + "! Has to be at least 1");
+        this.capacity = capacity;
+        this.ops = ops;
+        this.scratch = new float[maxBlockSize];
+        this.source = new float[capacity][];
+        this.window = new float[capacity][];
+        this.position = new double[capacity];
+        this.step = new float[capacity];
+        this.amp = new float[capacity];
+        this.age = new int[capacity];
+        this.length = new int[capacity];
+        this.delay = new int[capacity];
+        this.active = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            active[i] = i;
+        }
+    }
+
+    /**
+     * Starts a grain. The caller has to make sure the grain stays within the buffer:
+     * {@code startPosition + step * window.length} must not be bigger than the length of the buffer.
+     *
+     * @param window the grain plays as many samples as the window has.
+     * @param delay  samples to wait in the next rendered block before the grain starts.
+     * @return false if all grains are in use.
+     */
+    public boolean start(SampleBuffer buffer, double startPosition, float step, float[] window, float amp, int delay) {
+        if (activeCount == capacity) return false;
+        int grain = active[activeCount++];
+        this.source[grain] = buffer.getSamples();
+        this.window[grain] = window;
+        this.position[grain] = startPosition;
+        this.step[grain] = step;
+        this.amp[grain] = amp;
+        this.age[grain] = 0;
+        this.length[grain] = window.length;
+        this.delay[grain] = delay;
+        return true;
+    }
+
+    /**
+     * Renders a block of all active grains and adds it to out. Grains that have finished are freed.
+     */
+    public void render(float[] out, int offset, int blockLength) {
+        int i = 0;
+        while (i < activeCount) {
+            int grain = active[i];
+            int start = Math.min(delay[grain], blockLength);
+            int count = Math.min(blockLength - start, length[grain] - age[grain]);
+            if (count > 0) {
+                renderGrain(grain, out, offset + start, count);
+            }
+            delay[grain] -= start;
+
+            if (age[grain] >= length[grain]) {
+                // swap the finished grain with the last active one, which is rendered next
+                active[i] = active[--activeCount];
+                active[activeCount] = grain;
+                source[grain] = null;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private void renderGrain(int grain, float[] out, int outOffset, int count) {
+        float[] samples = source[grain];
+        double pos = position[grain];
+        float grainStep = step[grain];
+        int index = (int) pos;
+        if (grainStep == 1f && index == pos) {
+            ops.multiplyAdd(out, outOffset, samples, index, window[grain], age[grain], count, amp[grain]);
+        } else {
+            for (int i = 0; i < count; i++) {
+                double p = pos + (double) grainStep * i;
+                int sampleIndex = (int) p;
+                float fraction = (float) (p - sampleIndex);
+                float a = samples[sampleIndex];
+                scratch[i] = a + (samples[sampleIndex + 1] - a) * fraction;
+            }
+            ops.multiplyAdd(out, outOffset, scratch, 0, window[grain], age[grain], count, amp[grain]);
+        }
+        position[grain] = pos + (double) grainStep * count;
+        age[grain] += count;
+    }
+
+    public void clear() {
+        for (int i = 0; i < activeCount; i++) {
+            source[active[i]] = null;
+        }
+        activeCount = 0;
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
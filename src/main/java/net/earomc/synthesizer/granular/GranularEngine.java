@@ -0,0 +1,199 @@
+package net.earomc.synthesizer.granular;
+
+import net.earomc.synthesizer.simd.SampleOps;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.SplittableRandom;
+
+/**
+ * Granular synthesis: plays many short, windowed grains taken from a {@link SampleBuffer}.
+ * <p>
+ * Grains start at a fixed rate (density). Each one starts around the current position in the buffer,
+ * moved by a random amount up to the position jitter, and plays at the given pitch.
+ * With a density of d grains per second and a grain duration of t seconds, about d * t grains overlap,
+ * so lower the amp accordingly.
+ * <p>
+ * Rendering doesn't allocate or do any I/O. Changing the grain duration may compute a new window table once,
+ * so do that outside the render thread or use durations that were used before.
+ */
+public class GranularEngine {
+    private final float sampleRate;
+    private final GrainPool pool;
+    private final SplittableRandom random;
+
+    @Nullable
+    private SampleBuffer source;
+    private float density = 100;
+    private float grainDurationSeconds = 0.05f;
+    private float[] window;
+    private float position01;
+    private float positionJitterSeconds = 0.01f;
+    private float pitch = 1;
+    private float amp = 0.1f;
+
+    // output samples until the next grain starts, counted from the start of the next block
+    private double samplesUntilNextGrain;
+    private long startedGrains;
+    private long droppedGrains;
+
+    /**
+     * @param maxGrains size of the grain pool, see {@link #requiredGrains}. Grains that don't fit are dropped.
+     * @param seed      seed for the position jitter, the same seed gives the same output.
+     */
+    public GranularEngine(float sampleRate, int maxBlockSize, int maxGrains, long seed) {
+        this(sampleRate, maxBlockSize, maxGrains, seed, SampleOps.PREFERRED);
+    }
+
+    public GranularEngine(float sampleRate, int maxBlockSize, int maxGrains, long seed, SampleOps ops) {
+        this.sampleRate = sampleRate;
+        this.pool = new GrainPool(maxGrains, maxBlockSize, ops);
+        this.random = new SplittableRandom(seed);
+        this.window = WindowTable.hann(grainLength(grainDurationSeconds));
+    }
+
+    /**
+     * @return the pool size needed so no grains are dropped. Grains that end in a block are only freed at
+     * the end of it, so the grains started during one block are added to the overlapping ones.
+     */
+    public static int requiredGrains(float density, float grainDurationSeconds, float sampleRate, int blockSize) {
+        return (int) Math.ceil(density * (grainDurationSeconds + blockSize / sampleRate)) + 1;
+    }
+
+    /**
+     * Renders a block and adds it to out.
+     */
+    public void render(float[] out, int offset, int length) {
+        if (source != null && density > 0) {
+            double interval = sampleRate / density;
+            while (samplesUntilNextGrain < length) {
+                startGrain(source, (int) samplesUntilNextGrain);
+                samplesUntilNextGrain += interval;
+            }
+            samplesUntilNextGrain -= length;
+        }
+        pool.render(out, offset, length);
+    }
+
+    private void startGrain(SampleBuffer buffer, int delay) {
+        float step = pitch * buffer.getSampleRate() / sampleRate;
+        // the grain must not read past the last sample
+        double maxStart = buffer.getLength() - 1 - (double) step * window.length;
+        if (maxStart < 0) {
+            droppedGrains++;
+            return;
+        }
+        double start = position01 * (buffer.getLength() - 1);
+        if (positionJitterSeconds > 0) {
+            start += (random.nextDouble() * 2 - 1) * positionJitterSeconds * buffer.getSampleRate();
+        }
+        start = Math.max(0, Math.min(maxStart, start));
+        if (pool.start(buffer, start, step, window, amp, delay)) {
+            startedGrains++;
+        } else {
+            droppedGrains++;
+        }
+    }
+
+    private int grainLength(float durationSeconds) {
+        return Math.max(1, Math.round(durationSeconds * sampleRate));
+    }
+
+    public void setSource(@Nullable SampleBuffer source) {
+        this.source = source;
+    }
+
+    /**
+     * @param density grains started per second.
+     */
+    public void setDensity(float density) {
+        if (density < 0)
+            throw new IllegalArgumentException("Illegal value for density: " + density + "! Cannot be negative");
+        this.density = density;
+    }
+
+    public void setGrainDuration(float seconds) {
+        if (!(seconds > 0))
+            throw new IllegalArgumentException("Illegal value for grain duration: " + seconds + "! Has to be bigger than 0");
+        this.grainDurationSeconds = seconds;
+        this.window = WindowTable.hann(grainLength(seconds));
+    }
+
+    /**
+     * @param position01 where in the buffer grains start, from 0 (beginning) to 1 (end).
+     */
+    public void setPosition(float position01) {
+        if (position01 < 0 || position01 > 1)
+            throw new IllegalArgumentException("Illegal value for position: " + position01 + "! Has to be a value between 0 and 1");
+        this.position01 = position01;
+    }
+
+    public void setPositionJitter(float seconds) {
+        if (seconds < 0)
+            throw new IllegalArgumentException("Illegal value for position jitter: " + seconds + "! Cannot be negative");
+        this.positionJitterSeconds = seconds;
+    }
+
+    /**
+     * @param pitch playback rate of the grains, 1 is the original pitch, 2 an octave higher.
+     */
+    public void setPitch(float pitch) {
+        if (!(pitch > 0))
+            throw new IllegalArgumentException("Illegal value for pitch: " + pitch + "! Has to be bigger than 0");
+        this.pitch = pitch;
+    }
+
+    public void setAmp(float amp) {
+        if (amp < -1 || amp > 1)
+            throw new IllegalArgumentException("Illegal value for amp: " + amp + "! Has to be a value between -1 and 1");
+        this.amp = amp;
+    }
+
+    @Nullable
+    public SampleBuffer getSource() {
+        return source;
+    }
+
+    public float getDensity() {
+        return density;
+    }
+
+    public float getGrainDuration() {
+        return grainDurationSeconds;
+    }
+
+    public float getPosition() {
+        return position01;
+    }
+
+    public float getPositionJitter() {
+        return positionJitterSeconds;
+    }
+
+    public float getPitch() {
+        return pitch;
+    }
+
+    public float getAmp() {
+        return amp;
+    }
+
+    public int getActiveGrains() {
+        return pool.getActiveCount();
+    }
+
+    public long getStartedGrains() {
+        return startedGrains;
+    }
+
+    /**
+     * @return grains that couldn't start because the pool was full or the buffer too short.
+     */
+    public long getDroppedGrains() {
+        return droppedGrains;
+    }
+
+    public void reset() {
+        pool.clear();
+        samplesUntilNextGrain = 0;
+    }
+}
@@ -0,0 +1,62 @@
+package net.earomc.synthesizer.granular;
+
+/**
+ * Decoded mono audio in memory. Immutable once created.
+ * <p>
+ * The array has one extra sample at the end, a copy of the last one,
+ * so linear interpolation can read the sample after any position without a bounds check.
+ */
+public final class SampleBuffer {
+    private final String name;
+    private final float[] samples;
+    private final int length;
+    private final float sampleRate;
+
+    /**
+     * @param samples mono samples, copied.
+     */
+    public SampleBuffer(String name, float[] samples, float sampleRate) {
+        if (samples.length == 0) throw new IllegalArgumentException("Sample buffer " + name + " is empty");
+        this.name = name;
+        this.length = samples.length;
+        this.samples = new float[length + 1];
+        System.arraycopy(samples, 0, this.samples, 0, length);
+        this.samples[length] = samples[length - 1];
+        this.sampleRate = sampleRate;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the samples, with the extra guard sample at index {@link #getLength()}. Don't modify them.
+     */
+    float[] getSamples() {
+        return samples;
+    }
+
+    public float getSample(int index) {
+        return samples[index];
+    }
+
+    /**
+     * @return the number of samples, without the guard sample.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    public float getDurationSeconds() {
+        return length / sampleRate;
+    }
+
+    @Override
+    public String toString() {
+        return "SampleBuffer{" + name + ", " + length + " samples at " + sampleRate + " Hz}";
+    }
+}
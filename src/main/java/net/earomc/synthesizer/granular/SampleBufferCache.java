@@ -0,0 +1,102 @@
+package net.earomc.synthesizer.granular;
+
+import net.earomc.synthesizer.SimpleAudioConversion;
+import net.earomc.synthesizer.Util;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static net.earomc.synthesizer.EaroSynthesizer.BUFFER_SIZE;
+
+/**
+ * Decodes audio files to {@link SampleBuffer}s once and keeps them, so sound sources can use them without any I/O.
+ * Load everything a patch needs before playing it, decoding happens on the calling thread.
+ * Files keep their sample rate and are mixed down to mono.
+ */
+public class SampleBufferCache {
+    private final Map<String, SampleBuffer> buffers = new ConcurrentHashMap<>();
+
+    private static final class DefaultHolder {
+        static final SampleBufferCache CACHE = new SampleBufferCache();
+    }
+
+    public static SampleBufferCache getDefault() {
+        return DefaultHolder.CACHE;
+    }
+
+    /**
+     * @param fileName name of a resource on the class path, like taunt.wav.
+     */
+    public SampleBuffer getResource(String fileName) throws IOException {
+        String key = "resource:" + fileName;
+        SampleBuffer buffer = buffers.get(key);
+        if (buffer != null) return buffer;
+        InputStream resource = SampleBufferCache.class.getResourceAsStream("/" + fileName);
+        if (resource == null) throw new FileNotFoundException(fileName + " could not be found.");
+        try (InputStream in = new BufferedInputStream(resource, BUFFER_SIZE)) {
+            buffer = decode(fileName, in);
+        }
+        // another thread may have decoded it in the meantime, everybody gets the same buffer
+        SampleBuffer previous = buffers.putIfAbsent(key, buffer);
+        return previous != null ? previous : buffer;
+    }
+
+    public SampleBuffer getFile(Path path) throws IOException {
+        String key = "file:" + path.toAbsolutePath().normalize();
+        SampleBuffer buffer = buffers.get(key);
+        if (buffer != null) return buffer;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
+            buffer = decode(path.getFileName().toString(), in);
+        }
+        SampleBuffer previous = buffers.putIfAbsent(key, buffer);
+        return previous != null ? previous : buffer;
+    }
+
+    /**
+     * Decodes a whole audio stream and mixes it down to mono.
+     */
+    public static SampleBuffer decode(String name, InputStream in) throws IOException {
+        try (AudioInputStream fileStream = AudioSystem.getAudioInputStream(in)) {
+            AudioFormat format = Util.getOutFormat(fileStream.getFormat());
+            try (AudioInputStream pcmStream = AudioSystem.getAudioInputStream(format, fileStream)) {
+                byte[] bytes = pcmStream.readAllBytes();
+                float[] interleaved = SimpleAudioConversion.decode(bytes, format.getSampleSizeInBits(), format);
+                return new SampleBuffer(name, downmix(interleaved, format.getChannels()), format.getSampleRate());
+            }
+        } catch (UnsupportedAudioFileException e) {
+            throw new IOException("Unsupported audio file " + name, e);
+        }
+    }
+
+    private static float[] downmix(float[] interleaved, int channels) {
+        if (channels == 1) return interleaved;
+        float[] mono = new float[interleaved.length / channels];
+        for (int frame = 0; frame < mono.length; frame++) {
+            float sum = 0;
+            for (int channel = 0; channel < channels; channel++) {
+                sum += interleaved[frame * channels + channel];
+            }
+            mono[frame] = sum / channels;
+        }
+        return mono;
+    }
+
+    public void evict(String fileName) {
+        buffers.remove("resource:" + fileName);
+    }
+
+    public void clear() {
+        buffers.clear();
+    }
+
+    public int size() {
+        return buffers.size();
+    }
+}
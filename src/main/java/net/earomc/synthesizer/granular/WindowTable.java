@@ -0,0 +1,33 @@
+package net.earomc.synthesizer.granular;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed grain windows. A table has one value per sample of the grain, so a grain is windowed
+ * by multiplying it with the table sample by sample, without computing any cosines.
+ * Tables are cached by length and shared.
+ */
+public final class WindowTable {
+    private static final Map<Integer, float[]> HANN = new ConcurrentHashMap<>();
+
+    private WindowTable() {
+    }
+
+    /**
+     * Hann window, sampled in the middle of each sample so neither end is exactly 0. Don't modify the array.
+     */
+    public static float[] hann(int length) {
+        if (length < 1)
+            throw new IllegalArgumentException("Illegal value for length: " + length + "! Has to be at least 1");
+        return HANN.computeIfAbsent(length, WindowTable::computeHann);
+    }
+
+    private static float[] computeHann(int length) {
+        float[] window = new float[length];
+        for (int i = 0; i < length; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * (i + 0.5) / length));
+        }
+        return window;
+    }
+}
@@ -0,0 +1,32 @@
+package net.earomc.synthesizer.graph;
+
+/**
+ * A node of a {@link RenderGraph}: reads a block from each of its input ports and writes a block to each of its
+ * output ports. Every port carries one mono signal.
+ * <p>
+ * Like {@link net.earomc.synthesizer.effect.Effect}s, nodes must not allocate, lock or do any I/O while processing.
+ * Nodes that don't depend on each other may be processed at the same time on different threads, so a node
+ * must not share mutable state with other nodes.
+ */
+public interface AudioNode {
+
+    int getInputCount();
+
+    int getOutputCount();
+
+    /**
+     * Processes a block.
+     *
+     * @param inputs  one array per input port. Must not be modified, the same array can be read by other nodes.
+     *                Unconnected inputs are silent.
+     * @param outputs one array per output port, to be overwritten completely. Contains garbage from earlier blocks.
+     * @param length  number of samples to process, starting at index 0 of every array.
+     */
+    void process(float[][] inputs, float[][] outputs, int length);
+
+    /**
+     * Clears the internal state, like {@link net.earomc.synthesizer.effect.Effect#reset()}.
+     */
+    default void reset() {
+    }
+}
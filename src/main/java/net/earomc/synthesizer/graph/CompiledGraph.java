@@ -0,0 +1,141 @@
+package net.earomc.synthesizer.graph;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Serial;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A {@link RenderGraph} ready to render, see {@link RenderGraph#compile}.
+ * <p>
+ * Every block runs the levels of the graph one after the other. The nodes of a level run in parallel on the
+ * fork join pool, if there is more than one of them and the pool has more than one thread. Idle workers steal
+ * the nodes of busy ones, so uneven nodes still spread over all cores. The tasks are created once and reused,
+ * rendering a block allocates nothing itself.
+ */
+public class CompiledGraph {
+    private final int maxBlockSize;
+    private final AudioNode[] nodes;
+    private final float[][][] inputs;
+    private final float[][][] outputs;
+    // nodes[levelStarts[l] .. levelStarts[l + 1]) are the nodes of level l
+    private final int[] levelStarts;
+    private final float[] output;
+    private final int bufferCount;
+    @Nullable
+    private final ForkJoinPool pool;
+    private final NodeTask[][] levelTasks;
+    private final LevelTask[] levels;
+    private int length;
+
+    CompiledGraph(int maxBlockSize, AudioNode[] nodes, float[][][] inputs, float[][][] outputs, int[] levelStarts,
+                  float[] output, int bufferCount, @Nullable ForkJoinPool pool) {
+        this.maxBlockSize = maxBlockSize;
+        this.nodes = nodes;
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.levelStarts = levelStarts;
+        this.output = output;
+        this.bufferCount = bufferCount;
+        this.pool = pool != null && pool.getParallelism() > 1 ? pool : null;
+
+        int levelCount = levelStarts.length - 1;
+        this.levelTasks = new NodeTask[levelCount][];
+        this.levels = new LevelTask[levelCount];
+        for (int level = 0; level < levelCount; level++) {
+            levelTasks[level] = new NodeTask[levelStarts[level + 1] - levelStarts[level]];
+            for (int i = 0; i < levelTasks[level].length; i++) {
+                levelTasks[level][i] = new NodeTask(levelStarts[level] + i);
+            }
+            levels[level] = new LevelTask(level);
+        }
+    }
+
+    /**
+     * Renders a block and writes the output signal of the graph to out.
+     */
+    public void render(float[] out, int offset, int length) {
+        if (length > maxBlockSize)
+            throw new IllegalArgumentException("Block of " + length + " samples is bigger than the max block size " + maxBlockSize);
+        this.length = length;
+        for (int level = 0; level < levels.length; level++) {
+            int start = levelStarts[level];
+            int end = levelStarts[level + 1];
+            if (pool == null || end - start == 1) {
+                for (int node = start; node < end; node++) {
+                    processNode(node);
+                }
+            } else {
+                LevelTask task = levels[level];
+                task.reinitialize();
+                pool.invoke(task);
+            }
+        }
+        System.arraycopy(output, 0, out, offset, length);
+    }
+
+    private void processNode(int node) {
+        nodes[node].process(inputs[node], outputs[node], length);
+    }
+
+    public void reset() {
+        for (AudioNode node : nodes) {
+            node.reset();
+        }
+    }
+
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * @return the number of block buffers shared by all ports of the graph.
+     */
+    public int getBufferCount() {
+        return bufferCount;
+    }
+
+    public int getMaxBlockSize() {
+        return maxBlockSize;
+    }
+
+    private final class LevelTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private final int level;
+
+        LevelTask(int level) {
+            this.level = level;
+        }
+
+        @Override
+        protected void compute() {
+            NodeTask[] tasks = levelTasks[level];
+            for (NodeTask task : tasks) {
+                task.reinitialize();
+            }
+            ForkJoinTask.invokeAll(tasks);
+        }
+    }
+
+    private final class NodeTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private final int node;
+
+        NodeTask(int node) {
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            processNode(node);
+        }
+    }
+}
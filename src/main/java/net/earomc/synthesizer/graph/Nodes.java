@@ -0,0 +1,140 @@
+package net.earomc.synthesizer.graph;
+
+import net.earomc.synthesizer.effect.Effect;
+import net.earomc.synthesizer.mixer.MixerBus;
+import net.earomc.synthesizer.simd.SampleOps;
+
+import java.util.Arrays;
+
+/**
+ * Adapters that turn the existing building blocks into {@link AudioNode}s.
+ */
+public final class Nodes {
+
+    private Nodes() {
+    }
+
+    /**
+     * Something that adds a block of samples to an array, like
+     * {@link net.earomc.synthesizer.OscillatorBank#render} or {@link net.earomc.synthesizer.granular.GranularEngine#render}.
+     */
+    @FunctionalInterface
+    public interface Source {
+        void render(float[] out, int offset, int length);
+    }
+
+    /**
+     * A node without inputs and with one output, which is silenced and then rendered into by the source.
+     */
+    public static AudioNode source(Source source) {
+        return new AudioNode() {
+            @Override
+            public int getInputCount() {
+                return 0;
+            }
+
+            @Override
+            public int getOutputCount() {
+                return 1;
+            }
+
+            @Override
+            public void process(float[][] inputs, float[][] outputs, int length) {
+                Arrays.fill(outputs[0], 0, length, 0f);
+                source.render(outputs[0], 0, length);
+            }
+        };
+    }
+
+    /**
+     * A node with one input and one output that applies the effect.
+     */
+    public static AudioNode effect(Effect effect) {
+        return new AudioNode() {
+            @Override
+            public int getInputCount() {
+                return 1;
+            }
+
+            @Override
+            public int getOutputCount() {
+                return 1;
+            }
+
+            @Override
+            public void process(float[][] inputs, float[][] outputs, int length) {
+                // effects work in place, the input may be read by other nodes
+                System.arraycopy(inputs[0], 0, outputs[0], 0, length);
+                effect.process(outputs[0], 0, length);
+            }
+
+            @Override
+            public void reset() {
+                effect.reset();
+            }
+        };
+    }
+
+    /**
+     * A node that sums its inputs at the given gains into one output.
+     */
+    public static AudioNode mixer(float... gains) {
+        return mixer(SampleOps.PREFERRED, gains);
+    }
+
+    public static AudioNode mixer(SampleOps ops, float... gains) {
+        float[] inputGains = gains.clone();
+        return new AudioNode() {
+            @Override
+            public int getInputCount() {
+                return inputGains.length;
+            }
+
+            @Override
+            public int getOutputCount() {
+                return 1;
+            }
+
+            @Override
+            public void process(float[][] inputs, float[][] outputs, int length) {
+                float[] out = outputs[0];
+                Arrays.fill(out, 0, length, 0f);
+                for (int input = 0; input < inputGains.length; input++) {
+                    ops.add(out, 0, inputs[input], 0, length, inputGains[input]);
+                }
+            }
+        };
+    }
+
+    /**
+     * A node with one input per input of the bus, which sums them with the gains, master gain and limiter of the bus.
+     */
+    public static AudioNode mixerBus(MixerBus bus) {
+        return new AudioNode() {
+            @Override
+            public int getInputCount() {
+                return bus.getInputCount();
+            }
+
+            @Override
+            public int getOutputCount() {
+                return 1;
+            }
+
+            @Override
+            public void process(float[][] inputs, float[][] outputs, int length) {
+                bus.clear();
+                for (int input = 0; input < inputs.length; input++) {
+                    bus.accumulate(input, inputs[input], 0, length);
+                }
+                System.arraycopy(bus.process(length), 0, outputs[0], 0, length);
+            }
+
+            @Override
+            public void reset() {
+                bus.clear();
+                if (bus.getLimiter() != null) bus.getLimiter().reset();
+            }
+        };
+    }
+}
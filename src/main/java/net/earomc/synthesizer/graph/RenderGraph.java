@@ -0,0 +1,196 @@
+package net.earomc.synthesizer.graph;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Directed graph of {@link AudioNode}s, connected from output ports to input ports.
+ * An input port takes at most one connection, use a {@link Nodes#mixer mixer} node to sum several signals.
+ * An output port can feed any number of inputs.
+ * <p>
+ * The graph is only a description. {@link #compile} checks it, orders the nodes and assigns the buffers,
+ * and returns a {@link CompiledGraph} that renders blocks.
+ */
+public class RenderGraph {
+    private final List<AudioNode> nodes = new ArrayList<>();
+    // for every node and input port the connected node and output port, -1 if unconnected
+    private final List<int[]> sourceNodes = new ArrayList<>();
+    private final List<int[]> sourcePorts = new ArrayList<>();
+    private int outputNode = -1;
+    private int outputPort;
+
+    /**
+     * @return the index of the node, used to connect it.
+     */
+    public int addNode(AudioNode node) {
+        nodes.add(node);
+        int[] unconnected = new int[node.getInputCount()];
+        Arrays.fill(unconnected, -1);
+        sourceNodes.add(unconnected);
+        sourcePorts.add(new int[node.getInputCount()]);
+        return nodes.size() - 1;
+    }
+
+    public void connect(int fromNode, int fromPort, int toNode, int toPort) {
+        checkPort(fromNode, fromPort, true);
+        checkPort(toNode, toPort, false);
+        if (sourceNodes.get(toNode)[toPort] != -1)
+            throw new IllegalStateException("Input " + toPort + " of node " + toNode + " is already connected");
+        sourceNodes.get(toNode)[toPort] = fromNode;
+        sourcePorts.get(toNode)[toPort] = fromPort;
+    }
+
+    /**
+     * Connects output 0 of fromNode to input 0 of toNode.
+     */
+    public void connect(int fromNode, int toNode) {
+        connect(fromNode, 0, toNode, 0);
+    }
+
+    /**
+     * Sets the output port whose signal {@link CompiledGraph#render} returns.
+     */
+    public void setOutput(int node, int port) {
+        checkPort(node, port, true);
+        this.outputNode = node;
+        this.outputPort = port;
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    private void checkPort(int node, int port, boolean output) {
+        if (node < 0 || node >= nodes.size()) throw new IllegalArgumentException("Unknown node " + node);
+        int ports = output ? nodes.get(node).getOutputCount() : nodes.get(node).getInputCount();
+        if (port < 0 || port >= ports)
+            throw new IllegalArgumentException("Node " + node + " has no " + (output ? "output " : "input ") + port);
+    }
+
+    /**
+     * Compiles the graph with the common fork join pool.
+     */
+    public CompiledGraph compile(int maxBlockSize) {
+        return compile(maxBlockSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Orders the nodes topologically and groups them into levels: a node is one level after the latest node it
+     * reads from, so the nodes of a level don't depend on each other and can run in parallel.
+     * Buffers are reused: the buffer of an output is free again after the level of its last reader,
+     * so the graph needs as many buffers as signals are alive at the same time, not one per port.
+     *
+     * @param pool runs the nodes of a level in parallel, null to run everything on the rendering thread.
+     * @throws IllegalStateException if the graph has a cycle or no output.
+     */
+    public CompiledGraph compile(int maxBlockSize, @Nullable ForkJoinPool pool) {
+        if (outputNode < 0) throw new IllegalStateException("The graph has no output, call setOutput first");
+        int nodeCount = nodes.size();
+
+        // Kahn's algorithm, counting every connected input as an incoming edge
+        int[] pending = new int[nodeCount];
+        List<List<Integer>> readers = new ArrayList<>();
+        for (int node = 0; node < nodeCount; node++) {
+            readers.add(new ArrayList<>());
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            for (int source : sourceNodes.get(node)) {
+                if (source < 0) continue;
+                pending[node]++;
+                readers.get(source).add(node);
+            }
+        }
+        int[] level = new int[nodeCount];
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int node = 0; node < nodeCount; node++) {
+            if (pending[node] == 0) ready.add(node);
+        }
+        List<Integer> order = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            int node = ready.poll();
+            order.add(node);
+            for (int reader : readers.get(node)) {
+                level[reader] = Math.max(level[reader], level[node] + 1);
+                if (--pending[reader] == 0) ready.add(reader);
+            }
+        }
+        if (order.size() < nodeCount) throw new IllegalStateException("The graph has a cycle");
+        order.sort(Comparator.comparingInt(node -> level[node]));
+        int levelCount = order.isEmpty() ? 0 : level[order.get(order.size() - 1)] + 1;
+
+        // the level after which each output port isn't read anymore
+        int[][] lastUse = new int[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            lastUse[node] = new int[nodes.get(node).getOutputCount()];
+            Arrays.fill(lastUse[node], level[node]);
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            int[] sources = sourceNodes.get(node);
+            for (int port = 0; port < sources.length; port++) {
+                if (sources[port] < 0) continue;
+                int[] sourceLastUse = lastUse[sources[port]];
+                int sourcePort = sourcePorts.get(node)[port];
+                sourceLastUse[sourcePort] = Math.max(sourceLastUse[sourcePort], level[node]);
+            }
+        }
+        lastUse[outputNode][outputPort] = Integer.MAX_VALUE;
+
+        // liveness based buffer assignment, level by level
+        List<float[]> buffers = new ArrayList<>();
+        Deque<float[]> free = new ArrayDeque<>();
+        float[][][] outputs = new float[nodeCount][][];
+        int next = 0;
+        for (int currentLevel = 0; currentLevel < levelCount; currentLevel++) {
+            int levelStart = next;
+            while (next < order.size() && level[order.get(next)] == currentLevel) {
+                int node = order.get(next++);
+                outputs[node] = new float[nodes.get(node).getOutputCount()][];
+                for (int port = 0; port < outputs[node].length; port++) {
+                    float[] buffer = free.poll();
+                    if (buffer == null) {
+                        buffer = new float[maxBlockSize];
+                        buffers.add(buffer);
+                    }
+                    outputs[node][port] = buffer;
+                }
+            }
+            // buffers last read in this level can be written from the next level on
+            for (int node = 0; node < nodeCount; node++) {
+                if (outputs[node] == null) continue;
+                for (int port = 0; port < outputs[node].length; port++) {
+                    if (lastUse[node][port] == currentLevel) free.add(outputs[node][port]);
+                }
+            }
+            if (levelStart == next) break;
+        }
+
+        float[] silence = new float[maxBlockSize];
+        float[][][] inputs = new float[nodeCount][][];
+        for (int node = 0; node < nodeCount; node++) {
+            int[] sources = sourceNodes.get(node);
+            inputs[node] = new float[sources.length][];
+            for (int port = 0; port < sources.length; port++) {
+                inputs[node][port] = sources[port] < 0 ? silence : outputs[sources[port]][sourcePorts.get(node)[port]];
+            }
+        }
+
+        int[] levelStarts = new int[levelCount + 1];
+        for (int i = 0, currentLevel = 0; currentLevel <= levelCount; currentLevel++) {
+            while (i < order.size() && level[order.get(i)] < currentLevel) i++;
+            levelStarts[currentLevel] = i;
+        }
+        AudioNode[] orderedNodes = new AudioNode[nodeCount];
+        float[][][] orderedInputs = new float[nodeCount][][];
+        float[][][] orderedOutputs = new float[nodeCount][][];
+        for (int i = 0; i < nodeCount; i++) {
+            int node = order.get(i);
+            orderedNodes[i] = nodes.get(node);
+            orderedInputs[i] = inputs[node];
+            orderedOutputs[i] = outputs[node];
+        }
+        return new CompiledGraph(maxBlockSize, orderedNodes, orderedInputs, orderedOutputs, levelStarts,
+                outputs[outputNode][outputPort], buffers.size(), pool);
+    }
+}
@@ -0,0 +1,236 @@
+package net.earomc.synthesizer.metrics;
+
+import net.earomc.synthesizer.EaroSynthesizer;
+import net.earomc.synthesizer.analysis.LevelMeter;
+import net.earomc.synthesizer.analysis.SpectrumAnalyzer;
+import net.earomc.synthesizer.diagnostics.BlockStatsEvent;
+import net.earomc.synthesizer.diagnostics.Diagnostics;
+
+import org.jetbrains.annotations.Nullable;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.logging.Level;
+
+/**
+ * Measures how long rendering takes compared to the real time deadline of each block.
+ * <p>
+ * The render thread calls {@link #recordBlock(long, long)} after every block and {@link #recordXrun()} when the
+ * output ran dry. Everything is recorded into preallocated counters, so the overhead is two
+ * {@link System#nanoTime()} calls per block. The values can be read from any thread, and are published over
+ * JMX with {@link #register(String)} under {@code net.earomc.synthesizer:type=RenderMetrics,name=...}.
+ * <p>
+ * The DSP load is the render time of a block in percent of the time it takes to play that block.
+ * Above 100 % the renderer can't keep up and the output will drop out.
+ * <p>
+ * Xruns and missed deadlines are also recorded as {@link Diagnostics} events, at most one per second,
+ * and every block as a {@link BlockStatsEvent} when JFR records it.
+ * <p>
+ * The output level of the render thread is published too, if a {@link #setLevelMeter level meter} is attached.
+ */
+public class RenderMetrics implements RenderMetricsMXBean {
+    // weight of the newest block in the smoothed load, roughly an average over the last 32 blocks
+    private static final double LOAD_SMOOTHING = 1d / 32;
+    private static final Diagnostics.EventType XRUN = Diagnostics.getDefault()
+            .eventType("xrun", Level.WARNING, Duration.ofSeconds(1), "block", "xruns");
+    private static final Diagnostics.EventType DEADLINE_MISS = Diagnostics.getDefault()
+            .eventType("deadline-miss", Level.WARNING, Duration.ofSeconds(1), "block", "renderMicros", "deadlineMicros");
+
+    private final TimeHistogram renderTimes = new TimeHistogram();
+    private volatile long xrunCount;
+    private volatile long deadlineMissCount;
+    private volatile double dspLoad;
+    private volatile double peakDspLoad;
+    private volatile int activeVoices;
+    private volatile int peakVoices;
+    private volatile String name = "unregistered";
+    private volatile LevelMeter levelMeter;
+    // set by reset() on any thread, applied by the render thread, the only thread that writes the counters
+    private volatile boolean resetRequested;
+
+    /**
+     * Records a rendered block. Must only be called by the render thread.
+     *
+     * @param renderNanos   how long rendering the block took.
+     * @param deadlineNanos how long the block takes to play, e.g. frames * 1e9 / frameRate.
+     */
+    public void recordBlock(long renderNanos, long deadlineNanos) {
+        if (resetRequested) applyReset();
+        renderTimes.record(renderNanos);
+        if (deadlineNanos <= 0) return;
+        double load = (double) renderNanos / deadlineNanos;
+        dspLoad += (load - dspLoad) * LOAD_SMOOTHING;
+        if (load > peakDspLoad) peakDspLoad = load;
+        if (renderNanos > deadlineNanos) {
+            deadlineMissCount++;
+            DEADLINE_MISS.record(getBlockCount(), renderNanos / 1e3, deadlineNanos / 1e3);
+        }
+        BlockStatsEvent event = new BlockStatsEvent();
+        if (event.isEnabled()) {
+            event.source = name;
+            event.renderTime = renderNanos;
+            event.deadline = deadlineNanos;
+            event.dspLoadPercent = load * 100;
+            event.xruns = xrunCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the duration of the given number of frames in nanoseconds, the deadline for rendering them.
+     */
+    public static long deadlineNanos(int frames, float frameRate) {
+        return (long) (frames * 1e9 / frameRate);
+    }
+
+    /**
+     * Records that the output ran out of audio (buffer underrun). Must only be called by the render thread.
+     */
+    public void recordXrun() {
+        if (resetRequested) applyReset();
+        xrunCount++;
+        XRUN.record(getBlockCount(), xrunCount);
+    }
+
+    public void setActiveVoices(int activeVoices) {
+        this.activeVoices = activeVoices;
+        if (activeVoices > peakVoices) peakVoices = activeVoices;
+    }
+
+    /**
+     * Publishes the levels of the meter with the other metrics. The render thread feeds the meter, the metrics only read it.
+     *
+     * @param levelMeter null to publish no levels.
+     */
+    public void setLevelMeter(@Nullable LevelMeter levelMeter) {
+        this.levelMeter = levelMeter;
+    }
+
+    @Nullable
+    public LevelMeter getLevelMeter() {
+        return levelMeter;
+    }
+
+    public TimeHistogram getRenderTimes() {
+        return renderTimes;
+    }
+
+    /**
+     * Publishes these metrics over JMX. Failures are logged and otherwise ignored, metrics are not essential.
+     *
+     * @return this
+     */
+    public RenderMetrics register(String name) {
+        this.name = name;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("net.earomc.synthesizer:type=RenderMetrics,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            EaroSynthesizer.LOGGER.warning(() -> "Could not register render metrics " + name + ": " + e);
+        }
+        return this;
+    }
+
+    @Override
+    public long getBlockCount() {
+        return renderTimes.getTotalCount();
+    }
+
+    @Override
+    public long getXrunCount() {
+        return xrunCount;
+    }
+
+    @Override
+    public long getDeadlineMissCount() {
+        return deadlineMissCount;
+    }
+
+    @Override
+    public double getDspLoadPercent() {
+        return dspLoad * 100;
+    }
+
+    @Override
+    public double getPeakDspLoadPercent() {
+        return peakDspLoad * 100;
+    }
+
+    @Override
+    public double getMeanRenderTimeMicros() {
+        return renderTimes.getMeanNanos() / 1000;
+    }
+
+    @Override
+    public double getRenderTimeP50Micros() {
+        return renderTimes.getValueAtPercentile(50) / 1000d;
+    }
+
+    @Override
+    public double getRenderTimeP99Micros() {
+        return renderTimes.getValueAtPercentile(99) / 1000d;
+    }
+
+    @Override
+    public double getRenderTimeP999Micros() {
+        return renderTimes.getValueAtPercentile(99.9) / 1000d;
+    }
+
+    @Override
+    public double getMaxRenderTimeMicros() {
+        return renderTimes.getMaxNanos() / 1000d;
+    }
+
+    @Override
+    public int getActiveVoices() {
+        return activeVoices;
+    }
+
+    @Override
+    public int getPeakVoices() {
+        return peakVoices;
+    }
+
+    @Override
+    public double getPeakLevelDb() {
+        LevelMeter levelMeter = this.levelMeter;
+        return levelMeter == null ? SpectrumAnalyzer.MIN_DB : Math.max(SpectrumAnalyzer.MIN_DB, LevelMeter.toDb(levelMeter.getPeak()));
+    }
+
+    @Override
+    public double getRmsLevelDb() {
+        LevelMeter levelMeter = this.levelMeter;
+        return levelMeter == null ? SpectrumAnalyzer.MIN_DB : Math.max(SpectrumAnalyzer.MIN_DB, LevelMeter.toDb(levelMeter.getRms()));
+    }
+
+    /**
+     * Requests a reset. The counters are only written by the render thread, so it clears them itself before it
+     * records the next block or xrun. Until then the old values can still be read.
+     */
+    @Override
+    public void reset() {
+        resetRequested = true;
+    }
+
+    private void applyReset() {
+        resetRequested = false;
+        renderTimes.reset();
+        xrunCount = 0;
+        deadlineMissCount = 0;
+        dspLoad = 0;
+        peakDspLoad = 0;
+        peakVoices = activeVoices;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("blocks=%d, load=%.2f%% (peak %.2f%%), render p50=%.1fus p99=%.1fus max=%.1fus, xruns=%d, deadline misses=%d, voices=%d (peak %d)",
+                getBlockCount(), getDspLoadPercent(), getPeakDspLoadPercent(), getRenderTimeP50Micros(),
+                getRenderTimeP99Micros(), getMaxRenderTimeMicros(), xrunCount, deadlineMissCount, activeVoices, peakVoices);
+    }
+}
@@ -0,0 +1,40 @@
+package net.earomc.synthesizer.metrics;
+
+/**
+ * JMX view of {@link RenderMetrics}. Times are in microseconds, loads in percent of the block deadline,
+ * levels in dB relative to full scale.
+ */
+public interface RenderMetricsMXBean {
+    long getBlockCount();
+
+    long getXrunCount();
+
+    long getDeadlineMissCount();
+
+    double getDspLoadPercent();
+
+    double getPeakDspLoadPercent();
+
+    double getMeanRenderTimeMicros();
+
+    double getRenderTimeP50Micros();
+
+    double getRenderTimeP99Micros();
+
+    double getRenderTimeP999Micros();
+
+    double getMaxRenderTimeMicros();
+
+    int getActiveVoices();
+
+    int getPeakVoices();
+
+    double getPeakLevelDb();
+
+    double getRmsLevelDb();
+
+    /**
+     * Clears the counters before the next block is recorded.
+     */
+    void reset();
+}
@@ -0,0 +1,91 @@
+package net.earomc.synthesizer.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with a fixed relative precision, in the style of HdrHistogram.
+ * <p>
+ * Every power of two range is split into {@value #SUB_BUCKETS} linear sub-buckets, so every recorded value is
+ * known to within about 3 %. All counters are allocated up front, {@link #record(long)} never allocates.
+ * <p>
+ * Meant for one writer (the render thread) and any number of readers. Readers may see a histogram that is
+ * one or two values behind, but never a corrupted one.
+ */
+public class TimeHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // values up to 2^40 ns (about 18 minutes) are told apart, anything above is counted in the last bucket.
+    private static final int MAX_VALUE_BITS = 40;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private volatile long totalCount;
+    private volatile long totalNanos;
+    private volatile long maxNanos;
+
+    /**
+     * Records one duration. Must only be called by one thread at a time.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        int index = indexOf(nanos);
+        counts.lazySet(index, counts.get(index) + 1);
+        totalNanos += nanos;
+        if (nanos > maxNanos) maxNanos = nanos;
+        totalCount++;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public double getMeanNanos() {
+        long count = totalCount;
+        return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    /**
+     * @param percentile value from 0 to 100.
+     * @return the highest value in the bucket that contains the given percentile, 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount;
+        if (count == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) return Math.min(highestValueOf(i), maxNanos);
+        }
+        return maxNanos;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int bucket = highestBit - SUB_BUCKET_BITS;
+        // the SUB_BUCKET_BITS bits below the highest bit pick the sub-bucket
+        int subBucket = (int) (value >>> bucket) - SUB_BUCKETS;
+        return Math.min(SUB_BUCKETS + bucket * SUB_BUCKETS + subBucket, BUCKET_COUNT - 1);
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int bucket = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << bucket) - 1;
+    }
+}
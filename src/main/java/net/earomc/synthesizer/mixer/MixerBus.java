@@ -0,0 +1,130 @@
+package net.earomc.synthesizer.mixer;
+
+import net.earomc.synthesizer.effect.LookaheadLimiter;
+import net.earomc.synthesizer.simd.SampleOps;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Sums any number of inputs into one preallocated block.
+ * <p>
+ * Every input has its own gain. Inputs are summed at their gain without any automatic scaling,
+ * a {@link LookaheadLimiter} on the output keeps the sum from clipping instead.
+ * <p>
+ * Usage per block:
+ * <pre>{@code bus.clear();
+ * bus.accumulate(drums, drumSamples, 0, n);
+ * bus.accumulate(bass, bassSamples, 0, n);
+ * float[] out = bus.process(n);}</pre>
+ * Nothing is allocated after construction, the returned block is reused for the next call.
+ */
+public class MixerBus {
+    private final float[] block;
+    private final SampleOps ops;
+    private float[] gains;
+    private float masterGain = 1f;
+    @Nullable
+    private LookaheadLimiter limiter;
+
+    /**
+     * @param blockSize the maximum number of samples mixed per block.
+     * @param inputs    the initial number of inputs, all at unity gain.
+     * @param limiter   limiter applied to the output, or null for none.
+     */
+    public MixerBus(int blockSize, int inputs, @Nullable LookaheadLimiter limiter) {
+        this(blockSize, inputs, limiter, SampleOps.PREFERRED);
+    }
+
+    public MixerBus(int blockSize, int inputs, @Nullable LookaheadLimiter limiter, SampleOps ops) {
+        this.block = new float[blockSize];
+        this.gains = new float[inputs];
+        Arrays.fill(gains, 1f);
+        this.limiter = limiter;
+        this.ops = ops;
+    }
+
+    /**
+     * Adds a new input.
+     *
+     * @return the index of the new input.
+     */
+    public int addInput(float gain) {
+        gains = Arrays.copyOf(gains, gains.length + 1);
+        gains[gains.length - 1] = gain;
+        return gains.length - 1;
+    }
+
+    public int getInputCount() {
+        return gains.length;
+    }
+
+    public void setGain(int input, float gain) {
+        gains[input] = gain;
+    }
+
+    public float getGain(int input) {
+        return gains[input];
+    }
+
+    public void setMasterGain(float masterGain) {
+        this.masterGain = masterGain;
+    }
+
+    public float getMasterGain() {
+        return masterGain;
+    }
+
+    public void setLimiter(@Nullable LookaheadLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Nullable
+    public LookaheadLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * @return the output block. Only valid until the next call to {@link #clear()}.
+     */
+    public float[] getBlock() {
+        return block;
+    }
+
+    public int getBlockSize() {
+        return block.length;
+    }
+
+    /**
+     * Silences the block. Has to be called before the inputs of a new block are accumulated.
+     */
+    public void clear() {
+        Arrays.fill(block, 0f);
+    }
+
+    /**
+     * Adds the samples of an input at the input's gain to the block.
+     *
+     * @param input     index of the input.
+     * @param samples   the samples of the input.
+     * @param srcOffset index of the first sample in samples.
+     * @param length    number of samples, at most the block size. Inputs shorter than the block simply contribute silence at the end.
+     */
+    public void accumulate(int input, float[] samples, int srcOffset, int length) {
+        if (length > block.length)
+            throw new IllegalArgumentException("Cannot mix " + length + " samples into a block of " + block.length);
+        ops.add(block, 0, samples, srcOffset, length, gains[input]);
+    }
+
+    /**
+     * Applies the master gain and the limiter to the summed inputs.
+     *
+     * @param length the number of valid samples in the block.
+     * @return the output block.
+     */
+    public float[] process(int length) {
+        if (masterGain != 1f) ops.scale(block, 0, length, masterGain);
+        if (limiter != null) limiter.process(block, 0, length);
+        return block;
+    }
+}
@@ -0,0 +1,125 @@
+package net.earomc.synthesizer.modulation;
+
+/**
+ * A linear ADSR envelope. Outputs values from 0 to 1.
+ * <p>
+ * Attack rises from the current level to 1, decay falls to the sustain level which is held until
+ * {@link #noteOff()}, release falls from the current level to 0.
+ */
+public class Envelope implements ModulationSource {
+    private enum Stage {IDLE, ATTACK, DECAY, SUSTAIN, RELEASE}
+
+    private final float sampleRate;
+    private float attackSeconds;
+    private float decaySeconds;
+    private float sustainLevel;
+    private float releaseSeconds;
+
+    private Stage stage = Stage.IDLE;
+    private float level;
+    private float releaseStep;
+
+    public Envelope(float sampleRate, float attackSeconds, float decaySeconds, float sustainLevel, float releaseSeconds) {
+        this.sampleRate = sampleRate;
+        this.attackSeconds = attackSeconds;
+        this.decaySeconds = decaySeconds;
+        setSustainLevel(sustainLevel);
+        this.releaseSeconds = releaseSeconds;
+    }
+
+    public void setAttackSeconds(float attackSeconds) {
+        this.attackSeconds = attackSeconds;
+    }
+
+    public void setDecaySeconds(float decaySeconds) {
+        this.decaySeconds = decaySeconds;
+    }
+
+    public void setSustainLevel(float sustainLevel) {
+        if (sustainLevel < 0 || sustainLevel > 1)
+            throw new IllegalArgumentException("Illegal sustain level: " + sustainLevel + "! Has to be a value between 0 and 1");
+        this.sustainLevel = sustainLevel;
+    }
+
+    public void setReleaseSeconds(float releaseSeconds) {
+        this.releaseSeconds = releaseSeconds;
+    }
+
+    public float getLevel() {
+        return level;
+    }
+
+    /**
+     * @return false once the release has finished, so the voice can be stopped.
+     */
+    public boolean isActive() {
+        return stage != Stage.IDLE;
+    }
+
+    @Override
+    public void noteOn() {
+        stage = Stage.ATTACK;
+    }
+
+    @Override
+    public void noteOff() {
+        if (stage == Stage.IDLE) return;
+        stage = Stage.RELEASE;
+        releaseStep = level / Math.max(1, releaseSeconds * sampleRate);
+    }
+
+    @Override
+    public float advance(int samples) {
+        while (samples > 0) {
+            switch (stage) {
+                case ATTACK -> {
+                    float step = 1 / Math.max(1, attackSeconds * sampleRate);
+                    int needed = (int) Math.ceil((1 - level) / step);
+                    if (samples >= needed) {
+                        level = 1;
+                        samples -= needed;
+                        stage = Stage.DECAY;
+                    } else {
+                        level += step * samples;
+                        samples = 0;
+                    }
+                }
+                case DECAY -> {
+                    float step = (1 - sustainLevel) / Math.max(1, decaySeconds * sampleRate);
+                    int needed = step == 0 ? 0 : (int) Math.ceil((level - sustainLevel) / step);
+                    if (samples >= needed) {
+                        level = sustainLevel;
+                        samples -= needed;
+                        stage = Stage.SUSTAIN;
+                    } else {
+                        level -= step * samples;
+                        samples = 0;
+                    }
+                }
+                case RELEASE -> {
+                    int needed = releaseStep == 0 ? 0 : (int) Math.ceil(level / releaseStep);
+                    if (samples >= needed) {
+                        level = 0;
+                        stage = Stage.IDLE;
+                    } else {
+                        level -= releaseStep * samples;
+                    }
+                    samples = 0;
+                }
+                case SUSTAIN -> {
+                    level = sustainLevel;
+                    samples = 0;
+                }
+                case IDLE -> samples = 0;
+            }
+        }
+        return level;
+    }
+
+    @Override
+    public void render(float[] out, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = advance(1);
+        }
+    }
+}
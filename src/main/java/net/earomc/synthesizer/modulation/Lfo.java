@@ -0,0 +1,78 @@
+package net.earomc.synthesizer.modulation;
+
+import net.earomc.synthesizer.waveform.SineAccuracy;
+import net.earomc.synthesizer.waveform.Waveform;
+
+/**
+ * A low frequency oscillator. Outputs values from -1 to 1.
+ */
+public class Lfo implements ModulationSource {
+    private final float sampleRate;
+    private Waveform waveform;
+    private float rateHz;
+    private boolean retrigger;
+    private double phase;
+
+    /**
+     * @param waveform  the shape of the LFO.
+     * @param rateHz    the frequency of the LFO.
+     * @param retrigger whether the LFO starts at the beginning of its period with every note.
+     */
+    public Lfo(float sampleRate, Waveform waveform, float rateHz, boolean retrigger) {
+        this.sampleRate = sampleRate;
+        this.waveform = waveform;
+        this.rateHz = rateHz;
+        this.retrigger = retrigger;
+    }
+
+    public void setWaveform(Waveform waveform) {
+        this.waveform = waveform;
+    }
+
+    public void setRateHz(float rateHz) {
+        this.rateHz = rateHz;
+    }
+
+    public void setRetrigger(boolean retrigger) {
+        this.retrigger = retrigger;
+    }
+
+    public Waveform getWaveform() {
+        return waveform;
+    }
+
+    public float getRateHz() {
+        return rateHz;
+    }
+
+    public boolean isRetrigger() {
+        return retrigger;
+    }
+
+    @Override
+    public float advance(int samples) {
+        phase += (double) rateHz * samples / sampleRate;
+        phase -= Math.floor(phase);
+        return value();
+    }
+
+    @Override
+    public void render(float[] out, int offset, int length) {
+        double increment = rateHz / sampleRate;
+        for (int i = offset; i < offset + length; i++) {
+            phase += increment;
+            if (phase >= 1) phase -= 1;
+            out[i] = value();
+        }
+    }
+
+    private float value() {
+        // with a period of 1 second the time is the phase
+        return waveform.sample((float) phase, 1, 1, 0, SineAccuracy.LOW);
+    }
+
+    @Override
+    public void noteOn() {
+        if (retrigger) phase = 0;
+    }
+}
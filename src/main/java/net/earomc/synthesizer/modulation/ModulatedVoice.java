@@ -0,0 +1,111 @@
+package net.earomc.synthesizer.modulation;
+
+import net.earomc.synthesizer.waveform.SineAccuracy;
+import net.earomc.synthesizer.waveform.Waveform;
+
+/**
+ * An oscillator voice whose frequency, amplitude and phase are modulated by a {@link ModulationMatrix}.
+ * <p>
+ * Unlike {@link net.earomc.synthesizer.SampleArrays#waveSamples}, which computes the wave from the time,
+ * the voice accumulates its phase sample by sample. That way the wave stays continuous when the frequency changes.
+ */
+public class ModulatedVoice {
+    private static final double LN_2 = Math.log(2);
+
+    private final float sampleRate;
+    private final ModulationMatrix matrix;
+    private Waveform waveform;
+    private SineAccuracy sineAccuracy = SineAccuracy.EXACT;
+    private float freq;
+    private float amp;
+    private double phase;
+
+    public ModulatedVoice(float sampleRate, Waveform waveform, float amp, ModulationMatrix matrix) {
+        this.sampleRate = sampleRate;
+        this.waveform = waveform;
+        this.amp = amp;
+        this.matrix = matrix;
+    }
+
+    public void noteOn(float freq) {
+        this.freq = freq;
+        this.phase = 0;
+        matrix.noteOn();
+    }
+
+    public void noteOff() {
+        matrix.noteOff();
+    }
+
+    public ModulationMatrix getMatrix() {
+        return matrix;
+    }
+
+    public void setWaveform(Waveform waveform) {
+        this.waveform = waveform;
+    }
+
+    public void setSineAccuracy(SineAccuracy sineAccuracy) {
+        this.sineAccuracy = sineAccuracy;
+    }
+
+    public void setFreq(float freq) {
+        this.freq = freq;
+    }
+
+    public void setAmp(float amp) {
+        this.amp = amp;
+    }
+
+    public float getFreq() {
+        return freq;
+    }
+
+    public float getAmp() {
+        return amp;
+    }
+
+    /**
+     * Renders a block into out, overwriting what was there. The block can't be longer than the max block size of the matrix.
+     */
+    public void render(float[] out, int offset, int length) {
+        matrix.process(length);
+        float[] freqMod = matrix.getModulation(ModulationTarget.FREQUENCY);
+        float[] ampMod = matrix.getModulation(ModulationTarget.AMPLITUDE);
+        float[] phaseMod = matrix.getModulation(ModulationTarget.PHASE);
+        boolean freqModulated = matrix.isModulated(ModulationTarget.FREQUENCY);
+        boolean audioRateFreq = matrix.isAudioRate(ModulationTarget.FREQUENCY);
+
+        double baseIncrement = freq / sampleRate;
+        // at control rate the pitch moves linearly within a block, so only the ratios at both ends are needed
+        double startRatio = 1;
+        double ratioStep = 0;
+        if (freqModulated && !audioRateFreq) {
+            double semitonesBefore = 2 * freqMod[0] - (length > 1 ? freqMod[1] : freqMod[0]);
+            startRatio = semitonesToRatio(semitonesBefore);
+            ratioStep = (semitonesToRatio(freqMod[length - 1]) - startRatio) / length;
+        }
+
+        for (int i = 0; i < length; i++) {
+            double ratio;
+            if (audioRateFreq) {
+                ratio = semitonesToRatio(freqMod[i]);
+            } else {
+                ratio = startRatio + ratioStep * (i + 1);
+            }
+            float modulatedAmp = amp * Math.max(0, 1 + ampMod[i]);
+            double modulatedPhase = phase + phaseMod[i];
+            modulatedPhase -= Math.floor(modulatedPhase);
+
+            // with a period of 1 second the time is the phase
+            out[offset + i] = waveform.sample((float) modulatedPhase, 1, modulatedAmp, 0, sineAccuracy);
+
+            phase += baseIncrement * ratio;
+            if (phase >= 1) phase -= Math.floor(phase);
+        }
+    }
+
+    private static double semitonesToRatio(double semitones) {
+        return Math.exp(semitones * LN_2 / 12);
+    }
+}
@@ -0,0 +1,159 @@
+package net.earomc.synthesizer.modulation;
+
+import net.earomc.synthesizer.simd.SampleOps;
+
+import java.util.Arrays;
+
+/**
+ * Routes modulation sources to oscillator parameters.
+ * <p>
+ * Every route has a depth and a rate:
+ * <ul>
+ *     <li>{@link Rate#CONTROL} routes advance their source once per block. The value is interpolated linearly
+ *     across the block, so the modulation stays smooth. All control rate routes of a target together cost one
+ *     ramp per block, no matter how many there are.</li>
+ *     <li>{@link Rate#AUDIO} routes compute their source for every sample, for fast modulation like FM.</li>
+ * </ul>
+ * {@link #process(int)} sums all routes of each target into one buffer per target. Nothing is allocated
+ * after the routes have been added.
+ */
+public class ModulationMatrix {
+
+    public enum Rate {
+        CONTROL,
+        AUDIO
+    }
+
+    private static final ModulationTarget[] TARGETS = ModulationTarget.values();
+
+    private final int maxBlockSize;
+    private final float[][] modulation;
+    private final boolean[] modulated;
+    private final boolean[] audioRate;
+    private final float[] scratch;
+
+    private ModulationSource[] sources = new ModulationSource[0];
+    private ModulationTarget[] targets = new ModulationTarget[0];
+    private Rate[] rates = new Rate[0];
+    private float[] depths = new float[0];
+    // value of each control rate route at the end of the previous block
+    private float[] lastValues = new float[0];
+
+    // sums of the control rate routes per target, at the end of the previous and the current block
+    private final float[] controlStart = new float[TARGETS.length];
+    private final float[] controlEnd = new float[TARGETS.length];
+
+    public ModulationMatrix(int maxBlockSize) {
+        this.maxBlockSize = maxBlockSize;
+        this.modulation = new float[TARGETS.length][maxBlockSize];
+        this.modulated = new boolean[TARGETS.length];
+        this.audioRate = new boolean[TARGETS.length];
+        this.scratch = new float[maxBlockSize];
+    }
+
+    /**
+     * @return the index of the route, to change its depth later.
+     */
+    public int addRoute(ModulationSource source, ModulationTarget target, float depth, Rate rate) {
+        int route = sources.length;
+        sources = Arrays.copyOf(sources, route + 1);
+        targets = Arrays.copyOf(targets, route + 1);
+        rates = Arrays.copyOf(rates, route + 1);
+        depths = Arrays.copyOf(depths, route + 1);
+        lastValues = Arrays.copyOf(lastValues, route + 1);
+        sources[route] = source;
+        targets[route] = target;
+        rates[route] = rate;
+        depths[route] = depth;
+        lastValues[route] = source.advance(0);
+        modulated[target.ordinal()] = true;
+        if (rate == Rate.AUDIO) audioRate[target.ordinal()] = true;
+        return route;
+    }
+
+    public void setDepth(int route, float depth) {
+        depths[route] = depth;
+    }
+
+    public float getDepth(int route) {
+        return depths[route];
+    }
+
+    public int getRouteCount() {
+        return sources.length;
+    }
+
+    public int getMaxBlockSize() {
+        return maxBlockSize;
+    }
+
+    public void noteOn() {
+        for (int route = 0; route < sources.length; route++) {
+            sources[route].noteOn();
+            lastValues[route] = sources[route].advance(0);
+        }
+    }
+
+    public void noteOff() {
+        for (ModulationSource source : sources) {
+            source.noteOff();
+        }
+    }
+
+    /**
+     * @return whether any route modulates the target. If not, its buffer only contains zeros.
+     */
+    public boolean isModulated(ModulationTarget target) {
+        return modulated[target.ordinal()];
+    }
+
+    /**
+     * @return whether any route modulates the target at audio rate. If not, the buffer of the target is a linear ramp.
+     */
+    public boolean isAudioRate(ModulationTarget target) {
+        return audioRate[target.ordinal()];
+    }
+
+    /**
+     * @return the summed modulation of the target for every sample of the last processed block,
+     * already multiplied by the route depths.
+     */
+    public float[] getModulation(ModulationTarget target) {
+        return modulation[target.ordinal()];
+    }
+
+    /**
+     * Advances all sources by one block and computes the modulation of every target.
+     */
+    public void process(int length) {
+        if (length > maxBlockSize)
+            throw new IllegalArgumentException("Block of " + length + " samples is bigger than the max block size " + maxBlockSize);
+        Arrays.fill(controlStart, 0f);
+        Arrays.fill(controlEnd, 0f);
+        for (int route = 0; route < sources.length; route++) {
+            if (rates[route] != Rate.CONTROL) continue;
+            int target = targets[route].ordinal();
+            float value = sources[route].advance(length);
+            controlStart[target] += lastValues[route] * depths[route];
+            controlEnd[target] += value * depths[route];
+            lastValues[route] = value;
+        }
+
+        for (int target = 0; target < TARGETS.length; target++) {
+            if (!modulated[target]) continue;
+            float[] buffer = modulation[target];
+            float start = controlStart[target];
+            float step = (controlEnd[target] - start) / length;
+            // the ramp ends exactly at the value for the end of the block
+            for (int i = 0; i < length; i++) {
+                buffer[i] = start + step * (i + 1);
+            }
+        }
+
+        for (int route = 0; route < sources.length; route++) {
+            if (rates[route] != Rate.AUDIO) continue;
+            sources[route].render(scratch, 0, length);
+            SampleOps.PREFERRED.add(modulation[targets[route].ordinal()], 0, scratch, 0, length, depths[route]);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package net.earomc.synthesizer.modulation;
+
+/**
+ * Something that produces a modulation signal, like an LFO or an envelope.
+ * <p>
+ * Sources are advanced either once per block ({@link #advance(int)}, control rate)
+ * or sample by sample ({@link #render(float[], int, int)}, audio rate). A source belongs to one voice
+ * and should only be used by one route, since both methods move the source forward in time.
+ */
+public interface ModulationSource {
+
+    /**
+     * Moves the source forward in time without computing the values in between.
+     *
+     * @param samples how many samples to advance.
+     * @return the value after advancing.
+     */
+    float advance(int samples);
+
+    /**
+     * Writes the value for every sample of the section into out and moves the source forward accordingly.
+     */
+    void render(float[] out, int offset, int length);
+
+    /**
+     * Called when the voice the source belongs to starts a note.
+     */
+    default void noteOn() {
+    }
+
+    /**
+     * Called when the voice the source belongs to releases its note.
+     */
+    default void noteOff() {
+    }
+}
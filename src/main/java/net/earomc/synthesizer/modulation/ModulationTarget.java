@@ -0,0 +1,20 @@
+package net.earomc.synthesizer.modulation;
+
+/**
+ * The oscillator parameters a {@link ModulationMatrix} route can modulate.
+ * The depth of a route is in the unit of its target.
+ */
+public enum ModulationTarget {
+    /**
+     * Pitch in semitones. A source value of 1 at depth 12 doubles the frequency.
+     */
+    FREQUENCY,
+    /**
+     * Amplitude as a factor. The amplitude is multiplied by (1 + value * depth), but never goes below 0.
+     */
+    AMPLITUDE,
+    /**
+     * Phase offset in periods. A source value of 1 at depth 0.5 shifts the wave by half a period.
+     */
+    PHASE
+}
@@ -0,0 +1,42 @@
+package net.earomc.synthesizer.modulation;
+
+/**
+ * Steps through a list of values at a fixed rate and loops. Every value is held for the duration of one step.
+ */
+public class StepSequencer implements ModulationSource {
+    private final float[] steps;
+    private final int samplesPerStep;
+    private long position;
+
+    /**
+     * @param steps the values, usually from -1 to 1.
+     */
+    public StepSequencer(float sampleRate, float stepSeconds, float... steps) {
+        if (steps.length == 0) throw new IllegalArgumentException("Need at least one step");
+        this.steps = steps.clone();
+        this.samplesPerStep = Math.max(1, Math.round(stepSeconds * sampleRate));
+    }
+
+    @Override
+    public float advance(int samples) {
+        position += samples;
+        return value();
+    }
+
+    @Override
+    public void render(float[] out, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            position++;
+            out[i] = value();
+        }
+    }
+
+    private float value() {
+        return steps[(int) ((position / samplesPerStep) % steps.length)];
+    }
+
+    @Override
+    public void noteOn() {
+        position = 0;
+    }
+}
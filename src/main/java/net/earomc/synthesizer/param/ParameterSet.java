@@ -0,0 +1,270 @@
+package net.earomc.synthesizer.param;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parameters that control threads (GUI, MIDI, network) change while the render thread reads them.
+ * <p>
+ * Control threads publish new target values under a sequence lock: the sequence number is odd while values are
+ * written and even otherwise. The render thread calls {@link #update()} once per block. It only reads the values
+ * if the sequence number changed, and only keeps them if it didn't change while reading, so it sees every change
+ * of {@link #set(int[], float[])} as a whole. If a writer is busy, the render thread just keeps the old targets
+ * until the next block; it never waits, locks or allocates. Writers only wait for other writers.
+ * <p>
+ * On the render side every parameter moves smoothly towards its target with a one-pole filter per sample,
+ * so changes don't click. Parameters that have reached their target cost nothing but a fill per block,
+ * so the cost per block only grows with the number of parameters that are moving.
+ * <p>
+ * Parameters are added before rendering starts. After that, {@link #set} and {@link #get} may be called from
+ * any thread, all other methods only from the render thread.
+ */
+public final class ParameterSet {
+    // a smoothed value this close to its target jumps to it
+    private static final float SETTLE_THRESHOLD = 1e-6f;
+
+    private final float sampleRate;
+    private final int capacity;
+    private int count;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final String[] names;
+    private final float[] min;
+    private final float[] max;
+
+    // shared: the targets published by the control threads, as float bits, and the sequence lock
+    private final AtomicIntegerArray published;
+    private final AtomicLong sequence = new AtomicLong();
+
+    // render thread only
+    private long seenSequence;
+    private final float[] snapshot;
+    private final float[] target;
+    private final float[] current;
+    private final float[] coefficient;
+    // indices of the parameters that haven't reached their target, movingCount of them
+    private final int[] moving;
+    private final boolean[] isMoving;
+    private int movingCount;
+
+    public ParameterSet(int capacity, float sampleRate) {
+        this.capacity = capacity;
+        this.sampleRate = sampleRate;
+        this.names = new String[capacity];
+        this.min = new float[capacity];
+        this.max = new float[capacity];
+        this.published = new AtomicIntegerArray(capacity);
+        this.snapshot = new float[capacity];
+        this.target = new float[capacity];
+        this.current = new float[capacity];
+        this.coefficient = new float[capacity];
+        this.moving = new int[capacity];
+        this.isMoving = new boolean[capacity];
+    }
+
+    /**
+     * Adds a parameter. Only call this before rendering starts.
+     *
+     * @param smoothingSeconds time constant of the smoothing, the value gets 63% of the way to a new target in
+     *                         this time. 0 to jump to new values at the next block.
+     * @return the ID of the parameter.
+     */
+    public int add(String name, float initialValue, float min, float max, float smoothingSeconds) {
+        if (count == capacity) throw new IllegalStateException("Cannot add more than " + capacity + " parameters");
+        if (ids.containsKey(name)) throw new IllegalArgumentException("Parameter " + name + " already exists");
+        if (min > max) throw new IllegalArgumentException("Min " + min + " of parameter " + name + " is bigger than max " + max);
+        if (smoothingSeconds < 0)
+            throw new IllegalArgumentException("Illegal value for smoothingSeconds: " + smoothingSeconds + "! Cannot be negative");
+        int id = count++;
+        ids.put(name, id);
+        names[id] = name;
+        this.min[id] = min;
+        this.max[id] = max;
+        checkValue(id, initialValue);
+        float value = clamp(id, initialValue);
+        published.set(id, Float.floatToRawIntBits(value));
+        target[id] = value;
+        current[id] = value;
+        coefficient[id] = smoothingSeconds == 0 ? 0 : (float) Math.exp(-1 / (smoothingSeconds * sampleRate));
+        return id;
+    }
+
+    /**
+     * Publishes a new target value. Values outside the range of the parameter are clamped. Any thread.
+     */
+    public void set(int id, float value) {
+        checkId(id);
+        checkValue(id, value);
+        int bits = Float.floatToRawIntBits(clamp(id, value));
+        long locked = lock();
+        published.set(id, bits);
+        sequence.set(locked + 1);
+    }
+
+    /**
+     * Publishes new target values of several parameters at once. The render thread sees all or none of them. Any thread.
+     */
+    public void set(int[] ids, float[] values) {
+        if (ids.length != values.length)
+            throw new IllegalArgumentException(ids.length + " IDs but " + values.length + " values");
+        // everything that can throw happens before the lock, a throw while it is held would block all writers for good
+        for (int i = 0; i < ids.length; i++) {
+            checkId(ids[i]);
+            checkValue(ids[i], values[i]);
+        }
+        long locked = lock();
+        for (int i = 0; i < ids.length; i++) {
+            published.set(ids[i], Float.floatToRawIntBits(clamp(ids[i], values[i])));
+        }
+        sequence.set(locked + 1);
+    }
+
+    // makes the sequence odd, waiting for other writers
+    private long lock() {
+        while (true) {
+            long even = sequence.get();
+            if ((even & 1) == 0 && sequence.compareAndSet(even, even + 1)) return even + 1;
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * @return the latest published target value. Any thread.
+     */
+    public float get(int id) {
+        checkId(id);
+        return Float.intBitsToFloat(published.get(id));
+    }
+
+    /**
+     * Takes over the published targets, if there are new ones. Call once at the start of every block,
+     * before any {@link #fill} or {@link #advance}.
+     *
+     * @return whether new targets were taken over.
+     */
+    public boolean update() {
+        removeSettled();
+        long before = sequence.get();
+        // nothing new, or a writer is busy right now: try again next block
+        if (before == seenSequence || (before & 1) != 0) return false;
+        for (int id = 0; id < count; id++) {
+            snapshot[id] = Float.intBitsToFloat(published.get(id));
+        }
+        // a writer changed the values while we read them
+        if (sequence.get() != before) return false;
+        seenSequence = before;
+        for (int id = 0; id < count; id++) {
+            if (snapshot[id] == target[id]) continue;
+            target[id] = snapshot[id];
+            if (!isMoving[id]) {
+                isMoving[id] = true;
+                moving[movingCount++] = id;
+            }
+        }
+        return true;
+    }
+
+    private void removeSettled() {
+        int kept = 0;
+        for (int i = 0; i < movingCount; i++) {
+            int id = moving[i];
+            if (current[id] == target[id]) {
+                isMoving[id] = false;
+            } else {
+                moving[kept++] = id;
+            }
+        }
+        movingCount = kept;
+    }
+
+    /**
+     * Writes the smoothed values of the next length samples of a parameter to out and advances it.
+     * Every parameter has to be advanced by exactly one of {@link #fill} or {@link #advance} per block.
+     */
+    public void fill(int id, float[] out, int offset, int length) {
+        if (!isMoving[id]) {
+            Arrays.fill(out, offset, offset + length, current[id]);
+            return;
+        }
+        float value = current[id];
+        float goal = target[id];
+        float c = coefficient[id];
+        for (int i = offset; i < offset + length; i++) {
+            value = goal + (value - goal) * c;
+            out[i] = value;
+        }
+        settle(id, value);
+    }
+
+    /**
+     * Advances a parameter by length samples without writing every value, for parameters that are only read once per block.
+     *
+     * @return the smoothed value at the end of the block.
+     */
+    public float advance(int id, int length) {
+        if (!isMoving[id]) return current[id];
+        float goal = target[id];
+        float value = goal + (current[id] - goal) * (float) Math.pow(coefficient[id], length);
+        settle(id, value);
+        return current[id];
+    }
+
+    private void settle(int id, float value) {
+        float goal = target[id];
+        if (Math.abs(value - goal) <= SETTLE_THRESHOLD * Math.max(1, Math.abs(goal))) {
+            current[id] = goal;
+        } else {
+            current[id] = value;
+        }
+    }
+
+    /**
+     * @return the smoothed value at the end of the last block. Render thread.
+     */
+    public float getCurrent(int id) {
+        return current[id];
+    }
+
+    /**
+     * @return the target the parameter is moving towards, as of the last {@link #update()}. Render thread.
+     */
+    public float getTarget(int id) {
+        return target[id];
+    }
+
+    /**
+     * @return the number of parameters that are still moving towards their target. Render thread.
+     */
+    public int getMovingCount() {
+        return movingCount;
+    }
+
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        if (id == null) throw new IllegalArgumentException("Unknown parameter " + name);
+        return id;
+    }
+
+    public String getName(int id) {
+        checkId(id);
+        return names[id];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private void checkValue(int id, float value) {
+        if (Float.isNaN(value)) throw new IllegalArgumentException("Parameter " + names[id] + " cannot be NaN");
+    }
+
+    private float clamp(int id, float value) {
+        return Math.max(min[id], Math.min(max[id], value));
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= count) throw new IllegalArgumentException("Unknown parameter ID " + id);
+    }
+}
@@ -0,0 +1,118 @@
+package net.earomc.synthesizer.patch;
+
+import net.earomc.synthesizer.effect.BiquadFilter;
+import net.earomc.synthesizer.modulation.ModulationMatrix;
+import net.earomc.synthesizer.modulation.ModulationTarget;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A sound as data: oscillators, modulation and effects. {@link PatchVoice} turns a patch into something that plays.
+ * <p>
+ * Patches are stored with {@link PatchCodec} and in banks with {@link PatchBank}, and can be exported as text
+ * with {@link PatchText}. Waveforms are referenced by their name in the {@link net.earomc.synthesizer.waveform.WaveformRegistry},
+ * and are only looked up when the patch is played.
+ *
+ * @param oscillators played together, at least one.
+ * @param sources     modulation sources, referenced by index from the routes. Every route gets its own instance of its source.
+ * @param routes      connect sources to the parameters of every oscillator.
+ * @param effects     applied one after another to the mix of the oscillators.
+ */
+public record Patch(String name, List<Oscillator> oscillators, List<Source> sources, List<Route> routes, List<Effect> effects) {
+    public static final int MAX_ELEMENTS = 255;
+
+    public Patch {
+        if (name.isEmpty()) throw new IllegalArgumentException("Patch name cannot be empty");
+        if (oscillators.isEmpty()) throw new IllegalArgumentException("Patch " + name + " needs at least one oscillator");
+        checkCount("oscillators", oscillators);
+        checkCount("sources", sources);
+        checkCount("routes", routes);
+        checkCount("effects", effects);
+        for (Route route : routes) {
+            if (route.source() >= sources.size())
+                throw new IllegalArgumentException("Illegal value for source: " + route.source() + "! Patch " + name + " has " + sources.size() + " sources");
+        }
+        oscillators = List.copyOf(oscillators);
+        sources = List.copyOf(sources);
+        routes = List.copyOf(routes);
+        effects = List.copyOf(effects);
+    }
+
+    private static void checkCount(String what, List<?> list) {
+        if (list.size() > MAX_ELEMENTS)
+            throw new IllegalArgumentException("Too many " + what + ": " + list.size() + "! A patch can have at most " + MAX_ELEMENTS);
+    }
+
+    /**
+     * @param detuneSemitones pitch of the oscillator relative to the played note.
+     */
+    public record Oscillator(String waveform, float amp, float detuneSemitones) {
+        public Oscillator {
+            if (amp < -1 || amp > 1) throw new IllegalArgumentException("Illegal value for amp: " + amp + "! Has to be a value between -1 and 1");
+        }
+    }
+
+    public sealed interface Source permits Lfo, Envelope, StepSequencer {
+    }
+
+    public record Lfo(String waveform, float rateHz, boolean retrigger) implements Source {
+    }
+
+    public record Envelope(float attackSeconds, float decaySeconds, float sustainLevel, float releaseSeconds) implements Source {
+    }
+
+    public record StepSequencer(float stepSeconds, float[] steps) implements Source {
+        public StepSequencer {
+            if (steps.length == 0 || steps.length > MAX_ELEMENTS)
+                throw new IllegalArgumentException("Illegal number of steps: " + steps.length + "! Has to be between 1 and " + MAX_ELEMENTS);
+            steps = steps.clone();
+        }
+
+        @Override
+        public float[] steps() {
+            return steps.clone();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StepSequencer other && Float.compare(stepSeconds, other.stepSeconds) == 0
+                    && Arrays.equals(steps, other.steps);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Float.hashCode(stepSeconds) + Arrays.hashCode(steps);
+        }
+
+        @Override
+        public String toString() {
+            return "StepSequencer[stepSeconds=" + stepSeconds + ", steps=" + Arrays.toString(steps) + "]";
+        }
+    }
+
+    /**
+     * @param source index into {@link #sources()}.
+     * @param depth  in the unit of the target, see {@link ModulationTarget}.
+     */
+    public record Route(int source, ModulationTarget target, float depth, ModulationMatrix.Rate rate) {
+        public Route {
+            if (source < 0) throw new IllegalArgumentException("Illegal value for source: " + source + "! Cannot be negative");
+        }
+    }
+
+    public sealed interface Effect permits Filter, Delay, Reverb, Limiter {
+    }
+
+    public record Filter(BiquadFilter.Type type, float cutoffFreq, float q) implements Effect {
+    }
+
+    public record Delay(float maxDelaySeconds, float delaySeconds, float feedback, float mix) implements Effect {
+    }
+
+    public record Reverb(float decaySeconds, float damping, float mix) implements Effect {
+    }
+
+    public record Limiter(float lookaheadSeconds, float releaseSeconds, float ceiling) implements Effect {
+    }
+}
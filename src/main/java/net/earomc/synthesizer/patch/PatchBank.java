@@ -0,0 +1,169 @@
+package net.earomc.synthesizer.patch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A file with many patches that is memory-mapped, so opening a bank with thousands of patches doesn't read them,
+ * and a patch is only decoded when it is needed. Loading a patch decodes a few dozen bytes straight from the mapped
+ * file, which takes microseconds.
+ * <pre>
+ * int     magic "EPBK"
+ * short   bank version
+ * int     patch count
+ * int     offset and int length of every patch, from the start of the file
+ * ...     the patches, see {@link PatchCodec}
+ * </pre>
+ * Patch names are unique within a bank. A bank can be read from any number of threads at once.
+ */
+public class PatchBank {
+    public static final short VERSION = 1;
+    private static final int FILE_MAGIC = 0x4550424B; // "EPBK"
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Integer.BYTES;
+    private static final int INDEX_ENTRY_SIZE = 2 * Integer.BYTES;
+
+    private final Path path;
+    private final ByteBuffer data;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final String[] names;
+    private final Map<String, Integer> indexByName;
+
+    private PatchBank(Path path, ByteBuffer data, int[] offsets, int[] lengths, String[] names) {
+        this.path = path;
+        this.data = data;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.names = names;
+        this.indexByName = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            indexByName.put(names[i], i);
+        }
+    }
+
+    /**
+     * Writes the patches into a new bank file, replacing the file if it exists.
+     */
+    public static void write(Path path, Collection<Patch> patches) throws IOException {
+        Set<String> names = new HashSet<>();
+        long size = HEADER_SIZE + (long) patches.size() * INDEX_ENTRY_SIZE;
+        for (Patch patch : patches) {
+            if (!names.add(patch.name())) throw new IllegalArgumentException("Duplicate patch name " + patch.name());
+            size += PatchCodec.encodedSize(patch);
+        }
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Bank too large: " + size + " bytes");
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(FILE_MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putInt(patches.size());
+        int offset = HEADER_SIZE + patches.size() * INDEX_ENTRY_SIZE;
+        for (Patch patch : patches) {
+            int length = PatchCodec.encodedSize(patch);
+            buffer.putInt(offset);
+            buffer.putInt(length);
+            offset += length;
+        }
+        for (Patch patch : patches) {
+            PatchCodec.encode(patch, buffer);
+        }
+        Files.write(path, buffer.array());
+    }
+
+    /**
+     * Maps the bank file and reads its index and patch names.
+     */
+    public static PatchBank open(Path path) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (data.limit() < HEADER_SIZE || data.getInt(0) != FILE_MAGIC) throw new IOException(path + " is not a patch bank");
+            short version = data.getShort(Integer.BYTES);
+            if (version < 1 || version > VERSION)
+                throw new IOException(path + ": unsupported bank version " + version + ", supported up to " + VERSION);
+            int count = data.getInt(Integer.BYTES + Short.BYTES);
+            if (count < 0 || HEADER_SIZE + (long) count * INDEX_ENTRY_SIZE > data.limit())
+                throw new IOException(path + ": illegal patch count " + count);
+
+            int[] offsets = new int[count];
+            int[] lengths = new int[count];
+            String[] names = new String[count];
+            for (int i = 0; i < count; i++) {
+                int entry = HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+                offsets[i] = data.getInt(entry);
+                lengths[i] = data.getInt(entry + Integer.BYTES);
+                if (offsets[i] < 0 || lengths[i] < 0 || (long) offsets[i] + lengths[i] > data.limit())
+                    throw new IOException(path + ": patch " + i + " lies outside of the file");
+                names[i] = readName(data.slice(offsets[i], lengths[i]));
+            }
+            return new PatchBank(path, data, offsets, lengths, names);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException(path + " is corrupt: " + e.getMessage(), e);
+        }
+    }
+
+    private static String readName(ByteBuffer patch) {
+        // the name comes right after the version, see PatchCodec
+        patch.getShort();
+        byte[] bytes = new byte[Short.toUnsignedInt(patch.getShort())];
+        patch.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Decodes the patch with the given index.
+     *
+     * @throws IllegalArgumentException if the patch data is corrupt.
+     */
+    public Patch get(int index) {
+        Objects.checkIndex(index, offsets.length);
+        // absolute slice, so threads don't share a buffer position
+        return PatchCodec.decode(data.slice(offsets[index], lengths[index]));
+    }
+
+    /**
+     * @return the patch with the given name, or null if the bank has none.
+     */
+    public Patch get(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : get(index);
+    }
+
+    /**
+     * @return the index of the patch with the given name, or -1 if the bank has none.
+     */
+    public int indexOf(String name) {
+        return indexByName.getOrDefault(name, -1);
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public List<String> getNames() {
+        return List.of(names);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        return "PatchBank{" + path + ", " + names.length + " patches}";
+    }
+}
@@ -0,0 +1,254 @@
+package net.earomc.synthesizer.patch;
+
+import net.earomc.synthesizer.effect.BiquadFilter;
+import net.earomc.synthesizer.modulation.ModulationMatrix;
+import net.earomc.synthesizer.modulation.ModulationTarget;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary format of a {@link Patch}. Big endian, every patch starts with the version of the format it was written with:
+ * <pre>
+ * short   version
+ * string  name                      # string: unsigned short byte count, then UTF-8
+ * byte    oscillator count, per oscillator: string waveform, float amp, float detune
+ * byte    source count, per source: byte kind, then
+ *           LFO:            string waveform, float rate, byte retrigger
+ *           ENVELOPE:       float attack, float decay, float sustain, float release
+ *           STEP_SEQUENCER: float step seconds, byte step count, float per step
+ * byte    route count, per route: byte source, byte target, byte rate, float depth
+ * byte    effect count, per effect: byte kind, then
+ *           FILTER:  byte type, float cutoff, float q
+ *           DELAY:   float max delay, float delay, float feedback, float mix
+ *           REVERB:  float decay, float damping, float mix
+ *           LIMITER: float lookahead, float release, float ceiling
+ * </pre>
+ * Enums (target, rate, filter type) are stored as their ordinal. New constants may only be added at the end,
+ * everything else needs a new version. Patch files are the magic number "EPAT" followed by one patch.
+ */
+public final class PatchCodec {
+    public static final short VERSION = 1;
+    private static final int FILE_MAGIC = 0x45504154; // "EPAT"
+
+    private static final byte LFO = 0, ENVELOPE = 1, STEP_SEQUENCER = 2;
+    private static final byte FILTER = 0, DELAY = 1, REVERB = 2, LIMITER = 3;
+
+    private static final ModulationTarget[] TARGETS = ModulationTarget.values();
+    private static final ModulationMatrix.Rate[] RATES = ModulationMatrix.Rate.values();
+    private static final BiquadFilter.Type[] FILTER_TYPES = BiquadFilter.Type.values();
+
+    private PatchCodec() {
+    }
+
+    public static byte[] encode(Patch patch) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(patch));
+        encode(patch, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Writes the patch at the position of the buffer, which has to have {@link #encodedSize(Patch)} bytes left.
+     */
+    public static void encode(Patch patch, ByteBuffer buffer) {
+        buffer.putShort(VERSION);
+        putString(buffer, patch.name());
+        buffer.put((byte) patch.oscillators().size());
+        for (Patch.Oscillator oscillator : patch.oscillators()) {
+            putString(buffer, oscillator.waveform());
+            buffer.putFloat(oscillator.amp());
+            buffer.putFloat(oscillator.detuneSemitones());
+        }
+        buffer.put((byte) patch.sources().size());
+        for (Patch.Source source : patch.sources()) {
+            if (source instanceof Patch.Lfo lfo) {
+                buffer.put(LFO);
+                putString(buffer, lfo.waveform());
+                buffer.putFloat(lfo.rateHz());
+                buffer.put((byte) (lfo.retrigger() ? 1 : 0));
+            } else if (source instanceof Patch.Envelope envelope) {
+                buffer.put(ENVELOPE);
+                buffer.putFloat(envelope.attackSeconds());
+                buffer.putFloat(envelope.decaySeconds());
+                buffer.putFloat(envelope.sustainLevel());
+                buffer.putFloat(envelope.releaseSeconds());
+            } else if (source instanceof Patch.StepSequencer sequencer) {
+                buffer.put(STEP_SEQUENCER);
+                buffer.putFloat(sequencer.stepSeconds());
+                float[] steps = sequencer.steps();
+                buffer.put((byte) steps.length);
+                for (float step : steps) {
+                    buffer.putFloat(step);
+                }
+            }
+        }
+        buffer.put((byte) patch.routes().size());
+        for (Patch.Route route : patch.routes()) {
+            buffer.put((byte) route.source());
+            buffer.put((byte) route.target().ordinal());
+            buffer.put((byte) route.rate().ordinal());
+            buffer.putFloat(route.depth());
+        }
+        buffer.put((byte) patch.effects().size());
+        for (Patch.Effect effect : patch.effects()) {
+            if (effect instanceof Patch.Filter filter) {
+                buffer.put(FILTER);
+                buffer.put((byte) filter.type().ordinal());
+                buffer.putFloat(filter.cutoffFreq());
+                buffer.putFloat(filter.q());
+            } else if (effect instanceof Patch.Delay delay) {
+                buffer.put(DELAY);
+                buffer.putFloat(delay.maxDelaySeconds());
+                buffer.putFloat(delay.delaySeconds());
+                buffer.putFloat(delay.feedback());
+                buffer.putFloat(delay.mix());
+            } else if (effect instanceof Patch.Reverb reverb) {
+                buffer.put(REVERB);
+                buffer.putFloat(reverb.decaySeconds());
+                buffer.putFloat(reverb.damping());
+                buffer.putFloat(reverb.mix());
+            } else if (effect instanceof Patch.Limiter limiter) {
+                buffer.put(LIMITER);
+                buffer.putFloat(limiter.lookaheadSeconds());
+                buffer.putFloat(limiter.releaseSeconds());
+                buffer.putFloat(limiter.ceiling());
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes {@link #encode(Patch, ByteBuffer)} writes.
+     */
+    public static int encodedSize(Patch patch) {
+        int size = Short.BYTES + stringSize(patch.name()) + 4;
+        for (Patch.Oscillator oscillator : patch.oscillators()) {
+            size += stringSize(oscillator.waveform()) + 2 * Float.BYTES;
+        }
+        for (Patch.Source source : patch.sources()) {
+            size += 1;
+            if (source instanceof Patch.Lfo lfo) size += stringSize(lfo.waveform()) + Float.BYTES + 1;
+            else if (source instanceof Patch.Envelope) size += 4 * Float.BYTES;
+            else if (source instanceof Patch.StepSequencer sequencer) size += Float.BYTES + 1 + sequencer.steps().length * Float.BYTES;
+        }
+        size += patch.routes().size() * (3 + Float.BYTES);
+        for (Patch.Effect effect : patch.effects()) {
+            size += 1;
+            if (effect instanceof Patch.Filter) size += 1 + 2 * Float.BYTES;
+            else if (effect instanceof Patch.Delay) size += 4 * Float.BYTES;
+            else size += 3 * Float.BYTES;
+        }
+        return size;
+    }
+
+    /**
+     * Reads a patch from the position of the buffer and moves the position behind it.
+     *
+     * @throws IllegalArgumentException if the data is not a valid patch or was written by a newer version.
+     */
+    public static Patch decode(ByteBuffer buffer) {
+        try {
+            short version = buffer.getShort();
+            if (version < 1 || version > VERSION)
+                throw new IllegalArgumentException("Unsupported patch version " + version + ", supported up to " + VERSION);
+            String name = getString(buffer);
+            int oscillatorCount = Byte.toUnsignedInt(buffer.get());
+            List<Patch.Oscillator> oscillators = new ArrayList<>(oscillatorCount);
+            for (int i = 0; i < oscillatorCount; i++) {
+                oscillators.add(new Patch.Oscillator(getString(buffer), buffer.getFloat(), buffer.getFloat()));
+            }
+            int sourceCount = Byte.toUnsignedInt(buffer.get());
+            List<Patch.Source> sources = new ArrayList<>(sourceCount);
+            for (int i = 0; i < sourceCount; i++) {
+                byte kind = buffer.get();
+                sources.add(switch (kind) {
+                    case LFO -> new Patch.Lfo(getString(buffer), buffer.getFloat(), buffer.get() != 0);
+                    case ENVELOPE -> new Patch.Envelope(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+                    case STEP_SEQUENCER -> {
+                        float stepSeconds = buffer.getFloat();
+                        float[] steps = new float[Byte.toUnsignedInt(buffer.get())];
+                        for (int step = 0; step < steps.length; step++) {
+                            steps[step] = buffer.getFloat();
+                        }
+                        yield new Patch.StepSequencer(stepSeconds, steps);
+                    }
+                    default -> throw new IllegalArgumentException("Unknown modulation source kind " + kind);
+                });
+            }
+            int routeCount = Byte.toUnsignedInt(buffer.get());
+            List<Patch.Route> routes = new ArrayList<>(routeCount);
+            for (int i = 0; i < routeCount; i++) {
+                int source = Byte.toUnsignedInt(buffer.get());
+                ModulationTarget target = TARGETS[ordinal(buffer.get(), TARGETS.length, "modulation target")];
+                ModulationMatrix.Rate rate = RATES[ordinal(buffer.get(), RATES.length, "modulation rate")];
+                routes.add(new Patch.Route(source, target, buffer.getFloat(), rate));
+            }
+            int effectCount = Byte.toUnsignedInt(buffer.get());
+            List<Patch.Effect> effects = new ArrayList<>(effectCount);
+            for (int i = 0; i < effectCount; i++) {
+                byte kind = buffer.get();
+                effects.add(switch (kind) {
+                    case FILTER -> new Patch.Filter(FILTER_TYPES[ordinal(buffer.get(), FILTER_TYPES.length, "filter type")],
+                            buffer.getFloat(), buffer.getFloat());
+                    case DELAY -> new Patch.Delay(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+                    case REVERB -> new Patch.Reverb(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+                    case LIMITER -> new Patch.Limiter(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+                    default -> throw new IllegalArgumentException("Unknown effect kind " + kind);
+                });
+            }
+            return new Patch(name, oscillators, sources, routes, effects);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Patch data ends too early", e);
+        }
+    }
+
+    public static Patch decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    public static void write(Patch patch, Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + encodedSize(patch));
+        buffer.putInt(FILE_MAGIC);
+        encode(patch, buffer);
+        Files.write(path, buffer.array());
+    }
+
+    public static Patch read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.remaining() < Integer.BYTES || buffer.getInt() != FILE_MAGIC) throw new IOException(path + " is not a patch file");
+        try {
+            return decode(buffer);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(path + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static int ordinal(byte value, int count, String what) {
+        int ordinal = Byte.toUnsignedInt(value);
+        if (ordinal >= count) throw new IllegalArgumentException("Unknown " + what + " " + ordinal);
+        return ordinal;
+    }
+
+    private static void putString(ByteBuffer buffer, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static int stringSize(String string) {
+        int size = string.getBytes(StandardCharsets.UTF_8).length;
+        if (size > 0xFFFF) throw new IllegalArgumentException("String too long for a patch: " + size + " bytes");
+        return Short.BYTES + size;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
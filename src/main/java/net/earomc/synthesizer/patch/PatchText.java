@@ -0,0 +1,107 @@
+package net.earomc.synthesizer.patch;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Exports patches as plain text, one line per element, so patches and banks can be compared with diff.
+ * Numbers are written exactly, so every change to a patch shows up:
+ * <pre>
+ * patch bright lead
+ * oscillator saw amp 0.5 detune 0.0
+ * source 0 lfo sine rate 5.0 retrigger
+ * source 1 envelope attack 0.01 decay 0.2 sustain 0.7 release 0.3
+ * route source 0 frequency depth 0.3 control
+ * effect filter low_pass cutoff 1200.0 q 0.7
+ * </pre>
+ * Usage: {@code PatchText file...} prints patch files and banks, for example as a git textconv driver.
+ */
+public final class PatchText {
+    private PatchText() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: PatchText file...");
+            return;
+        }
+        for (String arg : args) {
+            Path path = Path.of(arg);
+            PatchBank bank;
+            try {
+                bank = PatchBank.open(path);
+            } catch (IOException e) {
+                // not a bank, so it has to be a single patch
+                System.out.print(format(PatchCodec.read(path)));
+                continue;
+            }
+            for (int i = 0; i < bank.size(); i++) {
+                if (i > 0) System.out.println();
+                System.out.print(format(bank.get(i)));
+            }
+        }
+    }
+
+    public static String format(Patch patch) {
+        StringBuilder text = new StringBuilder();
+        text.append("patch ").append(patch.name()).append('\n');
+        for (Patch.Oscillator oscillator : patch.oscillators()) {
+            text.append("oscillator ").append(oscillator.waveform())
+                    .append(" amp ").append(oscillator.amp())
+                    .append(" detune ").append(oscillator.detuneSemitones()).append('\n');
+        }
+        for (int i = 0; i < patch.sources().size(); i++) {
+            text.append("source ").append(i).append(' ');
+            Patch.Source source = patch.sources().get(i);
+            if (source instanceof Patch.Lfo lfo) {
+                text.append("lfo ").append(lfo.waveform()).append(" rate ").append(lfo.rateHz());
+                if (lfo.retrigger()) text.append(" retrigger");
+            } else if (source instanceof Patch.Envelope envelope) {
+                text.append("envelope attack ").append(envelope.attackSeconds())
+                        .append(" decay ").append(envelope.decaySeconds())
+                        .append(" sustain ").append(envelope.sustainLevel())
+                        .append(" release ").append(envelope.releaseSeconds());
+            } else if (source instanceof Patch.StepSequencer sequencer) {
+                text.append("steps ").append(sequencer.stepSeconds());
+                for (float step : sequencer.steps()) {
+                    text.append(' ').append(step);
+                }
+            }
+            text.append('\n');
+        }
+        for (Patch.Route route : patch.routes()) {
+            text.append("route source ").append(route.source())
+                    .append(' ').append(lowerCase(route.target()))
+                    .append(" depth ").append(route.depth())
+                    .append(' ').append(lowerCase(route.rate())).append('\n');
+        }
+        for (Patch.Effect effect : patch.effects()) {
+            text.append("effect ");
+            if (effect instanceof Patch.Filter filter) {
+                text.append("filter ").append(lowerCase(filter.type()))
+                        .append(" cutoff ").append(filter.cutoffFreq())
+                        .append(" q ").append(filter.q());
+            } else if (effect instanceof Patch.Delay delay) {
+                text.append("delay max ").append(delay.maxDelaySeconds())
+                        .append(" time ").append(delay.delaySeconds())
+                        .append(" feedback ").append(delay.feedback())
+                        .append(" mix ").append(delay.mix());
+            } else if (effect instanceof Patch.Reverb reverb) {
+                text.append("reverb decay ").append(reverb.decaySeconds())
+                        .append(" damping ").append(reverb.damping())
+                        .append(" mix ").append(reverb.mix());
+            } else if (effect instanceof Patch.Limiter limiter) {
+                text.append("limiter lookahead ").append(limiter.lookaheadSeconds())
+                        .append(" release ").append(limiter.releaseSeconds())
+                        .append(" ceiling ").append(limiter.ceiling());
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String lowerCase(Enum<?> constant) {
+        return constant.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,101 @@
+package net.earomc.synthesizer.patch;
+
+import net.earomc.synthesizer.effect.*;
+import net.earomc.synthesizer.modulation.*;
+import net.earomc.synthesizer.simd.SampleOps;
+import net.earomc.synthesizer.waveform.WaveformRegistry;
+
+/**
+ * Plays a {@link Patch}: one {@link ModulatedVoice} per oscillator, each with its own modulation sources,
+ * mixed together and run through the effects of the patch. Everything is created up front, rendering doesn't allocate.
+ */
+public class PatchVoice {
+    private final Patch patch;
+    private final ModulatedVoice[] voices;
+    private final float[] detuneRatios;
+    private final EffectChain effects;
+    private final float[] scratch;
+
+    public PatchVoice(Patch patch, float sampleRate, int maxBlockSize) {
+        this(patch, sampleRate, maxBlockSize, WaveformRegistry.getDefault());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the patch uses a waveform the registry doesn't know.
+     */
+    public PatchVoice(Patch patch, float sampleRate, int maxBlockSize, WaveformRegistry registry) {
+        this.patch = patch;
+        this.voices = new ModulatedVoice[patch.oscillators().size()];
+        this.detuneRatios = new float[voices.length];
+        for (int i = 0; i < voices.length; i++) {
+            Patch.Oscillator oscillator = patch.oscillators().get(i);
+            ModulationMatrix matrix = new ModulationMatrix(maxBlockSize);
+            for (Patch.Route route : patch.routes()) {
+                ModulationSource source = createSource(patch.sources().get(route.source()), sampleRate, registry);
+                matrix.addRoute(source, route.target(), route.depth(), route.rate());
+            }
+            voices[i] = new ModulatedVoice(sampleRate, registry.get(oscillator.waveform()), oscillator.amp(), matrix);
+            detuneRatios[i] = (float) Math.pow(2, oscillator.detuneSemitones() / 12);
+        }
+        this.effects = new EffectChain();
+        for (Patch.Effect effect : patch.effects()) {
+            effects.append(createEffect(effect, sampleRate));
+        }
+        this.scratch = new float[maxBlockSize];
+    }
+
+    private static ModulationSource createSource(Patch.Source source, float sampleRate, WaveformRegistry registry) {
+        if (source instanceof Patch.Lfo lfo)
+            return new Lfo(sampleRate, registry.get(lfo.waveform()), lfo.rateHz(), lfo.retrigger());
+        if (source instanceof Patch.Envelope envelope)
+            return new Envelope(sampleRate, envelope.attackSeconds(), envelope.decaySeconds(), envelope.sustainLevel(), envelope.releaseSeconds());
+        Patch.StepSequencer sequencer = (Patch.StepSequencer) source;
+        return new StepSequencer(sampleRate, sequencer.stepSeconds(), sequencer.steps());
+    }
+
+    private static Effect createEffect(Patch.Effect effect, float sampleRate) {
+        if (effect instanceof Patch.Filter filter)
+            return new BiquadFilter(filter.type(), sampleRate, filter.cutoffFreq(), filter.q());
+        if (effect instanceof Patch.Delay delay)
+            return new Delay(sampleRate, delay.maxDelaySeconds(), delay.delaySeconds(), delay.feedback(), delay.mix());
+        if (effect instanceof Patch.Reverb reverb)
+            return new FdnReverb(sampleRate, reverb.decaySeconds(), reverb.damping(), reverb.mix());
+        Patch.Limiter limiter = (Patch.Limiter) effect;
+        return new LookaheadLimiter(sampleRate, limiter.lookaheadSeconds(), limiter.releaseSeconds(), limiter.ceiling());
+    }
+
+    public void noteOn(float freq) {
+        for (int i = 0; i < voices.length; i++) {
+            voices[i].noteOn(freq * detuneRatios[i]);
+        }
+    }
+
+    public void noteOff() {
+        for (ModulatedVoice voice : voices) {
+            voice.noteOff();
+        }
+    }
+
+    /**
+     * Renders a block into out, overwriting what was there. The block can't be longer than the max block size.
+     */
+    public void render(float[] out, int offset, int length) {
+        voices[0].render(out, offset, length);
+        for (int i = 1; i < voices.length; i++) {
+            voices[i].render(scratch, 0, length);
+            SampleOps.PREFERRED.add(out, offset, scratch, 0, length, 1);
+        }
+        effects.process(out, offset, length);
+    }
+
+    /**
+     * Clears the state of the effects, for example before the voice plays a new phrase.
+     */
+    public void reset() {
+        effects.reset();
+    }
+
+    public Patch getPatch() {
+        return patch;
+    }
+}
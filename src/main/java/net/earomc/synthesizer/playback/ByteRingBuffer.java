@@ -0,0 +1,64 @@
+package net.earomc.synthesizer.playback;
+
+/**
+ * Bounded ring buffer of bytes for exactly one writing and one reading thread.
+ * Neither side locks, reads and writes move as many bytes as currently fit and return immediately.
+ */
+final class ByteRingBuffer {
+    private final byte[] buffer;
+    // total bytes written and read since creation, the indices into the buffer are these modulo the capacity
+    private volatile long writePosition;
+    private volatile long readPosition;
+
+    ByteRingBuffer(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Illegal value for capacity: " + capacity + "! Has to be at least 1");
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * Only called by the writing thread.
+     *
+     * @return the number of bytes written, at most {@link #availableToWrite()}.
+     */
+    int write(byte[] src, int offset, int length) {
+        long write = writePosition;
+        int count = Math.min(length, (int) (buffer.length - (write - readPosition)));
+        int index = (int) (write % buffer.length);
+        int first = Math.min(count, buffer.length - index);
+        System.arraycopy(src, offset, buffer, index, first);
+        System.arraycopy(src, offset + first, buffer, 0, count - first);
+        // publishes the bytes to the reader
+        writePosition = write + count;
+        return count;
+    }
+
+    /**
+     * Only called by the reading thread.
+     *
+     * @return the number of bytes read, at most {@link #availableToRead()}.
+     */
+    int read(byte[] dst, int offset, int length) {
+        long read = readPosition;
+        int count = Math.min(length, (int) (writePosition - read));
+        int index = (int) (read % buffer.length);
+        int first = Math.min(count, buffer.length - index);
+        System.arraycopy(buffer, index, dst, offset, first);
+        System.arraycopy(buffer, 0, dst, offset + first, count - first);
+        // frees the space for the writer
+        readPosition = read + count;
+        return count;
+    }
+
+    int availableToRead() {
+        return (int) (writePosition - readPosition);
+    }
+
+    int availableToWrite() {
+        return buffer.length - availableToRead();
+    }
+
+    int capacity() {
+        return buffer.length;
+    }
+}
@@ -0,0 +1,274 @@
+package net.earomc.synthesizer.playback;
+
+import org.jetbrains.annotations.Nullable;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static net.earomc.synthesizer.EaroSynthesizer.BUFFER_SIZE;
+
+/**
+ * Plays audio files of any length with constant memory.
+ * <p>
+ * A background thread decodes the queued tracks one after the other into a bounded ring buffer, ahead of playback.
+ * The audio is read from {@link #openStream()}, for example to write it to a SourceDataLine.
+ * Because the next track is decoded into the same ring buffer right after the current one, there is no gap between
+ * them. Looping tracks are opened again at the end and skip to their loop start, so nothing has to be kept in memory
+ * or marked for a reset.
+ */
+public class StreamingFilePlayer implements Closeable {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    // how long the threads sleep when the ring buffer is full or empty
+    private static final long WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Opens a new stream of the track from the beginning. Called again every time a looping track restarts.
+     */
+    @FunctionalInterface
+    public interface Opener {
+        AudioInputStream open() throws IOException, UnsupportedAudioFileException;
+    }
+
+    /**
+     * @param loop           whether the track plays again and again until {@link #stopLooping()} or {@link #skip()}.
+     * @param loopStartFrame frame at which repetitions of a looping track start.
+     */
+    public record Track(String name, Opener opener, boolean loop, long loopStartFrame) {
+        public Track {
+            if (loopStartFrame < 0)
+                throw new IllegalArgumentException("Illegal value for loopStartFrame: " + loopStartFrame + "! Cannot be negative");
+        }
+
+        /**
+         * @param fileName name of a resource on the class path, like ImperialMarch60.wav.
+         */
+        public static Track resource(String fileName, boolean loop) {
+            return new Track(fileName, () -> {
+                InputStream resource = StreamingFilePlayer.class.getResourceAsStream("/" + fileName);
+                if (resource == null) throw new FileNotFoundException(fileName + " could not be found.");
+                return AudioSystem.getAudioInputStream(new BufferedInputStream(resource, BUFFER_SIZE));
+            }, loop, 0);
+        }
+
+        public static Track file(Path path, boolean loop) {
+            return new Track(path.toString(), () -> AudioSystem.getAudioInputStream(
+                    new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)), loop, 0);
+        }
+    }
+
+    private final AudioFormat format;
+    private final int frameSize;
+    private final ByteRingBuffer ring;
+    private final BlockingQueue<Track> queue = new LinkedBlockingQueue<>();
+    private final Thread decoder;
+
+    // no more tracks will be queued, the decoder stops when the queue is empty
+    private volatile boolean finished;
+    private volatile boolean closed;
+    private volatile boolean skipRequested;
+    private volatile boolean stopLoopRequested;
+    private volatile boolean decoderDone;
+    @Nullable
+    private volatile Throwable error;
+    @Nullable
+    private volatile Track currentTrack;
+
+    /**
+     * @param format      the format all tracks are converted to.
+     * @param bufferBytes size of the ring buffer, how far the decoder can get ahead of playback.
+     */
+    public StreamingFilePlayer(AudioFormat format, int bufferBytes) {
+        this.format = format;
+        this.frameSize = format.getFrameSize();
+        if (bufferBytes < frameSize * 2)
+            throw new IllegalArgumentException("Illegal value for bufferBytes: " + bufferBytes + "! Has to hold at least 2 frames");
+        this.ring = new ByteRingBuffer(bufferBytes);
+        this.decoder = new Thread(this::decodeLoop, "StreamingFilePlayer decoder");
+        decoder.setDaemon(true);
+        decoder.start();
+    }
+
+    public StreamingFilePlayer(AudioFormat format) {
+        this(format, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Adds a track, which starts right after the tracks before it.
+     */
+    public void queue(Track track) {
+        if (finished) throw new IllegalStateException("No tracks can be queued after finish()");
+        queue.add(track);
+    }
+
+    /**
+     * Marks that no more tracks will be queued. The stream ends after the last queued track.
+     */
+    public void finish() {
+        finished = true;
+    }
+
+    /**
+     * Stops decoding the current track and continues with the next one.
+     * What has already been decoded into the buffer still plays.
+     */
+    public void skip() {
+        skipRequested = true;
+    }
+
+    /**
+     * Lets the current looping track play to its end instead of starting again.
+     */
+    public void stopLooping() {
+        stopLoopRequested = true;
+    }
+
+    @Nullable
+    public Track getCurrentTrack() {
+        return currentTrack;
+    }
+
+    public int getQueuedTracks() {
+        return queue.size();
+    }
+
+    /**
+     * @return decoded bytes waiting to be played.
+     */
+    public int getBufferedBytes() {
+        return ring.availableToRead();
+    }
+
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the decoded audio in the format of this player. Reads block until audio is available and always
+     * return whole frames. The stream ends when {@link #finish()} was called and all tracks have been played.
+     * There must only be one reading thread.
+     */
+    public InputStream openStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Audio can only be read in whole frames of " + frameSize + " bytes");
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return StreamingFilePlayer.this.read(b, off, len);
+            }
+
+            @Override
+            public int available() {
+                return ring.availableToRead() / frameSize * frameSize;
+            }
+
+            @Override
+            public void close() {
+                StreamingFilePlayer.this.close();
+            }
+        };
+    }
+
+    private int read(byte[] b, int off, int len) throws IOException {
+        int frames = len / frameSize;
+        if (frames == 0)
+            throw new IllegalArgumentException("Cannot read less than one frame of " + frameSize + " bytes, tried to read " + len);
+        while (true) {
+            // read before checking the buffer, so no bytes written right before the decoder finished are missed
+            boolean done = decoderDone;
+            int available = ring.availableToRead() / frameSize;
+            if (available > 0) {
+                return ring.read(b, off, Math.min(frames, available) * frameSize);
+            }
+            Throwable decodeError = error;
+            if (decodeError != null) throw new IOException("Decoding failed", decodeError);
+            if (done || closed) return -1;
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    private void decodeLoop() {
+        byte[] chunk = new byte[Math.max(1, BUFFER_SIZE / frameSize) * frameSize];
+        try {
+            while (!closed) {
+                Track track = queue.poll(1, TimeUnit.MILLISECONDS);
+                if (track == null) {
+                    if (finished && queue.isEmpty()) break;
+                    continue;
+                }
+                currentTrack = track;
+                decodeTrack(track, chunk);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (Throwable t) {
+            // interrupting the decoder on close can make the stream it reads fail
+            if (!closed) error = t;
+        } finally {
+            currentTrack = null;
+            decoderDone = true;
+        }
+    }
+
+    private void decodeTrack(Track track, byte[] chunk) throws IOException, UnsupportedAudioFileException {
+        skipRequested = false;
+        stopLoopRequested = false;
+        boolean repetition = false;
+        do {
+            try (AudioInputStream stream = open(track, repetition)) {
+                int bytesRead;
+                // AudioInputStreams only return whole frames
+                while (!closed && !skipRequested && (bytesRead = stream.read(chunk)) != -1) {
+                    write(chunk, bytesRead);
+                }
+            }
+            repetition = true;
+        } while (track.loop() && !closed && !skipRequested && !stopLoopRequested);
+    }
+
+    private AudioInputStream open(Track track, boolean repetition) throws IOException, UnsupportedAudioFileException {
+        AudioInputStream stream = track.opener().open();
+        if (!stream.getFormat().matches(format)) {
+            stream = AudioSystem.getAudioInputStream(format, stream);
+        }
+        if (repetition && track.loopStartFrame() > 0) {
+            long bytesToSkip = track.loopStartFrame() * frameSize;
+            while (bytesToSkip > 0) {
+                long skipped = stream.skip(bytesToSkip);
+                if (skipped <= 0) break;
+                bytesToSkip -= skipped;
+            }
+        }
+        return stream;
+    }
+
+    // blocks until everything fits into the ring buffer, so it never holds a partial frame for long
+    private void write(byte[] chunk, int length) {
+        int written = 0;
+        while (written < length && !closed) {
+            int count = ring.write(chunk, written, length - written);
+            if (count == 0) LockSupport.parkNanos(WAIT_NANOS);
+            written += count;
+        }
+    }
+
+    /**
+     * Stops decoding. The stream ends with the next read.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        decoder.interrupt();
+    }
+}
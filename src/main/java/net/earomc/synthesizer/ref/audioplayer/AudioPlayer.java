@@ -38,7 +38,9 @@ import java.net.*;
  * load are small and short, it is recommended that you use one of the
  * {@link #loadClip loadClip} methods. For longer sounds that may not fit in
  * memory, such as full songs, you should use one of the
- * {@link #loadStream loadStream} methods.
+ * {@link #loadStream loadStream} methods. Instruments made of many samples
+ * are better kept on disk in a {@link net.earomc.synthesizer.sampler.MappedSampleBank}
+ * and played with a {@link net.earomc.synthesizer.sampler.SamplePlayer}.
  *
  * <p>When done playing sounds (typically when exiting your program), use:
  *
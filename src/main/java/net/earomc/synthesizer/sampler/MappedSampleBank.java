@@ -0,0 +1,288 @@
+package net.earomc.synthesizer.sampler;
+
+import net.earomc.synthesizer.SimpleAudioConversion;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A bank of mono samples that stays on disk. Every region is memory-mapped on its own and read straight from the
+ * mapping while it plays, so the samples never have to fit into the heap, only the index does. The operating system
+ * reads the pages of the file when they are first touched and drops them again when memory gets short, so a bank
+ * can be larger than the RAM. Write banks with {@link SampleBankWriter}.
+ * <pre>
+ * int     magic "ESBK"
+ * short   bank version
+ * short   encoding, see {@link Encoding}
+ * float   sample rate
+ * int     region count
+ * long    offset of the index, from the start of the file
+ * ...     the samples of every region, little-endian, each region starting at a multiple of {@value #DATA_ALIGNMENT} bytes
+ * ...     the index, for every region:
+ *         long offset of the samples, long frames, long loop start, long loop end,
+ *         byte root key, byte low key, byte high key, byte low velocity, byte high velocity,
+ *         short name length, the name in UTF-8
+ * </pre>
+ * Reading a page for the first time can take as long as the disk takes, which is too long for the render thread.
+ * {@link #prefetch} touches pages ahead of time on another thread, see {@link SamplePlayer}.
+ * A bank can be read from any number of threads at once.
+ */
+public class MappedSampleBank {
+    public static final short VERSION = 1;
+    /**
+     * Pages are touched at this distance when prefetching. Most systems use 4 KiB pages.
+     */
+    public static final int PAGE_SIZE = 4096;
+    static final int FILE_MAGIC = 0x4553424B; // "ESBK"
+    static final int HEADER_SIZE = Integer.BYTES + 2 * Short.BYTES + Float.BYTES + Integer.BYTES + Long.BYTES;
+    static final int INDEX_OFFSET_POSITION = HEADER_SIZE - Long.BYTES;
+    static final int DATA_ALIGNMENT = 64;
+
+    /**
+     * How the samples are stored. Floats are read without any conversion, PCM takes a half or a quarter of the space
+     * and is decoded with {@link SimpleAudioConversion#decode}.
+     */
+    public enum Encoding {
+        FLOAT32(32, AudioFormat.Encoding.PCM_FLOAT),
+        PCM16(16, AudioFormat.Encoding.PCM_SIGNED),
+        PCM24(24, AudioFormat.Encoding.PCM_SIGNED);
+
+        private final int bits;
+        private final AudioFormat.Encoding formatEncoding;
+
+        Encoding(int bits, AudioFormat.Encoding formatEncoding) {
+            this.bits = bits;
+            this.formatEncoding = formatEncoding;
+        }
+
+        public int getBytesPerSample() {
+            return bits / Byte.SIZE;
+        }
+
+        /**
+         * @return the mono little-endian format of the stored samples at the given sample rate.
+         */
+        public AudioFormat getFormat(float sampleRate) {
+            return new AudioFormat(formatEncoding, sampleRate, bits, 1, getBytesPerSample(), sampleRate, false);
+        }
+    }
+
+    private final Path path;
+    private final Encoding encoding;
+    private final float sampleRate;
+    private final AudioFormat format;
+    private final Region[] regions;
+    private final long[] frames;
+    private final ByteBuffer[] data;
+    // float views of the mappings for FLOAT32 banks, read without conversion
+    private final FloatBuffer[] floatData;
+    private final long dataBytes;
+    // what prefetching reads, so the reads aren't optimized away
+    private volatile int prefetchSink;
+
+    private MappedSampleBank(Path path, Encoding encoding, float sampleRate, Region[] regions, long[] frames, ByteBuffer[] data) {
+        this.path = path;
+        this.encoding = encoding;
+        this.sampleRate = sampleRate;
+        this.format = encoding.getFormat(sampleRate);
+        this.regions = regions;
+        this.frames = frames;
+        this.data = data;
+        this.floatData = new FloatBuffer[data.length];
+        long bytes = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (encoding == Encoding.FLOAT32) floatData[i] = data[i].order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            bytes += data[i].capacity();
+        }
+        this.dataBytes = bytes;
+    }
+
+    /**
+     * Maps every region of the bank file and reads the index.
+     */
+    public static MappedSampleBank open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (size < HEADER_SIZE || channel.read(header, 0) < HEADER_SIZE || header.getInt(0) != FILE_MAGIC)
+                throw new IOException(path + " is not a sample bank");
+            short version = header.getShort(Integer.BYTES);
+            if (version < 1 || version > VERSION)
+                throw new IOException(path + ": unsupported bank version " + version + ", supported up to " + VERSION);
+            short encodingIndex = header.getShort(Integer.BYTES + Short.BYTES);
+            if (encodingIndex < 0 || encodingIndex >= Encoding.values().length)
+                throw new IOException(path + ": unknown encoding " + encodingIndex);
+            Encoding encoding = Encoding.values()[encodingIndex];
+            float sampleRate = header.getFloat(Integer.BYTES + 2 * Short.BYTES);
+            int count = header.getInt(Integer.BYTES + 2 * Short.BYTES + Float.BYTES);
+            long indexOffset = header.getLong(INDEX_OFFSET_POSITION);
+            if (!(sampleRate > 0)) throw new IOException(path + ": illegal sample rate " + sampleRate);
+            if (count < 0 || indexOffset < HEADER_SIZE || indexOffset > size || size - indexOffset > Integer.MAX_VALUE)
+                throw new IOException(path + ": illegal index, " + count + " regions at " + indexOffset);
+
+            // the index is small and read once, the samples are mapped
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, size - indexOffset);
+            Region[] regions = new Region[count];
+            long[] frames = new long[count];
+            ByteBuffer[] data = new ByteBuffer[count];
+            int bytesPerSample = encoding.getBytesPerSample();
+            for (int i = 0; i < count; i++) {
+                long offset = index.getLong();
+                frames[i] = index.getLong();
+                long loopStart = index.getLong();
+                long loopEnd = index.getLong();
+                int rootKey = index.get();
+                int lowKey = index.get();
+                int highKey = index.get();
+                int lowVelocity = index.get();
+                int highVelocity = index.get();
+                byte[] name = new byte[Short.toUnsignedInt(index.getShort())];
+                index.get(name);
+                regions[i] = new Region(new String(name, StandardCharsets.UTF_8), rootKey, lowKey, highKey,
+                        lowVelocity, highVelocity, loopStart, loopEnd);
+                long length = frames[i] * bytesPerSample;
+                if (offset < HEADER_SIZE || frames[i] < 1 || length > Integer.MAX_VALUE || offset + length > indexOffset)
+                    throw new IOException(path + ": region " + i + " lies outside of the sample data");
+                if (regions[i].hasLoop() && loopEnd > frames[i])
+                    throw new IOException(path + ": the loop of region " + i + " ends after its last frame");
+                // the mapping stays valid after the channel is closed
+                data[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            }
+            return new MappedSampleBank(path, encoding, sampleRate, regions, frames, data);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException(path + " is corrupt: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads samples of a region straight from the mapping. Every thread needs its own reader.
+     */
+    public final class Reader {
+        private final byte[] bytes;
+        // decode only writes from the start of an array, reads to an offset are decoded here first
+        private final float[] decoded;
+
+        /**
+         * @param maxFrames the most frames read at once.
+         */
+        private Reader(int maxFrames) {
+            boolean pcm = encoding != Encoding.FLOAT32;
+            this.bytes = new byte[pcm ? maxFrames * encoding.getBytesPerSample() : 0];
+            this.decoded = new float[pcm ? maxFrames : 0];
+        }
+
+        /**
+         * Reads up to length frames of the region, fewer at the end of the region. Doesn't allocate.
+         *
+         * @param frame first frame to read.
+         * @return the number of frames read.
+         */
+        public int read(int region, long frame, float[] samples, int offset, int length) {
+            long available = frames[region] - frame;
+            if (frame < 0 || available <= 0) return 0;
+            int count = (int) Math.min(length, available);
+            if (encoding == Encoding.FLOAT32) {
+                // absolute bulk get, so threads don't share a buffer position
+                floatData[region].get((int) frame, samples, offset, count);
+                return count;
+            }
+            int bytesPerSample = encoding.getBytesPerSample();
+            if (count * bytesPerSample > bytes.length)
+                throw new IllegalArgumentException("Cannot read " + count + " frames, the reader was made for " + bytes.length / bytesPerSample);
+            data[region].get((int) (frame * bytesPerSample), bytes, 0, count * bytesPerSample);
+            if (offset == 0) return SimpleAudioConversion.decode(bytes, samples, count * bytesPerSample, format);
+            SimpleAudioConversion.decode(bytes, decoded, count * bytesPerSample, format);
+            System.arraycopy(decoded, 0, samples, offset, count);
+            return count;
+        }
+    }
+
+    /**
+     * @param maxFrames the most frames the reader reads at once.
+     */
+    public Reader newReader(int maxFrames) {
+        if (maxFrames < 1)
+            throw new IllegalArgumentException("Illegal value for maxFrames: " + maxFrames + "! Has to be at least 1");
+        return new Reader(maxFrames);
+    }
+
+    /**
+     * Touches every page of the given frames, so the operating system reads them from the disk now and reading them
+     * later doesn't have to wait. Frames outside of the region are ignored.
+     *
+     * @return the number of pages touched.
+     */
+    public int prefetch(int region, long fromFrame, long toFrame) {
+        int bytesPerSample = encoding.getBytesPerSample();
+        ByteBuffer buffer = data[region];
+        long from = Math.max(0, fromFrame) * bytesPerSample;
+        long to = Math.min(toFrame, frames[region]) * bytesPerSample;
+        if (from >= to) return 0;
+        int sink = 0;
+        int pages = 0;
+        for (long position = from - from % PAGE_SIZE; position < to; position += PAGE_SIZE) {
+            sink += buffer.get((int) Math.max(position, from));
+            pages++;
+        }
+        prefetchSink = sink;
+        return pages;
+    }
+
+    public int size() {
+        return regions.length;
+    }
+
+    public Region getRegion(int index) {
+        Objects.checkIndex(index, regions.length);
+        return regions[index];
+    }
+
+    public List<Region> getRegions() {
+        return List.of(regions);
+    }
+
+    public long getFrames(int region) {
+        return frames[region];
+    }
+
+    /**
+     * @return the first region that the key and velocity play, -1 if there is none.
+     */
+    public int findRegion(int key, int velocity) {
+        for (int i = 0; i < regions.length; i++) {
+            if (regions[i].matches(key, velocity)) return i;
+        }
+        return -1;
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return the size of all samples on disk.
+     */
+    public long getDataBytes() {
+        return dataBytes;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        return "MappedSampleBank{" + path + ", " + regions.length + " regions, " + encoding + " at " + sampleRate + " Hz}";
+    }
+}
@@ -0,0 +1,50 @@
+package net.earomc.synthesizer.sampler;
+
+import net.earomc.synthesizer.tuning.TuningTable;
+
+/**
+ * Describes one sample of a multi-sample instrument: which keys and velocities play it, at which key it sounds at its
+ * original pitch, and which part of it loops while the key is held.
+ *
+ * @param rootKey   MIDI key at which the sample plays at its recorded pitch.
+ * @param lowKey    lowest MIDI key that plays the sample.
+ * @param highKey   highest MIDI key that plays the sample.
+ * @param loopStart first frame of the loop, or {@link #NO_LOOP}.
+ * @param loopEnd   frame after the last frame of the loop, or {@link #NO_LOOP}.
+ */
+public record Region(String name, int rootKey, int lowKey, int highKey, int lowVelocity, int highVelocity,
+                     long loopStart, long loopEnd) {
+    public static final long NO_LOOP = -1;
+
+    public Region {
+        checkKey("rootKey", rootKey);
+        checkKey("lowKey", lowKey);
+        checkKey("highKey", highKey);
+        if (lowKey > highKey)
+            throw new IllegalArgumentException("Illegal key range: " + lowKey + " to " + highKey + "! lowKey cannot be above highKey");
+        if (lowVelocity < 0 || highVelocity > 127 || lowVelocity > highVelocity)
+            throw new IllegalArgumentException("Illegal velocity range: " + lowVelocity + " to " + highVelocity + "! Has to be within 0 to 127");
+        if ((loopStart == NO_LOOP) != (loopEnd == NO_LOOP) || loopStart != NO_LOOP && (loopStart < 0 || loopEnd <= loopStart))
+            throw new IllegalArgumentException("Illegal loop: " + loopStart + " to " + loopEnd + "! Has to be NO_LOOP or 0 <= loopStart < loopEnd");
+    }
+
+    /**
+     * A region without a loop for all velocities.
+     */
+    public Region(String name, int rootKey, int lowKey, int highKey) {
+        this(name, rootKey, lowKey, highKey, 0, 127, NO_LOOP, NO_LOOP);
+    }
+
+    private static void checkKey(String name, int key) {
+        if (!TuningTable.isValidKey(key))
+            throw new IllegalArgumentException("Illegal value for " + name + ": " + key + "! Has to be a MIDI key between 0 and 127");
+    }
+
+    public boolean hasLoop() {
+        return loopStart != NO_LOOP;
+    }
+
+    public boolean matches(int key, int velocity) {
+        return key >= lowKey && key <= highKey && velocity >= lowVelocity && velocity <= highVelocity;
+    }
+}
@@ -0,0 +1,205 @@
+package net.earomc.synthesizer.sampler;
+
+import net.earomc.synthesizer.Requantizer;
+import net.earomc.synthesizer.SimpleAudioConversion;
+import net.earomc.synthesizer.Util;
+import org.jetbrains.annotations.Nullable;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.earomc.synthesizer.EaroSynthesizer.BUFFER_SIZE;
+
+/**
+ * Writes a {@link MappedSampleBank} file region by region. The samples are written to the file as they come in,
+ * so a bank can be built from recordings that don't fit into the heap together. PCM banks are encoded with TPDF
+ * dither, seeded with the index of the region so the same input always gives the same file.
+ * The index is written by {@link #close()}, a bank that wasn't closed can't be opened.
+ */
+public class SampleBankWriter implements Closeable {
+    private record Entry(Region region, long offset, long frames) {
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedSampleBank.Encoding encoding;
+    private final float sampleRate;
+    private final AudioFormat format;
+    private final ByteBuffer buffer;
+    private final List<Entry> entries = new ArrayList<>();
+    private long position = MappedSampleBank.HEADER_SIZE;
+    private boolean closed;
+
+    /**
+     * Creates the bank file, replacing the file if it exists.
+     */
+    public SampleBankWriter(Path path, MappedSampleBank.Encoding encoding, float sampleRate) throws IOException {
+        if (!(sampleRate > 0))
+            throw new IllegalArgumentException("Illegal value for sampleRate: " + sampleRate + "! Has to be bigger than 0");
+        this.path = path;
+        this.encoding = encoding;
+        this.sampleRate = sampleRate;
+        this.format = encoding.getFormat(sampleRate);
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE * encoding.getBytesPerSample()).order(ByteOrder.LITTLE_ENDIAN);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE, StandardOpenOption.READ);
+    }
+
+    /**
+     * Adds a region with the given samples.
+     *
+     * @return the number of frames written.
+     */
+    public long add(Region region, float[] samples) throws IOException {
+        beginRegion();
+        Requantizer requantizer = newRequantizer();
+        for (int offset = 0; offset < samples.length; offset += BUFFER_SIZE) {
+            writeSamples(samples, offset, Math.min(BUFFER_SIZE, samples.length - offset), requantizer);
+        }
+        return endRegion(region, samples.length);
+    }
+
+    /**
+     * Adds a region with the audio of the stream, mixed down to mono. The stream is read in small pieces and closed.
+     * Formats that {@link SimpleAudioConversion} can decode are read as they are, float samples stay lossless.
+     * Other formats are converted to 16-bit PCM first.
+     *
+     * @throws IllegalArgumentException if the stream doesn't have the sample rate of the bank. Samples aren't resampled.
+     */
+    public long add(Region region, AudioInputStream stream) throws IOException {
+        try (stream) {
+            if (stream.getFormat().getSampleRate() != sampleRate)
+                throw new IllegalArgumentException("Illegal sample rate: " + stream.getFormat().getSampleRate()
+                        + " Hz! Has to be the sample rate of the bank, " + sampleRate + " Hz");
+            AudioFormat pcmFormat = isDecodable(stream.getFormat()) ? stream.getFormat() : Util.getOutFormat(stream.getFormat());
+            try (AudioInputStream pcmStream = pcmFormat == stream.getFormat() ? stream : AudioSystem.getAudioInputStream(pcmFormat, stream)) {
+                beginRegion();
+                Requantizer requantizer = newRequantizer();
+                int channels = pcmFormat.getChannels();
+                byte[] bytes = new byte[BUFFER_SIZE * pcmFormat.getFrameSize()];
+                float[] interleaved = new float[BUFFER_SIZE * channels];
+                float[] mono = new float[BUFFER_SIZE];
+                long frames = 0;
+                int pending = 0;
+                int count;
+                while ((count = pcmStream.read(bytes, pending, bytes.length - pending)) != -1) {
+                    pending += count;
+                    int frameCount = pending / pcmFormat.getFrameSize();
+                    if (frameCount == 0) continue;
+                    SimpleAudioConversion.decode(bytes, interleaved, frameCount * pcmFormat.getFrameSize(), pcmFormat);
+                    for (int frame = 0; frame < frameCount; frame++) {
+                        float sum = 0;
+                        for (int channel = 0; channel < channels; channel++) {
+                            sum += interleaved[frame * channels + channel];
+                        }
+                        mono[frame] = sum / channels;
+                    }
+                    writeSamples(mono, 0, frameCount, requantizer);
+                    frames += frameCount;
+                    pending -= frameCount * pcmFormat.getFrameSize();
+                    System.arraycopy(bytes, frameCount * pcmFormat.getFrameSize(), bytes, 0, pending);
+                }
+                return endRegion(region, frames);
+            }
+        }
+    }
+
+    private static boolean isDecodable(AudioFormat format) {
+        AudioFormat.Encoding encoding = format.getEncoding();
+        if (encoding.equals(AudioFormat.Encoding.PCM_FLOAT))
+            return format.getSampleSizeInBits() == 32 || format.getSampleSizeInBits() == 64;
+        return encoding.equals(AudioFormat.Encoding.PCM_SIGNED) || encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED);
+    }
+
+    @Nullable
+    private Requantizer newRequantizer() {
+        if (encoding == MappedSampleBank.Encoding.FLOAT32) return null;
+        return new Requantizer(format, Requantizer.Dither.TPDF, Requantizer.NoiseShaping.NONE, entries.size());
+    }
+
+    private void beginRegion() {
+        if (closed) throw new IllegalStateException("The bank has already been written");
+        // aligned, so the samples of a region don't share a cache line with those of another
+        position = (position + MappedSampleBank.DATA_ALIGNMENT - 1) / MappedSampleBank.DATA_ALIGNMENT * MappedSampleBank.DATA_ALIGNMENT;
+    }
+
+    private void writeSamples(float[] samples, int offset, int length, @Nullable Requantizer requantizer) throws IOException {
+        buffer.clear();
+        if (requantizer == null) {
+            buffer.asFloatBuffer().put(samples, offset, length);
+            buffer.limit(length * Float.BYTES);
+        } else {
+            buffer.limit(requantizer.encode(samples, offset, buffer.array(), 0, length));
+        }
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private long endRegion(Region region, long frames) {
+        if (frames == 0) throw new IllegalArgumentException("Region " + region.name() + " is empty");
+        if (region.hasLoop() && region.loopEnd() > frames)
+            throw new IllegalArgumentException("Illegal loop end: " + region.loopEnd() + "! Region " + region.name() + " only has " + frames + " frames");
+        if (frames * encoding.getBytesPerSample() > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Region " + region.name() + " is too large: " + frames + " frames");
+        long offset = position - frames * encoding.getBytesPerSample();
+        entries.add(new Entry(region, offset, frames));
+        return frames;
+    }
+
+    public int getRegionCount() {
+        return entries.size();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Writes the index and the header and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try (channel) {
+            long indexOffset = position;
+            for (Entry entry : entries) {
+                Region region = entry.region();
+                byte[] name = region.name().getBytes(StandardCharsets.UTF_8);
+                if (name.length > 0xFFFF) throw new IllegalArgumentException("Region name too long: " + region.name());
+                ByteBuffer index = ByteBuffer.allocate(4 * Long.BYTES + 5 + Short.BYTES + name.length);
+                index.putLong(entry.offset()).putLong(entry.frames()).putLong(region.loopStart()).putLong(region.loopEnd());
+                index.put((byte) region.rootKey()).put((byte) region.lowKey()).put((byte) region.highKey());
+                index.put((byte) region.lowVelocity()).put((byte) region.highVelocity());
+                index.putShort((short) name.length).put(name);
+                index.flip();
+                while (index.hasRemaining()) {
+                    position += channel.write(index, position);
+                }
+            }
+            ByteBuffer header = ByteBuffer.allocate(MappedSampleBank.HEADER_SIZE);
+            header.putInt(MappedSampleBank.FILE_MAGIC);
+            header.putShort(MappedSampleBank.VERSION);
+            header.putShort((short) encoding.ordinal());
+            header.putFloat(sampleRate);
+            header.putInt(entries.size());
+            header.putLong(indexOffset);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package net.earomc.synthesizer.sampler;
+
+import net.earomc.synthesizer.tuning.TuningTable;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A polyphonic sample player that plays the regions of a {@link MappedSampleBank} straight from the mapped file.
+ * <p>
+ * Every voice reads the frames of the current block from the mapping, repitches them with linear interpolation and
+ * loops the loop of its region while it plays. Only the blocks being played are ever in the heap, in preallocated
+ * arrays, so rendering doesn't allocate and the bank can be as large as the disk.
+ * <p>
+ * Reading a page that isn't in memory yet would make the render thread wait for the disk. A prefetch thread touches
+ * the pages {@value #PREFETCH_BLOCKS} blocks ahead of every playing voice, including the start of the loop,
+ * so the operating system has read them by the time the voice gets there. The first blocks of every region are
+ * touched when the player is created, so a note can start right away.
+ * <p>
+ * Notes are played and rendered on the same thread, the render thread.
+ */
+public class SamplePlayer implements Closeable {
+    public static final int PREFETCH_BLOCKS = 8;
+    /**
+     * The highest step through the samples per output sample, two octaves up at the sample rate of the bank.
+     * Higher notes are played at this step.
+     */
+    public static final float MAX_STEP = 4;
+    public static final float RELEASE_SECONDS = 0.05f;
+    private static final long PREFETCH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final MappedSampleBank bank;
+    private final float sampleRate;
+    private final int maxBlockSize;
+    private final TuningTable tuning;
+    private final Voice[] voices;
+    private final float releaseStep;
+    private final int prefetchFrames;
+    private final Thread prefetcher;
+    private long noteCounter;
+    private long stolenVoices;
+    private volatile long prefetchedPages;
+    private volatile boolean closed;
+
+    public SamplePlayer(MappedSampleBank bank, float sampleRate, int maxBlockSize, int voiceCount) {
+        this(bank, sampleRate, maxBlockSize, voiceCount, TuningTable.a440());
+    }
+
+    /**
+     * @param sampleRate sample rate of the rendered audio. The regions are resampled from the sample rate of the bank.
+     * @param voiceCount the most notes playing at once. When all voices play, the oldest note is cut off.
+     */
+    public SamplePlayer(MappedSampleBank bank, float sampleRate, int maxBlockSize, int voiceCount, TuningTable tuning) {
+        if (voiceCount < 1)
+            throw new IllegalArgumentException("Illegal value for voiceCount: " + voiceCount + "! Has to be at least 1");
+        this.bank = bank;
+        this.sampleRate = sampleRate;
+        this.maxBlockSize = maxBlockSize;
+        this.tuning = tuning;
+        this.releaseStep = 1 / (RELEASE_SECONDS * sampleRate);
+        this.prefetchFrames = (int) Math.ceil(PREFETCH_BLOCKS * maxBlockSize * MAX_STEP);
+        // a block at the highest step reads this many frames, plus one for the interpolation
+        int windowFrames = (int) Math.ceil(maxBlockSize * MAX_STEP) + 2;
+        this.voices = new Voice[voiceCount];
+        for (int i = 0; i < voiceCount; i++) {
+            voices[i] = new Voice(bank.newReader(windowFrames), new float[windowFrames]);
+        }
+        for (int region = 0; region < bank.size(); region++) {
+            prefetchedPages += bank.prefetch(region, 0, prefetchFrames);
+        }
+        this.prefetcher = new Thread(this::prefetchLoop, "SamplePlayer prefetcher");
+        prefetcher.setDaemon(true);
+        prefetcher.start();
+    }
+
+    private static final class Voice {
+        final MappedSampleBank.Reader reader;
+        final float[] window;
+        int region;
+        int key;
+        long startedAt;
+        double position;
+        double step;
+        float amp;
+        float gain;
+        boolean active;
+        boolean released;
+        // read by the prefetch thread, the region first, then the frame
+        volatile int prefetchRegion = -1;
+        volatile long prefetchFrame;
+
+        Voice(MappedSampleBank.Reader reader, float[] window) {
+            this.reader = reader;
+            this.window = window;
+        }
+    }
+
+    /**
+     * Starts a note with the first region that the key and velocity play.
+     *
+     * @param key      MIDI key.
+     * @param velocity 1 to 127, the amplitude of the note is velocity / 127.
+     * @return false if no region is played by the key and velocity.
+     */
+    public boolean noteOn(int key, int velocity) {
+        int region = bank.findRegion(key, velocity);
+        if (region < 0) return false;
+        Voice voice = freeVoice();
+        Region description = bank.getRegion(region);
+        double step = tuning.getFrequency(key) / tuning.getFrequency(description.rootKey()) * bank.getSampleRate() / sampleRate;
+        voice.region = region;
+        voice.key = key;
+        voice.startedAt = noteCounter++;
+        voice.position = 0;
+        voice.step = Math.min(step, MAX_STEP);
+        voice.amp = velocity / 127f;
+        voice.gain = 1;
+        voice.released = false;
+        voice.active = true;
+        voice.prefetchRegion = region;
+        voice.prefetchFrame = 0;
+        return true;
+    }
+
+    private Voice freeVoice() {
+        Voice oldest = voices[0];
+        for (Voice voice : voices) {
+            if (!voice.active) return voice;
+            if (voice.startedAt < oldest.startedAt) oldest = voice;
+        }
+        stolenVoices++;
+        return oldest;
+    }
+
+    /**
+     * Releases all voices playing the key. They fade out over {@value #RELEASE_SECONDS} seconds.
+     */
+    public void noteOff(int key) {
+        for (Voice voice : voices) {
+            if (voice.active && voice.key == key) voice.released = true;
+        }
+    }
+
+    public void allNotesOff() {
+        for (Voice voice : voices) {
+            if (voice.active) voice.released = true;
+        }
+    }
+
+    /**
+     * Renders a block into out, overwriting what was there. The block can't be longer than the max block size.
+     */
+    public void render(float[] out, int offset, int length) {
+        if (length > maxBlockSize)
+            throw new IllegalArgumentException("Cannot render " + length + " samples, the max block size is " + maxBlockSize);
+        Arrays.fill(out, offset, offset + length, 0f);
+        for (Voice voice : voices) {
+            if (voice.active) renderVoice(voice, out, offset, length);
+        }
+    }
+
+    private void renderVoice(Voice voice, float[] out, int offset, int length) {
+        Region region = bank.getRegion(voice.region);
+        long frames = bank.getFrames(voice.region);
+        boolean loops = region.hasLoop();
+        long end = loops ? region.loopEnd() : frames;
+        double step = voice.step;
+        float[] window = voice.window;
+        int i = 0;
+        while (i < length) {
+            if (voice.position >= end) {
+                if (!loops) {
+                    stop(voice);
+                    return;
+                }
+                // a loop shorter than the step is passed more than once per sample
+                voice.position = region.loopStart() + (voice.position - region.loopStart()) % (region.loopEnd() - region.loopStart());
+            }
+            // until the end of the region or the loop, whichever comes first, at least one sample
+            int count = (int) Math.max(1, Math.min(length - i, Math.ceil((end - voice.position) / step)));
+            long first = (long) voice.position;
+            int windowLength = (int) ((long) (voice.position + (count - 1) * step) - first) + 2;
+            int read = voice.reader.read(voice.region, first, window, 0, windowLength);
+            // past the last frame the sample continues with its last value
+            Arrays.fill(window, read, windowLength, read > 0 ? window[read - 1] : 0f);
+
+            double position = voice.position - first;
+            float amp = voice.amp;
+            float gain = voice.gain;
+            for (int k = offset + i; k < offset + i + count; k++) {
+                int index = (int) position;
+                float fraction = (float) (position - index);
+                float sample = window[index] + (window[index + 1] - window[index]) * fraction;
+                out[k] += sample * amp * gain;
+                if (voice.released) {
+                    gain -= releaseStep;
+                    if (gain <= 0) {
+                        stop(voice);
+                        return;
+                    }
+                }
+                position += step;
+            }
+            voice.gain = gain;
+            voice.position = first + position;
+            i += count;
+        }
+        voice.prefetchFrame = (long) voice.position;
+    }
+
+    private void stop(Voice voice) {
+        voice.active = false;
+        voice.prefetchRegion = -1;
+    }
+
+    private void prefetchLoop() {
+        int[] regions = new int[voices.length];
+        long[] prefetchedUntil = new long[voices.length];
+        Arrays.fill(regions, -1);
+        while (!closed) {
+            long pages = 0;
+            for (int v = 0; v < voices.length; v++) {
+                int region = voices[v].prefetchRegion;
+                if (region < 0) {
+                    regions[v] = -1;
+                    continue;
+                }
+                long frame = voices[v].prefetchFrame;
+                if (region != regions[v] || frame < prefetchedUntil[v] - prefetchFrames) {
+                    // a new note, or the voice jumped back to the start of its loop
+                    regions[v] = region;
+                    prefetchedUntil[v] = frame;
+                }
+                long to = frame + prefetchFrames;
+                if (to <= prefetchedUntil[v]) continue;
+                pages += bank.prefetch(region, Math.max(frame, prefetchedUntil[v]), to);
+                Region description = bank.getRegion(region);
+                if (description.hasLoop() && to > description.loopEnd()) {
+                    pages += bank.prefetch(region, description.loopStart(), description.loopStart() + (to - description.loopEnd()));
+                }
+                prefetchedUntil[v] = to;
+            }
+            if (pages > 0) prefetchedPages += pages;
+            LockSupport.parkNanos(PREFETCH_INTERVAL_NANOS);
+        }
+    }
+
+    public int getActiveVoices() {
+        int active = 0;
+        for (Voice voice : voices) {
+            if (voice.active) active++;
+        }
+        return active;
+    }
+
+    public int getVoiceCount() {
+        return voices.length;
+    }
+
+    /**
+     * @return notes that were cut off because all voices were playing.
+     */
+    public long getStolenVoices() {
+        return stolenVoices;
+    }
+
+    /**
+     * @return pages touched by prefetching so far.
+     */
+    public long getPrefetchedPages() {
+        return prefetchedPages;
+    }
+
+    public MappedSampleBank getBank() {
+        return bank;
+    }
+
+    /**
+     * Stops the prefetch thread. The bank stays usable.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(prefetcher);
+    }
+}
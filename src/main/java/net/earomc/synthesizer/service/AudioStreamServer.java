@@ -0,0 +1,271 @@
+package net.earomc.synthesizer.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.earomc.synthesizer.EaroSynthesizer;
+import net.earomc.synthesizer.Requantizer;
+import net.earomc.synthesizer.SimpleAudioConversion;
+import net.earomc.synthesizer.batch.BatchRenderer;
+import net.earomc.synthesizer.batch.JobFileParser;
+import net.earomc.synthesizer.batch.RenderJob;
+import net.earomc.synthesizer.tuning.TuningTable;
+import net.earomc.synthesizer.waveform.Waveform;
+import net.earomc.synthesizer.waveform.WaveformRegistry;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serial;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static net.earomc.synthesizer.EaroSynthesizer.BUFFER_SIZE;
+import static net.earomc.synthesizer.EaroSynthesizer.VOLUME;
+
+/**
+ * Small HTTP server that renders jobs with a {@link RenderService} and streams them as WAV while they render.
+ * <pre>
+ * GET  /tone?waveform=sine&amp;freq=440&amp;seconds=2&amp;amp=0.02   # one tone, key=49 instead of freq for a piano key
+ * POST /render?job=name                                  # job file (see JobFileParser) in the body, renders the named or first job
+ * </pre>
+ * Tones and jobs can be at most {@value #MAX_TONE_SECONDS} seconds long, job files at most {@value #MAX_JOB_FILE_BYTES} bytes.
+ * The WAV header goes out before anything is rendered, so the first bytes arrive right away. The length of the audio
+ * isn't known up front, so the header has the largest possible sizes, like other streamed WAV files. Every stream
+ * encodes its chunks with TPDF dither piece by piece into one buffer of {@link EaroSynthesizer#BUFFER_SIZE} bytes, and the render
+ * service only renders a few chunks ahead of the listener, so the memory per stream doesn't grow with the length.
+ * <p>
+ * Usage: {@code serve [--port n] [--public]}. Without --public the server only listens on localhost.
+ */
+public class AudioStreamServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 8080;
+    public static final AudioFormat STREAM_FORMAT = BatchRenderer.RENDER_FORMAT;
+    /**
+     * The longest tone or job the server renders, in seconds.
+     */
+    public static final int MAX_TONE_SECONDS = 600;
+    public static final int MAX_JOB_FILE_BYTES = 64 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final RenderService renderService;
+
+    public AudioStreamServer(InetSocketAddress address, RenderService renderService) throws IOException {
+        this.renderService = renderService;
+        this.server = HttpServer.create(address, 0);
+        // every listener blocks its exchange thread for the whole stream, so they get one (virtual) thread each
+        this.executor = RenderService.newJobExecutor("audio-stream");
+        server.setExecutor(executor);
+        server.createContext("/tone", exchange -> handle(exchange, "GET", this::tone));
+        server.createContext("/render", exchange -> handle(exchange, "POST", this::jobFile));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        boolean isPublic = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--public" -> isPublic = true;
+                default -> {
+                    System.out.println("Usage: serve [--port n] [--public]");
+                    return;
+                }
+            }
+        }
+        InetSocketAddress address = isPublic ? new InetSocketAddress(port) : new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        AudioStreamServer server = new AudioStreamServer(address, new RenderService());
+        server.start();
+        System.out.println("Streaming audio on http://" + address.getHostString() + ":" + server.getPort() + "/tone?waveform=sine&freq=440&seconds=2");
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests and cancels running streams. Doesn't close the render service.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private interface JobReader {
+        RenderJob read(HttpExchange exchange, Map<String, String> query) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, String method, JobReader jobReader) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals(method)) {
+                sendError(exchange, 405, exchange.getRequestMethod() + " not allowed, use " + method);
+                return;
+            }
+            RenderJob job;
+            try {
+                job = jobReader.read(exchange, parseQuery(exchange.getRequestURI()));
+            } catch (RequestTooLargeException e) {
+                sendError(exchange, 413, e.getMessage());
+                return;
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+            stream(exchange, job);
+        }
+    }
+
+    private RenderJob tone(HttpExchange exchange, Map<String, String> query) {
+        Waveform waveform = WaveformRegistry.getDefault().get(query.getOrDefault("waveform", "sine"));
+        float freq;
+        if (query.containsKey("key")) {
+            freq = TuningTable.a440().getPianoKeyFrequency(Integer.parseInt(query.get("key")));
+        } else {
+            freq = Float.parseFloat(query.getOrDefault("freq", "440"));
+        }
+        if (!(freq > 0)) throw new IllegalArgumentException("Illegal value for freq: " + freq + "! Has to be positive");
+        float seconds = Float.parseFloat(query.getOrDefault("seconds", "1"));
+        if (!(seconds >= 0 && seconds <= MAX_TONE_SECONDS))
+            throw new IllegalArgumentException("Illegal value for seconds: " + seconds + "! Has to be a value between 0 and " + MAX_TONE_SECONDS);
+        float amp = Float.parseFloat(query.getOrDefault("amp", Float.toString(VOLUME)));
+        if (amp < -1 || amp > 1) throw new IllegalArgumentException("Illegal value for amp: " + amp + "! Has to be a value between -1 and 1");
+        List<RenderJob.Segment> segments = List.of(new RenderJob.Note(waveform, freq, amp, seconds));
+        return new RenderJob("tone", Path.of("tone.wav"), segments);
+    }
+
+    private RenderJob jobFile(HttpExchange exchange, Map<String, String> query) throws IOException {
+        // one byte more than allowed, to tell a body of exactly the limit from a longer one
+        byte[] bytes = exchange.getRequestBody().readNBytes(MAX_JOB_FILE_BYTES + 1);
+        if (bytes.length > MAX_JOB_FILE_BYTES)
+            throw new RequestTooLargeException("The job file is larger than " + MAX_JOB_FILE_BYTES + " bytes");
+        String body = new String(bytes, StandardCharsets.UTF_8);
+        List<RenderJob> jobs = JobFileParser.parse(body.lines().toList(), "request", null, Path.of("."));
+        if (jobs.isEmpty()) throw new IllegalArgumentException("The job file contains no job");
+        String name = query.get("job");
+        RenderJob job = name == null ? jobs.get(0) : findJob(jobs, name);
+        double seconds = job.durationSeconds();
+        if (seconds > MAX_TONE_SECONDS)
+            throw new IllegalArgumentException("Job " + job.name() + " is " + seconds + " seconds long! Has to be at most " + MAX_TONE_SECONDS);
+        return job;
+    }
+
+    private static RenderJob findJob(List<RenderJob> jobs, String name) {
+        for (RenderJob job : jobs) {
+            if (job.name().equals(name)) return job;
+        }
+        throw new IllegalArgumentException("No job named " + name);
+    }
+
+    private static final class RequestTooLargeException extends IllegalArgumentException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        RequestTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    private void stream(HttpExchange exchange, RenderJob job) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "audio/wav");
+        // length 0: chunked transfer encoding, the body is sent while it is rendered
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+        body.write(streamingWavHeader(STREAM_FORMAT));
+        body.flush();
+
+        // dither state carries over from chunk to chunk, so the stream has no seams
+        Requantizer requantizer = new Requantizer(STREAM_FORMAT, Requantizer.Dither.TPDF, Requantizer.NoiseShaping.NONE,
+                ThreadLocalRandom.current().nextLong());
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int samplesPerBuffer = BUFFER_SIZE / requantizer.getBytesPerSample();
+        // closing the stream cancels the job, for example when the listener disconnected and writing failed
+        try (RenderStream stream = renderService.submit(job)) {
+            float[] chunk;
+            while ((chunk = stream.take()) != null) {
+                for (int offset = 0; offset < chunk.length; offset += samplesPerBuffer) {
+                    int length = Math.min(samplesPerBuffer, chunk.length - offset);
+                    int bytes = requantizer.encode(chunk, offset, buffer, 0, length);
+                    body.write(buffer, 0, bytes);
+                }
+                body.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RenderStream.RenderException e) {
+            // the status is already sent, all we can do is cut the stream short
+            EaroSynthesizer.LOGGER.warning(e.getMessage());
+        }
+    }
+
+    /**
+     * @return a 44 byte WAV header with the largest possible sizes, for PCM audio of unknown length.
+     */
+    static byte[] streamingWavHeader(AudioFormat format) {
+        int channels = format.getChannels();
+        int sampleRate = (int) format.getSampleRate();
+        int bitsPerSample = format.getSampleSizeInBits();
+        int blockAlign = channels * SimpleAudioConversion.bytesPerSample(bitsPerSample);
+        byte[] header = new byte[44];
+        putAscii(header, 0, "RIFF");
+        putLittleEndian(header, 4, 0xFFFFFFFF, 4);
+        putAscii(header, 8, "WAVE");
+        putAscii(header, 12, "fmt ");
+        putLittleEndian(header, 16, 16, 4); // size of the fmt chunk
+        putLittleEndian(header, 20, 1, 2); // PCM
+        putLittleEndian(header, 22, channels, 2);
+        putLittleEndian(header, 24, sampleRate, 4);
+        putLittleEndian(header, 28, sampleRate * blockAlign, 4); // bytes per second
+        putLittleEndian(header, 32, blockAlign, 2);
+        putLittleEndian(header, 34, bitsPerSample, 2);
+        putAscii(header, 36, "data");
+        // the data chunk must not end inside the RIFF chunk, so it can't be the full 4 GB
+        putLittleEndian(header, 40, 0xFFFFFFFF - 36, 4);
+        return header;
+    }
+
+    private static void putAscii(byte[] bytes, int offset, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            bytes[offset + i] = (byte) text.charAt(i);
+        }
+    }
+
+    private static void putLittleEndian(byte[] bytes, int offset, int value, int length) {
+        for (int i = 0; i < length; i++) {
+            bytes[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private static Map<String, String> parseQuery(URI uri) {
+        Map<String, String> query = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw == null) return query;
+        for (String pair : raw.split("&")) {
+            if (pair.isEmpty()) continue;
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
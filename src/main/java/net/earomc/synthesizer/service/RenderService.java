@@ -0,0 +1,172 @@
+package net.earomc.synthesizer.service;
+
+import net.earomc.synthesizer.EaroSynthesizer;
+import net.earomc.synthesizer.batch.RenderJob;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Renders jobs for many clients at once and streams the results back chunk by chunk.
+ * <p>
+ * Every submitted job gets its own job thread that hands the segments of the job one by one to a shared render pool
+ * with one thread per core, so rendering never runs on more threads than there are cores, no matter how many jobs
+ * are running. Job threads are virtual threads if the JVM has them ({@code Executors.newVirtualThreadPerTaskExecutor},
+ * looked up reflectively so this class runs on Java 17), otherwise cached daemon threads.
+ * <p>
+ * Each job has a bounded queue of rendered chunks of at most {@link #MAX_CHUNK_SECONDS}. When a client reads slower than the job renders, the job thread
+ * waits until the client catches up (backpressure), while the render pool keeps working on other jobs.
+ * <p>
+ * Closing the service cancels all running jobs and stops its threads.
+ */
+public class RenderService implements AutoCloseable {
+    public static final int DEFAULT_MAX_QUEUED_CHUNKS = 4;
+    /**
+     * Longer notes and rests are rendered in pieces, so a chunk never holds more than this many seconds of audio.
+     */
+    public static final float MAX_CHUNK_SECONDS = 1f;
+
+    private final ExecutorService jobExecutor;
+    private final ExecutorService renderPool;
+    private final int renderThreads;
+    private final int maxQueuedChunks;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder renderedSamples = new LongAdder();
+    private final LongAdder renderNanos = new LongAdder();
+    private final LongAdder backpressureNanos = new LongAdder();
+    private final AtomicInteger activeJobs = new AtomicInteger();
+
+    public RenderService() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_QUEUED_CHUNKS);
+    }
+
+    /**
+     * @param renderThreads   threads rendering at the same time, usually the number of cores.
+     * @param maxQueuedChunks chunks a job renders ahead of its client before it waits.
+     */
+    public RenderService(int renderThreads, int maxQueuedChunks) {
+        if (renderThreads < 1) throw new IllegalArgumentException("Illegal value for renderThreads: " + renderThreads + "! Has to be at least 1");
+        if (maxQueuedChunks < 1) throw new IllegalArgumentException("Illegal value for maxQueuedChunks: " + maxQueuedChunks + "! Has to be at least 1");
+        this.renderThreads = renderThreads;
+        this.maxQueuedChunks = maxQueuedChunks;
+        this.renderPool = Executors.newFixedThreadPool(renderThreads, daemonThreads("render-service"));
+        this.jobExecutor = newJobExecutor("render-job");
+    }
+
+    static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @return an executor that runs every task on a new virtual thread if the JVM has them, else on cached daemon threads.
+     */
+    static ExecutorService newJobExecutor(String name) {
+        try {
+            // Java 21+, looked up reflectively so the service compiles and runs on Java 17
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // job threads only wait for the render pool and their clients, so they are cheap even as platform threads
+            return Executors.newCachedThreadPool(daemonThreads(name));
+        }
+    }
+
+    /**
+     * Starts rendering the job.
+     *
+     * @return the stream the rendered chunks can be read from.
+     * @throws RejectedExecutionException if the service is closed.
+     */
+    public RenderStream submit(RenderJob job) {
+        RenderStream stream = new RenderStream(job, maxQueuedChunks);
+        jobExecutor.execute(() -> run(stream));
+        submitted.increment();
+        return stream;
+    }
+
+    private void run(RenderStream stream) {
+        activeJobs.incrementAndGet();
+        stream.start(Thread.currentThread());
+        try {
+            for (RenderJob.Segment segment : stream.getJob().split(MAX_CHUNK_SECONDS)) {
+                if (stream.isCancelled()) throw new CancellationException();
+                long start = System.nanoTime();
+                Future<float[]> rendering = renderPool.submit(segment::render);
+                float[] chunk;
+                try {
+                    chunk = rendering.get();
+                } catch (InterruptedException e) {
+                    rendering.cancel(true);
+                    throw e;
+                }
+                renderNanos.add(System.nanoTime() - start);
+                renderedSamples.add(chunk.length);
+
+                start = System.nanoTime();
+                stream.put(chunk);
+                backpressureNanos.add(System.nanoTime() - start);
+            }
+            stream.finish(null);
+            completed.increment();
+        } catch (InterruptedException | CancellationException e) {
+            stream.finish(new CancellationException("Render job " + stream.getJob().name() + " was cancelled"));
+            cancelled.increment();
+        } catch (ExecutionException e) {
+            stream.finish(e.getCause());
+            failed.increment();
+        } catch (RejectedExecutionException e) {
+            // the render pool was shut down while the job was running
+            stream.finish(new CancellationException("Render service was closed"));
+            cancelled.increment();
+        } finally {
+            activeJobs.decrementAndGet();
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(submitted.sum(), completed.sum(), failed.sum(), cancelled.sum(), activeJobs.get(),
+                renderedSamples.sum(), renderNanos.sum(), backpressureNanos.sum());
+    }
+
+    public int getRenderThreads() {
+        return renderThreads;
+    }
+
+    /**
+     * Cancels all running jobs and waits a bit for their threads to stop.
+     */
+    @Override
+    public void close() {
+        jobExecutor.shutdownNow();
+        renderPool.shutdownNow();
+        try {
+            if (!jobExecutor.awaitTermination(5, TimeUnit.SECONDS) || !renderPool.awaitTermination(5, TimeUnit.SECONDS))
+                EaroSynthesizer.LOGGER.warning("Render service threads did not stop in time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param renderedSamples   samples rendered by all jobs.
+     * @param renderNanos       time the job threads waited for rendered chunks, including time queued in the render pool.
+     * @param backpressureNanos time the job threads waited for their clients to take chunks.
+     */
+    public record Stats(long submitted, long completed, long failed, long cancelled, int active,
+                        long renderedSamples, long renderNanos, long backpressureNanos) {
+        @Override
+        public String toString() {
+            return String.format("%d submitted, %d completed, %d failed, %d cancelled, %d active, %d samples rendered in %.3f s, %.3f s backpressure",
+                    submitted, completed, failed, cancelled, active, renderedSamples, renderNanos / 1e9, backpressureNanos / 1e9);
+        }
+    }
+}
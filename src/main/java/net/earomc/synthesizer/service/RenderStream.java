@@ -0,0 +1,197 @@
+package net.earomc.synthesizer.service;
+
+import net.earomc.synthesizer.Requantizer;
+import net.earomc.synthesizer.batch.RenderJob;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serial;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The chunks of a job rendered by a {@link RenderService}, in order. One chunk is one segment of the job
+ * after {@link RenderJob#split splitting} it.
+ * <p>
+ * Chunks may be shared with other jobs (see {@link net.earomc.synthesizer.SegmentCache}), don't modify them.
+ * A stream is read by one client thread.
+ */
+public class RenderStream implements AutoCloseable {
+    // put after the last chunk, the queue only holds float arrays
+    private static final float[] END = new float[0];
+
+    private final RenderJob job;
+    private final BlockingQueue<float[]> chunks = new LinkedBlockingQueue<>();
+    // one permit per chunk the job may render ahead, the end marker doesn't need one
+    private final Semaphore freeSlots;
+    // guards jobThread: job threads are reused by the fallback pool, so the interrupt of cancel() must never reach
+    // a thread that already finished this job and runs another one
+    private final Object jobThreadLock = new Object();
+    private Thread jobThread;
+    private volatile boolean cancelled;
+    private volatile boolean done;
+    private volatile Throwable error;
+    private boolean ended;
+
+    RenderStream(RenderJob job, int maxQueuedChunks) {
+        this.job = job;
+        this.freeSlots = new Semaphore(maxQueuedChunks);
+    }
+
+    /**
+     * Called by the job thread before it renders anything.
+     */
+    void start(Thread jobThread) {
+        synchronized (jobThreadLock) {
+            this.jobThread = jobThread;
+        }
+    }
+
+    /**
+     * Waits until the client took enough chunks. Called by the job thread.
+     */
+    void put(float[] chunk) throws InterruptedException {
+        freeSlots.acquire();
+        chunks.add(chunk);
+    }
+
+    /**
+     * Called by the job thread when it stops, with the reason if it didn't render every chunk.
+     */
+    void finish(Throwable error) {
+        this.error = error;
+        synchronized (jobThreadLock) {
+            jobThread = null;
+            done = true;
+        }
+        // a cancel that came in just before may have interrupted this thread, the next job on it must not see that
+        Thread.interrupted();
+        chunks.add(END);
+    }
+
+    /**
+     * Waits for the next chunk.
+     *
+     * @return the next chunk, null after the last one.
+     * @throws RenderException if rendering failed or the job was cancelled.
+     */
+    public float[] take() throws InterruptedException {
+        if (ended) return null;
+        float[] chunk = chunks.take();
+        if (chunk != END) {
+            freeSlots.release();
+            return chunk;
+        }
+        ended = true;
+        if (error != null) throw new RenderException(job, error);
+        return null;
+    }
+
+    /**
+     * Stops rendering. Chunks that were already rendered can still be taken, then {@link #take()} fails.
+     */
+    public void cancel() {
+        cancelled = true;
+        // if the job thread isn't started yet, it sees the flag before it renders the first chunk
+        synchronized (jobThreadLock) {
+            if (jobThread != null) jobThread.interrupt();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return whether the job thread stopped, because the job is rendered, failed or was cancelled.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    public RenderJob getJob() {
+        return job;
+    }
+
+    /**
+     * Same as {@link #cancel()}, does nothing if the job is already rendered.
+     */
+    @Override
+    public void close() {
+        cancel();
+    }
+
+    /**
+     * @return the chunks encoded with TPDF dither like {@link net.earomc.synthesizer.EaroSynthesizer#playSamples},
+     * for example to play them with {@link net.earomc.synthesizer.EaroSynthesizer#playFromInputStream}.
+     * Closing it cancels the job.
+     */
+    public InputStream openInputStream(AudioFormat format) {
+        return new EncodingInputStream(format);
+    }
+
+    private class EncodingInputStream extends InputStream {
+        private final Requantizer requantizer;
+        private byte[] bytes = new byte[0];
+        private int position;
+
+        EncodingInputStream(AudioFormat format) {
+            this.requantizer = new Requantizer(format, Requantizer.Dither.TPDF, Requantizer.NoiseShaping.NONE,
+                    ThreadLocalRandom.current().nextLong());
+        }
+
+        private boolean fill() throws IOException {
+            while (position == bytes.length) {
+                float[] chunk;
+                try {
+                    chunk = take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for " + job.name(), e);
+                } catch (RenderException e) {
+                    throw new IOException(e.getMessage(), e.getCause());
+                }
+                if (chunk == null) return false;
+                bytes = requantizer.encode(chunk);
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? bytes[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int count = Math.min(len, bytes.length - position);
+            System.arraycopy(bytes, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            cancel();
+        }
+    }
+
+    /**
+     * Thrown to the client when its job failed or was cancelled.
+     */
+    public static class RenderException extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        public RenderException(RenderJob job, Throwable cause) {
+            super("Render job " + job.name() + (cause instanceof CancellationException ? " was cancelled" : " failed: " + cause), cause);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package net.earomc.synthesizer.simd;
+
+import net.earomc.synthesizer.EaroSynthesizer;
+import net.earomc.synthesizer.waveform.SinePolynomial;
+
+/**
+ * Hot loops over sample arrays that have a vectorized (SIMD) implementation.
+ * <p>
+ * {@link #PREFERRED} is picked once at runtime: the Vector API implementation is used if the
+ * {@code jdk.incubator.vector} module was added to the JVM ({@code --add-modules jdk.incubator.vector})
+ * and the CPU has vector registers of at least 128 bits. Otherwise the plain scalar loops are used.
+ * Even then only {@link #sine}, {@link #encode16} and {@link #encode24} use the Vector API: the simple
+ * multiply-add loops are auto-vectorized by C2 and faster as plain loops.
+ * Setting the system property {@code earosynth.simd=false} forces the scalar implementation.
+ * <p>
+ * Both implementations produce bit-identical results unless stated otherwise on the method.
+ */
+public interface SampleOps {
+
+    /**
+     * {@link #sine} advances the phase in chunks of this many samples, independent of the vector width,
+     * so every implementation computes exactly the same phase for every sample.
+     */
+    int SINE_CHUNK = 16;
+
+    String SIMD_PROPERTY = "earosynth.simd";
+    String VECTOR_MODULE = "jdk.incubator.vector";
+
+    SampleOps SCALAR = new ScalarSampleOps();
+    SampleOps PREFERRED = select();
+
+    /**
+     * {@code dst[dstOffset + i] += src[srcOffset + i] * gain} for every i from 0 to length.
+     */
+    void add(float[] dst, int dstOffset, float[] src, int srcOffset, int length, float gain);
+
+    /**
+     * {@code dst[dstOffset + i] += src[srcOffset + i] * window[windowOffset + i] * gain} for every i from 0 to length.
+     * Used to add windowed grains or enveloped samples to a mix.
+     */
+    void multiplyAdd(float[] dst, int dstOffset, float[] src, int srcOffset, float[] window, int windowOffset, int length, float gain);
+
+    /**
+     * {@code samples[offset + i] *= gain} for every i from 0 to length.
+     */
+    void scale(float[] samples, int offset, int length, float gain);
+
+    /**
+     * Fills the section of out with {@code amp * sin(2 * PI * phase)} using a polynomial approximation.
+     * The phase starts at phase01 and advances by phaseIncrement every sample.
+     * <p>
+     * Samples within a chunk of {@link #SINE_CHUNK} samples get their phase as {@code chunkPhase + j * phaseIncrement},
+     * the phase at the start of each chunk is computed from phase01 in double precision. Together with the
+     * polynomial error the result stays within 2e-6 (-114 dB) of Math.sin.
+     *
+     * @param phase01        the phase of the first sample, from 0 (inclusive) to 1 (exclusive). 1 = one period.
+     * @param phaseIncrement frequency / sample rate, from 0 to 0.5.
+     * @return the phase of the sample after the block, to continue the wave seamlessly in the next block.
+     */
+    float sine(float[] out, int offset, int length, float phase01, float phaseIncrement, float amp, SinePolynomial polynomial);
+
+    /**
+     * Encodes samples to signed 16-bit PCM. Samples are scaled by 2^15, clamped to the 16-bit range
+     * and rounded to the nearest integer (ties to even). NaN is encoded as 0.
+     */
+    void encode16(float[] samples, int offset, int length, byte[] bytes, int byteOffset, boolean bigEndian);
+
+    /**
+     * Encodes samples to signed 24-bit PCM. Samples are scaled by 2^23, clamped to the 24-bit range
+     * and rounded to the nearest integer (ties to even). NaN is encoded as 0.
+     */
+    void encode24(float[] samples, int offset, int length, byte[] bytes, int byteOffset, boolean bigEndian);
+
+    /**
+     * @return a short name of the implementation, for logging.
+     */
+    String name();
+
+    /**
+     * @return the phase after advancing the given phase by samples * phaseIncrement, wrapped into [0, 1).
+     * Computed in double precision, so the phase doesn't drift over long renders.
+     */
+    static float advancePhase(float phase01, float phaseIncrement, int samples) {
+        double phase = phase01 + (double) phaseIncrement * samples;
+        float wrapped = (float) (phase - Math.floor(phase));
+        return wrapped < 1f ? wrapped : 0f;
+    }
+
+    private static SampleOps select() {
+        if (!Boolean.parseBoolean(System.getProperty(SIMD_PROPERTY, "true"))) return SCALAR;
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) return SCALAR;
+        try {
+            // loaded reflectively, so this class can be linked without the incubator module
+            SampleOps ops = (SampleOps) Class.forName("net.earomc.synthesizer.simd.VectorSampleOps")
+                    .getDeclaredConstructor().newInstance();
+            EaroSynthesizer.LOGGER.info(() -> "Using " + ops.name() + " sample operations");
+            return ops;
+        } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+            EaroSynthesizer.LOGGER.warning(() -> "Vector API not usable, falling back to scalar sample operations: " + e);
+            return SCALAR;
+        }
+    }
+}
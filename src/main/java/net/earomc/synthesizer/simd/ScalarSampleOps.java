@@ -0,0 +1,121 @@
+package net.earomc.synthesizer.simd;
+
+import net.earomc.synthesizer.waveform.SinePolynomial;
+
+/**
+ * Plain Java loops. Always available, and the reference the vectorized implementation is checked against.
+ */
+final class ScalarSampleOps implements SampleOps {
+    // see VectorSampleOps, also a lot faster than Math.rint in scalar code
+    static final float ROUNDING_MAGIC = 12582912f;
+    static final int ROUNDING_MAGIC_BITS = Float.floatToRawIntBits(ROUNDING_MAGIC);
+
+    @Override
+    public void add(float[] dst, int dstOffset, float[] src, int srcOffset, int length, float gain) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] += src[srcOffset + i] * gain;
+        }
+    }
+
+    @Override
+    public void multiplyAdd(float[] dst, int dstOffset, float[] src, int srcOffset, float[] window, int windowOffset, int length, float gain) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] += src[srcOffset + i] * window[windowOffset + i] * gain;
+        }
+    }
+
+    @Override
+    public void scale(float[] samples, int offset, int length, float gain) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            samples[i] *= gain;
+        }
+    }
+
+    @Override
+    public float sine(float[] out, int offset, int length, float phase01, float phaseIncrement, float amp, SinePolynomial polynomial) {
+        for (int start = 0; start < length; start += SINE_CHUNK) {
+            // computed from the start of the block every time, so rounding errors don't add up from chunk to chunk
+            float chunkPhase = SampleOps.advancePhase(phase01, phaseIncrement, start);
+            int end = Math.min(start + SINE_CHUNK, length);
+            for (int i = start; i < end; i++) {
+                float phase = chunkPhase + (i - start) * phaseIncrement;
+                out[offset + i] = amp * polynomial.sin01(phase);
+            }
+        }
+        return SampleOps.advancePhase(phase01, phaseIncrement, length);
+    }
+
+    @Override
+    public void encode16(float[] samples, int offset, int length, byte[] bytes, int byteOffset, boolean bigEndian) {
+        encode16Scalar(samples, offset, length, bytes, byteOffset, bigEndian);
+    }
+
+    @Override
+    public void encode24(float[] samples, int offset, int length, byte[] bytes, int byteOffset, boolean bigEndian) {
+        encode24Scalar(samples, offset, length, bytes, byteOffset, bigEndian);
+    }
+
+    static void encode16Scalar(float[] samples, int offset, int length, byte[] bytes, int byteOffset, boolean bigEndian) {
+        int b = byteOffset;
+        for (int i = offset; i < offset + length; i++) {
+            int bits = rintToInt(clamp(samples[i] * 32768f, -32768f, 32767f));
+            if (bigEndian) {
+                bytes[b] = (byte) (bits >>> 8);
+                bytes[b + 1] = (byte) bits;
+            } else {
+                bytes[b] = (byte) bits;
+                bytes[b + 1] = (byte) (bits >>> 8);
+            }
+            b += 2;
+        }
+    }
+
+    static void encode24Scalar(float[] samples, int offset, int length, byte[] bytes, int byteOffset, boolean bigEndian) {
+        int b = byteOffset;
+        for (int i = offset; i < offset + length; i++) {
+            float scaled = clamp(samples[i] * 8388608f, -8388608f, 8388607f);
+            // too big for the rounding trick in one step, see VectorSampleOps.encode24
+            float high = rint(scaled * (1f / 256)) * 256f;
+            int bits = (rintToInt(high * (1f / 256)) << 8) + rintToInt(scaled - high);
+            if (bigEndian) {
+                bytes[b] = (byte) (bits >>> 16);
+                bytes[b + 1] = (byte) (bits >>> 8);
+                bytes[b + 2] = (byte) bits;
+            } else {
+                bytes[b] = (byte) bits;
+                bytes[b + 1] = (byte) (bits >>> 8);
+                bytes[b + 2] = (byte) (bits >>> 16);
+            }
+            b += 3;
+        }
+    }
+
+    /**
+     * Clamps to [min, max], NaN becomes 0 like in a (int) cast.
+     */
+    static float clamp(float value, float min, float max) {
+        if (value != value) return 0f;
+        // plain comparisons are faster than Math.min/max, which have to take care of NaN and -0
+        return value < min ? min : value > max ? max : value;
+    }
+
+    /**
+     * Same as Math.rint for absolute values below 2^22.
+     */
+    static float rint(float value) {
+        return (value + ROUNDING_MAGIC) - ROUNDING_MAGIC;
+    }
+
+    /**
+     * Same as (int) Math.rint for absolute values below 2^22.
+     */
+    static int rintToInt(float value) {
+        return Float.floatToRawIntBits(value + ROUNDING_MAGIC) - ROUNDING_MAGIC_BITS;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,120 @@
+package net.earomc.synthesizer.tuning;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A scale in the <a href="https://www.huygens-fokker.org/scala/scl_format.html">Scala .scl format</a>,
+ * used for microtuning. Turn it into a {@link TuningTable} to play it.
+ * <pre>
+ * ! comment lines start with an exclamation mark
+ * Description of the scale
+ * 3                         number of pitches that follow
+ * 386.314                   pitches with a period are in cents
+ * 5/4                       pitches without a period are ratios
+ * 2                         the last pitch is the period of the scale, usually the octave
+ * </pre>
+ * The first degree, 1/1, is implied and not listed.
+ */
+public final class ScalaScale {
+    private final String description;
+    // ratios[0] is 1, the last ratio is the period
+    private final double[] ratios;
+
+    private ScalaScale(String description, double[] ratios) {
+        this.description = description;
+        this.ratios = ratios;
+    }
+
+    public static ScalaScale read(Path sclFile) throws IOException {
+        try (Reader reader = Files.newBufferedReader(sclFile)) {
+            return parse(reader);
+        }
+    }
+
+    public static ScalaScale parse(String scl) {
+        try {
+            return parse(new StringReader(scl));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static ScalaScale parse(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        String description = null;
+        int count = -1;
+        double[] ratios = null;
+        int parsed = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.startsWith("!")) continue;
+            if (description == null) {
+                description = line.trim();
+                continue;
+            }
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            String value = line.split("\\s+")[0];
+            if (count < 0) {
+                count = Integer.parseInt(value);
+                if (count < 1)
+                    throw new IllegalArgumentException("Illegal value for the number of pitches: " + count + "! Has to be at least 1");
+                ratios = new double[count + 1];
+                ratios[0] = 1;
+                continue;
+            }
+            if (parsed == count) break;
+            ratios[++parsed] = parsePitch(value);
+        }
+        if (count < 0 || parsed < count)
+            throw new IllegalArgumentException("Incomplete scale, expected " + Math.max(count, 1) + " pitches, got " + parsed);
+        return new ScalaScale(description, ratios);
+    }
+
+    /**
+     * @return the pitch as a frequency ratio.
+     */
+    static double parsePitch(String value) {
+        double ratio;
+        if (value.contains(".")) {
+            ratio = Math.pow(2, Double.parseDouble(value) / 1200);
+        } else {
+            int slash = value.indexOf('/');
+            if (slash < 0) {
+                ratio = Long.parseLong(value);
+            } else {
+                ratio = (double) Long.parseLong(value.substring(0, slash)) / Long.parseLong(value.substring(slash + 1));
+            }
+        }
+        if (!(ratio > 0) || Double.isInfinite(ratio))
+            throw new IllegalArgumentException("Illegal value for pitch: " + value + "! Has to be a positive ratio or cents value");
+        return ratio;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return the number of degrees per period, including the first one.
+     */
+    public int getDegreeCount() {
+        return ratios.length - 1;
+    }
+
+    /**
+     * @param degree from 0 to {@link #getDegreeCount()}. Degree 0 is 1, the last degree is the period.
+     */
+    public double getRatio(int degree) {
+        return ratios[degree];
+    }
+
+    public double getPeriodRatio() {
+        return ratios[ratios.length - 1];
+    }
+}
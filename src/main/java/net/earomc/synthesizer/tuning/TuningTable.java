@@ -0,0 +1,144 @@
+package net.earomc.synthesizer.tuning;
+
+/**
+ * Immutable table with the frequency of each of the 128 MIDI keys.
+ * <p>
+ * Looking up a frequency is an array access, so it can be done for every note event without computing powers.
+ * The equal temperament tables for common reference pitches are only created when they are first used.
+ * Key 69 is A4, which is key 49 on a piano. So the piano key number is the MIDI key minus 20.
+ */
+public final class TuningTable {
+    public static final int KEY_COUNT = 128;
+    public static final int A4_KEY = 69;
+    public static final int MIDDLE_C_KEY = 60;
+    public static final int PIANO_KEY_OFFSET = 20;
+
+    private final float[] frequencies;
+    private final String description;
+
+    private TuningTable(float[] frequencies, String description) {
+        this.frequencies = frequencies;
+        this.description = description;
+    }
+
+    // the holders are only initialized by the JVM when their table is first accessed
+    private static final class A440 {
+        static final TuningTable TABLE = equalTemperament(440);
+    }
+
+    private static final class A442 {
+        static final TuningTable TABLE = equalTemperament(442);
+    }
+
+    private static final class A432 {
+        static final TuningTable TABLE = equalTemperament(432);
+    }
+
+    private static final class A415 {
+        static final TuningTable TABLE = equalTemperament(415);
+    }
+
+    /**
+     * Concert pitch, A4 = 440 Hz.
+     */
+    public static TuningTable a440() {
+        return A440.TABLE;
+    }
+
+    /**
+     * A4 = 442 Hz, common with European orchestras.
+     */
+    public static TuningTable a442() {
+        return A442.TABLE;
+    }
+
+    public static TuningTable a432() {
+        return A432.TABLE;
+    }
+
+    /**
+     * Baroque pitch, A4 = 415 Hz.
+     */
+    public static TuningTable a415() {
+        return A415.TABLE;
+    }
+
+    /**
+     * @return the cached table for the common reference pitches, a new one for any other.
+     */
+    public static TuningTable forReferencePitch(float a4Hz) {
+        if (a4Hz == 440) return a440();
+        if (a4Hz == 442) return a442();
+        if (a4Hz == 432) return a432();
+        if (a4Hz == 415) return a415();
+        return equalTemperament(a4Hz);
+    }
+
+    /**
+     * 12 tone equal temperament with A4 at the given frequency.
+     */
+    public static TuningTable equalTemperament(float a4Hz) {
+        if (!(a4Hz > 0)) throw new IllegalArgumentException("Illegal value for a4Hz: " + a4Hz + "! Has to be bigger than 0");
+        float[] frequencies = new float[KEY_COUNT];
+        for (int key = 0; key < KEY_COUNT; key++) {
+            frequencies[key] = (float) (a4Hz * Math.pow(2, (key - A4_KEY) / 12d));
+        }
+        return new TuningTable(frequencies, "12-TET, A4 = " + a4Hz + " Hz");
+    }
+
+    /**
+     * Maps a scale onto the keys. The reference key plays the first degree of the scale at the reference frequency,
+     * the keys above and below it walk through the degrees, repeating the scale every period.
+     *
+     * @param referenceKey  MIDI key that plays the first degree, usually {@link #MIDDLE_C_KEY}.
+     * @param referenceFreq frequency of the reference key in Hz.
+     */
+    public static TuningTable fromScale(ScalaScale scale, int referenceKey, float referenceFreq) {
+        checkKey(referenceKey);
+        if (!(referenceFreq > 0))
+            throw new IllegalArgumentException("Illegal value for referenceFreq: " + referenceFreq + "! Has to be bigger than 0");
+        int degrees = scale.getDegreeCount();
+        double period = scale.getPeriodRatio();
+        float[] frequencies = new float[KEY_COUNT];
+        for (int key = 0; key < KEY_COUNT; key++) {
+            int steps = key - referenceKey;
+            int periods = Math.floorDiv(steps, degrees);
+            int degree = Math.floorMod(steps, degrees);
+            frequencies[key] = (float) (referenceFreq * scale.getRatio(degree) * Math.pow(period, periods));
+        }
+        return new TuningTable(frequencies, scale.getDescription());
+    }
+
+    /**
+     * @param midiKey key from 0 to 127.
+     */
+    public float getFrequency(int midiKey) {
+        checkKey(midiKey);
+        return frequencies[midiKey];
+    }
+
+    /**
+     * @param pianoKey piano key number, 49 = A4. From -20 to 107, the range of the MIDI keys.
+     */
+    public float getPianoKeyFrequency(int pianoKey) {
+        return getFrequency(pianoKey + PIANO_KEY_OFFSET);
+    }
+
+    public static boolean isValidKey(int midiKey) {
+        return midiKey >= 0 && midiKey < KEY_COUNT;
+    }
+
+    private static void checkKey(int midiKey) {
+        if (!isValidKey(midiKey))
+            throw new IllegalArgumentException("Illegal value for midiKey: " + midiKey + "! Has to be a value between 0 and " + (KEY_COUNT - 1));
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return "TuningTable{" + description + "}";
+    }
+}
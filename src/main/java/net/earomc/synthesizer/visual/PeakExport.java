@@ -0,0 +1,88 @@
+package net.earomc.synthesizer.visual;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Draws and exports waveforms from a {@link PeakPyramid}. Works headless, without a display.
+ */
+public class PeakExport {
+    public static final Color BACKGROUND = Color.WHITE;
+    public static final Color WAVEFORM = new Color(0x2F5FA8);
+    public static final Color CENTER_LINE = Color.LIGHT_GRAY;
+
+    /**
+     * Draws the whole waveform, one min/max line per pixel column. The waveform is scaled so its loudest peak
+     * fills the height, quiet renders would be flat lines otherwise.
+     */
+    public static BufferedImage render(PeakPyramid peaks, int width, int height) {
+        if (width < 1 || height < 1)
+            throw new IllegalArgumentException("Illegal image size " + width + "x" + height + "! Has to be at least 1x1");
+        float[] min = new float[width];
+        float[] max = new float[width];
+        peaks.getPeaks(width, min, max);
+        float loudest = 0;
+        for (int x = 0; x < width; x++) {
+            loudest = Math.max(loudest, Math.max(-min[x], max[x]));
+        }
+        float scale = loudest > 0 ? 1 / loudest : 1;
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(BACKGROUND);
+            graphics.fillRect(0, 0, width, height);
+            graphics.setColor(CENTER_LINE);
+            graphics.drawLine(0, height / 2, width - 1, height / 2);
+            graphics.setColor(WAVEFORM);
+            for (int x = 0; x < width; x++) {
+                graphics.drawLine(x, toY(max[x] * scale, height), x, toY(min[x] * scale, height));
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    private static int toY(float amplitude, int height) {
+        float clamped = Math.max(-1, Math.min(1, amplitude));
+        return Math.round((1 - clamped) / 2 * (height - 1));
+    }
+
+    public static void writePng(PeakPyramid peaks, Path path, int width, int height) throws IOException {
+        ImageIO.write(render(peaks, width, height), "png", path.toFile());
+    }
+
+    /**
+     * Writes the min/max pairs of the given number of columns as JSON, for charts in reports.
+     */
+    public static void writeJson(PeakPyramid peaks, Path path, int columns) throws IOException {
+        float[] min = new float[columns];
+        float[] max = new float[columns];
+        peaks.getPeaks(columns, min, max);
+        try (Writer writer = Files.newBufferedWriter(path)) {
+            writer.write(String.format(Locale.ROOT, "{\"sampleRate\":%s,\"sampleCount\":%d,\"durationSeconds\":%s,\"columns\":%d,",
+                    peaks.getSampleRate(), peaks.getSampleCount(), peaks.getDurationSeconds(), columns));
+            writer.write("\"min\":");
+            writeArray(writer, min);
+            writer.write(",\"max\":");
+            writeArray(writer, max);
+            writer.write("}\n");
+        }
+    }
+
+    private static void writeArray(Writer writer, float[] values) throws IOException {
+        writer.write('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) writer.write(',');
+            writer.write(Float.toString(values[i]));
+        }
+        writer.write(']');
+    }
+}
@@ -0,0 +1,182 @@
+package net.earomc.synthesizer.visual;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Minimum and maximum of blocks of samples at several resolutions, for drawing waveforms of any length quickly.
+ * <p>
+ * Level 0 has the min/max of every {@link #BASE_BLOCK_SIZE} samples, every further level combines two blocks of
+ * the level below. To draw a waveform, every pixel column only needs the few blocks of the coarsest level that
+ * still has at least one block per column, no matter how many samples it covers.
+ * All levels together take about 2 / {@link #BASE_BLOCK_SIZE} of the memory of the samples.
+ * Pyramids can be saved to peak files and drawn later without the audio.
+ */
+public final class PeakPyramid {
+    public static final int BASE_BLOCK_SIZE = 16;
+    private static final int FILE_MAGIC = 0x45504B31; // "EPK1"
+
+    private final float sampleRate;
+    private final long sampleCount;
+    private final float[][] min;
+    private final float[][] max;
+
+    private PeakPyramid(float sampleRate, long sampleCount, float[][] min, float[][] max) {
+        this.sampleRate = sampleRate;
+        this.sampleCount = sampleCount;
+        this.min = min;
+        this.max = max;
+    }
+
+    public static PeakPyramid of(float[] samples, float sampleRate) {
+        int blocks = Math.max(1, ceilDiv(samples.length, BASE_BLOCK_SIZE));
+        int levels = 1;
+        while ((blocks >> (levels - 1)) > 1) levels++;
+
+        float[][] min = new float[levels][];
+        float[][] max = new float[levels][];
+        min[0] = new float[blocks];
+        max[0] = new float[blocks];
+        for (int block = 0; block < blocks; block++) {
+            int start = block * BASE_BLOCK_SIZE;
+            int end = Math.min(start + BASE_BLOCK_SIZE, samples.length);
+            float blockMin = start < end ? Float.POSITIVE_INFINITY : 0;
+            float blockMax = start < end ? Float.NEGATIVE_INFINITY : 0;
+            for (int i = start; i < end; i++) {
+                blockMin = Math.min(blockMin, samples[i]);
+                blockMax = Math.max(blockMax, samples[i]);
+            }
+            min[0][block] = blockMin;
+            max[0][block] = blockMax;
+        }
+        for (int level = 1; level < levels; level++) {
+            float[] lowerMin = min[level - 1];
+            float[] lowerMax = max[level - 1];
+            int count = ceilDiv(lowerMin.length, 2);
+            min[level] = new float[count];
+            max[level] = new float[count];
+            for (int block = 0; block < count; block++) {
+                int a = 2 * block;
+                int b = Math.min(a + 1, lowerMin.length - 1);
+                min[level][block] = Math.min(lowerMin[a], lowerMin[b]);
+                max[level][block] = Math.max(lowerMax[a], lowerMax[b]);
+            }
+        }
+        return new PeakPyramid(sampleRate, samples.length, min, max);
+    }
+
+    /**
+     * Computes the min/max pairs of pixel columns. Columns narrower than {@link #BASE_BLOCK_SIZE} samples
+     * get the peaks of the whole block they are in.
+     *
+     * @param startSample first sample of the first column.
+     * @param endSample   sample after the last column.
+     * @param minOut      gets the minimum of every column, at least columns long.
+     * @param maxOut      gets the maximum of every column, at least columns long.
+     */
+    public void getPeaks(long startSample, long endSample, int columns, float[] minOut, float[] maxOut) {
+        if (endSample <= startSample)
+            throw new IllegalArgumentException("End sample " + endSample + " has to be after start sample " + startSample);
+        double samplesPerColumn = (double) (endSample - startSample) / columns;
+        int level = 0;
+        while (level + 1 < min.length && getBlockSize(level + 1) <= samplesPerColumn) level++;
+        long blockSize = getBlockSize(level);
+        float[] levelMin = min[level];
+        float[] levelMax = max[level];
+
+        for (int column = 0; column < columns; column++) {
+            long columnStart = startSample + (long) Math.floor(column * samplesPerColumn);
+            long columnEnd = Math.max(columnStart + 1, startSample + (long) Math.floor((column + 1) * samplesPerColumn));
+            long firstBlock = Math.max(0, columnStart / blockSize);
+            long endBlock = Math.min(levelMin.length, (columnEnd + blockSize - 1) / blockSize);
+            float columnMin = 0;
+            float columnMax = 0;
+            if (firstBlock < endBlock && columnStart < sampleCount) {
+                columnMin = Float.POSITIVE_INFINITY;
+                columnMax = Float.NEGATIVE_INFINITY;
+                for (int block = (int) firstBlock; block < endBlock; block++) {
+                    columnMin = Math.min(columnMin, levelMin[block]);
+                    columnMax = Math.max(columnMax, levelMax[block]);
+                }
+            }
+            minOut[column] = columnMin;
+            maxOut[column] = columnMax;
+        }
+    }
+
+    /**
+     * Same as {@link #getPeaks(long, long, int, float[], float[])} over all samples.
+     */
+    public void getPeaks(int columns, float[] minOut, float[] maxOut) {
+        getPeaks(0, Math.max(1, sampleCount), columns, minOut, maxOut);
+    }
+
+    public long getBlockSize(int level) {
+        return (long) BASE_BLOCK_SIZE << level;
+    }
+
+    public int getLevelCount() {
+        return min.length;
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    public double getDurationSeconds() {
+        return sampleCount / (double) sampleRate;
+    }
+
+    /**
+     * Saves the pyramid as a peak file.
+     */
+    public void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeFloat(sampleRate);
+            out.writeLong(sampleCount);
+            out.writeInt(BASE_BLOCK_SIZE);
+            out.writeInt(min.length);
+            for (int level = 0; level < min.length; level++) {
+                out.writeInt(min[level].length);
+                for (int block = 0; block < min[level].length; block++) {
+                    out.writeFloat(min[level][block]);
+                    out.writeFloat(max[level][block]);
+                }
+            }
+        }
+    }
+
+    public static PeakPyramid read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != FILE_MAGIC) throw new IOException(path + " is not a peak file");
+            float sampleRate = in.readFloat();
+            long sampleCount = in.readLong();
+            int baseBlockSize = in.readInt();
+            if (baseBlockSize != BASE_BLOCK_SIZE)
+                throw new IOException(path + " has a base block size of " + baseBlockSize + ", expected " + BASE_BLOCK_SIZE);
+            int levels = in.readInt();
+            float[][] min = new float[levels][];
+            float[][] max = new float[levels][];
+            for (int level = 0; level < levels; level++) {
+                int blocks = in.readInt();
+                min[level] = new float[blocks];
+                max[level] = new float[blocks];
+                for (int block = 0; block < blocks; block++) {
+                    min[level][block] = in.readFloat();
+                    max[level][block] = in.readFloat();
+                }
+            }
+            return new PeakPyramid(sampleRate, sampleCount, min, max);
+        }
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+}
@@ -0,0 +1,25 @@
+package net.earomc.synthesizer.waveform;
+
+import java.util.List;
+
+/**
+ * Provides the built-in waveforms. Their IDs are the indices in {@link Waveform#WAVEFORMS}.
+ */
+public class BuiltinWaveforms implements WaveformProvider {
+    public static final int SAW_ID = 0;
+    public static final int TRIANGLE_ID = 1;
+    public static final int SINE_ID = 2;
+    public static final int SQUARE_ID = 3;
+    public static final int NOISE_ID = 4;
+
+    @Override
+    public List<WaveformRegistry.Entry> getWaveforms() {
+        return List.of(
+                new WaveformRegistry.Entry(SAW_ID, "saw", Waveform.SAW),
+                new WaveformRegistry.Entry(TRIANGLE_ID, "triangle", Waveform.TRIANGLE),
+                new WaveformRegistry.Entry(SINE_ID, "sine", Waveform.SINE),
+                new WaveformRegistry.Entry(SQUARE_ID, "square", Waveform.SQUARE),
+                new WaveformRegistry.Entry(NOISE_ID, "noise", Waveform.NOISE)
+        );
+    }
+}
@@ -0,0 +1,63 @@
+package net.earomc.synthesizer.waveform;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * How precisely sine waves are computed.
+ * <p>
+ * Voices that are barely audible in the mix (pads, background layers) can use a cheap approximation,
+ * while lead voices keep full precision. The error is the maximum absolute difference to Math.sin
+ * for a wave with an amplitude of 1, in dB relative to that amplitude. For comparison:
+ * the quantization noise of 16-bit audio is at about -96 dB.
+ */
+public enum SineAccuracy {
+    /**
+     * Degree 5 polynomial, -83 dB max error.
+     */
+    LOW(SinePolynomial.LOW, -83),
+    /**
+     * Degree 7 polynomial, -122 dB max error.
+     */
+    MEDIUM(SinePolynomial.MEDIUM, -122),
+    /**
+     * Degree 9 polynomial, -133 dB max error. As precise as float allows.
+     */
+    HIGH(SinePolynomial.HIGH, -133),
+    /**
+     * {@link Math#sin(double)} in double precision.
+     */
+    EXACT(null, Double.NEGATIVE_INFINITY);
+
+    @Nullable
+    private final SinePolynomial polynomial;
+    private final double maxErrorDb;
+
+    SineAccuracy(@Nullable SinePolynomial polynomial, double maxErrorDb) {
+        this.polynomial = polynomial;
+        this.maxErrorDb = maxErrorDb;
+    }
+
+    /**
+     * @param phase01 the phase as a value from 0 (inclusive) to 1 (exclusive).
+     * @return sin(2 * PI * phase01) at this accuracy.
+     */
+    public float sin01(double phase01) {
+        if (polynomial == null) return (float) Math.sin(2 * Math.PI * phase01);
+        return polynomial.sin01((float) phase01);
+    }
+
+    /**
+     * @return the polynomial used for this accuracy, null for {@link #EXACT}.
+     */
+    @Nullable
+    public SinePolynomial getPolynomial() {
+        return polynomial;
+    }
+
+    /**
+     * @return the maximum error compared to Math.sin in dB. Negative infinity for {@link #EXACT}.
+     */
+    public double getMaxErrorDb() {
+        return maxErrorDb;
+    }
+}
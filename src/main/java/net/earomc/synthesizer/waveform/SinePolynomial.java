@@ -0,0 +1,78 @@
+package net.earomc.synthesizer.waveform;
+
+/**
+ * Approximates {@code sin(2 * PI * phase)} with an odd polynomial.
+ * <p>
+ * The phase is folded into a quarter period first, where the polynomial is fitted with a minimax
+ * (equiripple) fit. This only needs additions and multiplications, so it is a lot cheaper than
+ * {@link Math#sin(double)} and can be vectorized (see {@link net.earomc.synthesizer.simd.SampleOps#sine}).
+ * <p>
+ * The errors stated for the predefined polynomials are the maximum absolute difference to Math.sin
+ * over a whole period, measured with float evaluation. See {@link SineAccuracy}.
+ */
+public final class SinePolynomial {
+
+    /**
+     * Degree 5 fit, max error 6.8e-5 (-83 dB).
+     */
+    public static final SinePolynomial LOW = new SinePolynomial(
+            6.2812800760404395f, -41.095242649719765f, 73.58551425489543f);
+
+    /**
+     * Degree 7 fit, max error 7.4e-7 (-122 dB).
+     */
+    public static final SinePolynomial MEDIUM = new SinePolynomial(
+            6.283164044310532f, -41.33714237195659f, 81.34076891222011f, -70.99343348062146f);
+
+    /**
+     * Degree 9 fit. The polynomial error (3.3e-9) is far below float precision, so the result is limited by
+     * float rounding: max error 2.0e-7 (-133 dB) compared to Math.sin.
+     */
+    public static final SinePolynomial HIGH = new SinePolynomial(
+            6.283185160069268f, -41.34165502689175f, 81.60100380473682f, -76.54977645177007f, 39.53666395297982f);
+
+    private final float[] coefficients;
+
+    /**
+     * @param coefficients coefficients of y, y^3, y^5, ... of a fit of sin(2 * PI * y) for y in [-0.25, 0.25].
+     */
+    public SinePolynomial(float... coefficients) {
+        if (coefficients.length == 0) throw new IllegalArgumentException("Need at least one coefficient");
+        this.coefficients = coefficients.clone();
+    }
+
+    /**
+     * @return how many coefficients the polynomial has.
+     */
+    public int getTermCount() {
+        return coefficients.length;
+    }
+
+    /**
+     * @return the coefficient of the (2 * i + 1)th power of the folded phase.
+     */
+    public float getCoefficient(int i) {
+        return coefficients[i];
+    }
+
+    /**
+     * @param phase the phase, 1 = one period. Any value with an absolute value below 2^22 works,
+     *              but the result is most precise for small values.
+     * @return an approximation of sin(2 * PI * phase).
+     */
+    public float sin01(float phase) {
+        // remove whole periods, leaves the phase in [-0.5, 0.5]
+        float x = phase - (float) Math.rint(phase);
+        // mirror the outer quarters into [-0.25, 0.25], sin(PI - a) = sin(a)
+        float mirrored = (x > 0 ? 0.5f : -0.5f) - x;
+        float y = Math.abs(x) > 0.25f ? mirrored : x;
+
+        float y2 = y * y;
+        float[] c = coefficients;
+        float result = c[c.length - 1];
+        for (int i = c.length - 2; i >= 0; i--) {
+            result = result * y2 + c[i];
+        }
+        return result * y;
+    }
+}
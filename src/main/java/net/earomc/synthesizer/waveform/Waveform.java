@@ -11,8 +11,60 @@ public interface Waveform {
     Waveform SINE = new Sine();
     Waveform SQUARE = new Square();
     Waveform NOISE = new Noise();
+    /**
+     * The built-in waveforms, indexed by their ID in the {@link WaveformRegistry}.
+     * Use the registry to also get waveforms of other providers.
+     */
     Waveform[] WAVEFORMS = {SAW, TRIANGLE, SINE, SQUARE, NOISE};
 
     float sample(float timeSeconds, double periodSeconds, float amp, float phaseRadians);
 
+    /**
+     * Same as {@link #sample(float, double, float, float)}, but waveforms that need a sine compute it with the
+     * given accuracy. Waveforms that don't need a sine ignore the accuracy.
+     */
+    default float sample(float timeSeconds, double periodSeconds, float amp, float phaseRadians, SineAccuracy accuracy) {
+        return sample(timeSeconds, periodSeconds, amp, phaseRadians);
+    }
+
+    /**
+     * @return whether the same arguments always give the same samples. Only then rendered segments can be cached.
+     */
+    default boolean isDeterministic() {
+        return true;
+    }
+
+    /**
+     * Renders a block of the wave into out, overwriting what was there. The phase advances by phaseIncrement
+     * every sample, so the frequency of the wave is phaseIncrement * sample rate.
+     * <p>
+     * Voices render whole blocks through this method, so there is only one call per block and waveform.
+     * The built-in waveforms override it with their own loop, which keeps the call to the wave shape inside the
+     * loop monomorphic and lets the JIT inline it. This default calls {@link #sample} for every sample.
+     *
+     * @param phase01        the phase of the first sample, from 0 (inclusive) to 1 (exclusive).
+     * @param phaseIncrement the phase added per sample, frequency / sample rate.
+     * @return the phase after the block, to pass to the next call.
+     */
+    default float render(float[] out, int offset, int length, float phase01, float phaseIncrement, float amp, SineAccuracy accuracy) {
+        double phase = phase01;
+        for (int i = offset; i < offset + length; i++) {
+            // with a period of 1 second the time is the phase
+            out[i] = sample((float) phase, 1, amp, 0, accuracy);
+            phase += phaseIncrement;
+            if (phase >= 1) phase -= Math.floor(phase);
+        }
+        return (float) phase;
+    }
+
+    /**
+     * Computes the position in the current period as a value from 0 (inclusive) to 1 (exclusive).
+     * This is the argument (2 * PI * timeSeconds - phaseRadians) / periodSeconds the waveforms use,
+     * divided by 2 * PI and without whole periods.
+     */
+    static double phase01(float timeSeconds, double periodSeconds, float phaseRadians) {
+        double phase = (2 * Math.PI * timeSeconds - phaseRadians) / (PERIOD_LENGTH * periodSeconds);
+        return phase - Math.floor(phase);
+    }
+
 }
@@ -0,0 +1,17 @@
+package net.earomc.synthesizer.waveform;
+
+import java.util.List;
+
+/**
+ * Service provider interface for waveforms. Implementations are discovered with {@link java.util.ServiceLoader},
+ * so they have to be listed in {@code META-INF/services/net.earomc.synthesizer.waveform.WaveformProvider}
+ * and have a public no-argument constructor.
+ */
+public interface WaveformProvider {
+
+    /**
+     * @return the waveforms of this provider. The IDs must never change, because they can be stored in voice state
+     * and patches. IDs from 0 to 99 are reserved for the built-in waveforms.
+     */
+    List<WaveformRegistry.Entry> getWaveforms();
+}
@@ -0,0 +1,134 @@
+package net.earomc.synthesizer.waveform;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Immutable registry of all waveforms, each with a stable integer ID and a name.
+ * <p>
+ * Voices can store the ID of their waveform in packed state arrays instead of a reference.
+ * Looking a waveform up by its ID is an array access.
+ * The {@link #getDefault() default registry} contains the built-in waveforms and all waveforms of the
+ * {@link WaveformProvider}s found by the {@link ServiceLoader}.
+ */
+public final class WaveformRegistry {
+    /**
+     * IDs have to be smaller than this, so the lookup array stays small.
+     */
+    public static final int MAX_ID = 0x10000;
+
+    /**
+     * A registered waveform. Names are case-insensitive.
+     */
+    public record Entry(int id, String name, Waveform waveform) {
+        public Entry {
+            if (id < 0 || id >= MAX_ID)
+                throw new IllegalArgumentException("Illegal value for id: " + id + "! Has to be a value between 0 and " + (MAX_ID - 1));
+            Objects.requireNonNull(name, "name");
+            Objects.requireNonNull(waveform, "waveform");
+            name = name.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Entry[] byId;
+    private final Map<String, Entry> byName;
+    private final Map<Waveform, Entry> byWaveform;
+    private final List<Entry> entries;
+
+    private WaveformRegistry(Collection<Entry> entries) {
+        int maxId = -1;
+        for (Entry entry : entries) {
+            maxId = Math.max(maxId, entry.id());
+        }
+        this.byId = new Entry[maxId + 1];
+        this.byName = new HashMap<>();
+        this.byWaveform = new IdentityHashMap<>();
+        for (Entry entry : entries) {
+            if (byId[entry.id()] != null)
+                throw new IllegalStateException("Waveform ID " + entry.id() + " is used by " + byId[entry.id()].name() + " and " + entry.name());
+            if (byName.containsKey(entry.name()))
+                throw new IllegalStateException("Waveform name " + entry.name() + " is registered twice");
+            byId[entry.id()] = entry;
+            byName.put(entry.name(), entry);
+            byWaveform.putIfAbsent(entry.waveform(), entry);
+        }
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingInt(Entry::id));
+        this.entries = List.copyOf(sorted);
+    }
+
+    private static final class DefaultHolder {
+        static final WaveformRegistry REGISTRY = load(WaveformRegistry.class.getClassLoader());
+    }
+
+    /**
+     * @return the registry with the waveforms of all providers on the class path. Loaded on first use.
+     */
+    public static WaveformRegistry getDefault() {
+        return DefaultHolder.REGISTRY;
+    }
+
+    /**
+     * Creates a registry from the built-in waveforms and the providers the class loader can find.
+     */
+    public static WaveformRegistry load(ClassLoader classLoader) {
+        List<Entry> entries = new ArrayList<>(new BuiltinWaveforms().getWaveforms());
+        for (WaveformProvider provider : ServiceLoader.load(WaveformProvider.class, classLoader)) {
+            // the built-in waveforms are always there, even without the service file
+            if (provider instanceof BuiltinWaveforms) continue;
+            entries.addAll(provider.getWaveforms());
+        }
+        return new WaveformRegistry(entries);
+    }
+
+    public static WaveformRegistry of(Collection<Entry> entries) {
+        return new WaveformRegistry(entries);
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no waveform with this ID.
+     */
+    public Waveform get(int id) {
+        return getEntry(id).waveform();
+    }
+
+    public Entry getEntry(int id) {
+        Entry entry = id >= 0 && id < byId.length ? byId[id] : null;
+        if (entry == null) throw new IllegalArgumentException("Unknown waveform ID " + id);
+        return entry;
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no waveform with this name.
+     */
+    public Waveform get(String name) {
+        Entry entry = find(name);
+        if (entry == null) throw new IllegalArgumentException("Unknown waveform " + name + ", known waveforms: " + getNames());
+        return entry.waveform();
+    }
+
+    @Nullable
+    public Entry find(String name) {
+        return byName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return the ID of the waveform, -1 if it isn't registered.
+     */
+    public int idOf(Waveform waveform) {
+        Entry entry = byWaveform.get(waveform);
+        return entry == null ? -1 : entry.id();
+    }
+
+    /**
+     * @return all entries, sorted by ID.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public List<String> getNames() {
+        return entries.stream().map(Entry::name).toList();
+    }
+}
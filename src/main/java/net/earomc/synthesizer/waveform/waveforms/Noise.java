@@ -1,12 +1,66 @@
 package net.earomc.synthesizer.waveform.waveforms;
 
+import net.earomc.synthesizer.simd.SampleOps;
+import net.earomc.synthesizer.waveform.SineAccuracy;
 import net.earomc.synthesizer.waveform.Waveform;
 
 import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * White noise from -amp to amp.
+ * <p>
+ * Every thread draws from its own generator, which starts at a random seed. For reproducible renders a thread can
+ * {@link #setSeed(long) seed} its generator, then the noise it renders from then on is the same on every run and JVM.
+ */
 public class Noise implements Waveform {
+    private static final ThreadLocal<Generator> GENERATORS = ThreadLocal.withInitial(() -> new Generator(ThreadLocalRandom.current().nextLong()));
+
+    /**
+     * Restarts the noise generator of the calling thread at the given seed.
+     */
+    public static void setSeed(long seed) {
+        GENERATORS.get().state = seed;
+    }
+
     @Override
     public float sample(float timeSeconds, double periodSeconds, float amp, float phaseRadians) {
-        return amp * ThreadLocalRandom.current().nextFloat(-1f, 1f);
+        return amp * GENERATORS.get().nextFloat();
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        return false;
+    }
+
+    @Override
+    public float render(float[] out, int offset, int length, float phase01, float phaseIncrement, float amp, SineAccuracy accuracy) {
+        Generator generator = GENERATORS.get();
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = amp * generator.nextFloat();
+        }
+        return SampleOps.advancePhase(phase01, phaseIncrement, length);
+    }
+
+    /**
+     * SplitMix64. Written out instead of using a JDK generator, whose algorithm isn't guaranteed to stay the same.
+     */
+    private static final class Generator {
+        private long state;
+
+        private Generator(long seed) {
+            this.state = seed;
+        }
+
+        /**
+         * @return a uniformly distributed value from -1 (inclusive) to 1 (exclusive).
+         */
+        float nextFloat() {
+            long z = (state += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            z ^= z >>> 31;
+            // 24 random bits, as many as a float has
+            return (z >>> 40) * 0x1.0p-23f - 1f;
+        }
     }
 }
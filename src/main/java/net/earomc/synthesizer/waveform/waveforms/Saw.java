@@ -1,10 +1,27 @@
 package net.earomc.synthesizer.waveform.waveforms;
 
+import net.earomc.synthesizer.waveform.SineAccuracy;
 import net.earomc.synthesizer.waveform.Waveform;
 
 public class Saw implements Waveform {
     @Override
     public float sample(float timeSeconds, double periodSeconds, float amp, float phaseRadians) {
-        return (float) ((2 * amp / Math.PI) * Math.atan(Math.tan((2 * Math.PI * timeSeconds - phaseRadians) / (2 * periodSeconds))));
+        return (float) (amp * saw(Waveform.phase01(timeSeconds, periodSeconds, phaseRadians)));
+    }
+
+    @Override
+    public float render(float[] out, int offset, int length, float phase01, float phaseIncrement, float amp, SineAccuracy accuracy) {
+        double phase = phase01;
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = (float) (amp * saw(phase));
+            phase += phaseIncrement;
+            if (phase >= 1) phase -= Math.floor(phase);
+        }
+        return (float) phase;
+    }
+
+    private static double saw(double phase) {
+        // 2 / PI * atan(tan(PI * phase)) without the trigonometry: rises from -1 to 1 once per period
+        return 2 * (phase - Math.rint(phase));
     }
 }
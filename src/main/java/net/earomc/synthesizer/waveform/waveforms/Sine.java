@@ -1,6 +1,7 @@
 package net.earomc.synthesizer.waveform.waveforms;
 
-import net.earomc.synthesizer.Util;
+import net.earomc.synthesizer.simd.SampleOps;
+import net.earomc.synthesizer.waveform.SineAccuracy;
 import net.earomc.synthesizer.waveform.Waveform;
 
 public class Sine implements Waveform {
@@ -10,4 +11,24 @@ public class Sine implements Waveform {
 
         return sample;
     }
+
+    @Override
+    public float sample(float timeSeconds, double periodSeconds, float amp, float phaseRadians, SineAccuracy accuracy) {
+        if (accuracy == SineAccuracy.EXACT) return sample(timeSeconds, periodSeconds, amp, phaseRadians);
+        return amp * accuracy.sin01(Waveform.phase01(timeSeconds, periodSeconds, phaseRadians));
+    }
+
+    @Override
+    public float render(float[] out, int offset, int length, float phase01, float phaseIncrement, float amp, SineAccuracy accuracy) {
+        if (accuracy != SineAccuracy.EXACT) {
+            return SampleOps.PREFERRED.sine(out, offset, length, phase01, phaseIncrement, amp, accuracy.getPolynomial());
+        }
+        double phase = phase01;
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = (float) (amp * Math.sin(2 * Math.PI * phase));
+            phase += phaseIncrement;
+            if (phase >= 1) phase -= Math.floor(phase);
+        }
+        return (float) phase;
+    }
 }
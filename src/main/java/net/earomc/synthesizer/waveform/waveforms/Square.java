@@ -1,10 +1,28 @@
 package net.earomc.synthesizer.waveform.waveforms;
 
+import net.earomc.synthesizer.waveform.SineAccuracy;
 import net.earomc.synthesizer.waveform.Waveform;
 
 public class Square implements Waveform {
     @Override
     public float sample(float timeSeconds, double periodSeconds, float amp, float phaseRadians) {
-        return (float) (amp * Math.signum(Math.sin((2 * Math.PI * timeSeconds - phaseRadians) / periodSeconds)));
+        return square(Waveform.phase01(timeSeconds, periodSeconds, phaseRadians), amp);
+    }
+
+    @Override
+    public float render(float[] out, int offset, int length, float phase01, float phaseIncrement, float amp, SineAccuracy accuracy) {
+        double phase = phase01;
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = square(phase, amp);
+            phase += phaseIncrement;
+            if (phase >= 1) phase -= Math.floor(phase);
+        }
+        return (float) phase;
+    }
+
+    private static float square(double phase, float amp) {
+        // signum(sin(2 * PI * phase)): positive in the first half of the period, negative in the second
+        if (phase == 0) return 0;
+        return phase < 0.5 ? amp : -amp;
     }
 }
@@ -1,10 +1,33 @@
 package net.earomc.synthesizer.waveform.waveforms;
 
+import net.earomc.synthesizer.waveform.SineAccuracy;
 import net.earomc.synthesizer.waveform.Waveform;
 
 public class Triangle implements Waveform {
     @Override
     public float sample(float timeSeconds, double periodSeconds, float amp, float phaseRadians) {
-        return (float) ((2 * amp / Math.PI) * Math.asin(Math.sin((2 * Math.PI * timeSeconds - phaseRadians) / periodSeconds)));
+        return (float) (amp * triangle(Waveform.phase01(timeSeconds, periodSeconds, phaseRadians)));
+    }
+
+    @Override
+    public float render(float[] out, int offset, int length, float phase01, float phaseIncrement, float amp, SineAccuracy accuracy) {
+        double phase = phase01;
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = (float) (amp * triangle(phase));
+            phase += phaseIncrement;
+            if (phase >= 1) phase -= Math.floor(phase);
+        }
+        return (float) phase;
+    }
+
+    private static double triangle(double phase) {
+        // 2 / PI * asin(sin(2 * PI * phase)) without the trigonometry: rises in the first and last quarter, falls in between
+        if (phase < 0.25) {
+            return 4 * phase;
+        } else if (phase < 0.75) {
+            return 2 - 4 * phase;
+        } else {
+            return 4 * phase - 4;
+        }
     }
 }